@@ -0,0 +1,195 @@
+package com.google.devrel.training.conference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.QueryShape;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.service.TopicExpression;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * How a ConferenceQueryForm runs: the datastore query, the filters evaluated in memory on its
+ * results, and once a page was read, how many Conferences it scanned for it.
+ *
+ * A form with IN filters runs one datastore query per combination of their values, merging
+ * their results. A form with a topic expression runs on the TopicIndex instead of a datastore
+ * query, and all its filters are evaluated in memory.
+ */
+public class ConferenceQueryPlan {
+
+    private final Query<Conference> query;
+
+    private final List<Query<Conference>> subQueries;
+
+    private final TopicExpression topicFilter;
+
+    private final QueryShape shape;
+
+    private final List<Filter> residualFilters;
+
+    private final String inequalityField;
+
+    private final List<String> datastoreFilters;
+
+    private final List<String> estimates;
+
+    private int scanned;
+
+    private int returned;
+
+    private boolean scanBudgetExhausted;
+
+    public ConferenceQueryPlan(Query<Conference> query, QueryShape shape,
+            List<Filter> residualFilters, String inequalityField, List<String> datastoreFilters,
+            List<String> estimates) {
+        this.query = query;
+        this.subQueries = new ArrayList<>();
+        this.topicFilter = null;
+        this.shape = shape;
+        this.residualFilters = new ArrayList<>(residualFilters);
+        this.inequalityField = inequalityField;
+        this.datastoreFilters = new ArrayList<>(datastoreFilters);
+        this.estimates = new ArrayList<>(estimates);
+    }
+
+    public ConferenceQueryPlan(List<Query<Conference>> subQueries, QueryShape shape,
+            List<Filter> residualFilters, List<String> datastoreFilters) {
+        this.query = null;
+        this.subQueries = new ArrayList<>(subQueries);
+        this.topicFilter = null;
+        this.shape = shape;
+        this.residualFilters = new ArrayList<>(residualFilters);
+        this.inequalityField = null;
+        this.datastoreFilters = new ArrayList<>(datastoreFilters);
+        this.estimates = new ArrayList<>();
+    }
+
+    public ConferenceQueryPlan(TopicExpression topicFilter, List<Filter> residualFilters) {
+        this.query = null;
+        this.subQueries = new ArrayList<>();
+        this.topicFilter = topicFilter;
+        this.shape = null;
+        this.residualFilters = new ArrayList<>(residualFilters);
+        this.inequalityField = null;
+        this.datastoreFilters = new ArrayList<>();
+        this.estimates = new ArrayList<>();
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Query<Conference> getQuery() {
+        return query;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public QueryShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Returns the queries whose results are merged for IN filters, one per combination of
+     * their values.
+     *
+     * @return the queries, empty when the plan runs a single query.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public List<Query<Conference>> getSubQueries() {
+        return new ArrayList<>(subQueries);
+    }
+
+    public int getSubQueryCount() {
+        return subQueries.size();
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public TopicExpression getTopicFilter() {
+        return topicFilter;
+    }
+
+    /**
+     * Returns the topic expression in canonical form.
+     *
+     * @return the expression, null when the plan runs a datastore query.
+     */
+    public String getTopicExpression() {
+        return topicFilter == null ? null : topicFilter.toString();
+    }
+
+    /**
+     * Returns true when the Conference passes the filters the datastore didn't apply.
+     *
+     * @param conference a Conference found by the query.
+     * @return true when the Conference matches all the residual filters.
+     */
+    public boolean matches(Conference conference) {
+        for (Filter filter : residualFilters) {
+            if (!filter.matches(conference)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean hasResidualFilters() {
+        return !residualFilters.isEmpty();
+    }
+
+    /**
+     * Returns the field the datastore filters with inequalities, which results are ordered by.
+     *
+     * @return the field name, null when the query has no inequality filter.
+     */
+    public String getInequalityField() {
+        return inequalityField;
+    }
+
+    public List<String> getDatastoreFilters() {
+        return new ArrayList<>(datastoreFilters);
+    }
+
+    public List<String> getResidualFilters() {
+        List<String> descriptions = new ArrayList<>(residualFilters.size());
+        for (Filter filter : residualFilters) {
+            descriptions.add(filter.toString());
+        }
+        return descriptions;
+    }
+
+    /**
+     * Returns the number of Conferences sampled for each inequality field considered, the
+     * fewest one was pushed to the datastore.
+     *
+     * @return one "field: count" entry per candidate, empty when there was no choice to make.
+     */
+    public List<String> getEstimates() {
+        return new ArrayList<>(estimates);
+    }
+
+    public int getScanned() {
+        return scanned;
+    }
+
+    public int getReturned() {
+        return returned;
+    }
+
+    /**
+     * Returns true when the last page stopped short because too many Conferences were
+     * scanned; the next page continues where it stopped.
+     *
+     * @return true when the scan budget was exhausted.
+     */
+    public boolean isScanBudgetExhausted() {
+        return scanBudgetExhausted;
+    }
+
+    public void recordScan(int scanned, int returned, boolean scanBudgetExhausted) {
+        this.scanned = scanned;
+        this.returned = returned;
+        this.scanBudgetExhausted = scanBudgetExhausted;
+    }
+}
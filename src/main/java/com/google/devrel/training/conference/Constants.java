@@ -15,4 +15,43 @@ public class Constants {
     public static final String API_EXPLORER_CLIENT_ID = Constant.API_EXPLORER_CLIENT_ID;
 
     public static final String MEMCACHE_ANNOUNCEMENTS_KEY = "RECENT_ANNOUNCEMENTS";
+
+    /**
+     * Seat inventory sharding. A conference with N shards accepts N registrations in parallel.
+     * The maximum keeps a booking transaction within the cross-group transaction limit.
+     */
+    public static final int DEFAULT_SEAT_SHARDS = 4;
+    public static final int MAX_SEAT_SHARDS = 20;
+    public static final String MEMCACHE_SEATS_AVAILABLE_PREFIX = "SEATS_AVAILABLE_";
+
+    /**
+     * The pull queue holding asynchronous registration requests, see queue.xml.
+     */
+    public static final String REGISTRATION_QUEUE = "registrations";
+
+    /**
+     * The pull queue holding the mails to send, see queue.xml, and the system property of
+     * appengine-web.xml limiting how many are sent a minute.
+     */
+    public static final String MAIL_QUEUE = "mail";
+    public static final String MAIL_SENDS_PER_MINUTE_PROPERTY = "conference.mail.sendsPerMinute";
+    public static final int DEFAULT_MAIL_SENDS_PER_MINUTE = 120;
+
+    /**
+     * How long seats stay held before going back to the inventory, and how many seats a
+     * single hold may take.
+     */
+    public static final int HOLD_SECONDS = 5 * 60;
+    public static final int MAX_SEATS_PER_HOLD = 10;
+
+    /**
+     * How long a retry sent with the same idempotency key replays the first outcome.
+     */
+    public static final int IDEMPOTENCY_TTL_SECONDS = 60 * 60;
+
+    /**
+     * Page sizes of the list endpoints, when the client doesn't ask for one and at most.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
 }
\ No newline at end of file
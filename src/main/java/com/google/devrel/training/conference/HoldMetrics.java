@@ -0,0 +1,45 @@
+package com.google.devrel.training.conference;
+
+/**
+ * Counts of seat holds by outcome, for measuring how many holds turn into registrations.
+ */
+public class HoldMetrics {
+
+    private final long placed;
+    private final long confirmed;
+    private final long released;
+    private final long expired;
+
+    public HoldMetrics(long placed, long confirmed, long released, long expired) {
+        this.placed = placed;
+        this.confirmed = confirmed;
+        this.released = released;
+        this.expired = expired;
+    }
+
+    public long getPlaced() {
+        return placed;
+    }
+
+    public long getConfirmed() {
+        return confirmed;
+    }
+
+    public long getReleased() {
+        return released;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Returns the share of the completed holds which were confirmed.
+     *
+     * @return confirmed / (confirmed + released + expired), 0 when no hold completed yet.
+     */
+    public double getConversionRate() {
+        long completed = confirmed + released + expired;
+        return completed == 0 ? 0 : (double) confirmed / completed;
+    }
+}
@@ -0,0 +1,39 @@
+package com.google.devrel.training.conference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The composite indexes covering the observed query shapes, most used first, and the
+ * datastore-indexes.xml declaring them.
+ */
+public class IndexAdvice {
+
+    private final List<SuggestedIndex> indexes;
+    private final List<String> builtInShapes;
+    private final String datastoreIndexesXml;
+
+    public IndexAdvice(List<SuggestedIndex> indexes, List<String> builtInShapes,
+            String datastoreIndexesXml) {
+        this.indexes = new ArrayList<>(indexes);
+        this.builtInShapes = new ArrayList<>(builtInShapes);
+        this.datastoreIndexesXml = datastoreIndexesXml;
+    }
+
+    public List<SuggestedIndex> getIndexes() {
+        return new ArrayList<>(indexes);
+    }
+
+    /**
+     * Returns the observed shapes the built-in indexes serve, with no composite index.
+     *
+     * @return the ids of the shapes.
+     */
+    public List<String> getBuiltInShapes() {
+        return new ArrayList<>(builtInShapes);
+    }
+
+    public String getDatastoreIndexesXml() {
+        return datastoreIndexesXml;
+    }
+}
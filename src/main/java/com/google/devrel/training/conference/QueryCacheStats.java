@@ -0,0 +1,44 @@
+package com.google.devrel.training.conference;
+
+/**
+ * Hits and misses of the conference query cache, for sizing it.
+ */
+public class QueryCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long generation;
+
+    public QueryCacheStats(long hits, long misses, long generation) {
+        this.hits = hits;
+        this.misses = misses;
+        this.generation = generation;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the current generation, which changes each time the cache is invalidated.
+     *
+     * @return the generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the share of the queries answered from the cache.
+     *
+     * @return hits / (hits + misses), 0 when no query ran yet.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
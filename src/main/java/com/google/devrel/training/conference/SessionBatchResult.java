@@ -0,0 +1,67 @@
+package com.google.devrel.training.conference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of each Session of a createSessions call, in the order of the forms.
+ */
+public class SessionBatchResult {
+
+    private final List<Item> items;
+
+    public SessionBatchResult(final int size) {
+        items = new ArrayList<>(Collections.<Item>nCopies(size, null));
+    }
+
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Returns the number of Sessions created.
+     *
+     * @return the number of items without an error.
+     */
+    public int getCreated() {
+        int created = 0;
+        for (Item item : items) {
+            if (item != null && item.getError() == null) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    public void created(final int index, final String websafeSessionKey) {
+        items.set(index, new Item(websafeSessionKey, null));
+    }
+
+    public void failed(final int index, final String error) {
+        items.set(index, new Item(null, error));
+    }
+
+    /**
+     * The key of a created Session, or why it wasn't created.
+     */
+    public static class Item {
+
+        private final String websafeSessionKey;
+
+        private final String error;
+
+        Item(final String websafeSessionKey, final String error) {
+            this.websafeSessionKey = websafeSessionKey;
+            this.error = error;
+        }
+
+        public String getWebsafeSessionKey() {
+            return websafeSessionKey;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
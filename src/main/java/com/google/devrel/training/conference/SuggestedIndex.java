@@ -0,0 +1,64 @@
+package com.google.devrel.training.conference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A composite index needed by observed queries, with how often they ran and how long they took.
+ */
+public class SuggestedIndex {
+
+    private final String kind;
+    private final boolean ancestor;
+    private final List<String> properties;
+    private final List<String> shapes = new ArrayList<>();
+    private long count;
+    private long totalMillis;
+
+    public SuggestedIndex(String kind, boolean ancestor, List<String> properties) {
+        this.kind = kind;
+        this.ancestor = ancestor;
+        this.properties = new ArrayList<>(properties);
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public boolean isAncestor() {
+        return ancestor;
+    }
+
+    public List<String> getProperties() {
+        return new ArrayList<>(properties);
+    }
+
+    /**
+     * Returns the query shapes this index serves.
+     *
+     * @return the ids of the shapes.
+     */
+    public List<String> getShapes() {
+        return new ArrayList<>(shapes);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the average time to read a page with the queries this index serves.
+     *
+     * @return the average in milliseconds, 0 when they were not counted since memcache lost
+     *         the counters.
+     */
+    public long getAverageMillis() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    public void addShape(String shape, long count, long totalMillis) {
+        this.shapes.add(shape);
+        this.count += count;
+        this.totalMillis += totalMillis;
+    }
+}
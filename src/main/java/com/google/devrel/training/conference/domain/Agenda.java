@@ -0,0 +1,270 @@
+package com.google.devrel.training.conference.domain;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Serialize;
+
+/**
+ * Agenda is the materialized timetable of a Conference: summaries of its Sessions grouped by
+ * day, then by type, each group sorted, so that it is read with one get instead of a query
+ * returning full Sessions.
+ *
+ * The days are stored as one zipped blob and cached in memcache. The version changes on every
+ * update, so clients can tell whether their copy is stale.
+ */
+@Entity
+@Cache
+public class Agenda {
+
+    /**
+     * The websafe key of the Conference.
+     */
+    @Id
+    private String id;
+
+    private long version;
+
+    @Serialize(zip = true)
+    private List<Day> days = new ArrayList<>(0);
+
+    /**
+     * Just making the default constructor private.
+     */
+    private Agenda() {}
+
+    public Agenda(final Key<Conference> conferenceKey, final Collection<Session> sessions) {
+        this.id = conferenceKey.getString();
+        for (Session session : sessions) {
+            add(new Item(session));
+        }
+        touch();
+    }
+
+    public static Key<Agenda> key(final Key<Conference> conferenceKey) {
+        return Key.create(Agenda.class, conferenceKey.getString());
+    }
+
+    public String getWebsafeConferenceKey() {
+        return id;
+    }
+
+    /**
+     * Getter for version, which grows on every update and is never reused, even when the
+     * Agenda is rebuilt from scratch.
+     *
+     * @return the version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Day> getDays() {
+        return ImmutableList.copyOf(days);
+    }
+
+    /**
+     * Adds a Session to the Agenda, or replaces its summary when already there.
+     *
+     * @param session the Session.
+     */
+    public void put(final Session session) {
+        remove(session.getId());
+        add(new Item(session));
+        touch();
+    }
+
+    /**
+     * Removes a Session from the Agenda.
+     *
+     * @param sessionId the id of the Session.
+     * @return true when the Session was there.
+     */
+    public boolean remove(final long sessionId) {
+        for (Iterator<Day> dayIterator = days.iterator(); dayIterator.hasNext();) {
+            Day day = dayIterator.next();
+            for (Iterator<Track> trackIterator = day.tracks.iterator();
+                    trackIterator.hasNext();) {
+                Track track = trackIterator.next();
+                for (Iterator<Item> itemIterator = track.sessions.iterator();
+                        itemIterator.hasNext();) {
+                    if (itemIterator.next().sessionId == sessionId) {
+                        itemIterator.remove();
+                        if (track.sessions.isEmpty()) {
+                            trackIterator.remove();
+                        }
+                        if (day.tracks.isEmpty()) {
+                            dayIterator.remove();
+                        }
+                        touch();
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void add(final Item item) {
+        int dayIndex = 0;
+        while (dayIndex < days.size() && compare(days.get(dayIndex).date, item.date) < 0) {
+            dayIndex++;
+        }
+        if (dayIndex == days.size() || compare(days.get(dayIndex).date, item.date) != 0) {
+            days.add(dayIndex, new Day(item.date));
+        }
+        List<Track> tracks = days.get(dayIndex).tracks;
+        int trackIndex = 0;
+        while (trackIndex < tracks.size()
+                && compare(tracks.get(trackIndex).typeOfSession, item.typeOfSession) < 0) {
+            trackIndex++;
+        }
+        if (trackIndex == tracks.size()
+                || compare(tracks.get(trackIndex).typeOfSession, item.typeOfSession) != 0) {
+            tracks.add(trackIndex, new Track(item.typeOfSession));
+        }
+        List<Item> items = tracks.get(trackIndex).sessions;
+        int itemIndex = 0;
+        while (itemIndex < items.size() && items.get(itemIndex).compareTo(item) < 0) {
+            itemIndex++;
+        }
+        items.add(itemIndex, item);
+    }
+
+    private void touch() {
+        version = Math.max(version + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Compares two values, null after any other value.
+     */
+    private static <T extends Comparable<T>> int compare(final T left, final T right) {
+        if (left == null || right == null) {
+            return left == right ? 0 : left == null ? 1 : -1;
+        }
+        return left.compareTo(right);
+    }
+
+    /**
+     * The Sessions of a day, sorted by day; null for the Sessions without a date.
+     */
+    public static class Day implements Serializable {
+
+        private static final long serialVersionUID = 4128533720474186208L;
+
+        private final Date date;
+
+        private final List<Track> tracks = new ArrayList<>();
+
+        Day(final Date date) {
+            this.date = date;
+        }
+
+        public Date getDate() {
+            return date;
+        }
+
+        public List<Track> getTracks() {
+            return ImmutableList.copyOf(tracks);
+        }
+    }
+
+    /**
+     * The Sessions of a type in a day, sorted by type; null for the Sessions without one.
+     */
+    public static class Track implements Serializable {
+
+        private static final long serialVersionUID = -6310429836152077334L;
+
+        private final TypeOfSession typeOfSession;
+
+        private final List<Item> sessions = new ArrayList<>();
+
+        Track(final TypeOfSession typeOfSession) {
+            this.typeOfSession = typeOfSession;
+        }
+
+        public TypeOfSession getTypeOfSession() {
+            return typeOfSession;
+        }
+
+        public List<Item> getSessions() {
+            return ImmutableList.copyOf(sessions);
+        }
+    }
+
+    /**
+     * The summary of a Session, sorted by start time, then by name.
+     */
+    public static class Item implements Serializable, Comparable<Item> {
+
+        private static final long serialVersionUID = 2215939137519082712L;
+
+        private final long sessionId;
+
+        private final String sessionName;
+
+        private final String speaker;
+
+        private final String startTime;
+
+        private final Long duration;
+
+        private final Integer startMinute;
+
+        private final Date date;
+
+        private final TypeOfSession typeOfSession;
+
+        Item(final Session session) {
+            this.sessionId = session.getId();
+            this.sessionName = session.getSessionName();
+            this.speaker = session.getSpeaker();
+            this.startTime = session.getStartTime();
+            this.duration = session.getDuration();
+            this.startMinute = session.getStartMinute();
+            this.date = session.getDate();
+            this.typeOfSession = session.getTypeOfSession();
+        }
+
+        public long getSessionId() {
+            return sessionId;
+        }
+
+        public String getSessionName() {
+            return sessionName;
+        }
+
+        public String getSpeaker() {
+            return speaker;
+        }
+
+        public String getStartTime() {
+            return startTime;
+        }
+
+        public Long getDuration() {
+            return duration;
+        }
+
+        @Override
+        public int compareTo(final Item other) {
+            int byStart = compare(startMinute, other.startMinute);
+            if (byStart != 0) {
+                return byStart;
+            }
+            int byName = compare(sessionName, other.sessionName);
+            return byName != 0 ? byName : Long.compare(sessionId, other.sessionId);
+        }
+    }
+}
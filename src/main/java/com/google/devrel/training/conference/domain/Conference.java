@@ -1,8 +1,5 @@
 package com.google.devrel.training.conference.domain;
 
-import static com.google.devrel.training.conference.service.OfyService.ofy;
-
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
@@ -51,7 +48,10 @@ public class Conference {
     private String description;
 
     /**
-     * Holds Profile key as the parent.
+     * Holds Profile key as the parent for legacy conferences.
+     *
+     * New conferences are root entities and leave this null, so that they don't share the
+     * entity group of the organizer's Profile.
      */
     @Parent
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
@@ -60,9 +60,16 @@ public class Conference {
     /**
      * The userId of the organizer.
      */
+    @Index
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     private String organizerUserId;
 
+    /**
+     * Copy of the organizer's Profile display name, so that serializing a Conference doesn't
+     * load the Profile. Rewritten by a task when the organizer changes it.
+     */
+    private String organizerDisplayName;
+
     /**
      * Topics related to this conference.
      */
@@ -103,10 +110,35 @@ public class Conference {
      */
     @Index
     private int seatsAvailable;
-    
-    
+
+    /**
+     * Number of SeatShard entities holding the seat inventory.
+     *
+     * Zero means the seats are booked directly on this entity (conferences created before
+     * seat sharding was introduced).
+     */
+    private int seatShards;
+
+    /**
+     * Names the SeatShards of this conference. Null means the websafe key, a migrated
+     * conference keeps the one of its legacy key so its shards don't have to move.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private String seatInventoryId;
+
+    /**
+     * The ordinal of this conference in the TopicBitmaps, null until it is first indexed.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Long ordinal;
+
+    /**
+     * The websafe keys of the Sessions, only kept by conferences created before Sessions were
+     * listed with ancestor queries and counted by SessionCount; stripped by the migration.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     private List<String> sessions;
-    
+
     /**
      * Just making the default constructor private.
      */
@@ -116,29 +148,10 @@ public class Conference {
                       final ConferenceForm conferenceForm) {
         Preconditions.checkNotNull(conferenceForm.getName(), "The name is required");
         this.id = id;
-        this.profileKey = Key.create(Profile.class, organizerUserId);
         this.organizerUserId = organizerUserId;
+        this.seatShards = conferenceForm.getSeatShards();
         updateWithConferenceForm(conferenceForm);
     }
-    
-    
-    public List<String> getSessionsKey() {
-		return (this.sessions == null ? new ArrayList<String>()
-				: ImmutableList.copyOf(this.sessions));
-	}
-
-	public void addToSessionKeys(String conferenceKey) {
-		if (this.sessions == null) {
-			this.sessions = new ArrayList<String>();
-		}
-		sessions.add(conferenceKey);
-	}
-
-	public void removeSessionKeys(String sessionKey) {
-		if (this.sessions != null) {
-			sessions.remove(sessions);
-		}
-	}
 
     public long getId() {
         return id;
@@ -154,7 +167,77 @@ public class Conference {
 
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
     public Key<Profile> getProfileKey() {
-        return profileKey;
+        return Key.create(Profile.class, organizerUserId);
+    }
+
+    /**
+     * Returns true when this conference is still keyed under the organizer's Profile.
+     *
+     * @return true for a conference which has not been migrated to a root key yet.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean isLegacyKey() {
+        return profileKey != null;
+    }
+
+    /**
+     * Returns true when this conference still holds the keys of its Sessions.
+     *
+     * @return true when the legacy list has to be stripped.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean hasLegacySessionKeys() {
+        return sessions != null;
+    }
+
+    /**
+     * Drops the legacy list of Session keys.
+     */
+    public void clearLegacySessionKeys() {
+        this.sessions = null;
+    }
+
+    /**
+     * Returns a copy of this legacy conference as a root entity with the given id.
+     *
+     * The legacy session keys are dropped; the seats are still booked on the SeatShards of the
+     * legacy key.
+     *
+     * @param newId the id of the root entity.
+     * @return the root copy of this conference.
+     */
+    public Conference copyAsRootConference(final long newId) {
+        Conference copy = new Conference();
+        copy.id = newId;
+        copy.name = name;
+        copy.description = description;
+        copy.organizerUserId = organizerUserId;
+        copy.organizerDisplayName = organizerDisplayName;
+        copy.topics = topics;
+        copy.city = city;
+        copy.startDate = startDate;
+        copy.endDate = endDate;
+        copy.month = month;
+        copy.maxAttendees = maxAttendees;
+        copy.seatsAvailable = seatsAvailable;
+        copy.seatShards = seatShards;
+        copy.seatInventoryId = getSeatInventoryId();
+        return copy;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Long getOrdinal() {
+        return ordinal;
+    }
+
+    public void assignOrdinal(final long ordinal) {
+        Preconditions.checkState(this.ordinal == null, "The ordinal is already assigned");
+        this.ordinal = ordinal;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public String getSeatInventoryId() {
+        return seatInventoryId == null ? getWebsafeKey() : seatInventoryId;
     }
 
     // Get a String version of the key
@@ -170,16 +253,35 @@ public class Conference {
     /**
      * Returns organizer's display name.
      *
-     * @return organizer's display name. If there is no Profile, return his/her userId.
+     * @return organizer's display name. If it was never copied from the Profile, return
+     *         his/her userId.
      */
     public String getOrganizerDisplayName() {
-        // Profile organizer = ofy().load().key(Key.create(Profile.class, organizerUserId)).now();
-        Profile organizer = ofy().load().key(getProfileKey()).now();
-        if (organizer == null) {
-            return organizerUserId;
-        } else {
-            return organizer.getDisplayName();
+        return organizerDisplayName == null ? organizerUserId : organizerDisplayName;
+    }
+
+    /**
+     * Returns true when the organizer's display name was copied on this conference.
+     *
+     * @return false for a conference saved before the name was copied.
+     */
+    public boolean hasOrganizerDisplayName() {
+        return organizerDisplayName != null;
+    }
+
+    /**
+     * Replaces the copy of the organizer's display name.
+     *
+     * @param organizerDisplayName the display name of the organizer's Profile.
+     * @return true when the name changed.
+     */
+    public boolean updateOrganizerDisplayName(final String organizerDisplayName) {
+        if (organizerDisplayName == null
+                || organizerDisplayName.equals(this.organizerDisplayName)) {
+            return false;
         }
+        this.organizerDisplayName = organizerDisplayName;
+        return true;
     }
 
     /**
@@ -222,6 +324,19 @@ public class Conference {
         return seatsAvailable;
     }
 
+    public int getSeatShards() {
+        return seatShards;
+    }
+
+    /**
+     * Replaces seatsAvailable with the total aggregated from the SeatShards.
+     *
+     * @param seatsAvailable the number of seats available over all shards.
+     */
+    public void refreshSeatsAvailable(final int seatsAvailable) {
+        this.seatsAvailable = seatsAvailable;
+    }
+
     /**
      * Updates the Conference with ConferenceForm.
      * This method is used upon object creation as well as updating existing Conferences.
@@ -0,0 +1,44 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * ConferenceAlias maps the websafe key of a migrated legacy Conference, which was keyed under
+ * the organizer's Profile, to the key of its root copy.
+ */
+@Entity
+@Cache
+public class ConferenceAlias {
+
+    /**
+     * The websafe key of the legacy Conference.
+     */
+    @Id
+    private String legacyWebsafeKey;
+
+    /**
+     * The key of the root Conference.
+     */
+    private Key<Conference> conferenceKey;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private ConferenceAlias() {}
+
+    public ConferenceAlias(final Key<Conference> legacyKey, final Key<Conference> conferenceKey) {
+        this.legacyWebsafeKey = legacyKey.getString();
+        this.conferenceKey = conferenceKey;
+    }
+
+    public String getLegacyWebsafeKey() {
+        return legacyWebsafeKey;
+    }
+
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+}
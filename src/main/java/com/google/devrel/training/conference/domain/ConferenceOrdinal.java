@@ -0,0 +1,56 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * ConferenceOrdinal maps the small int a Conference is known by in the TopicBitmaps back to
+ * the Conference, and remembers the topics it was last indexed with.
+ *
+ * Ordinals are allocated by the datastore's sequential id allocator, so they stay dense and
+ * the bitmaps compact.
+ */
+@Entity
+public class ConferenceOrdinal {
+
+    /**
+     * The ordinal.
+     */
+    @Id
+    private long id;
+
+    private Key<Conference> conferenceKey;
+
+    private List<String> topics;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private ConferenceOrdinal() {}
+
+    public ConferenceOrdinal(final long id, final Key<Conference> conferenceKey) {
+        this.id = id;
+        this.conferenceKey = conferenceKey;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+
+    public List<String> getTopics() {
+        return topics == null ? ImmutableList.<String> of() : ImmutableList.copyOf(topics);
+    }
+
+    public void setTopics(final List<String> topics) {
+        this.topics = new ArrayList<>(topics);
+    }
+}
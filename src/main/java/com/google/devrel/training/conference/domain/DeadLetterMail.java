@@ -0,0 +1,69 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * DeadLetterMail keeps a mail task which could not be sent, so that it can be looked at and
+ * sent again by hand instead of being retried forever.
+ */
+@Entity
+public class DeadLetterMail {
+
+    /**
+     * The name of the mail task.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The parameters of the mail task.
+     */
+    private Map<String, String> params;
+
+    private int attempts;
+
+    private String error;
+
+    @Index
+    private Date failedAt;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private DeadLetterMail() {}
+
+    public DeadLetterMail(final String id, final Map<String, String> params, final int attempts,
+            final String error) {
+        this.id = id;
+        this.params = new LinkedHashMap<>(params);
+        this.attempts = attempts;
+        this.error = error;
+        this.failedAt = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Date getFailedAt() {
+        return failedAt;
+    }
+}
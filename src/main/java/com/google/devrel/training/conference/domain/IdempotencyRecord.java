@@ -0,0 +1,79 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.Date;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * IdempotencyRecord remembers the outcome of a mutating request sent with an idempotency key,
+ * so a retry of the same request replays the outcome instead of running again.
+ *
+ * Records are root entities, written in the same transaction or batch as the mutation itself.
+ */
+@Entity
+public class IdempotencyRecord {
+
+    /**
+     * The name for the datastore key, made of the operation, the userId, the target of the
+     * request and the client key.
+     */
+    @Id
+    private String id;
+
+    /**
+     * What the request produced, e.g. the websafe key of a created Conference.
+     */
+    private String outcome;
+
+    /**
+     * When a retry is no longer recognized and the record can be purged.
+     */
+    @Index
+    private Date expiresAt;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private IdempotencyRecord() {}
+
+    public IdempotencyRecord(final String id, final String outcome, final Date expiresAt) {
+        this.id = id;
+        this.outcome = outcome;
+        this.expiresAt = new Date(expiresAt.getTime());
+    }
+
+    /**
+     * Returns the key of the record of a request. The target is part of the key, so a client
+     * key reused on another target is a new request rather than a replay.
+     *
+     * @param operation the name of the endpoint method.
+     * @param userId the userId of the user sending the request.
+     * @param target what the request acts on, such as a websafe key, null when nothing yet.
+     * @param idempotencyKey the key chosen by the client.
+     * @return the key of the record.
+     */
+    public static Key<IdempotencyRecord> key(final String operation, final String userId,
+            final String target, final String idempotencyKey) {
+        return Key.create(IdempotencyRecord.class, operation + ":" + userId + ":"
+                + (target == null ? "" : target + ":") + idempotencyKey);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public Date getExpiresAt() {
+        return new Date(expiresAt.getTime());
+    }
+
+    public boolean isExpiredAt(final Date now) {
+        return !expiresAt.after(now);
+    }
+}
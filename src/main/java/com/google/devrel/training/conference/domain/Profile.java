@@ -3,6 +3,8 @@ package com.google.devrel.training.conference.domain;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
 import com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import com.googlecode.objectify.annotation.Cache;
@@ -21,8 +23,14 @@ public class Profile {
 	
 	TeeShirtSize teeShirtSize;
 
+	/**
+	 * Registrations stored inline by earlier versions, see Registration.
+	 */
 	private List<String> conferenceKeysToAttend;
 
+	/**
+	 * Wishlist stored inline by earlier versions, see WishlistEntry.
+	 */
 	private List<String> sessions;
 
 
@@ -84,44 +92,36 @@ public class Profile {
 		}
 	}
 	
-	public List<String> getSessionsKey() {
-		return (this.sessions == null ? new ArrayList<String>() : ImmutableList
-				.copyOf(this.sessions));
-	}
-
-	public void addToSessionKeys(String conferenceKey) {
-		if (this.sessions == null) {
-			this.sessions = new ArrayList<String>();
-		}
-		sessions.add(conferenceKey);
-	}
-
-	public void removeSessionKeys(String sessionKey) {
-		if (this.sessions != null) {
-			sessions.remove(sessionKey);
-		}
+	/**
+	 * Returns true when the Profile still holds registrations or wishlist
+	 * entries inline, from before they were moved to Registration and
+	 * WishlistEntry child entities.
+	 *
+	 * @return true when the Profile has to be migrated.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public boolean hasLegacyLists() {
+		return conferenceKeysToAttend != null || sessions != null;
 	}
 
-	public List<String> getConferenceKeysToAttend() {
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public List<String> getLegacyConferenceKeysToAttend() {
 		return (this.conferenceKeysToAttend == null ? new ArrayList<String>()
 				: ImmutableList.copyOf(this.conferenceKeysToAttend));
 	}
 
-	public void addToconferenceKeysToAttend(String conferenceKey) {
-		if (this.conferenceKeysToAttend == null) {
-			this.conferenceKeysToAttend = new ArrayList<String>();
-		}
-		conferenceKeysToAttend.add(conferenceKey);
-	}
-
-	public void removeToconferenceKeysToAttend(String conferenceKey) {
-		if (this.conferenceKeysToAttend != null) {
-			conferenceKeysToAttend.remove(conferenceKey);
-		}
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public List<String> getLegacySessionKeys() {
+		return (this.sessions == null ? new ArrayList<String>() : ImmutableList
+				.copyOf(this.sessions));
 	}
 
-	public void setConferenceKeysToAttend(List<String> conferenceKeysToAttend) {
-		this.conferenceKeysToAttend = conferenceKeysToAttend;
+	/**
+	 * Drops the inline lists, once moved to child entities.
+	 */
+	public void clearLegacyLists() {
+		this.conferenceKeysToAttend = null;
+		this.sessions = null;
 	}
 
 }
@@ -0,0 +1,130 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * QueryShape describes a datastore query by what decides the index it needs: the kind, whether
+ * it has an ancestor, the properties filtered by equality, the property filtered by
+ * inequalities and the sort orders. Values of the filters are not part of the shape.
+ *
+ * A QueryShape is saved the first time the IndexAdvisor sees it.
+ */
+@Entity
+public class QueryShape {
+
+    /**
+     * The canonical description of the shape.
+     */
+    @Id
+    private String id;
+
+    private String kind;
+
+    private boolean ancestor;
+
+    /**
+     * Sorted, so the order the filters were given in doesn't make another shape.
+     */
+    private List<String> equalityProperties = new ArrayList<>(0);
+
+    private String inequalityProperty;
+
+    private List<String> orders = new ArrayList<>(0);
+
+    /**
+     * Just making the default constructor private.
+     */
+    private QueryShape() {}
+
+    /**
+     * @param kind the kind queried.
+     * @param ancestor true for an ancestor query.
+     * @param equalityProperties the properties filtered by equality, in any order.
+     * @param inequalityProperty the property filtered by inequalities, null when none.
+     * @param orders the properties sorted by, ascending.
+     */
+    public QueryShape(final String kind, final boolean ancestor,
+            final Collection<String> equalityProperties, final String inequalityProperty,
+            final List<String> orders) {
+        this.kind = kind;
+        this.ancestor = ancestor;
+        this.equalityProperties = new ArrayList<>(equalityProperties);
+        Collections.sort(this.equalityProperties);
+        this.inequalityProperty = inequalityProperty;
+        this.orders = new ArrayList<>(orders);
+        this.id = kind + (ancestor ? "|ancestor" : "")
+                + "|eq:" + Joiner.on(',').join(this.equalityProperties)
+                + "|ineq:" + Strings.nullToEmpty(inequalityProperty)
+                + "|order:" + Joiner.on(',').join(this.orders);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public boolean isAncestor() {
+        return ancestor;
+    }
+
+    public List<String> getEqualityProperties() {
+        return new ArrayList<>(equalityProperties);
+    }
+
+    public String getInequalityProperty() {
+        return inequalityProperty;
+    }
+
+    public List<String> getOrders() {
+        return new ArrayList<>(orders);
+    }
+
+    /**
+     * Returns true when the built-in single property indexes serve this shape, alone or
+     * merged by a zigzag join, so it needs no composite index.
+     *
+     * @return true when no composite index is needed.
+     */
+    public boolean isServedByBuiltInIndexes() {
+        List<String> postfix = getPostfix();
+        if (postfix.isEmpty()) {
+            // Equality filters only, on any number of properties
+            return true;
+        }
+        if (ancestor || !equalityProperties.isEmpty()) {
+            return false;
+        }
+        return postfix.size() == 1;
+    }
+
+    /**
+     * Returns the properties of the composite index serving this shape: the equality
+     * properties followed by the sort orders, or by the inequality property when unsorted.
+     *
+     * @return the properties, all ascending.
+     */
+    public List<String> getIndexProperties() {
+        List<String> properties = new ArrayList<>(equalityProperties);
+        properties.addAll(getPostfix());
+        return properties;
+    }
+
+    private List<String> getPostfix() {
+        if (!orders.isEmpty()) {
+            return orders;
+        }
+        return inequalityProperty == null ? Collections.<String> emptyList()
+                : Collections.singletonList(inequalityProperty);
+    }
+}
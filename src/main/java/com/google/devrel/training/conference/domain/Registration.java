@@ -0,0 +1,154 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.devrel.training.conference.service.WebsafeKeyCache;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * Registration records that the user of its parent Profile attends a Conference.
+ *
+ * Registrations are keyed by the seat inventory id of the Conference, which a migrated legacy
+ * Conference keeps, so a registration never has to be rewritten. Whether a user attends a
+ * Conference is a get, and the Conferences a user attends are listed with a keys-only
+ * ancestor query; the Profile itself is not written.
+ *
+ * The id of a root Conference is stored as its numeric id, which is turned back into a key
+ * without parsing a websafe key. Registrations written before were keyed by the websafe key;
+ * conferenceKey still reads them, and isCompact tells them apart so they can be rewritten.
+ */
+@Entity
+public class Registration {
+
+    private static final String CONFERENCE_KIND = Key.getKind(Conference.class);
+
+    @Parent
+    private Key<Profile> profileKey;
+
+    /**
+     * The numeric id of a root Conference, otherwise the seat inventory id of the Conference.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The seats booked, more than one when a hold of several seats was confirmed. Zero for
+     * Registrations written before, which booked one seat.
+     */
+    private int seats;
+
+    /**
+     * When the user registered, null for Registrations written before. Registering again
+     * after unregistering writes a new one.
+     */
+    private Date created;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private Registration() {}
+
+    public Registration(final Key<Profile> profileKey, final Conference conference) {
+        this(profileKey, conference, 1);
+    }
+
+    public Registration(final Key<Profile> profileKey, final Conference conference,
+            final int seats) {
+        this.profileKey = profileKey;
+        this.id = id(conference);
+        this.seats = seats;
+        this.created = new Date();
+    }
+
+    public static Key<Registration> key(final Key<Profile> profileKey,
+            final Conference conference) {
+        return Key.create(profileKey, Registration.class, id(conference));
+    }
+
+    /**
+     * Returns the keys a Registration to a Conference may have been stored under, the current
+     * one first.
+     *
+     * @param profileKey the key of the Profile.
+     * @param conference the Conference.
+     * @return the keys.
+     */
+    public static List<Key<Registration>> keys(final Key<Profile> profileKey,
+            final Conference conference) {
+        List<Key<Registration>> keys = new ArrayList<>(2);
+        keys.add(key(profileKey, conference));
+        if (!id(conference).equals(conference.getSeatInventoryId())) {
+            keys.add(Key.create(profileKey, Registration.class, conference.getSeatInventoryId()));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of seats to give back when the user unregisters.
+     *
+     * @return the seats booked, at least one.
+     */
+    public int getSeats() {
+        return Math.max(1, seats);
+    }
+
+    public String getUserId() {
+        return profileKey.getName();
+    }
+
+    /**
+     * Returns a defensive copy of created if not null.
+     * @return a defensive copy of created if not null.
+     */
+    public Date getCreated() {
+        return created == null ? null : new Date(created.getTime());
+    }
+
+    /**
+     * Returns the Conference of a Registration.
+     *
+     * @param registrationKey the key of the Registration.
+     * @return the key of the Conference, possibly a legacy key to resolve.
+     */
+    public static Key<Conference> conferenceKey(final Key<Registration> registrationKey) {
+        String name = registrationKey.getName();
+        if (isNumeric(name)) {
+            return Key.create(KeyFactory.createKey(CONFERENCE_KIND, Long.parseLong(name)));
+        }
+        return WebsafeKeyCache.parse(name);
+    }
+
+    /**
+     * Returns true when a Registration is keyed the current way.
+     *
+     * @param registrationKey the key of the Registration.
+     * @return false when it must be rewritten under a new key.
+     */
+    public static boolean isCompact(final Key<Registration> registrationKey) {
+        return isNumeric(registrationKey.getName())
+                || conferenceKey(registrationKey).getParent() != null;
+    }
+
+    private static String id(final Conference conference) {
+        String seatInventoryId = conference.getSeatInventoryId();
+        if (!conference.isLegacyKey() && seatInventoryId.equals(conference.getWebsafeKey())) {
+            return String.valueOf(conference.getId());
+        }
+        return seatInventoryId;
+    }
+
+    private static boolean isNumeric(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return !name.isEmpty();
+    }
+}
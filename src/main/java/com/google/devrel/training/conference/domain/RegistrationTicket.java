@@ -0,0 +1,98 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.Date;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.devrel.training.enumeration.RegistrationStatus;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * RegistrationTicket tracks a registration requested through the asynchronous pipeline.
+ *
+ * Tickets are root entities, so a worker can update a batch of them together with the
+ * seats it books in one cross-group transaction.
+ */
+@Entity
+public class RegistrationTicket {
+
+    /**
+     * The id for the datastore key, returned to the client for polling.
+     */
+    @Id
+    private long id;
+
+    /**
+     * The userId of the user registering.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private String userId;
+
+    /**
+     * The websafe key of the Conference.
+     */
+    private String websafeConferenceKey;
+
+    private RegistrationStatus status;
+
+    /**
+     * Why the registration was rejected.
+     */
+    private String reason;
+
+    private Date created;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private RegistrationTicket() {}
+
+    public RegistrationTicket(final long id, final String userId,
+                              final String websafeConferenceKey) {
+        this.id = id;
+        this.userId = userId;
+        this.websafeConferenceKey = websafeConferenceKey;
+        this.status = RegistrationStatus.PENDING;
+        this.created = new Date();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    public RegistrationStatus getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns a defensive copy of created if not null.
+     * @return a defensive copy of created if not null.
+     */
+    public Date getCreated() {
+        return created == null ? null : new Date(created.getTime());
+    }
+
+    public void confirm() {
+        this.status = RegistrationStatus.CONFIRMED;
+        this.reason = null;
+    }
+
+    public void reject(final String reason) {
+        this.status = RegistrationStatus.REJECTED;
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,44 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SearchDocument remembers the terms a Conference was indexed with, so reindexing it only
+ * rewrites the SearchTerms whose weight changed.
+ */
+@Entity
+public class SearchDocument {
+
+    /**
+     * The id of the Conference.
+     */
+    @Id
+    private long id;
+
+    /**
+     * The weight of each term in the Conference.
+     */
+    private Map<String, Integer> weights;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private SearchDocument() {}
+
+    public SearchDocument(final long id, final Map<String, Integer> weights) {
+        this.id = id;
+        this.weights = new HashMap<>(weights);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Map<String, Integer> getWeights() {
+        return weights == null ? new HashMap<String, Integer>() : new HashMap<>(weights);
+    }
+}
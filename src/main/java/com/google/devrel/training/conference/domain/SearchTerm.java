@@ -0,0 +1,87 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.SortedMap;
+
+import com.google.devrel.training.conference.service.PostingList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SearchTerm is an entry of the inverted index searched by searchConferences: the Conferences
+ * containing a term, in their own text or in the text of their Sessions.
+ *
+ * Each term is its own entity group, so indexing two Conferences only contends on the terms
+ * they share.
+ */
+@Entity
+public class SearchTerm {
+
+    /**
+     * The term, lower case.
+     */
+    @Id
+    private String term;
+
+    /**
+     * The postings encoded by PostingList, keyed by Conference id.
+     */
+    private byte[] postings;
+
+    /**
+     * Number of Conferences containing the term.
+     */
+    private int documentFrequency;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private SearchTerm() {}
+
+    public SearchTerm(final String term) {
+        this.term = term;
+    }
+
+    public static Key<SearchTerm> key(final String term) {
+        return Key.create(SearchTerm.class, term);
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public int getDocumentFrequency() {
+        return documentFrequency;
+    }
+
+    /**
+     * Returns the weight of the term by Conference id.
+     *
+     * @return the decoded postings.
+     */
+    public SortedMap<Long, Integer> getPostings() {
+        return PostingList.decode(postings);
+    }
+
+    /**
+     * Sets the weight of the term in a Conference.
+     *
+     * @param conferenceId the id of the Conference.
+     * @param weight the weight of the term, 0 to remove the Conference.
+     * @return true when the postings changed.
+     */
+    public boolean setPosting(final long conferenceId, final int weight) {
+        SortedMap<Long, Integer> decoded = getPostings();
+        Integer previous = weight > 0 ? decoded.put(conferenceId, weight)
+                : decoded.remove(conferenceId);
+        if (previous != null && previous == weight) {
+            return false;
+        }
+        if (previous == null && weight <= 0) {
+            return false;
+        }
+        postings = PostingList.encode(decoded);
+        documentFrequency = decoded.size();
+        return true;
+    }
+}
@@ -0,0 +1,122 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.Date;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.devrel.training.enumeration.HoldStatus;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * SeatHold keeps seats of a Conference aside for a user for a few minutes, until the user
+ * confirms the registration, releases the seats or the hold expires.
+ *
+ * The held seats are taken out of the inventory when the hold is placed, so confirming a hold
+ * never touches the Conference or its shards.
+ */
+@Entity
+public class SeatHold {
+
+    /**
+     * The id for the datastore key.
+     */
+    @Id
+    private long id;
+
+    /**
+     * The userId of the user holding the seats.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private String userId;
+
+    /**
+     * The websafe key of the Conference.
+     */
+    private String websafeConferenceKey;
+
+    /**
+     * The number of seats held.
+     */
+    private int seats;
+
+    /**
+     * Where the seats were booked, as returned by SeatInventoryService.bookSeatsOnShard.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private int shardIndex;
+
+    @Index
+    private HoldStatus status;
+
+    /**
+     * When the seats go back to the inventory if the hold is not confirmed.
+     */
+    @Index
+    private Date expiresAt;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private SeatHold() {}
+
+    public SeatHold(final long id, final String userId, final String websafeConferenceKey,
+                    final int seats, final int shardIndex, final Date expiresAt) {
+        this.id = id;
+        this.userId = userId;
+        this.websafeConferenceKey = websafeConferenceKey;
+        this.seats = seats;
+        this.shardIndex = shardIndex;
+        this.status = HoldStatus.HELD;
+        this.expiresAt = new Date(expiresAt.getTime());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    public int getSeats() {
+        return seats;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public HoldStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns a defensive copy of expiresAt.
+     * @return a defensive copy of expiresAt.
+     */
+    public Date getExpiresAt() {
+        return new Date(expiresAt.getTime());
+    }
+
+    /**
+     * Returns true when the hold is still active at the given time.
+     *
+     * @param now the current time.
+     * @return true when the seats are held and the hold has not expired.
+     */
+    public boolean isHeldAt(final Date now) {
+        return status == HoldStatus.HELD && now.before(expiresAt);
+    }
+
+    public void complete(final HoldStatus status) {
+        this.status = status;
+    }
+}
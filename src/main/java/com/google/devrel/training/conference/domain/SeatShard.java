@@ -0,0 +1,109 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SeatShard holds a slice of the seat inventory of a Conference.
+ *
+ * Shards are root entities, so every shard is its own entity group and registrations
+ * booking seats on different shards never contend with each other or with the Conference.
+ */
+@Entity
+public class SeatShard {
+
+    /**
+     * The name for the datastore key, derived from the seat inventory id of the Conference
+     * and the shard index.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The Conference this shard was created for; a migrated Conference keeps using the shards
+     * of its legacy key.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    private Key<Conference> conferenceKey;
+
+    /**
+     * Zero based index of this shard.
+     */
+    private int index;
+
+    /**
+     * The number of seats this shard was given.
+     */
+    private int capacity;
+
+    /**
+     * Number of seats of this shard currently available.
+     */
+    private int seatsAvailable;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private SeatShard() {}
+
+    public SeatShard(final Conference conference, final int index, final int capacity) {
+        this.id = name(conference, index);
+        this.conferenceKey = Key.create(conference);
+        this.index = index;
+        this.capacity = capacity;
+        this.seatsAvailable = capacity;
+    }
+
+    /**
+     * Returns the key of the index-th shard of the given Conference.
+     *
+     * @param conference the Conference.
+     * @param index zero based index of the shard.
+     * @return the key of the shard.
+     */
+    public static Key<SeatShard> key(final Conference conference, final int index) {
+        return Key.create(SeatShard.class, name(conference, index));
+    }
+
+    private static String name(final Conference conference, final int index) {
+        return conference.getSeatInventoryId() + "-" + index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public Key<Conference> getConferenceKey() {
+        return conferenceKey;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public void bookSeats(final int number) {
+        if (seatsAvailable < number) {
+            throw new IllegalArgumentException("There are no seats available.");
+        }
+        seatsAvailable = seatsAvailable - number;
+    }
+
+    public void giveBackSeats(final int number) {
+        if (seatsAvailable + number > capacity) {
+            throw new IllegalArgumentException("The number of seats will exceeds the capacity.");
+        }
+        seatsAvailable = seatsAvailable + number;
+    }
+}
@@ -1,6 +1,8 @@
 package com.google.devrel.training.conference.domain;
 
 import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.google.api.server.spi.config.AnnotationBoolean;
 import com.google.api.server.spi.config.ApiResourceProperty;
@@ -10,11 +12,14 @@ import com.googlecode.objectify.annotation.Cache;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnLoad;
 import com.googlecode.objectify.annotation.Parent;
 
 @Entity
 @Cache
 public class Session {
+
+	private static final Pattern TIME_OF_DAY = Pattern.compile("(\\d{1,2}):(\\d{2})");
 	
     @Id
     private Long id;
@@ -34,6 +39,19 @@ public class Session {
 	private Date date;
 	
 	private String startTime;
+
+	/**
+	 * The start time as minutes since midnight, null when startTime isn't a
+	 * valid "HH:mm" time.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	private Integer startMinute;
+
+	/**
+	 * The start minute plus the duration, which may pass midnight.
+	 */
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	private Integer endMinute;
 	
 	@Parent
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
@@ -56,6 +74,52 @@ public class Session {
 		this.startTime = startTime;
 		this.conference = conference;
 		this.id = id;
+		computeMinutes();
+	}
+
+	/**
+	 * Parses a time of day.
+	 *
+	 * @param time the time, as "HH:mm" on a 24 hour clock.
+	 * @return the minutes since midnight, null when the time is null or not
+	 *         valid.
+	 */
+	public static Integer toMinuteOfDay(String time) {
+		if (time == null) {
+			return null;
+		}
+		Matcher matcher = TIME_OF_DAY.matcher(time.trim());
+		if (!matcher.matches()) {
+			return null;
+		}
+		int hours = Integer.parseInt(matcher.group(1));
+		int minutes = Integer.parseInt(matcher.group(2));
+		if (hours > 23 || minutes > 59) {
+			return null;
+		}
+		return hours * 60 + minutes;
+	}
+
+	/**
+	 * Derives the start and end minutes from the start time and duration,
+	 * also for the Sessions saved before they were stored.
+	 */
+	@OnLoad
+	private void computeMinutes() {
+		startMinute = toMinuteOfDay(startTime);
+		endMinute = startMinute == null ? null : startMinute
+				+ (duration == null ? 0 : duration.intValue());
+	}
+
+	/**
+	 * Returns a copy of this session under the given Conference, keeping its id.
+	 *
+	 * @param conferenceKey the key of the new parent Conference.
+	 * @return the copy of this session.
+	 */
+	public Session copyUnder(Key<Conference> conferenceKey) {
+		return new Session(sessionName, highlights, speaker, duration,
+				typeOfSession, date, startTime, conferenceKey, id);
 	}
 
 	public Long getId() {
@@ -104,6 +168,7 @@ public class Session {
 
 	public void setDuration(Long duration) {
 		this.duration = duration;
+		computeMinutes();
 	}
 
 	public TypeOfSession getTypeOfSession() {
@@ -128,6 +193,17 @@ public class Session {
 
 	public void setStartTime(String startTime) {
 		this.startTime = startTime;
+		computeMinutes();
+	}
+
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public Integer getStartMinute() {
+		return startMinute;
+	}
+
+	@ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+	public Integer getEndMinute() {
+		return endMinute;
 	}
 
 }
\ No newline at end of file
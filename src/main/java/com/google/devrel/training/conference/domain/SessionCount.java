@@ -0,0 +1,51 @@
+package com.google.devrel.training.conference.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * SessionCount holds the number of Sessions of a Conference.
+ *
+ * It is a root entity of its own, so creating a Session never writes the Conference, which
+ * is read by every listing and written by seat bookings.
+ */
+@Entity
+@Cache
+public class SessionCount {
+
+    /**
+     * The websafe key of the Conference.
+     */
+    @Id
+    private String id;
+
+    private int count;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private SessionCount() {}
+
+    public SessionCount(final Key<Conference> conferenceKey, final int count) {
+        this.id = conferenceKey.getString();
+        this.count = count;
+    }
+
+    public static Key<SessionCount> key(final Key<Conference> conferenceKey) {
+        return Key.create(SessionCount.class, conferenceKey.getString());
+    }
+
+    public String getWebsafeConferenceKey() {
+        return id;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void add(final int sessions) {
+        count += sessions;
+    }
+}
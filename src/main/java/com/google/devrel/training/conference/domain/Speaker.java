@@ -0,0 +1,143 @@
+package com.google.devrel.training.conference.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * Speaker indexes the Sessions of a speaker across all Conferences, so that they are found
+ * without querying every Conference.
+ *
+ * A speaker is featured in a Conference when giving at least FEATURED_SESSIONS Sessions in it.
+ */
+@Entity
+@Cache
+public class Speaker {
+
+    public static final int FEATURED_SESSIONS = 2;
+
+    /**
+     * The normalized name of the speaker, see normalize.
+     */
+    @Id
+    private String id;
+
+    /**
+     * The name as first given on a Session.
+     */
+    private String name;
+
+    private List<Key<Session>> sessionKeys = new ArrayList<>(0);
+
+    @Index
+    private List<Key<Conference>> featuredIn = new ArrayList<>(0);
+
+    @Index
+    private boolean featured;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private Speaker() {}
+
+    public Speaker(final String name) {
+        this.id = normalize(name);
+        this.name = name.trim();
+    }
+
+    /**
+     * Normalizes the name of a speaker, so the same name written with another case or spacing
+     * refers to the same speaker.
+     *
+     * @param name the name as given on a Session.
+     * @return the normalized name, null when the name is null or blank.
+     */
+    public static String normalize(final String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    public static Key<Speaker> key(final String name) {
+        return Key.create(Speaker.class, normalize(name));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSessionCount() {
+        return sessionKeys.size();
+    }
+
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public List<Key<Session>> getSessionKeys() {
+        return ImmutableList.copyOf(sessionKeys);
+    }
+
+    /**
+     * Returns the Conferences the speaker is featured in.
+     *
+     * @return the websafe keys of the Conferences.
+     */
+    public List<String> getFeaturedConferenceKeys() {
+        List<String> websafeKeys = new ArrayList<>(featuredIn.size());
+        for (Key<Conference> conferenceKey : featuredIn) {
+            websafeKeys.add(conferenceKey.getString());
+        }
+        return websafeKeys;
+    }
+
+    /**
+     * Returns the Sessions of the speaker in a Conference.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return the keys of the Sessions.
+     */
+    public Set<Key<Session>> sessionsIn(final Key<Conference> conferenceKey) {
+        Set<Key<Session>> keys = new LinkedHashSet<>();
+        for (Key<Session> sessionKey : sessionKeys) {
+            if (sessionKey.getParent().equals(conferenceKey)) {
+                keys.add(sessionKey);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Replaces the Sessions of the speaker in a Conference.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @param keys the keys of all the Sessions of the speaker in the Conference.
+     */
+    public void updateSessionsIn(final Key<Conference> conferenceKey,
+            final Collection<Key<Session>> keys) {
+        List<Key<Session>> updated = new ArrayList<>(sessionKeys.size() + keys.size());
+        for (Key<Session> sessionKey : sessionKeys) {
+            if (!sessionKey.getParent().equals(conferenceKey)) {
+                updated.add(sessionKey);
+            }
+        }
+        Set<Key<Session>> sessionsIn = new LinkedHashSet<>(keys);
+        updated.addAll(sessionsIn);
+        sessionKeys = updated;
+        featuredIn.remove(conferenceKey);
+        if (sessionsIn.size() >= FEATURED_SESSIONS) {
+            featuredIn.add(conferenceKey);
+        }
+        featured = !featuredIn.isEmpty();
+    }
+}
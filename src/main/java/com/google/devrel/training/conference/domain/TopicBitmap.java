@@ -0,0 +1,50 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.devrel.training.conference.service.RoaringBitmap;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * TopicBitmap holds the ordinals of the Conferences tagged with a topic, so that boolean
+ * expressions over topics are evaluated with bitmap intersections and unions.
+ */
+@Entity
+public class TopicBitmap {
+
+    /**
+     * The topic, as given on the Conferences.
+     */
+    @Id
+    private String topic;
+
+    /**
+     * The ordinals of the Conferences, serialized by RoaringBitmap.
+     */
+    private byte[] ordinals;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private TopicBitmap() {}
+
+    public TopicBitmap(final String topic) {
+        this.topic = topic;
+    }
+
+    public static Key<TopicBitmap> key(final String topic) {
+        return Key.create(TopicBitmap.class, topic);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public RoaringBitmap getOrdinals() {
+        return RoaringBitmap.deserialize(ordinals);
+    }
+
+    public void setOrdinals(final RoaringBitmap ordinals) {
+        this.ordinals = ordinals.serialize();
+    }
+}
@@ -0,0 +1,88 @@
+package com.google.devrel.training.conference.domain;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.devrel.training.conference.service.WebsafeKeyCache;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Parent;
+
+/**
+ * WishlistEntry records a Session in the wishlist of the user of its parent Profile.
+ *
+ * Entries are keyed by the Session, so adding one twice or removing a missing one are no-ops,
+ * and the wishlist is listed with a keys-only ancestor query.
+ *
+ * A Session of a root Conference is stored as the pair "conferenceId/sessionId", which is
+ * turned back into a key without parsing a websafe key; other Sessions as their websafe key.
+ * Entries written before were all keyed by the websafe key; sessionKey still reads them, and
+ * isCompact tells them apart so they can be rewritten.
+ */
+@Entity
+public class WishlistEntry {
+
+    private static final char SEPARATOR = '/';
+
+    private static final String CONFERENCE_KIND = Key.getKind(Conference.class);
+
+    private static final String SESSION_KIND = Key.getKind(Session.class);
+
+    @Parent
+    private Key<Profile> profileKey;
+
+    /**
+     * The pair of ids of a Session of a root Conference, otherwise its websafe key.
+     */
+    @Id
+    private String id;
+
+    /**
+     * Just making the default constructor private.
+     */
+    private WishlistEntry() {}
+
+    public WishlistEntry(final Key<Profile> profileKey, final Key<Session> sessionKey) {
+        this.profileKey = profileKey;
+        this.id = id(sessionKey);
+    }
+
+    public static Key<WishlistEntry> key(final Key<Profile> profileKey,
+            final Key<Session> sessionKey) {
+        return Key.create(profileKey, WishlistEntry.class, id(sessionKey));
+    }
+
+    /**
+     * Returns the Session of a WishlistEntry.
+     *
+     * @param entryKey the key of the WishlistEntry.
+     * @return the key of the Session, possibly under a legacy Conference key to resolve.
+     */
+    public static Key<Session> sessionKey(final Key<WishlistEntry> entryKey) {
+        String name = entryKey.getName();
+        int separator = name.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return WebsafeKeyCache.parse(name);
+        }
+        return Key.create(KeyFactory.createKey(
+                KeyFactory.createKey(CONFERENCE_KIND, Long.parseLong(name.substring(0, separator))),
+                SESSION_KIND, Long.parseLong(name.substring(separator + 1))));
+    }
+
+    /**
+     * Returns true when a WishlistEntry is keyed the current way.
+     *
+     * @param entryKey the key of the WishlistEntry.
+     * @return false when it must be rewritten under a new key.
+     */
+    public static boolean isCompact(final Key<WishlistEntry> entryKey) {
+        return id(sessionKey(entryKey)).equals(entryKey.getName());
+    }
+
+    private static String id(final Key<Session> sessionKey) {
+        Key<Conference> conferenceKey = sessionKey.getParent();
+        if (conferenceKey.getParent() != null) {
+            return sessionKey.getString();
+        }
+        return String.valueOf(conferenceKey.getId()) + SEPARATOR + sessionKey.getId();
+    }
+}
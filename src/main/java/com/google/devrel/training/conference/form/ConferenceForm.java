@@ -1,6 +1,7 @@
 package com.google.devrel.training.conference.form;
 
 import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.Constants;
 
 import java.util.Date;
 import java.util.List;
@@ -44,6 +45,11 @@ public class ConferenceForm {
      */
     private int maxAttendees;
 
+    /**
+     * The number of shards the seat inventory is split into, null for the default.
+     */
+    private Integer seatShards;
+
     private ConferenceForm() {}
 
     /**
@@ -67,6 +73,23 @@ public class ConferenceForm {
         this.maxAttendees = maxAttendees;
     }
 
+    /**
+     * Public constructor is solely for Unit Test.
+     * @param name
+     * @param description
+     * @param topics
+     * @param city
+     * @param startDate
+     * @param endDate
+     * @param maxAttendees
+     * @param seatShards
+     */
+    public ConferenceForm(String name, String description, List<String> topics, String city,
+                          Date startDate, Date endDate, int maxAttendees, Integer seatShards) {
+        this(name, description, topics, city, startDate, endDate, maxAttendees);
+        this.seatShards = seatShards;
+    }
+
     public String getName() {
         return name;
     }
@@ -94,4 +117,16 @@ public class ConferenceForm {
     public int getMaxAttendees() {
         return maxAttendees;
     }
+
+    /**
+     * Returns the number of seat shards, bounded by the number of seats and
+     * Constants.MAX_SEAT_SHARDS.
+     *
+     * @return the number of seat shards to create for the conference.
+     */
+    public int getSeatShards() {
+        int shards = seatShards == null ? Constants.DEFAULT_SEAT_SHARDS : seatShards;
+        shards = Math.min(shards, Constants.MAX_SEAT_SHARDS);
+        return Math.max(0, Math.min(shards, maxAttendees));
+    }
 }
@@ -4,13 +4,20 @@ import static com.google.devrel.training.conference.service.OfyService.ofy;
 
 import com.google.api.server.spi.config.AnnotationBoolean;
 import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.QueryShape;
+import com.google.devrel.training.conference.service.TopicExpression;
 
 import com.googlecode.objectify.cmd.Query;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -45,9 +52,25 @@ public class ConferenceQueryForm {
             this.fieldType = fieldType;
         }
 
-        private String getFieldName() {
+        public String getFieldName() {
             return this.fieldName;
         }
+
+        /**
+         * Returns the values of this field in a Conference, as the datastore indexes them.
+         */
+        private List<?> valuesOf(Conference conference) {
+            switch (this) {
+                case CITY:
+                    return Collections.singletonList(conference.getCity());
+                case TOPIC:
+                    return conference.getTopics();
+                case MONTH:
+                    return Collections.singletonList(conference.getMonth());
+                default:
+                    return Collections.singletonList(conference.getMaxAttendees());
+            }
+        }
     }
 
     /**
@@ -59,7 +82,11 @@ public class ConferenceQueryForm {
         GT(">"),
         LTEQ("<="),
         GTEQ(">="),
-        NE("!=");
+        NE("!="),
+        /**
+         * Matches any of a comma-separated list of values.
+         */
+        IN("IN");
 
         private String queryOperator;
 
@@ -75,6 +102,24 @@ public class ConferenceQueryForm {
             return this.queryOperator.contains("<") || this.queryOperator.contains(">") ||
                     this.queryOperator.contains("!");
         }
+
+        private boolean accepts(int comparison) {
+            switch (this) {
+                case EQ:
+                case IN:
+                    return comparison == 0;
+                case LT:
+                    return comparison < 0;
+                case GT:
+                    return comparison > 0;
+                case LTEQ:
+                    return comparison <= 0;
+                case GTEQ:
+                    return comparison >= 0;
+                default:
+                    return comparison != 0;
+            }
+        }
     }
 
     /**
@@ -104,6 +149,67 @@ public class ConferenceQueryForm {
         public String getValue() {
             return value;
         }
+
+        /**
+         * Evaluates this filter on a Conference the way the datastore does: a field with
+         * several values matches when any of its values does.
+         *
+         * @param conference the Conference.
+         * @return true when the Conference matches.
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public boolean matches(Conference conference) {
+            for (Comparable typedValue : typedValues()) {
+                for (Object propertyValue : field.valuesOf(conference)) {
+                    if (propertyValue != null && operator.accepts(
+                            ((Comparable) propertyValue).compareTo(typedValue))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private Comparable<?> typedValue() {
+            return typedValue(value);
+        }
+
+        private Comparable<?> typedValue(String value) {
+            return field.fieldType == FieldType.INTEGER ? Integer.parseInt(value.trim()) : value;
+        }
+
+        /**
+         * Returns the values of an IN filter, trimmed, without duplicates and in the order
+         * given, or the single value of any other filter.
+         */
+        private List<String> values() {
+            if (operator != Operator.IN) {
+                return Collections.singletonList(value);
+            }
+            Set<String> values = new LinkedHashSet<>();
+            for (String inValue : value.split(",")) {
+                if (!inValue.trim().isEmpty()) {
+                    values.add(inValue.trim());
+                }
+            }
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("No values given for " + this);
+            }
+            return new ArrayList<>(values);
+        }
+
+        private List<Comparable<?>> typedValues() {
+            List<Comparable<?>> typedValues = new ArrayList<>();
+            for (String value : values()) {
+                typedValues.add(typedValue(value));
+            }
+            return typedValues;
+        }
+
+        @Override
+        public String toString() {
+            return field.getFieldName() + " " + operator.getQueryOperator() + " " + value;
+        }
     }
 
     /**
@@ -112,29 +218,12 @@ public class ConferenceQueryForm {
     private List<Filter> filters = new ArrayList<>(0);
 
     /**
-     * Holds the first inequalityFilter for checking the feasibility of the whole query.
+     * A boolean expression over topics, see TopicExpression. Null when not filtering by one.
      */
-    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
-    private Filter inequalityFilter;
+    private String topicExpression;
 
     public ConferenceQueryForm() {}
 
-    /**
-     * Checks the feasibility of the whole query.
-     */
-    private void checkFilters() {
-        for (Filter filter : this.filters) {
-            if (filter.operator.isInequalityFilter()) {
-                // Only one inequality filter is allowed.
-                if (inequalityFilter != null && !inequalityFilter.field.equals(filter.field)) {
-                    throw new IllegalArgumentException(
-                            "Inequality filter is allowed on only one field.");
-                }
-                inequalityFilter = filter;
-            }
-        }
-    }
-
     /**
      * Getter for filters.
      *
@@ -147,51 +236,197 @@ public class ConferenceQueryForm {
     /**
      * Adds a query filter.
      *
+     * Inequality filters may be given on several fields: the datastore filters on one of them
+     * and the others are evaluated in memory, see ConferenceQueryPlanner.
+     *
      * @param filter A Filter object for the query.
      * @return this for method chaining.
      */
     public ConferenceQueryForm filter(Filter filter) {
-        if (filter.operator.isInequalityFilter()) {
-            // Only allows inequality filters on a single field.
-            if (inequalityFilter != null && !inequalityFilter.field.equals(filter.field)) {
-                throw new IllegalArgumentException(
-                        "Inequality filter is allowed on only one field.");
-            }
-            inequalityFilter = filter;
-        }
         filters.add(filter);
         return this;
     }
 
     /**
-     * Returns an Objectify Query object for the specified filters.
+     * Getter for topicExpression.
+     *
+     * @return the topic expression, null when there is none.
+     */
+    public String getTopicExpression() {
+        return topicExpression;
+    }
+
+    /**
+     * Sets a boolean expression over topics, such as {@code Cloud AND NOT Web}.
+     *
+     * The expression is evaluated with the TopicIndex and the filters on the Conferences it
+     * matches in memory. Results are then ordered by creation rather than by name.
+     *
+     * @param topicExpression the expression, null for none.
+     */
+    public void setTopicExpression(String topicExpression) {
+        this.topicExpression = topicExpression;
+    }
+
+    /**
+     * Returns the fields having inequality filters, in the order they were first given.
+     *
+     * @return the fields.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public List<Field> getInequalityFields() {
+        List<Field> fields = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (filter.operator.isInequalityFilter() && !fields.contains(filter.field)) {
+                fields.add(filter.field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Returns true when one of the filters is an IN filter.
      *
-     * @return an Objectify Query.
+     * @return true when the query has to be expanded with expandInFilters.
      */
     @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
-    public Query<Conference> getQuery() {
-        // First check the feasibility of inequality filters.
-        checkFilters();
+    public boolean hasInFilters() {
+        for (Filter filter : filters) {
+            if (filter.operator == Operator.IN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Expands the IN filters into one query per combination of their values, each with
+     * equality filters instead, the way the datastore would.
+     *
+     * @param maxQueries the number of queries allowed.
+     * @return the queries, a single one when there are no IN filters.
+     * @throws IllegalArgumentException when there would be more than maxQueries queries.
+     */
+    public List<ConferenceQueryForm> expandInFilters(int maxQueries) {
+        List<ConferenceQueryForm> forms = new ArrayList<>();
+        ConferenceQueryForm base = new ConferenceQueryForm();
+        base.topicExpression = topicExpression;
+        forms.add(base);
+        for (Filter filter : filters) {
+            if (filter.operator != Operator.IN) {
+                for (ConferenceQueryForm form : forms) {
+                    form.filter(filter);
+                }
+                continue;
+            }
+            List<String> values = filter.values();
+            if ((long) forms.size() * values.size() > maxQueries) {
+                throw new IllegalArgumentException(
+                        "IN filters can't expand to more than " + maxQueries + " queries");
+            }
+            List<ConferenceQueryForm> expanded = new ArrayList<>();
+            for (ConferenceQueryForm form : forms) {
+                for (String value : values) {
+                    ConferenceQueryForm copy = new ConferenceQueryForm();
+                    copy.topicExpression = topicExpression;
+                    copy.filters.addAll(form.filters);
+                    expanded.add(copy.filter(new Filter(filter.field, Operator.EQ, value)));
+                }
+            }
+            forms = expanded;
+        }
+        return forms;
+    }
+
+    /**
+     * Returns an Objectify Query object applying the equality filters and the inequality
+     * filters on the given field.
+     *
+     * @param inequalityField the only field the datastore may filter with inequalities, null
+     *        when there are none.
+     * @return an Objectify Query, ordered by the inequality field first, then by name.
+     * @throws IllegalStateException when the IN filters were not expanded.
+     */
+    public Query<Conference> getQuery(Field inequalityField) {
+        Preconditions.checkState(!hasInFilters(), "IN filters must be expanded first");
         Query<Conference> query = ofy().load().type(Conference.class);
-        if (inequalityFilter == null) {
-            // Order by name.
-            query = query.order("name");
-        } else {
+        if (inequalityField != null) {
             // If we have any inequality filters, order by the field first.
-            query = query.order(inequalityFilter.field.getFieldName());
-            query = query.order("name");
+            query = query.order(inequalityField.getFieldName());
         }
+        // Order by name.
+        query = query.order("name");
         for (Filter filter : this.filters) {
-            // Applies filters in order.
-            if (filter.field.fieldType == FieldType.STRING) {
-                query = query.filter(String.format("%s %s", filter.field.getFieldName(),
-                        filter.operator.getQueryOperator()), filter.value);
-            } else if (filter.field.fieldType == FieldType.INTEGER) {
+            if (!filter.operator.isInequalityFilter() || filter.field == inequalityField) {
                 query = query.filter(String.format("%s %s", filter.field.getFieldName(),
-                        filter.operator.getQueryOperator()), Integer.parseInt(filter.value));
+                        filter.operator.getQueryOperator()), filter.typedValue());
             }
         }
         LOG.info(query.toString());
         return query;
     }
+
+    /**
+     * Returns the shape of getQuery(inequalityField), for the IndexAdvisor.
+     *
+     * @param inequalityField the field passed to getQuery.
+     * @return the shape of the query.
+     */
+    public QueryShape getShape(Field inequalityField) {
+        List<String> equalityProperties = new ArrayList<>();
+        for (Filter filter : this.filters) {
+            if (!filter.operator.isInequalityFilter()) {
+                equalityProperties.add(filter.field.getFieldName());
+            }
+        }
+        List<String> orders = new ArrayList<>();
+        if (inequalityField != null) {
+            orders.add(inequalityField.getFieldName());
+        }
+        orders.add("name");
+        return new QueryShape("Conference", false, equalityProperties,
+                inequalityField == null ? null : inequalityField.getFieldName(), orders);
+    }
+
+    /**
+     * Returns the filters getQuery(inequalityField) leaves out.
+     *
+     * @param inequalityField the field passed to getQuery.
+     * @return the inequality filters on the other fields.
+     */
+    public List<Filter> getResidualFilters(Field inequalityField) {
+        List<Filter> residual = new ArrayList<>();
+        for (Filter filter : this.filters) {
+            if (filter.operator.isInequalityFilter() && filter.field != inequalityField) {
+                residual.add(filter);
+            }
+        }
+        return residual;
+    }
+
+    /**
+     * Returns the filters in a canonical form: the same filters given in any order, with
+     * integers written differently or with IN values in another order, give the same string.
+     *
+     * @return the sorted filters, joined with "&".
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public String getCanonicalFilters() {
+        List<String> canonical = new ArrayList<>(filters.size());
+        for (Filter filter : filters) {
+            List<String> values = new ArrayList<>();
+            for (Comparable<?> value : filter.typedValues()) {
+                values.add(String.valueOf(value));
+            }
+            if (filter.operator == Operator.IN) {
+                Collections.sort(values);
+            }
+            canonical.add(filter.field + " " + filter.operator + " " + Joiner.on(',').join(values));
+        }
+        Collections.sort(canonical);
+        if (topicExpression != null) {
+            canonical.add("topics ~ " + TopicExpression.parse(topicExpression));
+        }
+        return Joiner.on('&').join(canonical);
+    }
 }
@@ -1,8 +1,27 @@
 package com.google.devrel.training.conference.form;
 
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
 import com.google.devrel.training.enumeration.TypeOfSession;
 
 public class SessionForm {
+
+	/**
+	 * SimpleDateFormat isn't thread safe, so each request thread keeps its own
+	 * rather than creating one per Session.
+	 */
+	private static final ThreadLocal<DateFormat> DATE_FORMAT = new ThreadLocal<DateFormat>() {
+		@Override
+		protected DateFormat initialValue() {
+			DateFormat format = new SimpleDateFormat("dd/MM/yyyy");
+			format.setLenient(false);
+			return format;
+		}
+	};
+
 	private String sessionName;
 
 	private String highlights;
@@ -72,4 +91,26 @@ public class SessionForm {
 	public void setStartTime(String startTime) {
 		this.startTime = startTime;
 	}
+
+	/**
+	 * Parses the date of the Session.
+	 *
+	 * @return the date, null when not given.
+	 * @throws ParseException
+	 *             when the date is not a valid dd/MM/yyyy date.
+	 */
+	public Date parseDate() throws ParseException {
+		return date == null ? null : DATE_FORMAT.get().parse(date);
+	}
+
+	/**
+	 * Formats a date the way parseDate reads it.
+	 *
+	 * @param date
+	 *            the date, may be null.
+	 * @return the date as dd/MM/yyyy, null when not given.
+	 */
+	public static String formatDate(Date date) {
+		return date == null ? null : DATE_FORMAT.get().format(date);
+	}
 }
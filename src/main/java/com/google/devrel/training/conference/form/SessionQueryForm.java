@@ -0,0 +1,153 @@
+package com.google.devrel.training.conference.form;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.api.server.spi.config.AnnotationBoolean;
+import com.google.api.server.spi.config.ApiResourceProperty;
+import com.google.common.base.Joiner;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.enumeration.TypeOfSession;
+
+/**
+ * A simple Java object (POJO) representing a query for the Sessions of a Conference, such as
+ * "the sessions starting before 19:00 that are not workshops".
+ *
+ * Times are given as "HH:mm" on a 24 hour clock. Every filter is optional, except for the
+ * Conference.
+ */
+public class SessionQueryForm {
+
+    private String websafeConferenceKey;
+
+    private TypeOfSession typeOfSession;
+
+    private List<TypeOfSession> excludedTypes = new ArrayList<>(0);
+
+    private String startsAfter;
+
+    private String startsBefore;
+
+    private String endsBefore;
+
+    public SessionQueryForm() {}
+
+    public String getWebsafeConferenceKey() {
+        return websafeConferenceKey;
+    }
+
+    public void setWebsafeConferenceKey(String websafeConferenceKey) {
+        this.websafeConferenceKey = websafeConferenceKey;
+    }
+
+    /**
+     * Getter for typeOfSession, the only type of the Sessions returned.
+     *
+     * @return the type, null for any type.
+     */
+    public TypeOfSession getTypeOfSession() {
+        return typeOfSession;
+    }
+
+    public void setTypeOfSession(TypeOfSession typeOfSession) {
+        this.typeOfSession = typeOfSession;
+    }
+
+    public List<TypeOfSession> getExcludedTypes() {
+        return new ArrayList<>(excludedTypes);
+    }
+
+    public void setExcludedTypes(List<TypeOfSession> excludedTypes) {
+        this.excludedTypes = excludedTypes == null ? new ArrayList<TypeOfSession>(0)
+                : new ArrayList<>(excludedTypes);
+    }
+
+    /**
+     * Getter for startsAfter, the earliest start time, inclusive.
+     *
+     * @return the time, null for no lower bound.
+     */
+    public String getStartsAfter() {
+        return startsAfter;
+    }
+
+    public void setStartsAfter(String startsAfter) {
+        this.startsAfter = startsAfter;
+    }
+
+    /**
+     * Getter for startsBefore, the start time Sessions must start before, exclusive.
+     *
+     * @return the time, null for no upper bound.
+     */
+    public String getStartsBefore() {
+        return startsBefore;
+    }
+
+    public void setStartsBefore(String startsBefore) {
+        this.startsBefore = startsBefore;
+    }
+
+    /**
+     * Getter for endsBefore, the latest end time, inclusive.
+     *
+     * @return the time, null for no bound.
+     */
+    public String getEndsBefore() {
+        return endsBefore;
+    }
+
+    public void setEndsBefore(String endsBefore) {
+        this.endsBefore = endsBefore;
+    }
+
+    /**
+     * Returns true when one of the time filters is given: Sessions without a valid start time
+     * then never match.
+     *
+     * @return true when filtering by time.
+     */
+    @ApiResourceProperty(ignored = AnnotationBoolean.TRUE)
+    public boolean hasTimeFilters() {
+        return startsAfter != null || startsBefore != null || endsBefore != null;
+    }
+
+    /**
+     * Parses one of the times of this form.
+     *
+     * @param time the time, may be null.
+     * @return the minutes since midnight, null when the time is null.
+     * @throws IllegalArgumentException when the time is not valid.
+     */
+    public static Integer minuteOfDay(String time) {
+        if (time == null) {
+            return null;
+        }
+        Integer minute = Session.toMinuteOfDay(time);
+        if (minute == null) {
+            throw new IllegalArgumentException("Invalid time, expected HH:mm: " + time);
+        }
+        return minute;
+    }
+
+    @Override
+    public String toString() {
+        List<String> filters = new ArrayList<>();
+        if (typeOfSession != null) {
+            filters.add("typeOfSession == " + typeOfSession);
+        }
+        for (TypeOfSession excluded : excludedTypes) {
+            filters.add("typeOfSession != " + excluded);
+        }
+        if (startsAfter != null) {
+            filters.add("startTime >= " + startsAfter);
+        }
+        if (startsBefore != null) {
+            filters.add("startTime < " + startsBefore);
+        }
+        if (endsBefore != null) {
+            filters.add("endTime <= " + endsBefore);
+        }
+        return Joiner.on(" & ").join(filters);
+    }
+}
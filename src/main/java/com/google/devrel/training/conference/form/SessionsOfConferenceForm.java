@@ -0,0 +1,26 @@
+package com.google.devrel.training.conference.form;
+
+import java.util.List;
+
+/**
+ * The Sessions of a Conference created with one createSessions call.
+ */
+public class SessionsOfConferenceForm {
+	private List<SessionForm> sessionForms;
+
+	private String conference;
+
+	public List<SessionForm> getSessionForms() {
+		return sessionForms;
+	}
+	public void setSessionForms(List<SessionForm> sessionForms) {
+		this.sessionForms = sessionForms;
+	}
+	public String getConference() {
+		return conference;
+	}
+	public void setConference(String conference) {
+		this.conference = conference;
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.domain.Agenda;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Maintains the Agenda of each Conference.
+ *
+ * An Agenda is built from the Sessions of its Conference the first time it is read, and then
+ * updated incrementally whenever one of them changes. Building reads the Sessions with an
+ * ancestor query inside the transaction, so a Session saved meanwhile makes it retry rather
+ * than being left out.
+ */
+public class AgendaService {
+
+    private static final Logger LOG = Logger.getLogger(AgendaService.class.getName());
+
+    /**
+     * Returns the Agenda of a Conference, building it when missing.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return the Agenda.
+     */
+    public Agenda get(final Key<Conference> conferenceKey) {
+        Agenda agenda = ofy().load().key(Agenda.key(conferenceKey)).now();
+        if (agenda != null) {
+            return agenda;
+        }
+        return ofy().transact(new Work<Agenda>() {
+            @Override
+            public Agenda run() {
+                return loadOrBuild(conferenceKey);
+            }
+        });
+    }
+
+    /**
+     * Adds or replaces a saved Session in the Agenda of its Conference.
+     *
+     * @param session the Session.
+     * @return the updated Agenda.
+     */
+    public Agenda put(final Session session) {
+        return ofy().transact(new Work<Agenda>() {
+            @Override
+            public Agenda run() {
+                Agenda agenda = ofy().load().key(Agenda.key(session.getConference())).now();
+                if (agenda == null) {
+                    // Built with the Session already in it
+                    return loadOrBuild(session.getConference());
+                }
+                agenda.put(session);
+                ofy().save().entity(agenda);
+                return agenda;
+            }
+        });
+    }
+
+    /**
+     * Adds a Session saved in the current transaction to the Agenda of its Conference. Must be
+     * called inside a transaction. A missing Agenda is left to its next read to build, as the
+     * queries of the transaction don't see the Session.
+     *
+     * @param session the Session.
+     */
+    public void putInTransaction(final Session session) {
+        Agenda agenda = ofy().load().key(Agenda.key(session.getConference())).now();
+        if (agenda != null) {
+            agenda.put(session);
+            ofy().save().entity(agenda);
+        }
+    }
+
+    /**
+     * Adds or replaces saved Sessions of a Conference in its Agenda, in one update.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @param sessions the Sessions.
+     * @return the updated Agenda.
+     */
+    public Agenda putAll(final Key<Conference> conferenceKey, final Collection<Session> sessions) {
+        return ofy().transact(new Work<Agenda>() {
+            @Override
+            public Agenda run() {
+                Agenda agenda = ofy().load().key(Agenda.key(conferenceKey)).now();
+                if (agenda == null) {
+                    return loadOrBuild(conferenceKey);
+                }
+                for (Session session : sessions) {
+                    agenda.put(session);
+                }
+                ofy().save().entity(agenda);
+                return agenda;
+            }
+        });
+    }
+
+    /**
+     * Removes a Session from the Agenda of its Conference, if built.
+     *
+     * @param sessionKey the key of the Session.
+     */
+    public void remove(final Key<Session> sessionKey) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                Key<Conference> conferenceKey = sessionKey.getParent();
+                Agenda agenda = ofy().load().key(Agenda.key(conferenceKey)).now();
+                if (agenda != null && agenda.remove(sessionKey.getId())) {
+                    ofy().save().entity(agenda);
+                }
+                return null;
+            }
+        });
+    }
+
+    private Agenda loadOrBuild(final Key<Conference> conferenceKey) {
+        Agenda agenda = ofy().load().key(Agenda.key(conferenceKey)).now();
+        if (agenda == null) {
+            agenda = new Agenda(conferenceKey,
+                    ofy().load().type(Session.class).ancestor(conferenceKey).list());
+            ofy().save().entity(agenda);
+            LOG.info("Built the agenda of " + conferenceKey);
+        }
+        return agenda;
+    }
+}
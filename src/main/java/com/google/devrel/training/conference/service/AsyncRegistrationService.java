@@ -0,0 +1,316 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.RegistrationTicket;
+import com.google.devrel.training.enumeration.RegistrationStatus;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Registers users to Conferences asynchronously, for conferences opening to a rush of
+ * registrations.
+ *
+ * A registration request is saved as a RegistrationTicket and queued on a pull queue, tagged
+ * with the Conference key. A worker leases the requests of one Conference in batches, instead
+ * of the requests contending for the seat entities, and books the seats of many requests per
+ * transaction: the tickets of up to TICKETS_PER_TRANSACTION distinct users are checked,
+ * booked on a single seat entity and registered in one cross-group transaction with their
+ * Profiles, so a user is never booked twice.
+ *
+ * A ticket the chosen seat entity had no seat left for stays pending and is then processed in
+ * a transaction of its own, which tries every shard before rejecting it as sold out.
+ */
+public class AsyncRegistrationService {
+
+    private static final Logger LOG = Logger.getLogger(AsyncRegistrationService.class.getName());
+
+    private static final int LEASE_SECONDS = 60;
+
+    private static final int LEASE_BATCH_SIZE = 100;
+
+    /**
+     * Tickets per transaction: with their Profiles and the seat entity, 23 entity groups, under
+     * the limit of 25 of a cross-group transaction.
+     */
+    private static final int TICKETS_PER_TRANSACTION = 11;
+
+    /**
+     * Registrations requested within the same window of this length share one drain task.
+     */
+    private static final long DRAIN_WINDOW_MILLIS = 1000;
+
+    private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+    private final ProfileEntryService profileEntries = new ProfileEntryService();
+
+    private final MailService mail = new MailService();
+
+    /**
+     * Saves a pending RegistrationTicket and queues it for the worker.
+     *
+     * @param userId the userId of the user registering.
+     * @param conferenceKey the key of the Conference.
+     * @return the pending ticket.
+     */
+    public RegistrationTicket enqueue(final String userId, final Key<Conference> conferenceKey) {
+        String websafeConferenceKey = conferenceKey.getString();
+        Key<RegistrationTicket> ticketKey = ofy().factory()
+                .allocateId(RegistrationTicket.class);
+        RegistrationTicket ticket = new RegistrationTicket(ticketKey.getId(), userId,
+                websafeConferenceKey);
+        ofy().save().entity(ticket).now();
+
+        QueueFactory.getQueue(Constants.REGISTRATION_QUEUE).add(TaskOptions.Builder
+                .withMethod(TaskOptions.Method.PULL)
+                .taskName("registration-" + ticket.getId())
+                .tag(websafeConferenceKey)
+                .payload(String.valueOf(ticket.getId())));
+        scheduleDrain(websafeConferenceKey,
+                String.valueOf(System.currentTimeMillis() / DRAIN_WINDOW_MILLIS));
+        return ticket;
+    }
+
+    private void scheduleDrain(final String websafeConferenceKey, final String window) {
+        TaskOptions task = TaskOptions.Builder
+                .withUrl("/tasks/drainregistrations")
+                .param("websafeConferenceKey", websafeConferenceKey);
+        if (window != null) {
+            task.taskName("drainregistrations-" + websafeConferenceKey + "-" + window);
+        }
+        try {
+            QueueFactory.getDefaultQueue().add(task);
+        } catch (TaskAlreadyExistsException e) {
+            // A drain task is already scheduled for this window.
+        }
+    }
+
+    /**
+     * Leases a batch of registration requests of one Conference and processes them.
+     * Schedules another drain when the batch was full.
+     *
+     * @param websafeConferenceKey the websafe key of the Conference.
+     * @return the number of requests processed.
+     */
+    public int drain(final String websafeConferenceKey) {
+        Queue queue = QueueFactory.getQueue(Constants.REGISTRATION_QUEUE);
+        List<TaskHandle> tasks = queue.leaseTasksByTag(LEASE_SECONDS, TimeUnit.SECONDS,
+                LEASE_BATCH_SIZE, websafeConferenceKey);
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+        List<Key<RegistrationTicket>> ticketKeys = new ArrayList<>(tasks.size());
+        for (TaskHandle task : tasks) {
+            ticketKeys.add(Key.create(RegistrationTicket.class,
+                    Long.parseLong(new String(task.getPayload()))));
+        }
+        process(Key.<Conference> create(websafeConferenceKey), ticketKeys);
+        queue.deleteTask(tasks);
+        if (tasks.size() == LEASE_BATCH_SIZE) {
+            scheduleDrain(websafeConferenceKey, null);
+        }
+        return tasks.size();
+    }
+
+    private void process(final Key<Conference> conferenceKey,
+            final List<Key<RegistrationTicket>> ticketKeys) {
+        final Conference conference = ofy().load().key(conferenceKey).now();
+        List<RegistrationTicket> confirmed = new ArrayList<>();
+        int rejected = 0;
+        List<Key<RegistrationTicket>> unbooked = new ArrayList<>();
+        if (conference == null) {
+            unbooked.addAll(ticketKeys);
+        } else {
+            for (final List<Key<RegistrationTicket>> group : groupByUser(ticketKeys)) {
+                List<RegistrationTicket> tickets = ofy().transact(
+                        new Work<List<RegistrationTicket>>() {
+                            @Override
+                            public List<RegistrationTicket> run() {
+                                return processGroupInTransaction(conference, group);
+                            }
+                        });
+                for (RegistrationTicket ticket : tickets) {
+                    if (ticket.getStatus() == RegistrationStatus.CONFIRMED) {
+                        confirmed.add(ticket);
+                    } else if (ticket.getStatus() == RegistrationStatus.REJECTED) {
+                        rejected++;
+                    } else {
+                        unbooked.add(Key.create(ticket));
+                    }
+                }
+            }
+        }
+        for (final Key<RegistrationTicket> ticketKey : unbooked) {
+            RegistrationTicket ticket = ofy().transact(new Work<RegistrationTicket>() {
+                @Override
+                public RegistrationTicket run() {
+                    return processInTransaction(conferenceKey, conference, ticketKey);
+                }
+            });
+            if (ticket == null) {
+                continue;
+            } else if (ticket.getStatus() == RegistrationStatus.CONFIRMED) {
+                confirmed.add(ticket);
+            } else {
+                rejected++;
+            }
+        }
+        if (!confirmed.isEmpty()) {
+            seatInventory.scheduleSync(conference);
+            queueConfirmations(conference, confirmed);
+        }
+        LOG.info(String.format("Registrations to %s: %d confirmed, %d rejected, %d one by one",
+                conferenceKey.getString(), confirmed.size(), rejected, unbooked.size()));
+    }
+
+    /**
+     * Splits tickets into groups of up to TICKETS_PER_TRANSACTION tickets of distinct users,
+     * in lease order. A transaction doesn't see its own writes, so a second ticket of a user
+     * goes to a later group, which sees the Registration of the first one.
+     */
+    private static List<List<Key<RegistrationTicket>>> groupByUser(
+            final List<Key<RegistrationTicket>> ticketKeys) {
+        List<List<Key<RegistrationTicket>>> groups = new ArrayList<>();
+        List<Set<String>> users = new ArrayList<>();
+        for (RegistrationTicket ticket : ofy().load().keys(ticketKeys).values()) {
+            int group = 0;
+            while (group < groups.size()
+                    && (groups.get(group).size() == TICKETS_PER_TRANSACTION
+                            || users.get(group).contains(ticket.getUserId()))) {
+                group++;
+            }
+            if (group == groups.size()) {
+                groups.add(new ArrayList<Key<RegistrationTicket>>());
+                users.add(new HashSet<String>());
+            }
+            groups.get(group).add(Key.create(ticket));
+            users.get(group).add(ticket.getUserId());
+        }
+        return groups;
+    }
+
+    /**
+     * Confirms or rejects the pending tickets of a group, booking their seats on a single seat
+     * entity. The tickets, the Profiles with their Registrations and the seat entity are read
+     * and written in the current transaction.
+     *
+     * @return the tickets that were pending: confirmed, rejected, or still pending when the
+     *         seat entity ran out of seats for them.
+     */
+    private List<RegistrationTicket> processGroupInTransaction(final Conference conference,
+            final List<Key<RegistrationTicket>> group) {
+        Map<Key<RegistrationTicket>, RegistrationTicket> tickets = ofy().load().keys(group);
+        List<Key<Profile>> profileKeys = new ArrayList<>(tickets.size());
+        for (RegistrationTicket ticket : tickets.values()) {
+            profileKeys.add(Key.create(Profile.class, ticket.getUserId()));
+        }
+        Map<Key<Profile>, Profile> profiles = ofy().load().keys(profileKeys);
+
+        List<RegistrationTicket> pending = new ArrayList<>(tickets.size());
+        List<RegistrationTicket> eligible = new ArrayList<>(tickets.size());
+        for (RegistrationTicket ticket : tickets.values()) {
+            if (ticket.getStatus() != RegistrationStatus.PENDING) {
+                // Handled by another worker, or by an earlier attempt of this one
+                continue;
+            }
+            pending.add(ticket);
+            Key<Profile> profileKey = Key.create(Profile.class, ticket.getUserId());
+            Profile profile = profiles.get(profileKey);
+            if (profile == null) {
+                ticket.reject("Profile doesn't exist.");
+                continue;
+            }
+            profileEntries.migrateInTransaction(profile);
+            if (profileEntries.isRegistered(profileKey, conference)) {
+                ticket.reject("Already registered");
+            } else {
+                eligible.add(ticket);
+            }
+        }
+        int booked = eligible.isEmpty() ? 0
+                : seatInventory.bookSeatsUpTo(conference, eligible.size());
+        for (RegistrationTicket ticket : eligible.subList(0, booked)) {
+            profileEntries.register(Key.create(Profile.class, ticket.getUserId()), conference);
+            ticket.confirm();
+        }
+        List<RegistrationTicket> handled = new ArrayList<>(pending.size());
+        for (RegistrationTicket ticket : pending) {
+            if (ticket.getStatus() != RegistrationStatus.PENDING) {
+                handled.add(ticket);
+            }
+        }
+        ofy().save().entities(handled);
+        return pending;
+    }
+
+    /**
+     * Confirms or rejects a pending ticket. The ticket, the Profile with its Registrations and
+     * the seat entities are read and written in the current transaction, so a registration
+     * made meanwhile by another worker, registerForConference or a hold is seen.
+     *
+     * @return the ticket once confirmed or rejected, null when it was not pending.
+     */
+    private RegistrationTicket processInTransaction(final Key<Conference> conferenceKey,
+            final Conference conference, final Key<RegistrationTicket> ticketKey) {
+        RegistrationTicket ticket = ofy().load().key(ticketKey).now();
+        if (ticket == null || ticket.getStatus() != RegistrationStatus.PENDING) {
+            // Handled by another worker, or by an earlier attempt of this one
+            return null;
+        }
+        Key<Profile> profileKey = Key.create(Profile.class, ticket.getUserId());
+        Profile profile = ofy().load().key(profileKey).now();
+        if (conference == null) {
+            ticket.reject("No Conference found with key: " + conferenceKey.getString());
+        } else if (profile == null) {
+            ticket.reject("Profile doesn't exist.");
+        } else {
+            profileEntries.migrateInTransaction(profile);
+            if (profileEntries.isRegistered(profileKey, conference)) {
+                ticket.reject("Already registered");
+            } else if (!seatInventory.bookSeats(conference, 1)) {
+                ticket.reject("No seats available");
+            } else {
+                profileEntries.register(profileKey, conference);
+                ticket.confirm();
+            }
+        }
+        ofy().save().entity(ticket);
+        return ticket;
+    }
+
+    private void queueConfirmations(final Conference conference,
+            final List<RegistrationTicket> tickets) {
+        List<Key<Profile>> profileKeys = new ArrayList<>(tickets.size());
+        List<Key<Registration>> registrationKeys = new ArrayList<>(tickets.size());
+        for (RegistrationTicket ticket : tickets) {
+            Key<Profile> profileKey = Key.create(Profile.class, ticket.getUserId());
+            profileKeys.add(profileKey);
+            registrationKeys.add(Registration.key(profileKey, conference));
+        }
+        Map<Key<Profile>, Profile> profiles = ofy().load().keys(profileKeys);
+        for (Registration registration : ofy().load().keys(registrationKeys).values()) {
+            Profile profile = profiles.get(Key.create(Profile.class, registration.getUserId()));
+            if (profile != null) {
+                mail.queueRegistrationConfirmed(profile.getMainEmail(), Key.create(conference),
+                        registration);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Writes Conferences and their Sessions as newline delimited JSON, see ConferenceRecords.
+ *
+ * The Conferences are exported one page at a time, each page starting at the cursor where
+ * the previous one stopped. A page only holds the keys of its Conferences: they are loaded a
+ * batch at a time, and the Sessions of each one are written as the query returns them, so
+ * the next cursor is known before anything is written.
+ */
+public class BulkExportService {
+
+    /**
+     * The Conferences loaded by one batch get.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * The Sessions fetched by each round trip of the query.
+     */
+    private static final int SESSION_CHUNK_SIZE = 200;
+
+    /**
+     * Reads the keys of a page of Conferences.
+     *
+     * @param cursor where the previous page stopped, null for the first page.
+     * @param limit the most Conferences in the page.
+     * @return the page.
+     */
+    public Page page(final String cursor, final int limit) {
+        Query<Conference> query = ofy().load().type(Conference.class).limit(limit);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<Conference>> iterator = query.keys().iterator();
+        List<Key<Conference>> conferenceKeys = new ArrayList<>(limit);
+        while (iterator.hasNext()) {
+            conferenceKeys.add(iterator.next());
+        }
+        return new Page(conferenceKeys, conferenceKeys.size() < limit ? null
+                : iterator.getCursor().toWebSafeString());
+    }
+
+    /**
+     * Writes the Conferences of a page, each followed by its Sessions.
+     *
+     * @param page the page.
+     * @param out where the lines are written.
+     * @throws IOException when writing fails.
+     */
+    public void write(final Page page, final Writer out) throws IOException {
+        for (int from = 0; from < page.conferenceKeys.size(); from += BATCH_SIZE) {
+            writeBatch(page.conferenceKeys.subList(from,
+                    Math.min(from + BATCH_SIZE, page.conferenceKeys.size())), out);
+        }
+    }
+
+    private void writeBatch(final List<Key<Conference>> conferenceKeys, final Writer out)
+            throws IOException {
+        Map<Key<Conference>, Conference> conferences = ofy().load().keys(conferenceKeys);
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            Conference conference = conferences.get(conferenceKey);
+            if (conference == null) {
+                continue;
+            }
+            writeLine(ConferenceRecords.toRecord(conference), out);
+            for (Session session : ofy().load().type(Session.class).ancestor(conferenceKey)
+                    .chunk(SESSION_CHUNK_SIZE)) {
+                writeLine(ConferenceRecords.toRecord(session), out);
+            }
+        }
+        // The Conferences and Sessions written are not needed anymore
+        ofy().clear();
+    }
+
+    private static void writeLine(final Map<String, Object> record, final Writer out)
+            throws IOException {
+        out.write(JsonLine.format(record));
+        out.write('\n');
+    }
+
+    /**
+     * The keys of a page of Conferences, and the cursor of the next page.
+     */
+    public static class Page {
+
+        private final List<Key<Conference>> conferenceKeys;
+
+        private final String nextCursor;
+
+        Page(final List<Key<Conference>> conferenceKeys, final String nextCursor) {
+            this.conferenceKeys = conferenceKeys;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * Returns the cursor of the next page.
+         *
+         * @return the cursor, null when this is the last page.
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
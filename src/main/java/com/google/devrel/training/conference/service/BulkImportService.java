@@ -0,0 +1,432 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.appidentity.AppIdentityServiceFactory;
+import com.google.appengine.api.urlfetch.FetchOptions;
+import com.google.appengine.api.urlfetch.HTTPHeader;
+import com.google.appengine.api.urlfetch.HTTPMethod;
+import com.google.appengine.api.urlfetch.HTTPRequest;
+import com.google.appengine.api.urlfetch.HTTPResponse;
+import com.google.appengine.api.urlfetch.URLFetchServiceFactory;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.devrel.training.conference.domain.Agenda;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionCount;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.KeyRange;
+import com.googlecode.objectify.Result;
+import com.googlecode.objectify.Work;
+
+/**
+ * Imports Conferences and Sessions from a newline delimited JSON file, see ConferenceRecords,
+ * read from Cloud Storage ("gs://bucket/object") or, on the dev server, from a local path.
+ *
+ * The file is imported one chunk of bytes at a time, each chunk ending at the last complete
+ * line it holds, so a task chain can resume at the offset where the previous task stopped.
+ * Records keep their ids, which are reserved so the datastore never allocates them again:
+ * an existing Conference is left as is and Sessions are overwritten, so a chunk can safely
+ * run twice. Each Conference is saved with its seat shards in one transaction. A record that
+ * can't be imported is logged with its offset and skipped.
+ */
+public class BulkImportService {
+
+    private static final Logger LOG = Logger.getLogger(BulkImportService.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String GCS_PREFIX = "gs://";
+
+    private static final String GCS_READ_SCOPE =
+            "https://www.googleapis.com/auth/devstorage.read_only";
+
+    /**
+     * The bytes read by one task, about a thousand records.
+     */
+    static final int CHUNK_BYTES = 256 * 1024;
+
+    /**
+     * The entities saved by one batch put.
+     */
+    private static final int PUT_SIZE = 100;
+
+    private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+    private final ConferenceQueryCache queryCache = new ConferenceQueryCache();
+
+    private final SessionQueryPlanner sessionQueries = new SessionQueryPlanner();
+
+    private final SearchService searchService = new SearchService();
+
+    /**
+     * Imports the records of the chunk starting at the given offset.
+     *
+     * @param source "gs://bucket/object", or a local path on the dev server.
+     * @param offset the offset of the first byte of the chunk, at the start of a line.
+     * @return the offset of the next chunk, -1 when the file is done.
+     * @throws IOException when the file can't be read.
+     * @throws IllegalArgumentException when a line is longer than a chunk.
+     */
+    public long importChunk(final String source, final long offset) throws IOException {
+        byte[] bytes = read(source, offset, CHUNK_BYTES);
+        boolean last = bytes.length < CHUNK_BYTES;
+        int end = bytes.length;
+        if (!last) {
+            end = lastIndexOf(bytes, (byte) '\n') + 1;
+            if (end == 0) {
+                throw new IllegalArgumentException("The line at " + offset + " of " + source
+                        + " is longer than " + CHUNK_BYTES + " bytes");
+            }
+        }
+
+        Map<Long, Map<String, Object>> conferences = new LinkedHashMap<>();
+        Map<Long, Map<String, Object>> sessions = new LinkedHashMap<>();
+        int start = 0;
+        while (start < end) {
+            int newline = indexOf(bytes, (byte) '\n', start, end);
+            int lineEnd = newline < 0 ? end : newline;
+            long lineOffset = offset + start;
+            String line = new String(bytes, start, lineEnd - start, UTF_8).trim();
+            start = lineEnd + 1;
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                Map<String, Object> record = JsonLine.parse(line);
+                String kind = ConferenceRecords.getString(record, ConferenceRecords.KIND);
+                if (ConferenceRecords.CONFERENCE.equals(kind)) {
+                    conferences.put(lineOffset, record);
+                } else if (ConferenceRecords.SESSION.equals(kind)) {
+                    sessions.put(lineOffset, record);
+                } else {
+                    throw new IllegalArgumentException("Unknown kind: " + kind);
+                }
+            } catch (IllegalArgumentException e) {
+                skip(source, lineOffset, e);
+            }
+        }
+
+        Set<Key<Conference>> touched = new LinkedHashSet<>();
+        int importedConferences = importConferences(source, conferences, touched);
+        int importedSessions = importSessions(source, sessions, touched);
+        if (!touched.isEmpty()) {
+            // The aggregates are rebuilt from the Sessions the next time they are read
+            List<Key<?>> aggregates = new ArrayList<>();
+            for (Key<Conference> conferenceKey : touched) {
+                aggregates.add(SessionCount.key(conferenceKey));
+                aggregates.add(Agenda.key(conferenceKey));
+                sessionQueries.invalidate(conferenceKey);
+            }
+            ofy().delete().keys(aggregates).now();
+            searchService.scheduleIndex(touched);
+        }
+        if (importedConferences > 0) {
+            queryCache.invalidate();
+        }
+        LOG.info(String.format("Imported %d conferences and %d sessions from bytes %d to %d of %s",
+                importedConferences, importedSessions, offset, offset + end, source));
+        return last ? -1 : offset + end;
+    }
+
+    private int importConferences(final String source,
+            final Map<Long, Map<String, Object>> records, final Set<Key<Conference>> touched) {
+        Map<Key<Conference>, Long> offsets = new LinkedHashMap<>();
+        Map<Key<Conference>, Conference> conferences = new LinkedHashMap<>();
+        for (Map.Entry<Long, Map<String, Object>> entry : records.entrySet()) {
+            Map<String, Object> record = entry.getValue();
+            try {
+                Long id = ConferenceRecords.getLong(record, ConferenceRecords.ID);
+                String organizerUserId = ConferenceRecords.getString(record,
+                        ConferenceRecords.ORGANIZER_USER_ID);
+                if (id == null || id <= 0 || organizerUserId == null) {
+                    throw new IllegalArgumentException(
+                            "A conference needs a positive id and an organizerUserId");
+                }
+                Conference conference = new Conference(id, organizerUserId,
+                        ConferenceRecords.conferenceForm(record));
+                conference.updateOrganizerDisplayName(ConferenceRecords.getString(record,
+                        ConferenceRecords.ORGANIZER_DISPLAY_NAME));
+                offsets.put(Key.create(conference), entry.getKey());
+                conferences.put(Key.create(conference), conference);
+            } catch (RuntimeException e) {
+                skip(source, entry.getKey(), e);
+            }
+        }
+        if (conferences.isEmpty()) {
+            return 0;
+        }
+
+        reserve(null, Conference.class, conferences.keySet());
+        int imported = 0;
+        for (Map.Entry<Key<Conference>, Conference> entry : conferences.entrySet()) {
+            try {
+                if (importConference(entry.getValue())) {
+                    touched.add(entry.getKey());
+                    imported++;
+                }
+            } catch (RuntimeException e) {
+                skip(source, offsets.get(entry.getKey()), e);
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Saves a Conference and its seat shards in one transaction. An existing Conference is left
+     * as is, it may already have registrations, but gets back any shard it is missing.
+     *
+     * @return true when the Conference was saved, false when it already existed.
+     */
+    private boolean importConference(final Conference conference) {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                Conference existing = ofy().load().entity(conference).now();
+                List<SeatShard> shards = seatInventory.createShards(
+                        existing == null ? conference : existing);
+                if (existing != null) {
+                    Set<Key<SeatShard>> found = ofy().load().entities(shards).keySet();
+                    for (Iterator<SeatShard> it = shards.iterator(); it.hasNext();) {
+                        if (found.contains(Key.create(it.next()))) {
+                            it.remove();
+                        }
+                    }
+                } else {
+                    ofy().save().entity(conference);
+                }
+                ofy().save().entities(shards);
+                return existing == null;
+            }
+        });
+    }
+
+    private int importSessions(final String source, final Map<Long, Map<String, Object>> records,
+            final Set<Key<Conference>> touched) {
+        Map<Key<Conference>, List<Long>> offsetsByConference = new LinkedHashMap<>();
+        for (Map.Entry<Long, Map<String, Object>> entry : records.entrySet()) {
+            try {
+                Long conferenceId = ConferenceRecords.getLong(entry.getValue(),
+                        ConferenceRecords.CONFERENCE_ID);
+                if (conferenceId == null) {
+                    throw new IllegalArgumentException("A session needs a conferenceId");
+                }
+                Key<Conference> conferenceKey = Key.create(Conference.class, conferenceId);
+                if (!offsetsByConference.containsKey(conferenceKey)) {
+                    offsetsByConference.put(conferenceKey, new ArrayList<Long>());
+                }
+                offsetsByConference.get(conferenceKey).add(entry.getKey());
+            } catch (IllegalArgumentException e) {
+                skip(source, entry.getKey(), e);
+            }
+        }
+        if (offsetsByConference.isEmpty()) {
+            return 0;
+        }
+
+        Set<Key<Conference>> existing = ofy().load().keys(offsetsByConference.keySet()).keySet();
+        Map<Key<Session>, Long> offsets = new HashMap<>();
+        List<Object> sessions = new ArrayList<>();
+        for (Map.Entry<Key<Conference>, List<Long>> entry : offsetsByConference.entrySet()) {
+            Key<Conference> conferenceKey = entry.getKey();
+            if (!existing.contains(conferenceKey)) {
+                for (Long offset : entry.getValue()) {
+                    skip(source, offset, new IllegalArgumentException(
+                            "No conference with id " + conferenceKey.getId()));
+                }
+                continue;
+            }
+            Map<Long, SessionForm> forms = new LinkedHashMap<>();
+            Map<Long, Long> ids = new HashMap<>();
+            for (Long offset : entry.getValue()) {
+                try {
+                    // Without an id a retried chunk would import the Session again
+                    Long id = ConferenceRecords.getLong(records.get(offset),
+                            ConferenceRecords.ID);
+                    if (id == null || id <= 0) {
+                        throw new IllegalArgumentException("A session needs a positive id");
+                    }
+                    forms.put(offset, ConferenceRecords.sessionForm(records.get(offset)));
+                    ids.put(offset, id);
+                } catch (IllegalArgumentException e) {
+                    skip(source, offset, e);
+                }
+            }
+            List<Key<Session>> reserved = new ArrayList<>();
+            for (Long id : ids.values()) {
+                reserved.add(Key.create(conferenceKey, Session.class, id));
+            }
+            reserve(conferenceKey, Session.class, reserved);
+            for (Map.Entry<Long, SessionForm> form : forms.entrySet()) {
+                Long offset = form.getKey();
+                long id = ids.get(offset);
+                try {
+                    Session session = new Session(form.getValue().getSessionName(),
+                            form.getValue().getHighlights(), form.getValue().getSpeaker(),
+                            form.getValue().getDuration(), form.getValue().getTypeOfSession(),
+                            form.getValue().parseDate(), form.getValue().getStartTime(),
+                            conferenceKey, id);
+                    sessions.add(session);
+                    offsets.put(Key.create(session), offset);
+                } catch (ParseException e) {
+                    skip(source, offset, e);
+                }
+            }
+        }
+
+        int imported = sessions.size();
+        for (List<Key<Session>> failed : save(sessions, Session.class)) {
+            for (Key<Session> sessionKey : failed) {
+                imported--;
+                skip(source, offsets.get(sessionKey), null);
+            }
+        }
+        for (Object session : sessions) {
+            touched.add(((Session) session).getConference());
+        }
+        return imported;
+    }
+
+    /**
+     * Saves entities with concurrent batch puts.
+     *
+     * @return the keys of the given kind of each batch which failed.
+     */
+    private static <T> List<List<Key<T>>> save(final List<Object> entities, final Class<T> kind) {
+        List<Result<? extends Map<?, ?>>> puts = new ArrayList<>();
+        for (int from = 0; from < entities.size(); from += PUT_SIZE) {
+            puts.add(ofy().save().entities(
+                    entities.subList(from, Math.min(from + PUT_SIZE, entities.size()))));
+        }
+        List<List<Key<T>>> failed = new ArrayList<>();
+        for (int i = 0; i < puts.size(); i++) {
+            try {
+                puts.get(i).now();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to save a batch of " + kind.getSimpleName(), e);
+                List<Key<T>> keys = new ArrayList<>();
+                for (Object entity : entities.subList(i * PUT_SIZE,
+                        Math.min((i + 1) * PUT_SIZE, entities.size()))) {
+                    if (kind.isInstance(entity)) {
+                        keys.add(Key.create(kind.cast(entity)));
+                    }
+                }
+                failed.add(keys);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Reserves the ids of the given keys, so that they are never allocated again.
+     */
+    private static <T> void reserve(final Key<?> parent, final Class<T> kind,
+            final Iterable<Key<T>> keys) {
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (Key<T> key : keys) {
+            min = Math.min(min, key.getId());
+            max = Math.max(max, key.getId());
+        }
+        if (max > 0) {
+            ofy().factory().allocateIdRange(new KeyRange<T>(
+                    new com.google.appengine.api.datastore.KeyRange(
+                            parent == null ? null : parent.getRaw(), Key.getKind(kind),
+                            min, max)));
+        }
+    }
+
+    private static void skip(final String source, final Long offset, final Exception e) {
+        String message = e == null ? "the batch put failed" : e.getMessage();
+        LOG.warning(String.format("Skipped the record at %d of %s: %s", offset, source,
+                message));
+    }
+
+    private static byte[] read(final String source, final long offset, final int length)
+            throws IOException {
+        if (source.startsWith(GCS_PREFIX)) {
+            return readCloudStorage(source.substring(GCS_PREFIX.length()), offset, length);
+        }
+        if (SystemProperty.environment.value() != SystemProperty.Environment.Value.Development) {
+            throw new IllegalArgumentException("Local files are only read on the dev server: "
+                    + source);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(new File(source), "r")) {
+            if (offset >= file.length()) {
+                return new byte[0];
+            }
+            file.seek(offset);
+            byte[] bytes = new byte[(int) Math.min(length, file.length() - offset)];
+            file.readFully(bytes);
+            return bytes;
+        }
+    }
+
+    private static byte[] readCloudStorage(final String object, final long offset,
+            final int length) throws IOException {
+        HTTPRequest request = new HTTPRequest(
+                new URL("https://storage.googleapis.com/" + object), HTTPMethod.GET,
+                FetchOptions.Builder.withDeadline(60));
+        request.setHeader(new HTTPHeader("Authorization", "Bearer "
+                + AppIdentityServiceFactory.getAppIdentityService()
+                        .getAccessToken(Collections.singletonList(GCS_READ_SCOPE))
+                        .getAccessToken()));
+        request.setHeader(new HTTPHeader("Range",
+                "bytes=" + offset + "-" + (offset + length - 1)));
+        HTTPResponse response = URLFetchServiceFactory.getURLFetchService().fetch(request);
+        switch (response.getResponseCode()) {
+            case 200:
+                // The whole object, when it doesn't support ranges
+                byte[] content = response.getContent();
+                return Arrays.copyOfRange(content, (int) Math.min(offset, content.length),
+                        (int) Math.min(offset + length, content.length));
+            case 206:
+                return response.getContent();
+            case 416:
+                // The offset is past the end of the object
+                return new byte[0];
+            default:
+                throw new IOException("Reading " + object + " failed with HTTP "
+                        + response.getResponseCode());
+        }
+    }
+
+    private static int lastIndexOf(final byte[] bytes, final byte b) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(final byte[] bytes, final byte b, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceAlias;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+
+/**
+ * Turns websafe Conference and Session keys sent by clients into the keys to use.
+ *
+ * While legacy conferences, keyed under the organizer's Profile, are migrated to root keys,
+ * both the legacy and the new websafe keys are accepted: a legacy key which has a
+ * ConferenceAlias resolves to the root copy, any other key resolves to itself.
+ * Aliases never change once written, so they are always read outside of transactions.
+ */
+public class ConferenceKeyResolver {
+
+    /**
+     * Resolves a websafe Conference key.
+     *
+     * @param websafeConferenceKey the websafe key sent by the client.
+     * @return the key of the Conference to use.
+     */
+    public Key<Conference> resolve(final String websafeConferenceKey) {
+        Key<Conference> conferenceKey = WebsafeKeyCache.parse(websafeConferenceKey);
+        if (conferenceKey.getParent() == null) {
+            return conferenceKey;
+        }
+        ConferenceAlias alias = ofy().transactionless().load()
+                .key(Key.create(ConferenceAlias.class, websafeConferenceKey)).now();
+        return alias == null ? conferenceKey : alias.getConferenceKey();
+    }
+
+    /**
+     * Resolves websafe Conference keys with a single batch get of their aliases.
+     *
+     * @param websafeConferenceKeys the websafe keys.
+     * @return the resolved keys, by websafe key, in the given order.
+     */
+    public Map<String, Key<Conference>> resolveAll(final Collection<String> websafeConferenceKeys) {
+        Map<String, Key<Conference>> result = new LinkedHashMap<>();
+        List<Key<ConferenceAlias>> aliasKeys = new ArrayList<>();
+        for (String websafeKey : websafeConferenceKeys) {
+            Key<Conference> conferenceKey = WebsafeKeyCache.parse(websafeKey);
+            result.put(websafeKey, conferenceKey);
+            if (conferenceKey.getParent() != null) {
+                aliasKeys.add(Key.create(ConferenceAlias.class, websafeKey));
+            }
+        }
+        if (!aliasKeys.isEmpty()) {
+            for (ConferenceAlias alias : ofy().transactionless().load().keys(aliasKeys).values()) {
+                result.put(alias.getLegacyWebsafeKey(), alias.getConferenceKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves websafe Conference keys to the websafe keys to store, dropping duplicates.
+     *
+     * @param websafeConferenceKeys the websafe keys, possibly legacy ones.
+     * @return the websafe keys of the resolved Conferences.
+     */
+    public List<String> canonicalize(final Collection<String> websafeConferenceKeys) {
+        List<String> result = new ArrayList<>(websafeConferenceKeys.size());
+        for (Key<Conference> conferenceKey : resolveAll(websafeConferenceKeys).values()) {
+            if (!result.contains(conferenceKey.getString())) {
+                result.add(conferenceKey.getString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves a websafe Session key, re-parenting it under the resolved Conference.
+     *
+     * @param websafeSessionKey the websafe key sent by the client.
+     * @return the key of the Session to use.
+     */
+    public Key<Session> resolveSession(final String websafeSessionKey) {
+        return resolveSession(WebsafeKeyCache.<Session> parse(websafeSessionKey));
+    }
+
+    /**
+     * Resolves a Session key, re-parenting it under the resolved Conference.
+     *
+     * @param sessionKey the key, possibly under a legacy Conference key.
+     * @return the key of the Session to use.
+     */
+    public Key<Session> resolveSession(final Key<Session> sessionKey) {
+        Key<Conference> legacyConferenceKey = sessionKey.getParent();
+        if (legacyConferenceKey == null || legacyConferenceKey.getParent() == null) {
+            return sessionKey;
+        }
+        Key<Conference> conferenceKey = resolve(legacyConferenceKey.getString());
+        return Key.create(conferenceKey, Session.class, sessionKey.getId());
+    }
+}
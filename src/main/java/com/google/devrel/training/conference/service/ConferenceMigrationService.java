@@ -0,0 +1,141 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceAlias;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Moves legacy Conferences, keyed under the organizer's Profile, to root keys.
+ *
+ * Each step is idempotent, so the task chain driving the migration can be retried or
+ * restarted at any point.
+ */
+public class ConferenceMigrationService {
+
+    private static final Logger LOG = Logger.getLogger(ConferenceMigrationService.class.getName());
+
+    private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+    private final ConferenceQueryCache queryCache = new ConferenceQueryCache();
+
+    private final SearchService searchService = new SearchService();
+
+    private final ProfileEntryService profileEntries = new ProfileEntryService();
+
+    /**
+     * Copies a legacy Conference and its Sessions to a new root key, records the alias and
+     * deletes the legacy entities, all in one transaction. Registrations booking seats on a
+     * legacy Conference without shards conflict with it and are retried on the new key.
+     *
+     * @param legacyKey the key of the legacy Conference.
+     * @return the key of the root Conference, null when the legacy Conference doesn't exist.
+     */
+    public Key<Conference> migrateConference(final Key<Conference> legacyKey) {
+        Key<Conference> conferenceKey = ofy().transact(new Work<Key<Conference>>() {
+            @Override
+            public Key<Conference> run() {
+                ConferenceAlias alias = ofy().load()
+                        .key(Key.create(ConferenceAlias.class, legacyKey.getString())).now();
+                if (alias != null) {
+                    return alias.getConferenceKey();
+                }
+                Conference legacy = ofy().load().key(legacyKey).now();
+                if (legacy == null) {
+                    return null;
+                }
+                Key<Conference> conferenceKey = ofy().factory().allocateId(Conference.class);
+                Conference conference = legacy.copyAsRootConference(conferenceKey.getId());
+                List<Session> legacySessions = ofy().load().type(Session.class)
+                        .ancestor(legacyKey).list();
+                List<Session> sessions = new ArrayList<>(legacySessions.size());
+                for (Session session : legacySessions) {
+                    sessions.add(session.copyUnder(conferenceKey));
+                }
+                ofy().save().entities(conference, new ConferenceAlias(legacyKey, conferenceKey));
+                ofy().save().entities(sessions);
+                ofy().delete().entities(legacySessions);
+                ofy().delete().key(legacyKey);
+                LOG.info(String.format("Migrated %s to %s with %d sessions",
+                        legacyKey, conferenceKey, sessions.size()));
+                return conferenceKey;
+            }
+        });
+        // Cached query pages may hold the legacy key
+        queryCache.invalidate();
+        if (conferenceKey != null) {
+            searchService.scheduleIndex(conferenceKey);
+        }
+        return conferenceKey;
+    }
+
+    /**
+     * Rewrites the legacy Session keys held by a Profile. Registrations are keyed by the seat
+     * inventory id of the Conference, which doesn't change, so only the wishlist is rewritten.
+     *
+     * @param profileKey the key of the Profile.
+     * @return true when the Profile had inline lists or legacy keys.
+     */
+    public boolean rewriteProfile(final Key<Profile> profileKey) {
+        boolean migrated = profileEntries.migrate(profileKey);
+        final List<Key<WishlistEntry>> legacyEntries = new ArrayList<>();
+        final List<WishlistEntry> entries = new ArrayList<>();
+        for (Key<WishlistEntry> entryKey : ofy().load().type(WishlistEntry.class)
+                .ancestor(profileKey).keys()) {
+            Key<Session> sessionKey = conferenceKeys.resolveSession(
+                    WishlistEntry.sessionKey(entryKey));
+            if (!WishlistEntry.key(profileKey, sessionKey).equals(entryKey)) {
+                legacyEntries.add(entryKey);
+                entries.add(new WishlistEntry(profileKey, sessionKey));
+            }
+        }
+        if (legacyEntries.isEmpty()) {
+            return migrated;
+        }
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                ofy().delete().keys(legacyEntries);
+                ofy().save().entities(entries);
+                return null;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Strips the legacy list of Session keys from a Conference; its Sessions are listed with
+     * ancestor queries and counted by SessionCount. Reads the cached Conference first, so
+     * only the conferences still holding the list are written.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return true when the list was stripped.
+     */
+    public boolean stripSessionKeys(final Key<Conference> conferenceKey) {
+        Conference conference = ofy().load().key(conferenceKey).now();
+        if (conference == null || !conference.hasLegacySessionKeys()) {
+            return false;
+        }
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                Conference conference = ofy().load().key(conferenceKey).now();
+                if (conference == null || !conference.hasLegacySessionKeys()) {
+                    return false;
+                }
+                conference.clearLegacySessionKeys();
+                ofy().save().entity(conference);
+                return true;
+            }
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.devrel.training.conference.QueryCacheStats;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.googlecode.objectify.Key;
+
+/**
+ * Caches the pages of conference queries in memcache, as the keys of the Conferences found.
+ *
+ * Cached pages are keyed by a generation number besides the canonical filters, the page size
+ * and the cursor. Writes changing what a query may find bump the generation instead of
+ * looking for the pages they affect, and the pages of older generations expire unused.
+ *
+ * Only the keys are cached: the Conferences themselves are loaded with a batch get, so a hit
+ * still returns their current state.
+ */
+public class ConferenceQueryCache {
+
+    private static final String PAGE_PREFIX = "CONFERENCE_QUERY_";
+
+    private static final String GENERATION_KEY = "CONFERENCE_QUERY_GENERATION";
+
+    private static final String HITS_KEY = "CONFERENCE_QUERY_HITS";
+
+    private static final String MISSES_KEY = "CONFERENCE_QUERY_MISSES";
+
+    private static final int PAGE_CACHE_SECONDS = 10 * 60;
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    private final ConferenceQueryPlanner queryPlanner = new ConferenceQueryPlanner();
+
+    /**
+     * Appends a page of the Conferences matching the query to the given list, from the cache
+     * when possible.
+     *
+     * @param form the query.
+     * @param pageSize the number of results to append.
+     * @param cursor the websafe cursor returned with the previous page, null for the first page.
+     * @param page the list to append the results to.
+     * @return the websafe cursor of the next page, null when there are no more results.
+     * @throws IllegalArgumentException when the cursor is not a valid cursor.
+     */
+    public String readPage(final ConferenceQueryForm form, final int pageSize,
+            final String cursor, final List<Conference> page) {
+        String cacheKey = PAGE_PREFIX + generation() + "_" + Hashing.sha1().hashString(
+                form.getCanonicalFilters() + "|" + pageSize + "|" + Strings.nullToEmpty(cursor),
+                Charsets.UTF_8);
+        CachedPage cached = (CachedPage) memcacheService.get(cacheKey);
+        if (cached != null) {
+            memcacheService.increment(HITS_KEY, 1, 0L);
+            List<Key<Conference>> keys = new ArrayList<>(cached.websafeKeys.length);
+            for (String websafeKey : cached.websafeKeys) {
+                keys.add(WebsafeKeyCache.<Conference> parse(websafeKey));
+            }
+            Map<Key<Conference>, Conference> conferences = ofy().load().keys(keys);
+            for (Key<Conference> key : keys) {
+                // Deleted since the page was cached
+                if (conferences.containsKey(key)) {
+                    page.add(conferences.get(key));
+                }
+            }
+            return cached.nextPageToken;
+        }
+        memcacheService.increment(MISSES_KEY, 1, 0L);
+        int first = page.size();
+        String nextPageToken = queryPlanner.readPage(queryPlanner.plan(form), pageSize, cursor,
+                page);
+        String[] websafeKeys = new String[page.size() - first];
+        for (int i = 0; i < websafeKeys.length; i++) {
+            websafeKeys[i] = page.get(first + i).getWebsafeKey();
+        }
+        memcacheService.put(cacheKey, new CachedPage(websafeKeys, nextPageToken),
+                Expiration.byDeltaSeconds(PAGE_CACHE_SECONDS));
+        return nextPageToken;
+    }
+
+    /**
+     * Drops every cached page. Called after a Conference is created or its filtered
+     * properties change.
+     */
+    public void invalidate() {
+        memcacheService.increment(GENERATION_KEY, 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the hit and miss counters, kept since memcache last lost them.
+     *
+     * @return the counters.
+     */
+    public QueryCacheStats getStats() {
+        Map<String, Object> counters = memcacheService.getAll(
+                Arrays.asList(HITS_KEY, MISSES_KEY));
+        return new QueryCacheStats(counter(counters.get(HITS_KEY)),
+                counter(counters.get(MISSES_KEY)), generation());
+    }
+
+    /**
+     * Returns the current generation. When memcache lost it, it starts again from the current
+     * time, so it never goes back to the generation of pages still cached.
+     */
+    private long generation() {
+        Long generation = memcacheService.increment(GENERATION_KEY, 0,
+                System.currentTimeMillis());
+        return generation == null ? 0 : generation;
+    }
+
+    private static long counter(final Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * A page as cached in memcache.
+     */
+    private static class CachedPage implements Serializable {
+
+        private static final long serialVersionUID = 3308410867402135118L;
+
+        private final String[] websafeKeys;
+
+        private final String nextPageToken;
+
+        CachedPage(final String[] websafeKeys, final String nextPageToken) {
+            this.websafeKeys = websafeKeys;
+            this.nextPageToken = nextPageToken;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.google.devrel.training.conference.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.devrel.training.conference.ConferenceQueryPlan;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.service.QueryMerger.MergedIterator;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Plans ConferenceQueryForm queries with inequality filters on more than one field, which the
+ * datastore can't run as a single query.
+ *
+ * All equality filters and the inequality filters of the most selective field are pushed to
+ * the datastore, the remaining filters are evaluated in memory while streaming the results.
+ * A page stops after SCAN_BUDGET Conferences, matching or not, so a page of a query matching
+ * few Conferences can't read the whole kind.
+ *
+ * IN filters are expanded into one query per value, run concurrently and merged on their
+ * common order by name. Their inequality filters are all evaluated in memory, so that every
+ * query is ordered by name alone.
+ *
+ * Queries with a topic expression are answered by the TopicIndex, the filters being evaluated
+ * in memory on the Conferences it matches.
+ */
+public class ConferenceQueryPlanner {
+
+    private static final Logger LOG = Logger.getLogger(ConferenceQueryPlanner.class.getName());
+
+    /**
+     * How many keys are counted at most to estimate the selectivity of an inequality field.
+     */
+    private static final int SAMPLE_SIZE = 500;
+
+    /**
+     * How many Conferences a page scans at most.
+     */
+    private static final int SCAN_BUDGET = 1000;
+
+    /**
+     * How many Conferences are fetched per datastore round trip while scanning.
+     */
+    private static final int SCAN_CHUNK_SIZE = 200;
+
+    /**
+     * How many queries IN filters may expand to, the limit of the datastore's own IN filters.
+     */
+    private static final int MAX_SUB_QUERIES = 30;
+
+    /**
+     * The order of the queries merged for IN filters.
+     */
+    private static final Comparator<Conference> BY_NAME = new Comparator<Conference>() {
+        @Override
+        public int compare(Conference left, Conference right) {
+            int byName = left.getName().compareTo(right.getName());
+            return byName != 0 ? byName : Key.create(left).compareTo(Key.create(right));
+        }
+    };
+
+    private final QueryPager queryPager = new QueryPager();
+
+    private final QueryMerger queryMerger = new QueryMerger();
+
+    private final IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+    private final TopicIndex topicIndex = new TopicIndex();
+
+    /**
+     * Chooses the inequality field to push to the datastore.
+     *
+     * With inequalities on a single field, that field is pushed. With several, a keys-only
+     * count of each candidate query, capped at SAMPLE_SIZE, picks the one matching the fewest
+     * Conferences; ties go to the field given first.
+     *
+     * @param form the query.
+     * @return the plan.
+     * @throws IllegalArgumentException when the topic expression is not valid.
+     */
+    public ConferenceQueryPlan plan(final ConferenceQueryForm form) {
+        if (form.getTopicExpression() != null) {
+            ConferenceQueryPlan plan = new ConferenceQueryPlan(
+                    TopicExpression.parse(form.getTopicExpression()), form.getFilters());
+            LOG.info(String.format("Topic expression %s, residual filters %s",
+                    plan.getTopicExpression(), plan.getResidualFilters()));
+            return plan;
+        }
+        if (form.hasInFilters()) {
+            return planMerge(form);
+        }
+        List<Field> candidates = form.getInequalityFields();
+        Field chosen = candidates.isEmpty() ? null : candidates.get(0);
+        List<String> estimates = new ArrayList<>();
+        if (candidates.size() > 1) {
+            int fewest = Integer.MAX_VALUE;
+            for (Field field : candidates) {
+                int count = form.getQuery(field).limit(SAMPLE_SIZE).count();
+                estimates.add(field.getFieldName() + ": "
+                        + (count == SAMPLE_SIZE ? SAMPLE_SIZE + "+" : String.valueOf(count)));
+                if (count < fewest) {
+                    fewest = count;
+                    chosen = field;
+                }
+            }
+        }
+        List<Filter> residualFilters = form.getResidualFilters(chosen);
+        List<String> datastoreFilters = new ArrayList<>();
+        for (Filter filter : form.getFilters()) {
+            if (!residualFilters.contains(filter)) {
+                datastoreFilters.add(filter.toString());
+            }
+        }
+        ConferenceQueryPlan plan = new ConferenceQueryPlan(form.getQuery(chosen),
+                form.getShape(chosen), residualFilters,
+                chosen == null ? null : chosen.getFieldName(), datastoreFilters, estimates);
+        LOG.info(String.format("Datastore filters %s, residual filters %s, estimates %s",
+                plan.getDatastoreFilters(), plan.getResidualFilters(), estimates));
+        return plan;
+    }
+
+    private ConferenceQueryPlan planMerge(final ConferenceQueryForm form) {
+        List<ConferenceQueryForm> subForms = form.expandInFilters(MAX_SUB_QUERIES);
+        List<Query<Conference>> subQueries = new ArrayList<>(subForms.size());
+        for (ConferenceQueryForm subForm : subForms) {
+            // Non-hybrid queries return the Conferences with the query results, rather than
+            // following each query with a batch get of its own
+            subQueries.add(subForm.getQuery(null).hybrid(false).chunk(SCAN_CHUNK_SIZE));
+        }
+        List<Filter> residualFilters = form.getResidualFilters(null);
+        List<String> datastoreFilters = new ArrayList<>();
+        for (Filter filter : form.getFilters()) {
+            if (!residualFilters.contains(filter)) {
+                datastoreFilters.add(filter.toString());
+            }
+        }
+        ConferenceQueryPlan plan = new ConferenceQueryPlan(subQueries,
+                subForms.get(0).getShape(null), residualFilters, datastoreFilters);
+        LOG.info(String.format("%d merged queries, datastore filters %s, residual filters %s",
+                subQueries.size(), datastoreFilters, plan.getResidualFilters()));
+        return plan;
+    }
+
+    /**
+     * Appends a page of the Conferences matching the plan to the given list.
+     *
+     * @param plan the plan.
+     * @param pageSize the number of results to append at most.
+     * @param cursor the websafe cursor returned with the previous page, null for the first page.
+     * @param page the list to append the results to.
+     * @return the websafe cursor of the next page, null when there are no more results.
+     * @throws IllegalArgumentException when the cursor is not a valid cursor.
+     */
+    public String readPage(final ConferenceQueryPlan plan, final int pageSize,
+            final String cursor, final List<Conference> page) {
+        if (plan.getTopicFilter() != null) {
+            return topicIndex.readPage(plan, pageSize, cursor, page);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            return scanPage(plan, pageSize, cursor, page);
+        } finally {
+            indexAdvisor.record(plan.getShape(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private String scanPage(final ConferenceQueryPlan plan, final int pageSize,
+            final String cursor, final List<Conference> page) {
+        if (!plan.getSubQueries().isEmpty()) {
+            MergedIterator<Conference> iterator = queryMerger.startAt(plan.getSubQueries(),
+                    BY_NAME, cursor);
+            return scan(plan, iterator, pageSize, page) ? iterator.getCursor() : null;
+        }
+        if (!plan.hasResidualFilters()) {
+            int first = page.size();
+            String nextPageToken = queryPager.readPage(plan.getQuery(), pageSize, cursor, page);
+            plan.recordScan(page.size() - first, page.size() - first, false);
+            return nextPageToken;
+        }
+        QueryResultIterator<Conference> iterator = queryPager.startAt(
+                plan.getQuery().limit(SCAN_BUDGET + 1).chunk(SCAN_CHUNK_SIZE), cursor).iterator();
+        return scan(plan, iterator, pageSize, page)
+                ? iterator.getCursor().toWebSafeString() : null;
+    }
+
+    /**
+     * Appends the Conferences passing the residual filters until the page is full or the
+     * scan budget is spent.
+     *
+     * @return true when the iterator has more results.
+     */
+    private boolean scan(final ConferenceQueryPlan plan, final Iterator<Conference> iterator,
+            final int pageSize, final List<Conference> page) {
+        int scanned = 0;
+        int returned = 0;
+        while (returned < pageSize && scanned < SCAN_BUDGET && iterator.hasNext()) {
+            Conference conference = iterator.next();
+            scanned++;
+            if (plan.matches(conference)) {
+                page.add(conference);
+                returned++;
+            }
+        }
+        boolean hasNext = iterator.hasNext();
+        plan.recordScan(scanned, returned, hasNext && returned < pageSize);
+        return hasNext;
+    }
+}
@@ -0,0 +1,174 @@
+package com.google.devrel.training.conference.service;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+
+/**
+ * Maps Conferences and Sessions to the records of the bulk import and export files, and
+ * records back to the forms the API takes.
+ *
+ * Every record has a "kind", "Conference" or "Session", and the numeric "id" of the entity; a
+ * Session names its Conference by "conferenceId". Ids are kept across environments, so that
+ * importing the same file again doesn't duplicate anything. Conference dates are yyyy-MM-dd in
+ * UTC, Session dates dd/MM/yyyy as in SessionForm.
+ */
+public final class ConferenceRecords {
+
+    public static final String KIND = "kind";
+
+    public static final String CONFERENCE = "Conference";
+
+    public static final String SESSION = "Session";
+
+    public static final String ID = "id";
+
+    public static final String CONFERENCE_ID = "conferenceId";
+
+    public static final String ORGANIZER_USER_ID = "organizerUserId";
+
+    public static final String ORGANIZER_DISPLAY_NAME = "organizerDisplayName";
+
+    private static final ThreadLocal<DateFormat> DAY_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            format.setLenient(false);
+            return format;
+        }
+    };
+
+    private ConferenceRecords() {}
+
+    public static Map<String, Object> toRecord(final Conference conference) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put(KIND, CONFERENCE);
+        record.put(ID, conference.getId());
+        record.put("name", conference.getName());
+        record.put("description", conference.getDescription());
+        record.put("topics", conference.getTopics());
+        record.put("city", conference.getCity());
+        record.put("startDate", formatDay(conference.getStartDate()));
+        record.put("endDate", formatDay(conference.getEndDate()));
+        record.put("maxAttendees", conference.getMaxAttendees());
+        record.put("seatShards", conference.getSeatShards());
+        record.put(ORGANIZER_USER_ID, conference.getOrganizerUserId());
+        record.put(ORGANIZER_DISPLAY_NAME, conference.getOrganizerDisplayName());
+        return record;
+    }
+
+    public static Map<String, Object> toRecord(final Session session) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put(KIND, SESSION);
+        record.put(ID, session.getId());
+        record.put(CONFERENCE_ID, session.getConference().getId());
+        record.put("sessionName", session.getSessionName());
+        record.put("highlights", session.getHighlights());
+        record.put("speaker", session.getSpeaker());
+        record.put("duration", session.getDuration());
+        record.put("typeOfSession", session.getTypeOfSession());
+        record.put("date", SessionForm.formatDate(session.getDate()));
+        record.put("startTime", session.getStartTime());
+        return record;
+    }
+
+    /**
+     * Reads the ConferenceForm of a Conference record.
+     *
+     * @param record the record.
+     * @return the form.
+     * @throws IllegalArgumentException when a value has the wrong type or format.
+     */
+    public static ConferenceForm conferenceForm(final Map<String, Object> record) {
+        Long seatShards = getLong(record, "seatShards");
+        Long maxAttendees = getLong(record, "maxAttendees");
+        return new ConferenceForm(getString(record, "name"), getString(record, "description"),
+                getStrings(record, "topics"), getString(record, "city"),
+                getDay(record, "startDate"), getDay(record, "endDate"),
+                maxAttendees == null ? 0 : maxAttendees.intValue(),
+                seatShards == null ? null : seatShards.intValue());
+    }
+
+    /**
+     * Reads the SessionForm of a Session record.
+     *
+     * @param record the record.
+     * @return the form.
+     * @throws IllegalArgumentException when a value has the wrong type or format.
+     */
+    public static SessionForm sessionForm(final Map<String, Object> record) {
+        SessionForm form = new SessionForm();
+        form.setSessionName(getString(record, "sessionName"));
+        form.setHighlights(getString(record, "highlights"));
+        form.setSpeaker(getString(record, "speaker"));
+        form.setDuration(getLong(record, "duration"));
+        String type = getString(record, "typeOfSession");
+        form.setTypeOfSession(type == null ? null : TypeOfSession.valueOf(type));
+        form.setDate(getString(record, "date"));
+        form.setStartTime(getString(record, "startTime"));
+        return form;
+    }
+
+    public static String getString(final Map<String, Object> record, final String name) {
+        Object value = record.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        return (String) value;
+    }
+
+    public static Long getLong(final Map<String, Object> record, final String name) {
+        Object value = record.get(name);
+        if (value != null && !(value instanceof Long)) {
+            throw new IllegalArgumentException(name + " must be an integer");
+        }
+        return (Long) value;
+    }
+
+    private static List<String> getStrings(final Map<String, Object> record, final String name) {
+        Object value = record.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(name + " must be an array");
+        }
+        List<String> strings = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            if (!(element instanceof String)) {
+                throw new IllegalArgumentException(name + " must only hold strings");
+            }
+            strings.add((String) element);
+        }
+        return strings;
+    }
+
+    private static Date getDay(final Map<String, Object> record, final String name) {
+        String value = getString(record, name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return DAY_FORMAT.get().parse(value);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(name + " must be yyyy-MM-dd: " + value);
+        }
+    }
+
+    private static String formatDay(final Date date) {
+        return date == null ? null : DAY_FORMAT.get().format(date);
+    }
+}
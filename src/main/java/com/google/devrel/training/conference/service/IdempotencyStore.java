@@ -0,0 +1,97 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.IdempotencyRecord;
+import com.googlecode.objectify.Key;
+
+/**
+ * Remembers the outcome of mutating requests sent with an idempotency key.
+ *
+ * Outcomes are looked up in memcache first and in the datastore when memcache lost them, so a
+ * replayed request costs a cache hit or a single get, and never a transaction on the
+ * Conference or Profile entity groups.
+ */
+public class IdempotencyStore {
+
+    private static final Logger LOG = Logger.getLogger(IdempotencyStore.class.getName());
+
+    private static final String MEMCACHE_PREFIX = "IDEMPOTENCY_";
+
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    /**
+     * Returns the recorded outcome of a request. Inside a transaction the record is read
+     * transactionally, so two concurrent requests with the same key can't both miss it.
+     *
+     * @param operation the name of the endpoint method.
+     * @param userId the userId of the user sending the request.
+     * @param target what the request acts on, such as a websafe key, null when nothing yet.
+     * @param idempotencyKey the key chosen by the client, may be null.
+     * @return the outcome, null when the request was not seen before or has no key.
+     */
+    public String find(final String operation, final String userId, final String target,
+            final String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return null;
+        }
+        Key<IdempotencyRecord> recordKey = IdempotencyRecord.key(operation, userId, target,
+                idempotencyKey);
+        Object cached = memcacheService.get(MEMCACHE_PREFIX + recordKey.getName());
+        if (cached != null) {
+            return (String) cached;
+        }
+        IdempotencyRecord record = ofy().load().key(recordKey).now();
+        if (record == null || record.isExpiredAt(new Date())) {
+            return null;
+        }
+        memcacheService.put(MEMCACHE_PREFIX + recordKey.getName(), record.getOutcome(),
+                Expiration.onDate(record.getExpiresAt()));
+        return record.getOutcome();
+    }
+
+    /**
+     * Saves the outcome of a request. Called inside the transaction of the mutation, the
+     * record commits or rolls back with it; memcache is filled on the first replay.
+     *
+     * @param operation the name of the endpoint method.
+     * @param userId the userId of the user sending the request.
+     * @param target what the request acts on, as given to find.
+     * @param idempotencyKey the key chosen by the client, nothing is saved when null.
+     * @param outcome what the request produced.
+     */
+    public void record(final String operation, final String userId, final String target,
+            final String idempotencyKey, final String outcome) {
+        if (idempotencyKey == null) {
+            return;
+        }
+        ofy().save().entity(new IdempotencyRecord(
+                IdempotencyRecord.key(operation, userId, target, idempotencyKey).getName(),
+                outcome,
+                new Date(System.currentTimeMillis()
+                        + Constants.IDEMPOTENCY_TTL_SECONDS * 1000L))).now();
+    }
+
+    /**
+     * Deletes expired records, a batch per call.
+     *
+     * @return the number of records deleted.
+     */
+    public int purgeExpired() {
+        List<Key<IdempotencyRecord>> expired = ofy().load().type(IdempotencyRecord.class)
+                .filter("expiresAt <", new Date()).limit(PURGE_BATCH_SIZE).keys().list();
+        ofy().delete().keys(expired).now();
+        LOG.info(String.format("Purged %d idempotency records", expired.size()));
+        return expired.size();
+    }
+}
@@ -0,0 +1,117 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.common.base.Joiner;
+import com.google.devrel.training.conference.IndexAdvice;
+import com.google.devrel.training.conference.SuggestedIndex;
+import com.google.devrel.training.conference.domain.QueryShape;
+
+/**
+ * Records the shapes of the queries the application runs and derives the composite indexes
+ * they need, so indexes can be declared and built before the queries reach production.
+ *
+ * A shape is saved once, the first time it is seen; its count and latency are memcache
+ * counters, cheap enough to update on every query.
+ */
+public class IndexAdvisor {
+
+    private static final String SEEN_PREFIX = "QUERY_SHAPE_SEEN_";
+
+    private static final String COUNT_PREFIX = "QUERY_SHAPE_COUNT_";
+
+    private static final String MILLIS_PREFIX = "QUERY_SHAPE_MILLIS_";
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    /**
+     * Records a query run.
+     *
+     * @param shape the shape of the query.
+     * @param millis how long reading the results took.
+     */
+    public void record(final QueryShape shape, final long millis) {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put(COUNT_PREFIX + shape.getId(), 1L);
+        deltas.put(MILLIS_PREFIX + shape.getId(), millis);
+        memcacheService.incrementAll(deltas, 0L);
+        if (memcacheService.put(SEEN_PREFIX + shape.getId(), Boolean.TRUE, null,
+                SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+            ofy().save().entity(shape).now();
+        }
+    }
+
+    /**
+     * Returns the composite indexes covering every shape seen, one per distinct list of
+     * index properties, ordered by how many queries they serve.
+     *
+     * @return the advice.
+     */
+    public IndexAdvice getAdvice() {
+        List<QueryShape> shapes = ofy().load().type(QueryShape.class).list();
+        List<String> counterKeys = new ArrayList<>(shapes.size() * 2);
+        for (QueryShape shape : shapes) {
+            counterKeys.add(COUNT_PREFIX + shape.getId());
+            counterKeys.add(MILLIS_PREFIX + shape.getId());
+        }
+        Map<String, Object> counters = memcacheService.getAll(counterKeys);
+
+        Map<String, SuggestedIndex> indexes = new LinkedHashMap<>();
+        List<String> builtInShapes = new ArrayList<>();
+        for (QueryShape shape : shapes) {
+            if (shape.isServedByBuiltInIndexes()) {
+                builtInShapes.add(shape.getId());
+                continue;
+            }
+            String indexId = shape.getKind() + "|" + shape.isAncestor() + "|"
+                    + Joiner.on(',').join(shape.getIndexProperties());
+            if (!indexes.containsKey(indexId)) {
+                indexes.put(indexId, new SuggestedIndex(shape.getKind(), shape.isAncestor(),
+                        shape.getIndexProperties()));
+            }
+            indexes.get(indexId).addShape(shape.getId(),
+                    counter(counters.get(COUNT_PREFIX + shape.getId())),
+                    counter(counters.get(MILLIS_PREFIX + shape.getId())));
+        }
+        List<SuggestedIndex> sorted = new ArrayList<>(indexes.values());
+        Collections.sort(sorted, new Comparator<SuggestedIndex>() {
+            @Override
+            public int compare(SuggestedIndex a, SuggestedIndex b) {
+                return Long.compare(b.getCount(), a.getCount());
+            }
+        });
+        return new IndexAdvice(sorted, builtInShapes, toXml(sorted));
+    }
+
+    private static String toXml(final List<SuggestedIndex> indexes) {
+        StringBuilder xml = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+                .append("<datastore-indexes autoGenerate=\"false\">\n");
+        for (SuggestedIndex index : indexes) {
+            xml.append("\t<datastore-index kind=\"").append(index.getKind())
+                    .append("\" ancestor=\"").append(index.isAncestor())
+                    .append("\" source=\"manual\">\n");
+            for (String property : index.getProperties()) {
+                xml.append("\t\t<property name=\"").append(property)
+                        .append("\" direction=\"asc\" />\n");
+            }
+            xml.append("\t</datastore-index>\n");
+        }
+        return xml.append("</datastore-indexes>\n").toString();
+    }
+
+    private static long counter(final Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,280 @@
+package com.google.devrel.training.conference.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formats and parses the lines of the newline delimited JSON files used by the bulk import
+ * and export.
+ *
+ * A line is one flat object whose values are strings, numbers, booleans, null or arrays of
+ * those, which is all a Conference or a Session needs; nested objects are rejected. Integral
+ * numbers are read as Long, others as Double.
+ */
+public final class JsonLine {
+
+    private final String line;
+
+    private int position;
+
+    private JsonLine(final String line) {
+        this.line = line;
+    }
+
+    /**
+     * Formats a record as one line of JSON, without the line separator.
+     *
+     * @param record the values by name, in the order they are written.
+     * @return the line.
+     * @throws IllegalArgumentException when a value isn't a scalar or a collection of scalars.
+     */
+    public static String format(final Map<String, ?> record) {
+        StringBuilder builder = new StringBuilder(128).append('{');
+        for (Map.Entry<String, ?> entry : record.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            appendString(builder, entry.getKey());
+            builder.append(':');
+            Object value = entry.getValue();
+            if (value instanceof Collection) {
+                builder.append('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    appendScalar(builder, element);
+                    first = false;
+                }
+                builder.append(']');
+            } else {
+                appendScalar(builder, value);
+            }
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Parses one line of JSON.
+     *
+     * @param line the line, without the line separator.
+     * @return the values by name, arrays as unmodifiable lists.
+     * @throws IllegalArgumentException when the line isn't a flat JSON object.
+     */
+    public static Map<String, Object> parse(final String line) {
+        JsonLine parser = new JsonLine(line);
+        Map<String, Object> record = parser.parseObject();
+        parser.skipWhitespace();
+        if (parser.position < line.length()) {
+            throw parser.error("Unexpected content after the object");
+        }
+        return record;
+    }
+
+    private static void appendScalar(final StringBuilder builder, final Object value) {
+        if (value == null) {
+            builder.append("null");
+        } else if (value instanceof String || value instanceof Enum) {
+            appendString(builder, value.toString());
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else {
+            throw new IllegalArgumentException("Not a JSON scalar: " + value.getClass());
+        }
+    }
+
+    private static void appendString(final StringBuilder builder, final String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    private Map<String, Object> parseObject() {
+        expect('{');
+        Map<String, Object> record = new LinkedHashMap<>();
+        if (peek() == '}') {
+            position++;
+            return record;
+        }
+        do {
+            String name = parseString();
+            expect(':');
+            Object value;
+            if (peek() == '[') {
+                value = parseArray();
+            } else {
+                value = parseScalar();
+            }
+            record.put(name, value);
+        } while (consume(','));
+        expect('}');
+        return record;
+    }
+
+    private List<Object> parseArray() {
+        expect('[');
+        List<Object> values = new ArrayList<>();
+        if (peek() == ']') {
+            position++;
+            return Collections.unmodifiableList(values);
+        }
+        do {
+            values.add(parseScalar());
+        } while (consume(','));
+        expect(']');
+        return Collections.unmodifiableList(values);
+    }
+
+    private Object parseScalar() {
+        char c = peek();
+        if (c == '"') {
+            return parseString();
+        }
+        if (line.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        if (line.startsWith("true", position)) {
+            position += 4;
+            return Boolean.TRUE;
+        }
+        if (line.startsWith("false", position)) {
+            position += 5;
+            return Boolean.FALSE;
+        }
+        int start = position;
+        while (position < line.length() && "+-.eE0123456789".indexOf(line.charAt(position)) >= 0) {
+            position++;
+        }
+        String number = line.substring(start, position);
+        try {
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                return Long.valueOf(number);
+            }
+            return Double.valueOf(number);
+        } catch (NumberFormatException e) {
+            position = start;
+            throw error("Expected a value");
+        }
+    }
+
+    private String parseString() {
+        expect('"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            if (position >= line.length()) {
+                throw error("Unterminated string");
+            }
+            char c = line.charAt(position++);
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (position >= line.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = line.charAt(position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > line.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(
+                                line.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error("Invalid escape");
+            }
+        }
+    }
+
+    private char peek() {
+        skipWhitespace();
+        if (position >= line.length()) {
+            throw error("Unexpected end of line");
+        }
+        return line.charAt(position);
+    }
+
+    private boolean consume(final char c) {
+        if (peek() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(final char c) {
+        if (!consume(c)) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at column " + (position + 1));
+    }
+}
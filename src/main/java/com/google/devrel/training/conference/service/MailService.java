@@ -0,0 +1,374 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.DeadLetterMail;
+import com.google.devrel.training.conference.domain.Registration;
+import com.googlecode.objectify.Key;
+
+/**
+ * Sends the notification mails through a pull queue, see queue.xml.
+ *
+ * Queuing a mail adds a named pull task, so the same notification queued twice is sent once,
+ * and schedules a sender task without waiting for either. The sender leases the mail tasks in
+ * a batch and sends them over one transport. Sender tasks are named after windows of
+ * WINDOW_SECONDS, so at most one runs per window, and each sends at most the budget of its
+ * window: about Constants.MAIL_SENDS_PER_MINUTE_PROPERTY mails a minute. A mail which fails is
+ * queued again after a doubling delay, and is moved to a DeadLetterMail after MAX_ATTEMPTS, or
+ * right away when it can't ever be sent.
+ */
+public class MailService {
+
+    private static final Logger LOG = Logger.getLogger(MailService.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String TASK_URL = "/tasks/sendmail";
+
+    private static final String END_OF_LINE = "\n";
+
+    private static final Joiner TOPIC_JOINER = Joiner.on(", ").skipNulls();
+
+    private static final int WINDOW_SECONDS = 10;
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final int LEASE_SECONDS = 60;
+
+    private static final String TEMPLATE = "template";
+
+    private static final String CONFERENCE_CREATED = "conferenceCreated";
+
+    private static final String REGISTRATION_CONFIRMED = "registrationConfirmed";
+
+    private static final String TO = "to";
+
+    private static final String CONFERENCE_INFO = "conferenceInfo";
+
+    private static final String WEBSAFE_CONFERENCE_KEY = "websafeConferenceKey";
+
+    private static final String ATTEMPT = "attempt";
+
+    private static final String RETRY_SEPARATOR = "-retry";
+
+    /**
+     * Queues the mail telling an organizer that the Conference was created. The mail is
+     * written from the Conference when it is sent.
+     *
+     * @param email the address of the organizer.
+     * @param conferenceKey the key of the Conference.
+     * @return the pending add of the mail task; the request waits for it before completing.
+     */
+    public Future<TaskHandle> queueConferenceCreated(final String email,
+            final Key<Conference> conferenceKey) {
+        return queue(CONFERENCE_CREATED + ":" + conferenceKey.getString(), TaskOptions.Builder
+                .withMethod(TaskOptions.Method.PULL)
+                .param(TEMPLATE, CONFERENCE_CREATED)
+                .param(TO, email)
+                .param(WEBSAFE_CONFERENCE_KEY, conferenceKey.getString()));
+    }
+
+    /**
+     * Queues the mail telling an organizer that a Conference was created, with the description
+     * of the Conference already written, as the push tasks queued before this service did.
+     *
+     * @param email the address of the organizer.
+     * @param conferenceInfo the description of the Conference.
+     * @return the pending add of the mail task; the request waits for it before completing.
+     */
+    public Future<TaskHandle> queueConferenceCreated(final String email,
+            final String conferenceInfo) {
+        return queue(CONFERENCE_CREATED + ":" + email + conferenceInfo, TaskOptions.Builder
+                .withMethod(TaskOptions.Method.PULL)
+                .param(TEMPLATE, CONFERENCE_CREATED)
+                .param(TO, email)
+                .param(CONFERENCE_INFO, conferenceInfo));
+    }
+
+    /**
+     * Queues the mail confirming a Registration of a user to a Conference. The mail is queued
+     * once per Registration, so a user registering again after unregistering gets another one.
+     *
+     * @param email the address of the user.
+     * @param conferenceKey the resolved key of the Conference.
+     * @param registration the Registration.
+     * @return the pending add of the mail task; the request waits for it before completing.
+     */
+    public Future<TaskHandle> queueRegistrationConfirmed(final String email,
+            final Key<Conference> conferenceKey, final Registration registration) {
+        Date created = registration.getCreated();
+        return queue(REGISTRATION_CONFIRMED + ":" + registration.getUserId() + ":"
+                + conferenceKey.getString() + ":" + (created == null ? 0 : created.getTime()),
+                TaskOptions.Builder
+                        .withMethod(TaskOptions.Method.PULL)
+                        .param(TEMPLATE, REGISTRATION_CONFIRMED)
+                        .param(TO, email)
+                        .param(WEBSAFE_CONFERENCE_KEY, conferenceKey.getString()));
+    }
+
+    private Future<TaskHandle> queue(final String dedupeKey, final TaskOptions task) {
+        Future<TaskHandle> added = QueueFactory.getQueue(Constants.MAIL_QUEUE).addAsync(
+                task.taskName("mail-" + Hashing.sha1().hashString(dedupeKey, UTF_8)));
+        // The current window sends it right away unless its sender already ran, then the
+        // next one does
+        long window = System.currentTimeMillis() / (WINDOW_SECONDS * 1000L);
+        List<TaskOptions> senders = new ArrayList<>(2);
+        senders.add(sender(window));
+        senders.add(sender(window + 1));
+        QueueFactory.getDefaultQueue().addAsync(senders);
+        return added;
+    }
+
+    private static TaskOptions sender(final long window) {
+        return TaskOptions.Builder.withUrl(TASK_URL)
+                .taskName("sendmail-" + window)
+                .etaMillis(window * WINDOW_SECONDS * 1000L);
+    }
+
+    /**
+     * Returns how many mails a window may send.
+     *
+     * @return the budget of a window, at least one.
+     */
+    static int windowBudget() {
+        int perMinute = Integer.getInteger(Constants.MAIL_SENDS_PER_MINUTE_PROPERTY,
+                Constants.DEFAULT_MAIL_SENDS_PER_MINUTE);
+        return Math.max(1, perMinute * WINDOW_SECONDS / 60);
+    }
+
+    /**
+     * Leases up to the budget of a window of mail tasks and sends them over one transport.
+     * Schedules another sender when the budget was used up or some mails are to be retried.
+     *
+     * @return the number of mails sent.
+     */
+    public int send() {
+        Queue queue = QueueFactory.getQueue(Constants.MAIL_QUEUE);
+        int budget = windowBudget();
+        List<TaskHandle> tasks = queue.leaseTasks(LEASE_SECONDS, TimeUnit.SECONDS, budget);
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        Map<TaskHandle, Map<String, String>> params = new LinkedHashMap<>();
+        List<Key<Conference>> conferenceKeys = new ArrayList<>();
+        for (TaskHandle task : tasks) {
+            Map<String, String> taskParams = extractParams(task);
+            params.put(task, taskParams);
+            if (taskParams.containsKey(WEBSAFE_CONFERENCE_KEY)) {
+                conferenceKeys.add(Key.<Conference> create(taskParams
+                        .get(WEBSAFE_CONFERENCE_KEY)));
+            }
+        }
+        Map<Key<Conference>, Conference> conferences = ofy().load().keys(conferenceKeys);
+
+        javax.mail.Session session = javax.mail.Session.getDefaultInstance(new Properties(),
+                null);
+        List<TaskHandle> done = new ArrayList<>(tasks.size());
+        List<TaskOptions> retries = new ArrayList<>();
+        List<DeadLetterMail> deadLetters = new ArrayList<>();
+        int sent = 0;
+        int retryInSeconds = 0;
+        InternetAddress from = null;
+        Transport transport = null;
+        try {
+            from = new InternetAddress(String.format("noreply@%s.appspotmail.com",
+                    SystemProperty.applicationId.get()), "Conference Central");
+            // The transport of App Engine, which the addresses are mapped to
+            transport = session.getTransport(from);
+            transport.connect();
+        } catch (MessagingException | UnsupportedEncodingException e) {
+            LOG.log(Level.WARNING, "Failed to connect the mail transport", e);
+            close(transport);
+            transport = null;
+        }
+        for (TaskHandle task : tasks) {
+            Map<String, String> taskParams = params.get(task);
+            int attempt = attempt(taskParams);
+            done.add(task);
+            try {
+                if (transport == null) {
+                    throw new MessagingException("No mail transport");
+                }
+                Message message = render(session, from, taskParams, conferences);
+                transport.sendMessage(message, message.getAllRecipients());
+                sent++;
+            } catch (AddressException | IllegalArgumentException e) {
+                // Can't ever be sent
+                deadLetters.add(new DeadLetterMail(task.getName(), taskParams, attempt,
+                        e.toString()));
+            } catch (MessagingException | UnsupportedEncodingException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    deadLetters.add(new DeadLetterMail(task.getName(), taskParams, attempt,
+                            e.toString()));
+                } else {
+                    LOG.log(Level.WARNING, "Failed to send " + task.getName(), e);
+                    int backoff = WINDOW_SECONDS << attempt;
+                    retries.add(retry(task, taskParams, attempt + 1, backoff));
+                    retryInSeconds = retryInSeconds == 0 ? backoff
+                            : Math.min(retryInSeconds, backoff);
+                }
+            }
+        }
+        close(transport);
+
+        if (!deadLetters.isEmpty()) {
+            ofy().save().entities(deadLetters).now();
+            LOG.warning(deadLetters.size() + " mails moved to DeadLetterMail");
+        }
+        if (!retries.isEmpty()) {
+            addAll(queue, retries);
+        }
+        // Only once the retries are queued, a mail is sent twice rather than lost
+        queue.deleteTask(done);
+        if (tasks.size() == budget) {
+            scheduleSender(WINDOW_SECONDS);
+        } else if (retryInSeconds > 0) {
+            scheduleSender(retryInSeconds);
+        }
+        LOG.info(String.format("Sent %d of %d mails", sent, tasks.size()));
+        return sent;
+    }
+
+    private static int attempt(final Map<String, String> params) {
+        String attempt = params.get(ATTEMPT);
+        return attempt == null ? 1 : Integer.parseInt(attempt);
+    }
+
+    /**
+     * Builds the task retrying a mail. Unlike a lease, which the queue counts, the attempt
+     * travels with the task, and the task isn't leased before the backoff.
+     */
+    private static TaskOptions retry(final TaskHandle task, final Map<String, String> params,
+            final int attempt, final int backoffSeconds) {
+        TaskOptions retry = TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+                .taskName(task.getName().split(RETRY_SEPARATOR)[0] + RETRY_SEPARATOR + attempt)
+                .countdownMillis(backoffSeconds * 1000L);
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (!ATTEMPT.equals(param.getKey())) {
+                retry.param(param.getKey(), param.getValue());
+            }
+        }
+        return retry.param(ATTEMPT, Integer.toString(attempt));
+    }
+
+    private static void addAll(final Queue queue, final List<TaskOptions> tasks) {
+        try {
+            queue.add(tasks);
+        } catch (TaskAlreadyExistsException e) {
+            // Queued by an earlier run whose lease expired, the others were added
+        }
+    }
+
+    private void scheduleSender(final int delaySeconds) {
+        long window = (System.currentTimeMillis() + delaySeconds * 1000L)
+                / (WINDOW_SECONDS * 1000L);
+        try {
+            QueueFactory.getDefaultQueue().add(sender(window));
+        } catch (TaskAlreadyExistsException e) {
+            // Already scheduled by a queued mail or another sender
+        }
+    }
+
+    private static Message render(final javax.mail.Session session, final InternetAddress from,
+            final Map<String, String> params, final Map<Key<Conference>, Conference> conferences)
+            throws MessagingException, UnsupportedEncodingException {
+        String subject;
+        String body;
+        if (CONFERENCE_CREATED.equals(params.get(TEMPLATE))) {
+            subject = "You created a new Conference!";
+            body = "Hi, you have created a following conference." + END_OF_LINE
+                    + (params.containsKey(CONFERENCE_INFO) ? params.get(CONFERENCE_INFO)
+                            : conferenceInfo(conference(params, conferences)));
+        } else if (REGISTRATION_CONFIRMED.equals(params.get(TEMPLATE))) {
+            Conference conference = conference(params, conferences);
+            subject = "You are registered to " + conference.getName();
+            body = "Hi, your seat at the following conference is confirmed." + END_OF_LINE
+                    + "Name: " + conference.getName() + END_OF_LINE
+                    + "City: " + conference.getCity() + END_OF_LINE
+                    + "Start Date: " + conference.getStartDate();
+        } else {
+            throw new IllegalArgumentException("Unknown template " + params.get(TEMPLATE));
+        }
+        Message message = new MimeMessage(session);
+        message.setFrom(from);
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress(params.get(TO), ""));
+        message.setSubject(subject);
+        message.setText(body);
+        return message;
+    }
+
+    private static Conference conference(final Map<String, String> params,
+            final Map<Key<Conference>, Conference> conferences) {
+        Conference conference = conferences.get(Key.<Conference> create(
+                params.get(WEBSAFE_CONFERENCE_KEY)));
+        if (conference == null) {
+            throw new IllegalArgumentException("The conference no longer exists");
+        }
+        return conference;
+    }
+
+    private static String conferenceInfo(final Conference conference) {
+        return "Id: " + conference.getId() + END_OF_LINE
+                + "Name: " + conference.getName() + END_OF_LINE
+                + "City: " + conference.getCity() + END_OF_LINE
+                + "Topics: " + TOPIC_JOINER.join(conference.getTopics()) + END_OF_LINE
+                + "Start Date: " + conference.getStartDate() + END_OF_LINE
+                + "End Date: " + conference.getEndDate() + END_OF_LINE
+                + "Max Attendees: " + conference.getMaxAttendees();
+    }
+
+    private static Map<String, String> extractParams(final TaskHandle task) {
+        Map<String, String> params = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> param : task.extractParams()) {
+                params.put(param.getKey(), param.getValue());
+            }
+        } catch (UnsupportedEncodingException e) {
+            // Rendered as an unknown template, so dead-lettered
+            LOG.log(Level.WARNING, "Unreadable mail task " + task.getName(), e);
+        }
+        return params;
+    }
+
+    private static void close(final Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            LOG.log(Level.WARNING, "Failed to close the mail transport", e);
+        }
+    }
+}
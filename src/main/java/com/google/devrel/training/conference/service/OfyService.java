@@ -1,8 +1,24 @@
 package com.google.devrel.training.conference.service;
 
+import com.google.devrel.training.conference.domain.Agenda;
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceOrdinal;
+import com.google.devrel.training.conference.domain.ConferenceAlias;
+import com.google.devrel.training.conference.domain.DeadLetterMail;
+import com.google.devrel.training.conference.domain.IdempotencyRecord;
 import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.QueryShape;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.SearchDocument;
+import com.google.devrel.training.conference.domain.SearchTerm;
+import com.google.devrel.training.conference.domain.RegistrationTicket;
+import com.google.devrel.training.conference.domain.SeatHold;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.domain.TopicBitmap;
 import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionCount;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.domain.WishlistEntry;
 import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyService;
@@ -19,6 +35,22 @@ public class OfyService {
     	factory().register(Profile.class);
     	factory().register(Conference.class);
     	factory().register(Session.class);
+    	factory().register(SeatShard.class);
+    	factory().register(ConferenceAlias.class);
+    	factory().register(RegistrationTicket.class);
+    	factory().register(SeatHold.class);
+    	factory().register(IdempotencyRecord.class);
+    	factory().register(QueryShape.class);
+    	factory().register(SearchTerm.class);
+    	factory().register(SearchDocument.class);
+    	factory().register(TopicBitmap.class);
+    	factory().register(ConferenceOrdinal.class);
+    	factory().register(Speaker.class);
+    	factory().register(Agenda.class);
+    	factory().register(Registration.class);
+    	factory().register(WishlistEntry.class);
+    	factory().register(SessionCount.class);
+    	factory().register(DeadLetterMail.class);
     }
 
     /**
@@ -0,0 +1,49 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.googlecode.objectify.Key;
+
+/**
+ * Fills in the organizer details of the Conferences of a response before it is serialized.
+ *
+ * Conferences carry a copy of the organizer's display name; the ones saved before it was
+ * copied get it from the organizer's Profile. The Profiles of a page are read with a single
+ * batch get, whatever the number of Conferences and organizers.
+ */
+public class OrganizerEnricher {
+
+    /**
+     * Attaches the organizer's display name to the Conferences which don't carry it.
+     *
+     * The Conferences are not saved, the task rewriting them when the organizer changes
+     * his/her name fills in the stored copy.
+     *
+     * @param conferences the Conferences of a response.
+     */
+    public void enrich(final Collection<Conference> conferences) {
+        Set<Key<Profile>> organizerKeys = new LinkedHashSet<>();
+        for (Conference conference : conferences) {
+            if (!conference.hasOrganizerDisplayName()) {
+                organizerKeys.add(conference.getProfileKey());
+            }
+        }
+        if (organizerKeys.isEmpty()) {
+            return;
+        }
+        Map<Key<Profile>, Profile> organizers = ofy().load().keys(organizerKeys);
+        for (Conference conference : conferences) {
+            Profile organizer = organizers.get(conference.getProfileKey());
+            if (organizer != null) {
+                conference.updateOrganizerDisplayName(organizer.getDisplayName());
+            }
+        }
+    }
+}
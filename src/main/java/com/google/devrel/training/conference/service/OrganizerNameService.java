@@ -0,0 +1,119 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Keeps the organizer display name copied on Conferences in line with the organizer's Profile.
+ *
+ * The Conferences of an organizer are rewritten by a chain of tasks, a batch per transaction.
+ * A batch holds at most 25 Conferences, the limit of entity groups in a cross-group
+ * transaction, so concurrent registrations booking seats on a Conference aren't overwritten.
+ */
+public class OrganizerNameService {
+
+    static final int BATCH_SIZE = 25;
+
+    private static final String TASK_URL = "/tasks/updateorganizername";
+
+    /**
+     * Schedules the rewrite of the Conferences of an organizer.
+     *
+     * @param userId the userId of the organizer.
+     */
+    public void scheduleUpdate(final String userId) {
+        scheduleUpdate(userId, null);
+    }
+
+    /**
+     * Schedules the next batch of a rewrite.
+     *
+     * @param userId the userId of the organizer.
+     * @param cursor the cursor returned by the previous batch, null to start over.
+     */
+    public void scheduleUpdate(final String userId, final String cursor) {
+        TaskOptions task = TaskOptions.Builder.withUrl(TASK_URL).param("userId", userId);
+        if (cursor != null) {
+            task.param("cursor", cursor);
+        }
+        QueueFactory.getDefaultQueue().add(task);
+    }
+
+    /**
+     * Schedules the rewrite of the Conferences of a batch of organizers, used to fill in the
+     * name on Conferences saved before it was copied.
+     *
+     * @param cursor where the previous batch of Profiles stopped, null for the first batch.
+     * @return the cursor of the next batch of Profiles, null when this was the last one.
+     */
+    public String scheduleUpdates(final String cursor) {
+        Query<Profile> query = ofy().load().type(Profile.class).limit(BATCH_SIZE);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<Profile>> iterator = query.keys().iterator();
+        int scheduled = 0;
+        while (iterator.hasNext()) {
+            scheduleUpdate(iterator.next().getName());
+            scheduled++;
+        }
+        return scheduled == BATCH_SIZE ? iterator.getCursor().toWebSafeString() : null;
+    }
+
+    /**
+     * Copies the display name of the organizer's Profile onto a batch of his/her Conferences.
+     *
+     * The name is read when the batch runs, so batches scheduled by successive renames all
+     * write the latest one.
+     *
+     * @param userId the userId of the organizer.
+     * @param cursor where the previous batch stopped, null for the first batch.
+     * @return the cursor of the next batch, null when this was the last one.
+     */
+    public String updateConferences(final String userId, final String cursor) {
+        Profile profile = ofy().load().key(Key.create(Profile.class, userId)).now();
+        Query<Conference> query = ofy().load().type(Conference.class)
+                .filter("organizerUserId", userId).limit(BATCH_SIZE);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<Conference>> iterator = query.keys().iterator();
+        final List<Key<Conference>> conferenceKeys = new ArrayList<>(BATCH_SIZE);
+        while (iterator.hasNext()) {
+            conferenceKeys.add(iterator.next());
+        }
+        if (profile != null && !conferenceKeys.isEmpty()) {
+            final String displayName = profile.getDisplayName();
+            ofy().transact(new Work<Void>() {
+                @Override
+                public Void run() {
+                    Map<Key<Conference>, Conference> conferences = ofy().load()
+                            .keys(conferenceKeys);
+                    List<Conference> renamed = new ArrayList<>(conferences.size());
+                    for (Conference conference : conferences.values()) {
+                        if (conference.updateOrganizerDisplayName(displayName)) {
+                            renamed.add(conference);
+                        }
+                    }
+                    ofy().save().entities(renamed);
+                    return null;
+                }
+            });
+        }
+        return conferenceKeys.size() == BATCH_SIZE
+                ? iterator.getCursor().toWebSafeString() : null;
+    }
+}
@@ -0,0 +1,108 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.googlecode.objectify.Key;
+
+/**
+ * Runs the side effects of a transaction once it commits, and only then.
+ *
+ * A side effect is enrolled inside the transaction as a transactional task, which the datastore
+ * adds when the transaction commits and drops when it rolls back. The task only carries the key
+ * of the Conference, the worker loads what it needs when it runs. A task may run more than once,
+ * so each side effect is deduplicated: the mails are named tasks of MailService, and indexing a
+ * Conference again writes the same index.
+ */
+public class Outbox {
+
+    private static final Logger LOG = Logger.getLogger(Outbox.class.getName());
+
+    private static final String TASK_URL = "/tasks/outbox";
+
+    /**
+     * The side effects, each one a task. A transaction adds at most 5 transactional tasks.
+     */
+    public enum Effect {
+        /**
+         * Indexes a new Conference and mails its organizer.
+         */
+        CONFERENCE_CREATED
+    }
+
+    private final SearchService searchService = new SearchService();
+
+    private final MailService mail = new MailService();
+
+    /**
+     * Enrolls a side effect in the current transaction.
+     *
+     * @param effect the side effect.
+     * @param conferenceKey the key of the Conference it is about.
+     * @throws IllegalStateException when there is no current transaction.
+     */
+    public void enroll(final Effect effect, final Key<Conference> conferenceKey) {
+        Transaction transaction = ofy().getTransaction();
+        if (transaction == null) {
+            throw new IllegalStateException("Side effects are enrolled in a transaction");
+        }
+        QueueFactory.getDefaultQueue().add(transaction, TaskOptions.Builder
+                .withUrl(TASK_URL)
+                .param("effect", effect.name())
+                .param("websafeConferenceKey", conferenceKey.getString()));
+    }
+
+    /**
+     * Runs a side effect, called by the task enrolled.
+     *
+     * @param effect the side effect.
+     * @param conferenceKey the key of the Conference it is about.
+     */
+    public void deliver(final Effect effect, final Key<Conference> conferenceKey) {
+        Conference conference = ofy().load().key(conferenceKey).now();
+        if (conference == null) {
+            LOG.warning(String.format("Dropped %s of %s, deleted since", effect,
+                    conferenceKey.getString()));
+            return;
+        }
+        switch (effect) {
+        case CONFERENCE_CREATED:
+            searchService.scheduleIndex(conferenceKey);
+            Profile organizer = ofy().load()
+                    .key(Key.create(Profile.class, conference.getOrganizerUserId())).now();
+            if (organizer != null) {
+                await(mail.queueConferenceCreated(organizer.getMainEmail(), conferenceKey));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown side effect " + effect);
+        }
+    }
+
+    /**
+     * Waits for a mail to be queued, so that the task is retried when it wasn't.
+     */
+    private static void await(final Future<TaskHandle> added) {
+        try {
+            added.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TaskAlreadyExistsException)) {
+                throw new IllegalStateException(e.getCause());
+            }
+            // Queued by an earlier run of the task
+        }
+    }
+}
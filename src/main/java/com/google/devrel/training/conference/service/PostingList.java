@@ -0,0 +1,80 @@
+package com.google.devrel.training.conference.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Encodes the postings of a search term: the ids of the documents containing the term, with
+ * the weight of the term in each document.
+ *
+ * Ids are stored in ascending order as the difference to the previous id, and ids and weights
+ * as variable length integers (7 bits per byte, the high bit set on all but the last byte), so
+ * a posting usually takes 2 to 4 bytes instead of 12.
+ */
+public final class PostingList {
+
+    private PostingList() {}
+
+    /**
+     * Encodes postings.
+     *
+     * @param postings the weight of the term by document id, ids must be positive.
+     * @return the encoded postings.
+     */
+    public static byte[] encode(final SortedMap<Long, Integer> postings) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(postings.size() * 4);
+        long previous = 0;
+        for (Map.Entry<Long, Integer> posting : postings.entrySet()) {
+            writeVarLong(out, posting.getKey() - previous);
+            writeVarLong(out, posting.getValue());
+            previous = posting.getKey();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes postings written by encode.
+     *
+     * @param bytes the encoded postings, may be null for no postings.
+     * @return the weight of the term by document id.
+     * @throws IllegalArgumentException when the bytes are truncated.
+     */
+    public static SortedMap<Long, Integer> decode(final byte[] bytes) {
+        SortedMap<Long, Integer> postings = new TreeMap<>();
+        if (bytes == null) {
+            return postings;
+        }
+        int[] position = {0};
+        long id = 0;
+        while (position[0] < bytes.length) {
+            id += readVarLong(bytes, position);
+            postings.put(id, (int) readVarLong(bytes, position));
+        }
+        return postings;
+    }
+
+    private static void writeVarLong(final ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(final byte[] bytes, final int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated posting list");
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed posting list");
+    }
+}
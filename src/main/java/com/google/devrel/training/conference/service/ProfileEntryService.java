@@ -0,0 +1,305 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Keeps the registrations and the wishlist of each user as Registration and WishlistEntry
+ * children of their Profile, so the Profile stays small and is not rewritten by them.
+ *
+ * Profiles written by earlier versions hold both inline. They are moved to child entities by
+ * the "profiles" phase of the /tasks/migrateconferences task chain, or on first use by the
+ * methods below, so callers never see the inline lists. Children share the entity group of
+ * their Profile, so they are written in the same transactions as before.
+ *
+ * Children are keyed by compact ids, see Registration and WishlistEntry. Those keyed by
+ * websafe keys, as first written, are rewritten when listed.
+ */
+public class ProfileEntryService {
+
+    private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+    /**
+     * Returns true when the user attends a Conference. May be called inside a transaction.
+     *
+     * @param profileKey the key of the Profile, which must have been migrated.
+     * @param conference the Conference.
+     * @return true when registered.
+     */
+    public boolean isRegistered(final Key<Profile> profileKey, final Conference conference) {
+        return !ofy().load().keys(Registration.keys(profileKey, conference)).isEmpty();
+    }
+
+    /**
+     * Returns true when the user attends a Conference, with a single get once the Profile is
+     * migrated.
+     *
+     * @param profile the Profile.
+     * @param conference the Conference.
+     * @return true when registered.
+     */
+    public boolean isRegistered(final Profile profile, final Conference conference) {
+        migrateIfNeeded(profile);
+        return isRegistered(Key.create(profile), conference);
+    }
+
+    /**
+     * Returns the Registration of the user to a Conference. May be called inside a
+     * transaction.
+     *
+     * @param profileKey the key of the Profile, which must have been migrated.
+     * @param conference the Conference.
+     * @return the Registration, null when not registered.
+     */
+    public Registration getRegistration(final Key<Profile> profileKey,
+            final Conference conference) {
+        for (Registration registration : ofy().load()
+                .keys(Registration.keys(profileKey, conference)).values()) {
+            return registration;
+        }
+        return null;
+    }
+
+    /**
+     * Registers the user to a Conference with one seat, in the current transaction if any.
+     *
+     * @param profileKey the key of the Profile.
+     * @param conference the Conference.
+     * @return the new Registration.
+     */
+    public Registration register(final Key<Profile> profileKey, final Conference conference) {
+        return register(profileKey, conference, 1);
+    }
+
+    /**
+     * Registers the user to a Conference, in the current transaction if any.
+     *
+     * @param profileKey the key of the Profile.
+     * @param conference the Conference.
+     * @param seats the number of seats booked for the user.
+     * @return the new Registration.
+     */
+    public Registration register(final Key<Profile> profileKey, final Conference conference,
+            final int seats) {
+        Registration registration = new Registration(profileKey, conference, seats);
+        ofy().save().entity(registration);
+        return registration;
+    }
+
+    /**
+     * Unregisters the user from a Conference, in the current transaction if any.
+     *
+     * @param profileKey the key of the Profile.
+     * @param conference the Conference.
+     */
+    public void unregister(final Key<Profile> profileKey, final Conference conference) {
+        ofy().delete().keys(Registration.keys(profileKey, conference));
+    }
+
+    /**
+     * Lists the Conferences a user attends with a keys-only query.
+     *
+     * @param profile the Profile.
+     * @return the keys of the Conferences, legacy keys resolved.
+     */
+    public List<Key<Conference>> conferenceKeysToAttend(final Profile profile) {
+        migrateIfNeeded(profile);
+        Set<Key<Conference>> result = new LinkedHashSet<>();
+        List<String> legacyKeys = new ArrayList<>();
+        final List<Key<Registration>> stale = new ArrayList<>();
+        for (Key<Registration> key : ofy().load().type(Registration.class)
+                .ancestor(Key.create(profile)).keys()) {
+            Key<Conference> conferenceKey = Registration.conferenceKey(key);
+            if (conferenceKey.getParent() != null) {
+                legacyKeys.add(key.getName());
+            } else {
+                result.add(conferenceKey);
+            }
+            if (!Registration.isCompact(key)) {
+                stale.add(key);
+            }
+        }
+        if (!legacyKeys.isEmpty()) {
+            result.addAll(conferenceKeys.resolveAll(legacyKeys).values());
+        }
+        if (!stale.isEmpty()) {
+            rewriteRegistrations(Key.create(profile), stale);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Adds a Session to the wishlist of a user; adding it again is a no-op.
+     *
+     * @param profile the Profile.
+     * @param websafeSessionKey the websafe key of the Session, possibly a legacy one.
+     */
+    public void addToWishlist(final Profile profile, final String websafeSessionKey) {
+        migrateIfNeeded(profile);
+        ofy().save().entity(new WishlistEntry(Key.create(profile),
+                conferenceKeys.resolveSession(websafeSessionKey))).now();
+    }
+
+    /**
+     * Removes a Session from the wishlist of a user, under its given and its resolved key.
+     *
+     * @param profile the Profile.
+     * @param websafeSessionKey the websafe key of the Session, possibly a legacy one.
+     */
+    public void removeFromWishlist(final Profile profile, final String websafeSessionKey) {
+        migrateIfNeeded(profile);
+        Key<Profile> profileKey = Key.create(profile);
+        Set<Key<WishlistEntry>> entryKeys = new LinkedHashSet<>();
+        for (Key<Session> sessionKey : ImmutableList.of(
+                WebsafeKeyCache.<Session> parse(websafeSessionKey),
+                conferenceKeys.resolveSession(websafeSessionKey))) {
+            entryKeys.add(WishlistEntry.key(profileKey, sessionKey));
+            // Entries keyed by the websafe key, before compact ids
+            entryKeys.add(Key.create(profileKey, WishlistEntry.class, sessionKey.getString()));
+        }
+        ofy().delete().keys(entryKeys).now();
+    }
+
+    /**
+     * Lists the wishlist of a user with a keys-only query.
+     *
+     * @param profile the Profile.
+     * @return the keys of the Sessions, legacy keys resolved.
+     */
+    public List<Key<Session>> wishlistSessionKeys(final Profile profile) {
+        migrateIfNeeded(profile);
+        Set<Key<Session>> sessionKeys = new LinkedHashSet<>();
+        final List<Key<WishlistEntry>> stale = new ArrayList<>();
+        for (Key<WishlistEntry> key : ofy().load().type(WishlistEntry.class)
+                .ancestor(Key.create(profile)).keys()) {
+            sessionKeys.add(conferenceKeys.resolveSession(WishlistEntry.sessionKey(key)));
+            if (!WishlistEntry.isCompact(key)) {
+                stale.add(key);
+            }
+        }
+        if (!stale.isEmpty()) {
+            rewriteWishlist(Key.create(profile), stale);
+        }
+        return new ArrayList<>(sessionKeys);
+    }
+
+    /**
+     * Moves the inline lists of a Profile to child entities, in a transaction of its own.
+     *
+     * @param profileKey the key of the Profile.
+     * @return true when the Profile had inline lists.
+     */
+    public boolean migrate(final Key<Profile> profileKey) {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                Profile profile = ofy().load().key(profileKey).now();
+                return profile != null && migrateInTransaction(profile);
+            }
+        });
+    }
+
+    /**
+     * Moves the inline lists of a Profile loaded in the current transaction to child
+     * entities, and saves it.
+     *
+     * @param profile the Profile.
+     * @return true when the Profile had inline lists.
+     */
+    public boolean migrateInTransaction(final Profile profile) {
+        if (!profile.hasLegacyLists()) {
+            return false;
+        }
+        Key<Profile> profileKey = Key.create(profile);
+        List<Object> entries = new ArrayList<>();
+        // A Conference deleted since the registration is dropped
+        for (Conference conference : ofy().transactionless().load().keys(conferenceKeys
+                .resolveAll(profile.getLegacyConferenceKeysToAttend()).values()).values()) {
+            entries.add(new Registration(profileKey, conference));
+        }
+        for (String websafeSessionKey : profile.getLegacySessionKeys()) {
+            entries.add(new WishlistEntry(profileKey,
+                    conferenceKeys.resolveSession(websafeSessionKey)));
+        }
+        profile.clearLegacyLists();
+        ofy().save().entities(entries);
+        ofy().save().entity(profile);
+        return true;
+    }
+
+    /**
+     * Rewrites Registrations keyed by websafe keys under compact ids, with their seats. They
+     * are reloaded in the transaction, so one deleted since it was listed stays deleted.
+     */
+    private void rewriteRegistrations(final Key<Profile> profileKey,
+            final List<Key<Registration>> stale) {
+        final Map<Key<Conference>, Conference> conferences = new HashMap<>();
+        List<Key<Conference>> staleConferenceKeys = new ArrayList<>(stale.size());
+        for (Key<Registration> key : stale) {
+            staleConferenceKeys.add(Registration.conferenceKey(key));
+        }
+        // A Conference deleted since the registration is dropped
+        conferences.putAll(ofy().load().keys(staleConferenceKeys));
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                List<Registration> registrations = new ArrayList<>(stale.size());
+                Map<Key<Registration>, Registration> current = ofy().load().keys(stale);
+                for (Map.Entry<Key<Registration>, Registration> entry : current.entrySet()) {
+                    Conference conference = conferences.get(
+                            Registration.conferenceKey(entry.getKey()));
+                    if (conference != null) {
+                        registrations.add(new Registration(profileKey, conference,
+                                entry.getValue().getSeats()));
+                    }
+                }
+                ofy().delete().keys(current.keySet());
+                ofy().save().entities(registrations);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Rewrites WishlistEntries keyed by websafe keys under compact ids. They are reloaded in
+     * the transaction, so one removed since it was listed stays removed.
+     */
+    private void rewriteWishlist(final Key<Profile> profileKey,
+            final List<Key<WishlistEntry>> stale) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                Set<Key<WishlistEntry>> current = ofy().load().keys(stale).keySet();
+                List<WishlistEntry> entries = new ArrayList<>(current.size());
+                for (Key<WishlistEntry> key : current) {
+                    entries.add(new WishlistEntry(profileKey, WishlistEntry.sessionKey(key)));
+                }
+                ofy().delete().keys(current);
+                ofy().save().entities(entries);
+                return null;
+            }
+        });
+    }
+
+    private void migrateIfNeeded(final Profile profile) {
+        if (profile.hasLegacyLists()) {
+            migrate(Key.create(profile));
+            profile.clearLegacyLists();
+        }
+    }
+}
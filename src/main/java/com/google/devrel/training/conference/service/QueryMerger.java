@@ -0,0 +1,186 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.common.base.Joiner;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Merges the results of queries sharing the same sort order into one stream, in that order,
+ * the way the datastore runs IN filters but without waiting for one query before starting
+ * the next.
+ *
+ * The cursor of a merged stream holds one entry per query: "*" once the query is exhausted,
+ * otherwise its websafe cursor, followed by "~" and the websafe key of the result it had
+ * fetched but not yet returned, if any. Resuming reads those pending results back with a
+ * single batch get, while the queries run.
+ */
+public class QueryMerger {
+
+    private static final String EXHAUSTED = "*";
+
+    private static final String PENDING_SEPARATOR = "~";
+
+    /**
+     * Starts the queries and returns their merged results.
+     *
+     * All the queries are started before any of their results is read, so their first
+     * batches are fetched concurrently.
+     *
+     * @param queries the queries, each sorted by order.
+     * @param order the order of the queries; results comparing equal are the same entity,
+     *        found by several queries, and returned once.
+     * @param cursor the cursor of a previous MergedIterator over the same queries, null to
+     *        start from the first results.
+     * @return the merged results.
+     * @throws IllegalArgumentException when the cursor is not valid for the queries.
+     */
+    public <T> MergedIterator<T> startAt(final List<Query<T>> queries,
+            final Comparator<? super T> order, final String cursor) {
+        String[] entries = cursor == null ? new String[queries.size()] : cursor.split(",", -1);
+        if (entries.length != queries.size()) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        List<Source<T>> sources = new ArrayList<>(queries.size());
+        List<Key<T>> pendingKeys = new ArrayList<>();
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                String entry = entries[i] == null ? "" : entries[i];
+                Key<T> pendingKey = null;
+                int separator = entry.indexOf(PENDING_SEPARATOR);
+                if (separator >= 0) {
+                    pendingKey = Key.create(entry.substring(separator + 1));
+                    pendingKeys.add(pendingKey);
+                    entry = entry.substring(0, separator);
+                }
+                QueryResultIterator<T> iterator = null;
+                if (!entry.equals(EXHAUSTED)) {
+                    Query<T> query = entry.isEmpty() ? queries.get(i)
+                            : queries.get(i).startAt(Cursor.fromWebSafeString(entry));
+                    iterator = query.iterator();
+                }
+                sources.add(new Source<T>(iterator, pendingKey));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        Map<Key<T>, T> pending = ofy().load().keys(pendingKeys);
+        for (Source<T> source : sources) {
+            if (source.pendingKey != null) {
+                // Null when deleted since, the source then just moves on
+                source.head = pending.get(source.pendingKey);
+            }
+        }
+        return new MergedIterator<>(sources, order);
+    }
+
+    /**
+     * The merged results of several queries.
+     */
+    public static class MergedIterator<T> implements Iterator<T> {
+
+        private final List<Source<T>> sources;
+
+        private final Comparator<? super T> order;
+
+        private MergedIterator(final List<Source<T>> sources, final Comparator<? super T> order) {
+            this.sources = sources;
+            this.order = order;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return smallestHead() != null;
+        }
+
+        @Override
+        public T next() {
+            T next = smallestHead();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            for (Source<T> source : sources) {
+                if (source.head != null && order.compare(source.head, next) == 0) {
+                    source.head = null;
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the cursor positioned after the last result returned.
+         *
+         * @return the cursor, null when no query has results left.
+         */
+        public String getCursor() {
+            List<String> entries = new ArrayList<>(sources.size());
+            boolean hasNext = false;
+            for (Source<T> source : sources) {
+                String entry = EXHAUSTED;
+                if (source.iterator != null && source.iterator.hasNext()) {
+                    entry = source.iterator.getCursor().toWebSafeString();
+                }
+                if (source.head != null) {
+                    entry += PENDING_SEPARATOR + Key.create(source.head).getString();
+                }
+                hasNext |= !entry.equals(EXHAUSTED);
+                entries.add(entry);
+            }
+            return hasNext ? Joiner.on(',').join(entries) : null;
+        }
+
+        /**
+         * Fetches the next result of every query whose previous one was returned, and
+         * returns the smallest.
+         */
+        private T smallestHead() {
+            T smallest = null;
+            for (Source<T> source : sources) {
+                if (source.head == null && source.iterator != null) {
+                    if (source.iterator.hasNext()) {
+                        source.head = source.iterator.next();
+                    } else {
+                        source.iterator = null;
+                    }
+                }
+                if (source.head != null
+                        && (smallest == null || order.compare(source.head, smallest) < 0)) {
+                    smallest = source.head;
+                }
+            }
+            return smallest;
+        }
+    }
+
+    /**
+     * A query being merged, with the result it fetched but didn't return yet.
+     */
+    private static class Source<T> {
+
+        private QueryResultIterator<T> iterator;
+
+        private final Key<T> pendingKey;
+
+        private T head;
+
+        Source(final QueryResultIterator<T> iterator, final Key<T> pendingKey) {
+            this.iterator = iterator;
+            this.pendingKey = pendingKey;
+        }
+    }
+}
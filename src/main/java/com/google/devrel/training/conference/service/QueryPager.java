@@ -0,0 +1,72 @@
+package com.google.devrel.training.conference.service;
+
+import java.util.List;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.devrel.training.conference.Constants;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Reads query results a page at a time, resuming from a datastore cursor, so the cost of a
+ * request depends on the page size and not on how many entities match.
+ */
+public class QueryPager {
+
+    /**
+     * Returns the page size for the limit asked by a client.
+     *
+     * @param limit the limit sent by the client, may be null.
+     * @return the limit bounded by 1 and Constants.MAX_PAGE_SIZE, or the default page size.
+     */
+    public int pageSize(final Integer limit) {
+        if (limit == null || limit <= 0) {
+            return Constants.DEFAULT_PAGE_SIZE;
+        }
+        return Math.min(limit, Constants.MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Appends a page of results to the given list.
+     *
+     * One more entity than needed is fetched, so the last page doesn't hand out a cursor
+     * leading to an empty page.
+     *
+     * @param query the query, without limit or cursor.
+     * @param pageSize the number of results to append.
+     * @param cursor the websafe cursor returned with the previous page, null for the first page.
+     * @param page the list to append the results to.
+     * @return the websafe cursor of the next page, null when there are no more results.
+     * @throws IllegalArgumentException when the cursor is not a valid cursor.
+     */
+    public <T> String readPage(final Query<T> query, final int pageSize, final String cursor,
+            final List<T> page) {
+        QueryResultIterator<T> iterator = startAt(query.limit(pageSize + 1), cursor).iterator();
+        for (int i = 0; i < pageSize && iterator.hasNext(); i++) {
+            page.add(iterator.next());
+        }
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        return iterator.getCursor().toWebSafeString();
+    }
+
+    /**
+     * Returns the query resuming from the given cursor.
+     *
+     * @param query the query.
+     * @param cursor a websafe cursor, null to start from the first result.
+     * @return the query starting at the cursor.
+     * @throws IllegalArgumentException when the cursor is not a valid cursor.
+     */
+    public <T> Query<T> startAt(final Query<T> query, final String cursor) {
+        if (cursor == null) {
+            return query;
+        }
+        try {
+            return query.startAt(Cursor.fromWebSafeString(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.enumeration.RegistrationResult;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Registers users to Conferences, one transaction per registration.
+ *
+ * Everything a registration needs is passed in and kept in final locals, so the service can be
+ * shared by concurrent requests and a retried transaction always works on the same Conference.
+ */
+public class RegistrationService {
+
+    private static final String REGISTER = "registerForConference";
+
+    private static final String UNREGISTER = "unregisterFromConference";
+
+    private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+    private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+    private final IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+    private final ProfileEntryService profileEntries = new ProfileEntryService();
+
+    /**
+     * Books a seat of the Conference and adds it to the conferences the user attends.
+     *
+     * @param userId the userId of the user registering.
+     * @param websafeConferenceKey the String representation of the Conference Key.
+     * @return REGISTERED on success, otherwise the reason of the failure.
+     */
+    public RegistrationResult register(final String userId, final String websafeConferenceKey) {
+        return register(userId, websafeConferenceKey, null);
+    }
+
+    /**
+     * Registers like register(userId, websafeConferenceKey), once per idempotency key: a retry
+     * with the same key returns REGISTERED again instead of ALREADY_REGISTERED.
+     *
+     * @param userId the userId of the user registering.
+     * @param websafeConferenceKey the String representation of the Conference Key.
+     * @param idempotencyKey the key chosen by the client, may be null.
+     * @return REGISTERED on success, otherwise the reason of the failure.
+     */
+    public RegistrationResult register(final String userId, final String websafeConferenceKey,
+            final String idempotencyKey) {
+        String replayed = idempotencyStore.find(REGISTER, userId, websafeConferenceKey,
+                idempotencyKey);
+        if (replayed != null) {
+            return RegistrationResult.valueOf(replayed);
+        }
+        final Key<Conference> conferenceKey = conferenceKeys.resolve(websafeConferenceKey);
+        final Key<Profile> profileKey = Key.create(Profile.class, userId);
+        // Seats are booked on the shards, the Conference itself is read outside the transaction
+        final Conference conference = ofy().transactionless().load().key(conferenceKey).now();
+        if (conference == null) {
+            return RegistrationResult.CONFERENCE_NOT_FOUND;
+        }
+        RegistrationResult result = ofy().transact(new Work<RegistrationResult>() {
+            @Override
+            public RegistrationResult run() {
+                // A concurrent retry may have committed since the first look up
+                String replayed = idempotencyStore.find(REGISTER, userId,
+                        websafeConferenceKey, idempotencyKey);
+                if (replayed != null) {
+                    return RegistrationResult.valueOf(replayed);
+                }
+                Profile profile = ofy().load().key(profileKey).now();
+                if (profile == null) {
+                    return RegistrationResult.PROFILE_NOT_FOUND;
+                }
+                profileEntries.migrateInTransaction(profile);
+                if (profileEntries.isRegistered(profileKey, conference)) {
+                    return RegistrationResult.ALREADY_REGISTERED;
+                }
+                if (!seatInventory.bookSeats(conference, 1)) {
+                    return RegistrationResult.NO_SEATS_AVAILABLE;
+                }
+                profileEntries.register(profileKey, conference);
+                idempotencyStore.record(REGISTER, userId, websafeConferenceKey,
+                        idempotencyKey, RegistrationResult.REGISTERED.name());
+                return RegistrationResult.REGISTERED;
+            }
+        });
+        if (result == RegistrationResult.REGISTERED) {
+            seatInventory.scheduleSync(conference);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Registration of a user to a Conference, once register has migrated the
+     * Profile of the user.
+     *
+     * @param userId the userId of the user.
+     * @param websafeConferenceKey the String representation of the Conference Key.
+     * @return the Registration, null when not registered.
+     */
+    public Registration getRegistration(final String userId,
+            final String websafeConferenceKey) {
+        Conference conference = ofy().load().key(conferenceKeys.resolve(websafeConferenceKey))
+                .now();
+        if (conference == null) {
+            return null;
+        }
+        return profileEntries.getRegistration(Key.create(Profile.class, userId), conference);
+    }
+
+    /**
+     * Gives the seat of the user back and removes the Conference from the conferences the user
+     * attends.
+     *
+     * @param userId the userId of the user unregistering.
+     * @param websafeConferenceKey the String representation of the Conference Key.
+     * @return UNREGISTERED on success, otherwise the reason of the failure: SEATS_NOT_RETURNED
+     *         when the seats don't fit back in the Conference, which keeps the Registration.
+     */
+    public RegistrationResult unregister(final String userId, final String websafeConferenceKey) {
+        return unregister(userId, websafeConferenceKey, null);
+    }
+
+    /**
+     * Unregisters like unregister(userId, websafeConferenceKey), once per idempotency key: a
+     * retry with the same key returns UNREGISTERED again instead of NOT_REGISTERED.
+     *
+     * @param userId the userId of the user unregistering.
+     * @param websafeConferenceKey the String representation of the Conference Key.
+     * @param idempotencyKey the key chosen by the client, may be null.
+     * @return UNREGISTERED on success, otherwise the reason of the failure.
+     */
+    public RegistrationResult unregister(final String userId, final String websafeConferenceKey,
+            final String idempotencyKey) {
+        String replayed = idempotencyStore.find(UNREGISTER, userId, websafeConferenceKey,
+                idempotencyKey);
+        if (replayed != null) {
+            return RegistrationResult.valueOf(replayed);
+        }
+        final Key<Conference> conferenceKey = conferenceKeys.resolve(websafeConferenceKey);
+        final Key<Profile> profileKey = Key.create(Profile.class, userId);
+        final Conference conference = ofy().transactionless().load().key(conferenceKey).now();
+        if (conference == null) {
+            return RegistrationResult.CONFERENCE_NOT_FOUND;
+        }
+        RegistrationResult result = ofy().transact(new Work<RegistrationResult>() {
+            @Override
+            public RegistrationResult run() {
+                String replayed = idempotencyStore.find(UNREGISTER, userId,
+                        websafeConferenceKey, idempotencyKey);
+                if (replayed != null) {
+                    return RegistrationResult.valueOf(replayed);
+                }
+                Profile profile = ofy().load().key(profileKey).now();
+                if (profile == null) {
+                    return RegistrationResult.PROFILE_NOT_FOUND;
+                }
+                profileEntries.migrateInTransaction(profile);
+                Registration registration = profileEntries.getRegistration(profileKey,
+                        conference);
+                if (registration == null) {
+                    return RegistrationResult.NOT_REGISTERED;
+                }
+                if (!seatInventory.giveBackSeats(conference, registration.getSeats())) {
+                    // The seats wouldn't fit, the Registration is kept so they aren't lost
+                    return RegistrationResult.SEATS_NOT_RETURNED;
+                }
+                profileEntries.unregister(profileKey, conference);
+                idempotencyStore.record(UNREGISTER, userId, websafeConferenceKey,
+                        idempotencyKey, RegistrationResult.UNREGISTERED.name());
+                return RegistrationResult.UNREGISTERED;
+            }
+        });
+        if (result == RegistrationResult.UNREGISTERED) {
+            seatInventory.scheduleSync(conference);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,583 @@
+package com.google.devrel.training.conference.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, laid out like a Roaring bitmap.
+ *
+ * Values are split by their 16 high bits into chunks of 65536. A chunk holding at most 4096
+ * values stores them as a sorted array of 16 bit values, a denser chunk as a 8 KB bitmap, so
+ * a set never takes much more than 2 bytes per value while intersections and unions of dense
+ * chunks run 64 values at a time.
+ *
+ * Instances are mutable with add and remove; and, or and andNot return new bitmaps.
+ */
+public final class RoaringBitmap {
+
+    /**
+     * Above this cardinality a bitmap container is smaller than an array container.
+     */
+    private static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private static final byte ARRAY_CONTAINER = 0;
+
+    private static final byte BITMAP_CONTAINER = 1;
+
+    /**
+     * The 16 high bits of the values of each container, ascending.
+     */
+    private char[] keys = new char[0];
+
+    private Container[] containers = new Container[0];
+
+    private int size;
+
+    /**
+     * Returns a bitmap holding the given values.
+     *
+     * @param values the values, non-negative.
+     * @return the bitmap.
+     */
+    public static RoaringBitmap of(final int... values) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value the value, non-negative.
+     */
+    public void add(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char key = (char) (value >>> 16);
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            containers[index] = containers[index].add((char) value);
+        } else {
+            insert(-index - 1, key, new ArrayContainer(new char[] {(char) value}, 1));
+        }
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param value the value.
+     */
+    public void remove(final int value) {
+        if (value < 0) {
+            return;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index < 0) {
+            return;
+        }
+        containers[index] = containers[index].remove((char) value);
+        if (containers[index].cardinality() == 0) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+            size--;
+        }
+    }
+
+    public boolean contains(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the values of this bitmap present in the other one.
+     *
+     * @param other the other bitmap.
+     * @return the intersection.
+     */
+    public RoaringBitmap and(final RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values present in either bitmap.
+     *
+     * @param other the other bitmap.
+     * @return the union.
+     */
+    public RoaringBitmap or(final RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values of this bitmap absent from the other one.
+     *
+     * @param other the other bitmap.
+     * @return the difference.
+     */
+    public RoaringBitmap andNot(final RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the values, ascending.
+     *
+     * @return the values.
+     */
+    public int[] toArray() {
+        int[] values = new int[getCardinality()];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            position = containers[i].fill(values, position, keys[i] << 16);
+        }
+        return values;
+    }
+
+    /**
+     * Serializes the bitmap: the number of containers, then for each its key, its type and
+     * its content.
+     *
+     * @return the serialized bitmap.
+     */
+    public byte[] serialize() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(keys[i]);
+                containers[i].write(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a bitmap written by serialize.
+     *
+     * @param bytes the serialized bitmap, null for an empty bitmap.
+     * @return the bitmap.
+     * @throws IllegalArgumentException when the bytes are not a serialized bitmap.
+     */
+    public static RoaringBitmap deserialize(final byte[] bytes) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        if (bytes == null) {
+            return bitmap;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            int size = in.readUnsignedShort();
+            for (int i = 0; i < size; i++) {
+                char key = in.readChar();
+                byte type = in.readByte();
+                if (type == ARRAY_CONTAINER) {
+                    int cardinality = in.readUnsignedShort() + 1;
+                    char[] values = new char[cardinality];
+                    for (int j = 0; j < cardinality; j++) {
+                        values[j] = in.readChar();
+                    }
+                    bitmap.append(key, new ArrayContainer(values, cardinality));
+                } else if (type == BITMAP_CONTAINER) {
+                    long[] words = new long[BitmapContainer.WORDS];
+                    for (int j = 0; j < words.length; j++) {
+                        words[j] = in.readLong();
+                    }
+                    bitmap.append(key, new BitmapContainer(words));
+                } else {
+                    throw new IllegalArgumentException("Unknown container type " + type);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated bitmap", e);
+        }
+        return bitmap;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof RoaringBitmap && Arrays.equals(toArray(), ((RoaringBitmap) o).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * Appends a container with a key greater than the last one, dropping empty containers.
+     */
+    private void append(final char key, final Container container) {
+        if (container.cardinality() > 0) {
+            insert(size, key, container);
+        }
+    }
+
+    private void insert(final int index, final char key, final Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    /**
+     * The values of a chunk of 65536, as their 16 low bits.
+     */
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract Container copy();
+
+        abstract int fill(int[] values, int position, int high);
+
+        abstract void write(DataOutputStream out) throws IOException;
+
+        Container and(final Container other) {
+            if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+                return ((BitmapContainer) this).combine((BitmapContainer) other, BitmapContainer.AND);
+            }
+            ArrayContainer array = (ArrayContainer) (this instanceof ArrayContainer ? this : other);
+            Container filter = array == this ? other : this;
+            char[] values = new char[array.cardinality];
+            int cardinality = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (filter.contains(array.values[i])) {
+                    values[cardinality++] = array.values[i];
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        Container or(final Container other) {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer) {
+                return ((ArrayContainer) this).union((ArrayContainer) other);
+            }
+            BitmapContainer bitmap = toBitmap(this);
+            return bitmap.combine(toBitmap(other), BitmapContainer.OR);
+        }
+
+        Container andNot(final Container other) {
+            if (this instanceof BitmapContainer) {
+                return ((BitmapContainer) this).combine(toBitmap(other), BitmapContainer.AND_NOT);
+            }
+            ArrayContainer array = (ArrayContainer) this;
+            char[] values = new char[array.cardinality];
+            int cardinality = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (!other.contains(array.values[i])) {
+                    values[cardinality++] = array.values[i];
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        private static BitmapContainer toBitmap(final Container container) {
+            if (container instanceof BitmapContainer) {
+                return (BitmapContainer) container;
+            }
+            ArrayContainer array = (ArrayContainer) container;
+            long[] words = new long[BitmapContainer.WORDS];
+            for (int i = 0; i < array.cardinality; i++) {
+                words[array.values[i] >>> 6] |= 1L << array.values[i];
+            }
+            return new BitmapContainer(words);
+        }
+    }
+
+    /**
+     * A sparse chunk: the sorted values.
+     */
+    private static final class ArrayContainer extends Container {
+
+        private char[] values;
+
+        private int cardinality;
+
+        ArrayContainer(final char[] values, final int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(final char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_CARDINALITY) {
+                return Container.toBitmap(this).add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_CARDINALITY,
+                        Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(final char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        int fill(final int[] out, int position, final int high) {
+            for (int i = 0; i < cardinality; i++) {
+                out[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        @Override
+        void write(final DataOutputStream out) throws IOException {
+            out.writeByte(ARRAY_CONTAINER);
+            out.writeShort(cardinality - 1);
+            for (int i = 0; i < cardinality; i++) {
+                out.writeChar(values[i]);
+            }
+        }
+
+        Container union(final ArrayContainer other) {
+            if (cardinality + other.cardinality > MAX_ARRAY_CARDINALITY) {
+                return Container.toBitmap(this).combine(Container.toBitmap(other),
+                        BitmapContainer.OR);
+            }
+            char[] merged = new char[cardinality + other.cardinality];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < cardinality && j < other.cardinality) {
+                if (values[i] < other.values[j]) {
+                    merged[k++] = values[i++];
+                } else if (values[i] > other.values[j]) {
+                    merged[k++] = other.values[j++];
+                } else {
+                    merged[k++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                merged[k++] = values[i++];
+            }
+            while (j < other.cardinality) {
+                merged[k++] = other.values[j++];
+            }
+            return new ArrayContainer(merged, k);
+        }
+    }
+
+    /**
+     * A dense chunk: one bit per value.
+     */
+    private static final class BitmapContainer extends Container {
+
+        static final int WORDS = 1024;
+
+        static final int AND = 0;
+
+        static final int OR = 1;
+
+        static final int AND_NOT = 2;
+
+        private final long[] words;
+
+        private int cardinality;
+
+        BitmapContainer(final long[] words) {
+            this.words = words;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(final char value) {
+            if (!contains(value)) {
+                words[value >>> 6] |= 1L << value;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(final char value) {
+            if (!contains(value)) {
+                return this;
+            }
+            words[value >>> 6] &= ~(1L << value);
+            cardinality--;
+            return cardinality <= MAX_ARRAY_CARDINALITY ? toArray() : this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone());
+        }
+
+        @Override
+        int fill(final int[] out, int position, final int high) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    out[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        void write(final DataOutputStream out) throws IOException {
+            out.writeByte(BITMAP_CONTAINER);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        Container combine(final BitmapContainer other, final int operation) {
+            long[] combined = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                switch (operation) {
+                    case AND:
+                        combined[i] = words[i] & other.words[i];
+                        break;
+                    case OR:
+                        combined[i] = words[i] | other.words[i];
+                        break;
+                    default:
+                        combined[i] = words[i] & ~other.words[i];
+                }
+            }
+            BitmapContainer result = new BitmapContainer(combined);
+            return result.cardinality <= MAX_ARRAY_CARDINALITY ? result.toArray() : result;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int position = 0;
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[position++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
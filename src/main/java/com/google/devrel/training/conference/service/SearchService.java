@@ -0,0 +1,300 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.common.collect.ImmutableSet;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SearchDocument;
+import com.google.devrel.training.conference.domain.SearchTerm;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Full-text search over Conferences, backed by an inverted index kept in the datastore.
+ *
+ * A Conference is indexed with the terms of its name, description and topics and of the
+ * name, highlights and speaker of its Sessions. Indexing runs in a task after a Conference or
+ * one of its Sessions is saved, and only rewrites the SearchTerms whose weight changed.
+ *
+ * Only root Conferences are indexed; legacy Conferences are indexed once migrated.
+ */
+public class SearchService {
+
+    private static final Logger LOG = Logger.getLogger(SearchService.class.getName());
+
+    private static final String TASK_URL = "/tasks/indexconference";
+
+    private static final int BATCH_SIZE = 50;
+
+    /**
+     * The most tasks added to a queue by one call.
+     */
+    private static final int TASK_BATCH_SIZE = 100;
+
+    private static final String MEMCACHE_DOCUMENT_COUNT_KEY = "SEARCH_DOCUMENT_COUNT";
+
+    private static final int DOCUMENT_COUNT_SECONDS = 10 * 60;
+
+    /**
+     * Weight of a term occurrence in each field.
+     */
+    private static final int NAME_WEIGHT = 5;
+
+    private static final int TOPIC_WEIGHT = 3;
+
+    private static final int SESSION_NAME_WEIGHT = 2;
+
+    private static final int SPEAKER_WEIGHT = 2;
+
+    private static final int TEXT_WEIGHT = 1;
+
+    private static final Set<String> STOP_WORDS = ImmutableSet.of("a", "an", "and", "at", "by",
+            "for", "in", "of", "on", "or", "the", "to", "with");
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    /**
+     * Splits text into lower case terms on anything which is not a letter or a digit,
+     * dropping stop words.
+     *
+     * @param text the text, may be null.
+     * @return the terms in the order they appear.
+     */
+    public static List<String> tokenize(final String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String token : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty() && !STOP_WORDS.contains(token)) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Schedules the indexing of a Conference.
+     *
+     * @param conferenceKey the key of the Conference.
+     */
+    public void scheduleIndex(final Key<Conference> conferenceKey) {
+        QueueFactory.getDefaultQueue().add(TaskOptions.Builder
+                .withUrl(TASK_URL)
+                .param("websafeConferenceKey", conferenceKey.getString()));
+    }
+
+    /**
+     * Schedules the indexing of many Conferences, adding the tasks in batches.
+     *
+     * @param conferenceKeys the keys of the Conferences.
+     */
+    public void scheduleIndex(final Collection<Key<Conference>> conferenceKeys) {
+        List<TaskOptions> tasks = new ArrayList<>(TASK_BATCH_SIZE);
+        for (Key<Conference> conferenceKey : conferenceKeys) {
+            tasks.add(TaskOptions.Builder.withUrl(TASK_URL)
+                    .param("websafeConferenceKey", conferenceKey.getString()));
+            if (tasks.size() == TASK_BATCH_SIZE) {
+                QueueFactory.getDefaultQueue().add(tasks);
+                tasks.clear();
+            }
+        }
+        if (!tasks.isEmpty()) {
+            QueueFactory.getDefaultQueue().add(tasks);
+        }
+    }
+
+    /**
+     * Schedules the indexing of a batch of Conferences, used to index the Conferences saved
+     * before the index existed.
+     *
+     * @param cursor where the previous batch stopped, null for the first batch.
+     * @return the cursor of the next batch, null when this was the last one.
+     */
+    public String scheduleIndexes(final String cursor) {
+        Query<Conference> query = ofy().load().type(Conference.class).limit(BATCH_SIZE);
+        if (cursor != null) {
+            query = query.startAt(Cursor.fromWebSafeString(cursor));
+        }
+        QueryResultIterator<Key<Conference>> iterator = query.keys().iterator();
+        int scheduled = 0;
+        while (iterator.hasNext()) {
+            Key<Conference> conferenceKey = iterator.next();
+            scheduled++;
+            if (conferenceKey.getParent() == null) {
+                scheduleIndex(conferenceKey);
+            }
+        }
+        return scheduled == BATCH_SIZE ? iterator.getCursor().toWebSafeString() : null;
+    }
+
+    /**
+     * Brings the index in line with the current text of a Conference and its Sessions, or
+     * removes the Conference when it no longer exists.
+     *
+     * Each changed SearchTerm is updated in its own transaction, before the SearchDocument
+     * recording the new weights; a retry after a failure rewrites what is left.
+     *
+     * @param conferenceKey the key of the Conference.
+     */
+    public void index(final Key<Conference> conferenceKey) {
+        if (conferenceKey.getParent() != null) {
+            LOG.info("Not indexing legacy conference " + conferenceKey);
+            return;
+        }
+        final long conferenceId = conferenceKey.getId();
+        Conference conference = ofy().load().key(conferenceKey).now();
+        Map<String, Integer> weights = new HashMap<>();
+        if (conference != null) {
+            addTerms(weights, conference.getName(), NAME_WEIGHT);
+            addTerms(weights, conference.getDescription(), TEXT_WEIGHT);
+            if (conference.getTopics() != null) {
+                for (String topic : conference.getTopics()) {
+                    addTerms(weights, topic, TOPIC_WEIGHT);
+                }
+            }
+            for (Session session : ofy().load().type(Session.class).ancestor(conferenceKey)) {
+                addTerms(weights, session.getSessionName(), SESSION_NAME_WEIGHT);
+                addTerms(weights, session.getHighlights(), TEXT_WEIGHT);
+                addTerms(weights, session.getSpeaker(), SPEAKER_WEIGHT);
+            }
+        }
+        SearchDocument previous = ofy().load()
+                .key(Key.create(SearchDocument.class, conferenceId)).now();
+        Map<String, Integer> previousWeights = previous == null
+                ? new HashMap<String, Integer>() : previous.getWeights();
+
+        Set<String> terms = new HashSet<>(weights.keySet());
+        terms.addAll(previousWeights.keySet());
+        int updated = 0;
+        for (final String term : terms) {
+            final Integer weight = weights.get(term);
+            if (weight != null && weight.equals(previousWeights.get(term))) {
+                continue;
+            }
+            ofy().transact(new Work<Void>() {
+                @Override
+                public Void run() {
+                    SearchTerm searchTerm = ofy().load().key(SearchTerm.key(term)).now();
+                    if (searchTerm == null) {
+                        searchTerm = new SearchTerm(term);
+                    }
+                    if (searchTerm.setPosting(conferenceId, weight == null ? 0 : weight)) {
+                        if (searchTerm.getDocumentFrequency() == 0) {
+                            ofy().delete().entity(searchTerm);
+                        } else {
+                            ofy().save().entity(searchTerm);
+                        }
+                    }
+                    return null;
+                }
+            });
+            updated++;
+        }
+        if (conference == null) {
+            ofy().delete().key(Key.create(SearchDocument.class, conferenceId)).now();
+        } else {
+            ofy().save().entity(new SearchDocument(conferenceId, weights)).now();
+        }
+        LOG.info(String.format("Indexed %s: %d terms, %d rewritten", conferenceKey,
+                weights.size(), updated));
+    }
+
+    /**
+     * Returns the keys of the Conferences matching a query, best match first.
+     *
+     * A Conference scores for every query term it contains, by the weight of the term in the
+     * Conference, dampened so that repeating a term has diminishing returns, times the inverse
+     * document frequency of the term. Conferences containing all the terms rank above the
+     * ones containing some of them.
+     *
+     * @param query the text to search for.
+     * @param offset the number of results to skip.
+     * @param limit the maximum number of results to return.
+     * @param results the list to append the keys of the results to.
+     * @return true when there are more results after the ones appended.
+     */
+    public boolean search(final String query, final int offset, final int limit,
+            final List<Key<Conference>> results) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty()) {
+            return false;
+        }
+        List<Key<SearchTerm>> termKeys = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            termKeys.add(SearchTerm.key(term));
+        }
+        Map<Key<SearchTerm>, SearchTerm> searchTerms = ofy().load().keys(termKeys);
+        double documentCount = getDocumentCount();
+
+        final Map<Long, Double> scores = new HashMap<>();
+        final Map<Long, Integer> matches = new HashMap<>();
+        for (SearchTerm searchTerm : searchTerms.values()) {
+            double idf = Math.log(1 + documentCount / searchTerm.getDocumentFrequency());
+            for (Map.Entry<Long, Integer> posting : searchTerm.getPostings().entrySet()) {
+                double weight = posting.getValue();
+                double score = idf * weight * 2.2 / (weight + 1.2);
+                Double total = scores.get(posting.getKey());
+                scores.put(posting.getKey(), total == null ? score : total + score);
+                Integer matched = matches.get(posting.getKey());
+                matches.put(posting.getKey(), matched == null ? 1 : matched + 1);
+            }
+        }
+        List<Long> ranked = new ArrayList<>(scores.keySet());
+        Collections.sort(ranked, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                int byMatches = matches.get(b).compareTo(matches.get(a));
+                if (byMatches != 0) {
+                    return byMatches;
+                }
+                int byScore = scores.get(b).compareTo(scores.get(a));
+                return byScore != 0 ? byScore : a.compareTo(b);
+            }
+        });
+        for (int i = offset; i < ranked.size() && i < offset + limit; i++) {
+            results.add(Key.create(Conference.class, ranked.get(i)));
+        }
+        return ranked.size() > offset + limit;
+    }
+
+    private int getDocumentCount() {
+        Integer count = (Integer) memcacheService.get(MEMCACHE_DOCUMENT_COUNT_KEY);
+        if (count == null) {
+            count = Math.max(1, ofy().load().type(SearchDocument.class).count());
+            memcacheService.put(MEMCACHE_DOCUMENT_COUNT_KEY, count,
+                    Expiration.byDeltaSeconds(DOCUMENT_COUNT_SECONDS));
+        }
+        return count;
+    }
+
+    private static void addTerms(final Map<String, Integer> weights, final String text,
+            final int weight) {
+        for (String term : tokenize(text)) {
+            Integer total = weights.get(term);
+            weights.put(term, total == null ? weight : total + weight);
+        }
+    }
+}
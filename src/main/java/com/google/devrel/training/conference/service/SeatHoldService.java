@@ -0,0 +1,307 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.HoldMetrics;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.SeatHold;
+import com.google.devrel.training.enumeration.HoldStatus;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Places, confirms and releases SeatHolds, and expires the holds nobody confirmed.
+ *
+ * No transaction stays open while the user fills in the checkout form: placing a hold books
+ * the seats right away, and the hold remembers where they were booked so that releasing or
+ * expiring it gives them back to the same seat entity.
+ */
+public class SeatHoldService {
+
+    private static final Logger LOG = Logger.getLogger(SeatHoldService.class.getName());
+
+    /**
+     * Expired holds handled per task.
+     */
+    private static final int EXPIRY_BATCH_SIZE = 500;
+
+    /**
+     * Holds expired per transaction. Together with the one seat entity this stays under the
+     * limit of 25 entity groups of a cross-group transaction.
+     */
+    private static final int HOLDS_PER_TRANSACTION = 20;
+
+    private static final String METRIC_PREFIX = "HOLDS_";
+
+    private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+    private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+    private final ProfileEntryService profileEntries = new ProfileEntryService();
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    /**
+     * Holds seats of a Conference for Constants.HOLD_SECONDS.
+     *
+     * @param userId the userId of the user holding the seats.
+     * @param conference the Conference.
+     * @param seats the number of seats to hold.
+     * @return the hold, null when there are not enough seats.
+     */
+    public SeatHold placeHold(final String userId, final Conference conference, final int seats) {
+        final Key<SeatHold> holdKey = ofy().factory().allocateId(SeatHold.class);
+        SeatHold hold = ofy().transact(new Work<SeatHold>() {
+            @Override
+            public SeatHold run() {
+                int shardIndex = seatInventory.bookSeatsOnShard(conference, seats);
+                if (shardIndex == SeatInventoryService.NOT_BOOKED) {
+                    return null;
+                }
+                SeatHold hold = new SeatHold(holdKey.getId(), userId, conference.getWebsafeKey(),
+                        seats, shardIndex, new Date(System.currentTimeMillis()
+                                + Constants.HOLD_SECONDS * 1000L));
+                ofy().save().entity(hold);
+                return hold;
+            }
+        });
+        if (hold != null) {
+            count(HoldStatus.HELD, hold.getWebsafeConferenceKey(), 1);
+            seatInventory.scheduleSync(conference);
+        }
+        return hold;
+    }
+
+    /**
+     * The outcome of confirmHold.
+     */
+    public static final class Confirmation {
+
+        private final String reason;
+
+        private final String websafeConferenceKey;
+
+        private final Key<Conference> conferenceKey;
+
+        private final Registration registration;
+
+        private Confirmation(final String reason, final String websafeConferenceKey,
+                final Key<Conference> conferenceKey, final Registration registration) {
+            this.reason = reason;
+            this.websafeConferenceKey = websafeConferenceKey;
+            this.conferenceKey = conferenceKey;
+            this.registration = registration;
+        }
+
+        /**
+         * Returns why the hold wasn't confirmed.
+         *
+         * @return null when confirmed.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Returns the resolved key of the Conference the user registered to.
+         *
+         * @return null when not confirmed.
+         */
+        public Key<Conference> getConferenceKey() {
+            return conferenceKey;
+        }
+
+        /**
+         * Returns the Registration written for the hold.
+         *
+         * @return null when not confirmed.
+         */
+        public Registration getRegistration() {
+            return registration;
+        }
+    }
+
+    /**
+     * Turns an active hold into a registration of its user.
+     *
+     * @param holdKey the key of the hold.
+     * @return the reason of the failure, or the Conference registered to on success.
+     */
+    public Confirmation confirmHold(final Key<SeatHold> holdKey) {
+        Confirmation confirmation = ofy().transact(new Work<Confirmation>() {
+            @Override
+            public Confirmation run() {
+                SeatHold hold = ofy().load().key(holdKey).now();
+                if (!hold.isHeldAt(new Date())) {
+                    return failed("The hold is no longer active");
+                }
+                Profile profile = ofy().load()
+                        .key(Key.create(Profile.class, hold.getUserId())).now();
+                if (profile == null) {
+                    return failed("Profile doesn't exist.");
+                }
+                Key<Conference> conferenceKey = conferenceKeys
+                        .resolve(hold.getWebsafeConferenceKey());
+                Conference conference = ofy().transactionless().load().key(conferenceKey)
+                        .now();
+                profileEntries.migrateInTransaction(profile);
+                if (profileEntries.isRegistered(Key.create(profile), conference)) {
+                    return failed("Already registered");
+                }
+                // The Registration gives all the seats of the hold back on unregister
+                Registration registration = profileEntries.register(Key.create(profile),
+                        conference, hold.getSeats());
+                hold.complete(HoldStatus.CONFIRMED);
+                ofy().save().entity(hold);
+                return new Confirmation(null, hold.getWebsafeConferenceKey(), conferenceKey,
+                        registration);
+            }
+        });
+        if (confirmation.getReason() == null) {
+            count(HoldStatus.CONFIRMED, confirmation.websafeConferenceKey, 1);
+        }
+        return confirmation;
+    }
+
+    private static Confirmation failed(final String reason) {
+        return new Confirmation(reason, null, null, null);
+    }
+
+    /**
+     * Gives the seats of an active hold back.
+     *
+     * @param holdKey the key of the hold.
+     * @return null on success, otherwise the reason of the failure.
+     */
+    public String releaseHold(final Key<SeatHold> holdKey) {
+        final SeatHold snapshot = ofy().load().key(holdKey).now();
+        final Conference conference = ofy().load()
+                .key(conferenceKeys.resolve(snapshot.getWebsafeConferenceKey())).now();
+        String reason = ofy().transact(new Work<String>() {
+            @Override
+            public String run() {
+                SeatHold hold = ofy().load().key(holdKey).now();
+                if (hold.getStatus() != HoldStatus.HELD) {
+                    return "The hold is no longer active";
+                }
+                if (conference != null) {
+                    seatInventory.giveBackSeatsToShard(conference, hold.getShardIndex(),
+                            hold.getSeats());
+                }
+                hold.complete(HoldStatus.RELEASED);
+                ofy().save().entity(hold);
+                return null;
+            }
+        });
+        if (reason == null) {
+            count(HoldStatus.RELEASED, snapshot.getWebsafeConferenceKey(), 1);
+            seatInventory.scheduleSync(conference);
+        }
+        return reason;
+    }
+
+    /**
+     * Gives the seats of the expired holds back, a batch of holds of the same seat entity per
+     * transaction. Run every minute by cron, each run handles the holds expired since the
+     * previous one and chains another run when there are more than EXPIRY_BATCH_SIZE.
+     *
+     * @return the number of holds expired.
+     */
+    public int expireHolds() {
+        final Date now = new Date();
+        List<Key<SeatHold>> holdKeys = ofy().load().type(SeatHold.class)
+                .filter("status", HoldStatus.HELD).filter("expiresAt <", now)
+                .limit(EXPIRY_BATCH_SIZE).keys().list();
+
+        // Group the holds by the seat entity their seats go back to
+        Map<String, List<Key<SeatHold>>> bySeatEntity = new LinkedHashMap<>();
+        for (SeatHold hold : ofy().load().keys(holdKeys).values()) {
+            String group = hold.getWebsafeConferenceKey() + "-" + hold.getShardIndex();
+            if (!bySeatEntity.containsKey(group)) {
+                bySeatEntity.put(group, new ArrayList<Key<SeatHold>>());
+            }
+            bySeatEntity.get(group).add(Key.create(hold));
+        }
+
+        int expired = 0;
+        for (List<Key<SeatHold>> group : bySeatEntity.values()) {
+            SeatHold first = ofy().load().key(group.get(0)).now();
+            final Conference conference = ofy().load()
+                    .key(conferenceKeys.resolve(first.getWebsafeConferenceKey())).now();
+            for (int i = 0; i < group.size(); i += HOLDS_PER_TRANSACTION) {
+                final List<Key<SeatHold>> chunk = group.subList(i,
+                        Math.min(i + HOLDS_PER_TRANSACTION, group.size()));
+                int chunkExpired = ofy().transact(new Work<Integer>() {
+                    @Override
+                    public Integer run() {
+                        List<SeatHold> holds = new ArrayList<>();
+                        int seats = 0;
+                        for (SeatHold hold : ofy().load().keys(chunk).values()) {
+                            if (hold.getStatus() == HoldStatus.HELD && !hold.isHeldAt(now)) {
+                                hold.complete(HoldStatus.EXPIRED);
+                                holds.add(hold);
+                                seats += hold.getSeats();
+                            }
+                        }
+                        if (conference != null && seats > 0) {
+                            seatInventory.giveBackSeatsToShard(conference,
+                                    holds.get(0).getShardIndex(), seats);
+                        }
+                        ofy().save().entities(holds);
+                        return holds.size();
+                    }
+                });
+                count(HoldStatus.EXPIRED, first.getWebsafeConferenceKey(), chunkExpired);
+                expired += chunkExpired;
+            }
+            if (conference != null) {
+                seatInventory.scheduleSync(conference);
+            }
+        }
+        LOG.info(String.format("Expired %d holds", expired));
+        if (holdKeys.size() == EXPIRY_BATCH_SIZE) {
+            QueueFactory.getDefaultQueue().add(
+                    TaskOptions.Builder.withUrl("/cron/expireholds")
+                            .method(TaskOptions.Method.GET));
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the hold counters, kept in memcache.
+     *
+     * @param websafeConferenceKey the Conference to report on, null for all conferences.
+     * @return the hold counters.
+     */
+    public HoldMetrics getMetrics(final String websafeConferenceKey) {
+        String suffix = websafeConferenceKey == null ? "" : "_" + websafeConferenceKey;
+        return new HoldMetrics(metric(HoldStatus.HELD, suffix),
+                metric(HoldStatus.CONFIRMED, suffix), metric(HoldStatus.RELEASED, suffix),
+                metric(HoldStatus.EXPIRED, suffix));
+    }
+
+    private long metric(final HoldStatus status, final String suffix) {
+        Object value = memcacheService.get(METRIC_PREFIX + status + suffix);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    private void count(final HoldStatus status, final String websafeConferenceKey,
+            final long delta) {
+        memcacheService.increment(METRIC_PREFIX + status, delta, 0L);
+        memcacheService.increment(METRIC_PREFIX + status + "_" + websafeConferenceKey, delta, 0L);
+    }
+}
@@ -0,0 +1,387 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+
+/**
+ * Books and gives back seats of a Conference.
+ *
+ * Conferences with seat shards keep their inventory in SeatShard entities, so a booking only
+ * writes one shard and never the Conference itself. Conference.seatsAvailable is then a
+ * denormalized total, refreshed by a deduplicated task shortly after bookings happen.
+ * Conferences without shards are booked directly on the Conference entity.
+ */
+public class SeatInventoryService {
+
+    private static final Logger LOG = Logger.getLogger(SeatInventoryService.class.getName());
+
+    /**
+     * How long an aggregated seat count is served from memcache.
+     */
+    private static final int SEATS_CACHE_SECONDS = 5;
+
+    /**
+     * Bookings within the same window of this length share one sync task.
+     */
+    private static final long SYNC_WINDOW_MILLIS = 10 * 1000;
+
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Returned by bookSeatsOnShard when the seats are booked on the Conference itself.
+     */
+    public static final int NO_SHARD = -1;
+
+    /**
+     * Returned by bookSeatsOnShard when there are not enough seats.
+     */
+    public static final int NOT_BOOKED = -2;
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    /**
+     * Builds the SeatShards of a new Conference, splitting maxAttendees as evenly as possible.
+     *
+     * @param conference the new Conference.
+     * @return the shards to save along with the Conference, empty when it is not sharded.
+     */
+    public List<SeatShard> createShards(final Conference conference) {
+        int shards = conference.getSeatShards();
+        List<SeatShard> result = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            int capacity = conference.getMaxAttendees() / shards
+                    + (i < conference.getMaxAttendees() % shards ? 1 : 0);
+            result.add(new SeatShard(conference, i, capacity));
+        }
+        return result;
+    }
+
+    /**
+     * Books seats of the given Conference. Must be called inside a transaction.
+     *
+     * A sharded Conference is booked on a random shard that still has capacity. It is only
+     * found full once every shard was read in the transaction.
+     *
+     * @param conference the Conference, a non-transactional snapshot is fine.
+     * @param number the number of seats to book.
+     * @return true when the seats are booked, false when there are not enough seats.
+     */
+    public boolean bookSeats(final Conference conference, final int number) {
+        return bookSeatsOnShard(conference, number) != NOT_BOOKED;
+    }
+
+    /**
+     * Books seats of the given Conference like bookSeats, telling where they were booked so
+     * that they can be given back to the same place with giveBackSeatsToShard.
+     *
+     * @param conference the Conference, a non-transactional snapshot is fine.
+     * @param number the number of seats to book.
+     * @return the index of the shard booked, NO_SHARD for a Conference without shards, or
+     *         NOT_BOOKED when there are not enough seats.
+     */
+    public int bookSeatsOnShard(final Conference conference, final int number) {
+        if (conference.getSeatShards() <= 0) {
+            Conference current = ofy().load().entity(conference).now();
+            if (current.getSeatsAvailable() < number) {
+                return NOT_BOOKED;
+            }
+            current.bookSeats(number);
+            ofy().save().entity(current);
+            return NO_SHARD;
+        }
+        List<Key<SeatShard>> candidates = candidateShards(conference, number, true);
+        for (Key<SeatShard> shardKey : candidates) {
+            SeatShard shard = ofy().load().key(shardKey).now();
+            if (shard != null && shard.getSeatsAvailable() >= number) {
+                shard.bookSeats(number);
+                ofy().save().entity(shard);
+                return shard.getIndex();
+            }
+        }
+        // The snapshot may miss seats given back since, try the other shards before giving up
+        List<Key<SeatShard>> others = shardKeys(conference);
+        others.removeAll(candidates);
+        for (SeatShard shard : ofy().load().keys(others).values()) {
+            if (shard.getSeatsAvailable() >= number) {
+                shard.bookSeats(number);
+                ofy().save().entity(shard);
+                return shard.getIndex();
+            }
+        }
+        return NOT_BOOKED;
+    }
+
+    /**
+     * Books as many of the wanted seats as a single seat entity can give. Must be called
+     * inside a transaction, which then holds only one seat entity group besides the caller's.
+     *
+     * A sharded Conference is booked on the shard with the most seats available in a
+     * non-transactional snapshot. Fewer seats than wanted may be booked while other shards
+     * still have some, so a shortfall doesn't mean the Conference is full: bookSeats tells.
+     *
+     * @param conference the Conference, a non-transactional snapshot is fine.
+     * @param wanted the number of seats wanted.
+     * @return the number of seats booked.
+     */
+    public int bookSeatsUpTo(final Conference conference, final int wanted) {
+        if (conference.getSeatShards() <= 0) {
+            Conference current = ofy().load().entity(conference).now();
+            int booked = Math.min(wanted, current.getSeatsAvailable());
+            if (booked > 0) {
+                current.bookSeats(booked);
+                ofy().save().entity(current);
+            }
+            return booked;
+        }
+        Key<SeatShard> fullest = null;
+        int most = 0;
+        for (SeatShard shard : ofy().transactionless().load().keys(shardKeys(conference))
+                .values()) {
+            if (shard.getSeatsAvailable() > most) {
+                fullest = Key.create(shard);
+                most = shard.getSeatsAvailable();
+            }
+        }
+        if (fullest == null) {
+            return 0;
+        }
+        SeatShard shard = ofy().load().key(fullest).now();
+        int booked = Math.min(wanted, shard.getSeatsAvailable());
+        if (booked > 0) {
+            shard.bookSeats(booked);
+            ofy().save().entity(shard);
+        }
+        return booked;
+    }
+
+    /**
+     * Gives back seats booked with bookSeatsOnShard. Must be called inside a transaction.
+     *
+     * @param conference the Conference, a non-transactional snapshot is fine.
+     * @param shardIndex the value returned by bookSeatsOnShard.
+     * @param number the number of seats to give back.
+     */
+    public void giveBackSeatsToShard(final Conference conference, final int shardIndex,
+            final int number) {
+        if (shardIndex == NO_SHARD) {
+            Conference current = ofy().load().entity(conference).now();
+            current.giveBackSeats(number);
+            ofy().save().entity(current);
+        } else {
+            SeatShard shard = ofy().load().key(SeatShard.key(conference, shardIndex)).now();
+            shard.giveBackSeats(number);
+            ofy().save().entity(shard);
+        }
+    }
+
+    /**
+     * Gives back seats of the given Conference. Must be called inside a transaction.
+     *
+     * The seats of a sharded Conference go back to the shards with room for them, spread over
+     * several shards when no single one has room for all of them.
+     *
+     * @param conference the Conference, a non-transactional snapshot is fine.
+     * @param number the number of seats to give back.
+     * @return true when the seats are given back, false when that would exceed the capacity,
+     *         in which case nothing is written.
+     */
+    public boolean giveBackSeats(final Conference conference, final int number) {
+        if (conference.getSeatShards() <= 0) {
+            Conference current = ofy().load().entity(conference).now();
+            if (current.getSeatsAvailable() + number > current.getMaxAttendees()) {
+                return false;
+            }
+            current.giveBackSeats(number);
+            ofy().save().entity(current);
+            return true;
+        }
+        for (Key<SeatShard> shardKey : candidateShards(conference, number, false)) {
+            SeatShard shard = ofy().load().key(shardKey).now();
+            if (shard != null && shard.getSeatsAvailable() + number <= shard.getCapacity()) {
+                shard.giveBackSeats(number);
+                ofy().save().entity(shard);
+                return true;
+            }
+        }
+        if (number == 1) {
+            return false;
+        }
+        // No single shard has room, spread the seats if all the shards together have
+        Collection<SeatShard> shards = ofy().load().keys(shardKeys(conference)).values();
+        int room = 0;
+        for (SeatShard shard : shards) {
+            room += shard.getCapacity() - shard.getSeatsAvailable();
+        }
+        if (room < number) {
+            return false;
+        }
+        List<SeatShard> changed = new ArrayList<>();
+        int remaining = number;
+        for (SeatShard shard : shards) {
+            int seats = Math.min(remaining, shard.getCapacity() - shard.getSeatsAvailable());
+            if (seats > 0) {
+                shard.giveBackSeats(seats);
+                changed.add(shard);
+                remaining -= seats;
+            }
+        }
+        ofy().save().entities(changed);
+        return true;
+    }
+
+    /**
+     * Picks the shards worth trying, in random order, from a non-transactional snapshot.
+     * Only the shard actually booked is read inside the transaction.
+     */
+    private List<Key<SeatShard>> candidateShards(final Conference conference, final int number,
+            final boolean booking) {
+        Map<Key<SeatShard>, SeatShard> shards = ofy().transactionless().load()
+                .keys(shardKeys(conference));
+        List<Key<SeatShard>> candidates = new ArrayList<>(shards.size());
+        for (SeatShard shard : shards.values()) {
+            boolean fits = booking ? shard.getSeatsAvailable() >= number
+                    : shard.getSeatsAvailable() + number <= shard.getCapacity();
+            if (fits) {
+                candidates.add(Key.create(shard));
+            }
+        }
+        Collections.shuffle(candidates, RANDOM);
+        return candidates;
+    }
+
+    private List<Key<SeatShard>> shardKeys(final Conference conference) {
+        List<Key<SeatShard>> keys = new ArrayList<>(conference.getSeatShards());
+        for (int i = 0; i < conference.getSeatShards(); i++) {
+            keys.add(SeatShard.key(conference, i));
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of seats available over all shards, cached for a few seconds.
+     *
+     * @param conference the Conference.
+     * @return the number of seats available.
+     */
+    public int getSeatsAvailable(final Conference conference) {
+        if (conference.getSeatShards() <= 0) {
+            return conference.getSeatsAvailable();
+        }
+        String cacheKey = Constants.MEMCACHE_SEATS_AVAILABLE_PREFIX + conference.getWebsafeKey();
+        Object cached = memcacheService.get(cacheKey);
+        if (cached != null) {
+            return (Integer) cached;
+        }
+        Map<Key<SeatShard>, SeatShard> shards = ofy().transactionless().load()
+                .keys(shardKeys(conference));
+        if (shards.isEmpty()) {
+            return conference.getSeatsAvailable();
+        }
+        int seatsAvailable = 0;
+        for (SeatShard shard : shards.values()) {
+            seatsAvailable += shard.getSeatsAvailable();
+        }
+        memcacheService.put(cacheKey, seatsAvailable,
+                Expiration.byDeltaSeconds(SEATS_CACHE_SECONDS));
+        return seatsAvailable;
+    }
+
+    /**
+     * Overwrites seatsAvailable of the given Conferences with the aggregated totals still in
+     * memcache. Uses a single memcache call and never reads the datastore, so list endpoints
+     * can afford it; Conferences without a cached total keep their denormalized value.
+     *
+     * @param conferences the Conferences to refresh.
+     */
+    public void refreshSeatsAvailable(final Collection<Conference> conferences) {
+        Map<String, Conference> byCacheKey = new HashMap<>();
+        for (Conference conference : conferences) {
+            if (conference.getSeatShards() > 0) {
+                byCacheKey.put(Constants.MEMCACHE_SEATS_AVAILABLE_PREFIX
+                        + conference.getWebsafeKey(), conference);
+            }
+        }
+        if (byCacheKey.isEmpty()) {
+            return;
+        }
+        Map<String, Object> cached = memcacheService.getAll(byCacheKey.keySet());
+        for (Map.Entry<String, Object> entry : cached.entrySet()) {
+            byCacheKey.get(entry.getKey()).refreshSeatsAvailable((Integer) entry.getValue());
+        }
+    }
+
+    /**
+     * Schedules a refresh of Conference.seatsAvailable. Bookings within the same window share
+     * one named task, so a burst of registrations costs a single Conference write.
+     *
+     * @param conference the Conference which inventory changed.
+     */
+    public void scheduleSync(final Conference conference) {
+        if (conference.getSeatShards() <= 0) {
+            return;
+        }
+        String websafeKey = conference.getWebsafeKey();
+        long window = System.currentTimeMillis() / SYNC_WINDOW_MILLIS;
+        Queue queue = QueueFactory.getDefaultQueue();
+        try {
+            queue.add(TaskOptions.Builder
+                    .withUrl("/tasks/syncseats")
+                    .taskName("syncseats-" + websafeKey + "-" + window)
+                    .countdownMillis(SYNC_WINDOW_MILLIS)
+                    .param("websafeConferenceKey", websafeKey));
+        } catch (TaskAlreadyExistsException e) {
+            // Another booking in this window already scheduled the sync.
+        }
+    }
+
+    /**
+     * Writes the total of the shards into Conference.seatsAvailable so that queries on
+     * seatsAvailable, such as the announcement, see it.
+     *
+     * @param conferenceKey the key of the Conference to refresh.
+     */
+    public void syncSeatsAvailable(final Key<Conference> conferenceKey) {
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                Conference conference = ofy().load().key(conferenceKey).now();
+                if (conference == null || conference.getSeatShards() <= 0) {
+                    return;
+                }
+                Map<Key<SeatShard>, SeatShard> shards = ofy().transactionless().load()
+                        .keys(shardKeys(conference));
+                int seatsAvailable = 0;
+                for (SeatShard shard : shards.values()) {
+                    seatsAvailable += shard.getSeatsAvailable();
+                }
+                if (seatsAvailable != conference.getSeatsAvailable()) {
+                    LOG.info(String.format("Syncing seats of %s: %d -> %d",
+                            conferenceKey, conference.getSeatsAvailable(), seatsAvailable));
+                    conference.refreshSeatsAvailable(seatsAvailable);
+                    ofy().save().entity(conference);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,145 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.SessionBatchResult;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Result;
+
+/**
+ * Creates the Sessions of a Conference in batches, for organizers uploading a whole agenda.
+ *
+ * All forms are validated before anything is written, the ids of the valid ones are
+ * allocated in one range, and the Sessions are saved with concurrent batch puts. A form that
+ * is invalid, or whose chunk fails to save, is reported in the result without failing the
+ * others. The SessionCount, the Agenda, the timetables and the search index are then updated
+ * once for the whole batch.
+ */
+public class SessionBatchService {
+
+    private static final Logger LOG = Logger.getLogger(SessionBatchService.class.getName());
+
+    /**
+     * The most Sessions created by one call.
+     */
+    public static final int MAX_SESSIONS = 500;
+
+    /**
+     * The Sessions saved by one batch put.
+     */
+    private static final int CHUNK_SIZE = 100;
+
+    private final SessionCountService sessionCounts = new SessionCountService();
+
+    private final AgendaService agendas = new AgendaService();
+
+    private final SessionQueryPlanner sessionQueries = new SessionQueryPlanner();
+
+    private final SearchService searchService = new SearchService();
+
+    /**
+     * Creates Sessions in an existing Conference.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @param forms the Sessions, at most MAX_SESSIONS.
+     * @return the key or the error of each form.
+     */
+    public SessionBatchResult create(final Key<Conference> conferenceKey,
+            final List<SessionForm> forms) {
+        SessionBatchResult result = new SessionBatchResult(forms.size());
+        List<Integer> indexes = new ArrayList<>(forms.size());
+        List<Date> dates = new ArrayList<>(forms.size());
+        for (int i = 0; i < forms.size(); i++) {
+            SessionForm form = forms.get(i);
+            String error = validate(form);
+            if (error == null) {
+                try {
+                    dates.add(form.parseDate());
+                    indexes.add(i);
+                } catch (ParseException e) {
+                    error = "Invalid date, expected dd/MM/yyyy: " + form.getDate();
+                }
+            }
+            if (error != null) {
+                result.failed(i, error);
+            }
+        }
+        if (indexes.isEmpty()) {
+            return result;
+        }
+
+        Iterator<Key<Session>> ids = ofy().factory()
+                .allocateIds(conferenceKey, Session.class, indexes.size()).iterator();
+        List<Session> sessions = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            SessionForm form = forms.get(indexes.get(i));
+            sessions.add(new Session(form.getSessionName(), form.getHighlights(),
+                    form.getSpeaker(), form.getDuration(), form.getTypeOfSession(),
+                    dates.get(i), form.getStartTime(), conferenceKey, ids.next().getId()));
+        }
+
+        // Start all the puts before waiting for any
+        List<Result<Map<Key<Session>, Session>>> puts = new ArrayList<>();
+        for (int from = 0; from < sessions.size(); from += CHUNK_SIZE) {
+            puts.add(ofy().save().entities(
+                    sessions.subList(from, Math.min(from + CHUNK_SIZE, sessions.size()))));
+        }
+        List<Session> saved = new ArrayList<>(sessions.size());
+        for (int chunk = 0; chunk < puts.size(); chunk++) {
+            int from = chunk * CHUNK_SIZE;
+            int to = Math.min(from + CHUNK_SIZE, sessions.size());
+            try {
+                puts.get(chunk).now();
+                for (int i = from; i < to; i++) {
+                    saved.add(sessions.get(i));
+                    result.created(indexes.get(i), Key.create(sessions.get(i)).getString());
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Failed to save sessions " + from + " to " + to
+                        + " of " + conferenceKey, e);
+                for (int i = from; i < to; i++) {
+                    result.failed(indexes.get(i), "Failed to save, please retry");
+                }
+            }
+        }
+        if (saved.isEmpty()) {
+            return result;
+        }
+
+        sessionCounts.recount(conferenceKey);
+        sessionQueries.invalidate(conferenceKey);
+        agendas.putAll(conferenceKey, saved);
+        searchService.scheduleIndex(conferenceKey);
+        LOG.info(String.format("Created %d of %d sessions in %s", saved.size(), forms.size(),
+                conferenceKey));
+        return result;
+    }
+
+    private static String validate(final SessionForm form) {
+        if (form == null) {
+            return "The session is missing";
+        }
+        if (form.getSessionName() == null || form.getSessionName().trim().isEmpty()) {
+            return "The session name is required";
+        }
+        if (form.getStartTime() != null && Session.toMinuteOfDay(form.getStartTime()) == null) {
+            return "Invalid start time, expected HH:mm: " + form.getStartTime();
+        }
+        if (form.getDuration() != null && form.getDuration() < 0) {
+            return "The duration can't be negative";
+        }
+        return null;
+    }
+}
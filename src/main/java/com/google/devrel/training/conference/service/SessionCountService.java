@@ -0,0 +1,105 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionCount;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Maintains the SessionCount of each Conference.
+ *
+ * A SessionCount is built with a keys-only ancestor query the first time it is needed, and
+ * then incremented in the transaction saving each new Session. Queries in a transaction don't
+ * see its own writes, so the Session being saved is counted exactly once. Sessions saved in
+ * batches, outside of a transaction, are counted again from scratch.
+ */
+public class SessionCountService {
+
+    private static final Logger LOG = Logger.getLogger(SessionCountService.class.getName());
+
+    /**
+     * Returns the SessionCount of a Conference, building it when missing.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return the SessionCount.
+     */
+    public SessionCount get(final Key<Conference> conferenceKey) {
+        SessionCount sessionCount = ofy().load().key(SessionCount.key(conferenceKey)).now();
+        if (sessionCount != null) {
+            return sessionCount;
+        }
+        return ofy().transact(new Work<SessionCount>() {
+            @Override
+            public SessionCount run() {
+                SessionCount sessionCount = loadOrBuild(conferenceKey);
+                ofy().save().entity(sessionCount);
+                return sessionCount;
+            }
+        });
+    }
+
+    /**
+     * Saves a new Session and counts it, in one transaction.
+     *
+     * @param session the new Session.
+     */
+    public void create(final Session session) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                createInTransaction(session);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Saves a new Session and counts it. Must be called inside a transaction, which may update
+     * other aggregates of the Session along.
+     *
+     * @param session the new Session.
+     */
+    public void createInTransaction(final Session session) {
+        SessionCount sessionCount = loadOrBuild(session.getConference());
+        sessionCount.add(1);
+        ofy().save().entities(session, sessionCount);
+    }
+
+    /**
+     * Counts Sessions saved outside of a transaction, such as the ones of a batch, by counting
+     * the Sessions of the Conference again. Adding them to the stored SessionCount instead
+     * would count them twice when it was built since they were saved.
+     *
+     * @param conferenceKey the key of the Conference.
+     */
+    public void recount(final Key<Conference> conferenceKey) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                ofy().save().entity(count(conferenceKey));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Loads or counts the SessionCount of a Conference, leaving it to the caller to save it
+     * once: two puts of the same key in a transaction may be applied in any order.
+     */
+    private SessionCount loadOrBuild(final Key<Conference> conferenceKey) {
+        SessionCount sessionCount = ofy().load().key(SessionCount.key(conferenceKey)).now();
+        return sessionCount != null ? sessionCount : count(conferenceKey);
+    }
+
+    private SessionCount count(final Key<Conference> conferenceKey) {
+        SessionCount sessionCount = new SessionCount(conferenceKey, ofy().load()
+                .type(Session.class).ancestor(conferenceKey).keys().list().size());
+        LOG.info("Counted the sessions of " + conferenceKey);
+        return sessionCount;
+    }
+}
@@ -0,0 +1,197 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.QueryShape;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.SessionQueryForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Runs SessionQueryForm queries, which combine more inequalities than the datastore allows in
+ * one query.
+ *
+ * The equality filters, the Conference and the type of session, are pushed to the datastore.
+ * The Sessions found are kept in memcache as a timetable, a compact array sorted by start
+ * time, and the time windows and excluded types are evaluated on it in memory. Only the
+ * Sessions of the page returned are then loaded, with a batch get.
+ */
+public class SessionQueryPlanner {
+
+    private static final Logger LOG = Logger.getLogger(SessionQueryPlanner.class.getName());
+
+    private static final String TIMETABLE_PREFIX = "SESSION_TIMETABLE_";
+
+    private static final int TIMETABLE_CACHE_SECONDS = 60 * 60;
+
+    private final MemcacheService memcacheService = MemcacheServiceFactory.getMemcacheService();
+
+    private final IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+    /**
+     * Appends a page of the Sessions matching the query, in start time order, to the given
+     * list. Sessions without a valid start time come last, and only when no time filter is
+     * given.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @param form the query.
+     * @param offset the number of matching Sessions skipped.
+     * @param limit the number of Sessions to append at most.
+     * @param page the list to append the Sessions to.
+     * @return true when more Sessions match after this page.
+     * @throws IllegalArgumentException when a time of the query is not valid.
+     */
+    public boolean readPage(final Key<Conference> conferenceKey, final SessionQueryForm form,
+            final int offset, final int limit, final List<Session> page) {
+        Integer startsAfter = SessionQueryForm.minuteOfDay(form.getStartsAfter());
+        Integer startsBefore = SessionQueryForm.minuteOfDay(form.getStartsBefore());
+        Integer endsBefore = SessionQueryForm.minuteOfDay(form.getEndsBefore());
+        boolean[] excluded = new boolean[TypeOfSession.values().length];
+        for (TypeOfSession type : form.getExcludedTypes()) {
+            excluded[type.ordinal()] = true;
+        }
+
+        Timetable timetable = timetable(conferenceKey, form.getTypeOfSession());
+        List<Key<Session>> keys = new ArrayList<>(limit);
+        int matched = 0;
+        for (int i = 0; i < timetable.ids.length && matched <= offset + limit; i++) {
+            int start = timetable.startMinutes[i];
+            int type = timetable.types[i];
+            if (type >= 0 && excluded[type]) {
+                continue;
+            }
+            if (start < 0) {
+                if (form.hasTimeFilters()) {
+                    // Sorted last, none of the remaining Sessions can match
+                    break;
+                }
+            } else if ((startsAfter != null && start < startsAfter)
+                    || (startsBefore != null && start >= startsBefore)
+                    || (endsBefore != null && timetable.endMinutes[i] > endsBefore)) {
+                continue;
+            }
+            if (matched >= offset && matched < offset + limit) {
+                keys.add(Key.create(conferenceKey, Session.class, timetable.ids[i]));
+            }
+            matched++;
+        }
+        Map<Key<Session>, Session> sessions = ofy().load().keys(keys);
+        for (Key<Session> key : keys) {
+            if (sessions.containsKey(key)) {
+                page.add(sessions.get(key));
+            }
+        }
+        return matched > offset + limit;
+    }
+
+    /**
+     * Drops the cached timetables of a Conference. Called after a Session is added to it.
+     *
+     * @param conferenceKey the key of the Conference.
+     */
+    public void invalidate(final Key<Conference> conferenceKey) {
+        List<String> cacheKeys = new ArrayList<>();
+        cacheKeys.add(cacheKey(conferenceKey, null));
+        for (TypeOfSession type : TypeOfSession.values()) {
+            cacheKeys.add(cacheKey(conferenceKey, type));
+        }
+        memcacheService.deleteAll(cacheKeys);
+    }
+
+    private Timetable timetable(final Key<Conference> conferenceKey, final TypeOfSession type) {
+        String cacheKey = cacheKey(conferenceKey, type);
+        Timetable timetable = (Timetable) memcacheService.get(cacheKey);
+        if (timetable != null) {
+            return timetable;
+        }
+        long start = System.currentTimeMillis();
+        Query<Session> query = ofy().load().type(Session.class).ancestor(conferenceKey);
+        if (type != null) {
+            query = query.filter("typeOfSession", type);
+        }
+        List<Session> sessions = new ArrayList<>(query.list());
+        indexAdvisor.record(new QueryShape("Session", true,
+                type == null ? Collections.<String> emptyList()
+                        : Collections.singletonList("typeOfSession"), null,
+                Collections.<String> emptyList()), System.currentTimeMillis() - start);
+        Collections.sort(sessions, BY_START);
+        timetable = new Timetable(sessions);
+        memcacheService.put(cacheKey, timetable,
+                Expiration.byDeltaSeconds(TIMETABLE_CACHE_SECONDS));
+        LOG.info(String.format("Cached the timetable of %d sessions for %s", sessions.size(),
+                cacheKey));
+        return timetable;
+    }
+
+    private static String cacheKey(final Key<Conference> conferenceKey,
+            final TypeOfSession type) {
+        return TIMETABLE_PREFIX + conferenceKey.getString() + "_"
+                + (type == null ? "ALL" : type.name());
+    }
+
+    /**
+     * Orders Sessions by start time, those without one last, then by id.
+     */
+    private static final Comparator<Session> BY_START = new Comparator<Session>() {
+        @Override
+        public int compare(Session left, Session right) {
+            Integer leftStart = left.getStartMinute();
+            Integer rightStart = right.getStartMinute();
+            if (leftStart == null || rightStart == null) {
+                if (leftStart != rightStart) {
+                    return leftStart == null ? 1 : -1;
+                }
+            } else if (!leftStart.equals(rightStart)) {
+                return leftStart < rightStart ? -1 : 1;
+            }
+            return left.getId().compareTo(right.getId());
+        }
+    };
+
+    /**
+     * The Sessions found by the datastore query, one array element per Session, sorted by
+     * start time; -1 stands for null.
+     */
+    private static class Timetable implements Serializable {
+
+        private static final long serialVersionUID = -2893326400281911557L;
+
+        private final long[] ids;
+
+        private final byte[] types;
+
+        private final int[] startMinutes;
+
+        private final int[] endMinutes;
+
+        Timetable(final List<Session> sessions) {
+            ids = new long[sessions.size()];
+            types = new byte[sessions.size()];
+            startMinutes = new int[sessions.size()];
+            endMinutes = new int[sessions.size()];
+            for (int i = 0; i < sessions.size(); i++) {
+                Session session = sessions.get(i);
+                ids[i] = session.getId();
+                types[i] = (byte) (session.getTypeOfSession() == null ? -1
+                        : session.getTypeOfSession().ordinal());
+                startMinutes[i] = session.getStartMinute() == null ? -1
+                        : session.getStartMinute();
+                endMinutes[i] = session.getEndMinute() == null ? -1 : session.getEndMinute();
+            }
+        }
+    }
+}
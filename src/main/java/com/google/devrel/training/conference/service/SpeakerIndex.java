@@ -0,0 +1,118 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Keeps a Speaker per speaker name, listing their Sessions across all Conferences and the
+ * Conferences they are featured in.
+ *
+ * A Conference is indexed in the task run after one of its Sessions is created, and only the
+ * Speakers whose Sessions in it changed are rewritten, each in its own transaction. Sessions
+ * are never renamed or deleted, so a speaker never leaves a Conference. Only root Conferences
+ * are indexed; legacy Conferences are indexed once migrated.
+ */
+public class SpeakerIndex {
+
+    private static final Logger LOG = Logger.getLogger(SpeakerIndex.class.getName());
+
+    /**
+     * Brings the Speakers of a Conference's Sessions in line with them.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return the number of Speakers rewritten.
+     */
+    public int index(final Key<Conference> conferenceKey) {
+        if (conferenceKey.getParent() != null) {
+            LOG.info("Not indexing speakers of legacy conference " + conferenceKey);
+            return 0;
+        }
+        Map<Key<Speaker>, Set<Key<Session>>> sessionsBySpeaker = new LinkedHashMap<>();
+        Map<Key<Speaker>, String> names = new LinkedHashMap<>();
+        for (Session session : ofy().load().type(Session.class).ancestor(conferenceKey)) {
+            if (Speaker.normalize(session.getSpeaker()) == null) {
+                continue;
+            }
+            Key<Speaker> speakerKey = Speaker.key(session.getSpeaker());
+            if (!sessionsBySpeaker.containsKey(speakerKey)) {
+                sessionsBySpeaker.put(speakerKey, new LinkedHashSet<Key<Session>>());
+                names.put(speakerKey, session.getSpeaker());
+            }
+            sessionsBySpeaker.get(speakerKey).add(Key.create(session));
+        }
+        Map<Key<Speaker>, Speaker> speakers = ofy().load().keys(sessionsBySpeaker.keySet());
+        int updated = 0;
+        for (Map.Entry<Key<Speaker>, Set<Key<Session>>> entry : sessionsBySpeaker.entrySet()) {
+            Speaker speaker = speakers.get(entry.getKey());
+            if (speaker == null || !speaker.sessionsIn(conferenceKey).equals(entry.getValue())) {
+                update(entry.getKey(), names.get(entry.getKey()), conferenceKey,
+                        entry.getValue());
+                updated++;
+            }
+        }
+        LOG.info(String.format("Indexed %d speakers of %s, %d updated",
+                sessionsBySpeaker.size(), conferenceKey, updated));
+        return updated;
+    }
+
+    /**
+     * Returns the Speaker with the given name.
+     *
+     * @param name the name of the speaker, in any case or spacing.
+     * @return the Speaker, null when no Session was given by that name.
+     */
+    public Speaker find(final String name) {
+        if (Speaker.normalize(name) == null) {
+            return null;
+        }
+        return ofy().load().key(Speaker.key(name)).now();
+    }
+
+    /**
+     * Appends a page of the Sessions of a speaker, in the order they were indexed.
+     *
+     * @param speaker the Speaker.
+     * @param offset the number of Sessions skipped.
+     * @param limit the number of Sessions to append at most.
+     * @param page the list to append the Sessions to.
+     * @return true when the speaker has more Sessions after this page.
+     */
+    public boolean readSessions(final Speaker speaker, final int offset, final int limit,
+            final List<Session> page) {
+        List<Key<Session>> sessionKeys = speaker.getSessionKeys();
+        List<Key<Session>> keys = new ArrayList<>(sessionKeys.subList(
+                Math.min(offset, sessionKeys.size()),
+                Math.min(offset + limit, sessionKeys.size())));
+        page.addAll(ofy().load().keys(keys).values());
+        return offset + limit < sessionKeys.size();
+    }
+
+    private void update(final Key<Speaker> speakerKey, final String name,
+            final Key<Conference> conferenceKey, final Set<Key<Session>> sessionKeys) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                Speaker speaker = ofy().load().key(speakerKey).now();
+                if (speaker == null) {
+                    speaker = new Speaker(name);
+                }
+                speaker.updateSessionsIn(conferenceKey, sessionKeys);
+                ofy().save().entity(speaker);
+                return null;
+            }
+        });
+    }
+}
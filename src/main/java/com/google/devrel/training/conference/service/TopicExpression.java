@@ -0,0 +1,378 @@
+package com.google.devrel.training.conference.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.base.Joiner;
+
+/**
+ * A boolean expression over Conference topics, such as
+ * {@code Cloud AND (Android OR "Machine Learning") AND NOT Web}.
+ *
+ * Topics are bare words or quoted strings, matched exactly. NOT binds tighter than AND, which
+ * binds tighter than OR; the keywords are case insensitive. An expression must name the
+ * Conferences it matches: "NOT Web" alone, which would match everything else, is rejected.
+ */
+public final class TopicExpression {
+
+    private final Node root;
+
+    private TopicExpression(final Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses an expression.
+     *
+     * @param expression the expression.
+     * @return the parsed expression.
+     * @throws IllegalArgumentException when the expression is not valid.
+     */
+    public static TopicExpression parse(final String expression) {
+        Parser parser = new Parser(tokenize(expression));
+        Node root = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position)
+                    + " in topic expression: " + expression);
+        }
+        if (root.isNegative()) {
+            throw new IllegalArgumentException(
+                    "A topic expression can't match Conferences by exclusion only: " + expression);
+        }
+        return new TopicExpression(root);
+    }
+
+    /**
+     * Returns the topics the expression refers to.
+     *
+     * @return the topics, sorted.
+     */
+    public Set<String> getTopics() {
+        Set<String> topics = new TreeSet<>();
+        root.collectTopics(topics);
+        return topics;
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param bitmaps the ordinals of the Conferences tagged with each topic; a missing topic
+     *        tags no Conference.
+     * @return the ordinals of the matching Conferences.
+     */
+    public RoaringBitmap evaluate(final Map<String, RoaringBitmap> bitmaps) {
+        return root.evaluate(bitmaps).bitmap;
+    }
+
+    /**
+     * Returns the expression in a canonical form: the same expression written with other
+     * spacing, keyword case or operand order gives the same string.
+     */
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+    private static List<String> tokenize(final String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException(
+                            "Unterminated quote in topic expression: " + expression);
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < expression.length() && !Character.isWhitespace(expression.charAt(end))
+                        && "()\"".indexOf(expression.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(expression.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static class Parser {
+
+        private final List<String> tokens;
+
+        private int position;
+
+        Parser(final List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (accept("OR")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseNot());
+            while (accept("AND")) {
+                operands.add(parseNot());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node parseNot() {
+            if (accept("NOT")) {
+                return new Not(parseNot());
+            }
+            if (position == tokens.size()) {
+                throw new IllegalArgumentException("Topic expected at the end of the expression");
+            }
+            String token = tokens.get(position++);
+            if (token.equals("(")) {
+                Node node = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ) in topic expression");
+                }
+                return node;
+            }
+            if (token.equals(")") || isKeyword(token)) {
+                throw new IllegalArgumentException("Topic expected instead of " + token);
+            }
+            if (token.startsWith("\"")) {
+                token = token.substring(1, token.length() - 1);
+            }
+            return new Topic(token);
+        }
+
+        private boolean accept(final String keyword) {
+            if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean isKeyword(final String token) {
+            return token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")
+                    || token.equalsIgnoreCase("NOT");
+        }
+    }
+
+    /**
+     * The value of a sub-expression: the bitmap, or its complement when negated.
+     */
+    private static class Result {
+
+        private final RoaringBitmap bitmap;
+
+        private final boolean negated;
+
+        Result(final RoaringBitmap bitmap, final boolean negated) {
+            this.bitmap = bitmap;
+            this.negated = negated;
+        }
+    }
+
+    private abstract static class Node {
+
+        abstract Result evaluate(Map<String, RoaringBitmap> bitmaps);
+
+        abstract void collectTopics(Set<String> topics);
+
+        /**
+         * Returns true when the node evaluates to a complement.
+         */
+        abstract boolean isNegative();
+    }
+
+    private static class Topic extends Node {
+
+        private final String topic;
+
+        Topic(final String topic) {
+            this.topic = topic;
+        }
+
+        @Override
+        Result evaluate(final Map<String, RoaringBitmap> bitmaps) {
+            RoaringBitmap bitmap = bitmaps.get(topic);
+            return new Result(bitmap == null ? new RoaringBitmap() : bitmap, false);
+        }
+
+        @Override
+        void collectTopics(final Set<String> topics) {
+            topics.add(topic);
+        }
+
+        @Override
+        boolean isNegative() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + topic + "\"";
+        }
+    }
+
+    private static class Not extends Node {
+
+        private final Node operand;
+
+        Not(final Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Result evaluate(final Map<String, RoaringBitmap> bitmaps) {
+            Result result = operand.evaluate(bitmaps);
+            return new Result(result.bitmap, !result.negated);
+        }
+
+        @Override
+        void collectTopics(final Set<String> topics) {
+            operand.collectTopics(topics);
+        }
+
+        @Override
+        boolean isNegative() {
+            return !operand.isNegative();
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + operand;
+        }
+    }
+
+    /**
+     * Intersection: complements are subtracted instead of materialized.
+     */
+    private static class And extends Node {
+
+        private final List<Node> operands;
+
+        And(final List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        Result evaluate(final Map<String, RoaringBitmap> bitmaps) {
+            RoaringBitmap included = null;
+            RoaringBitmap excluded = new RoaringBitmap();
+            for (Node operand : operands) {
+                Result result = operand.evaluate(bitmaps);
+                if (result.negated) {
+                    excluded = excluded.or(result.bitmap);
+                } else {
+                    included = included == null ? result.bitmap : included.and(result.bitmap);
+                }
+            }
+            if (included == null) {
+                // NOT a AND NOT b = NOT (a OR b)
+                return new Result(excluded, true);
+            }
+            return new Result(included.andNot(excluded), false);
+        }
+
+        @Override
+        void collectTopics(final Set<String> topics) {
+            for (Node operand : operands) {
+                operand.collectTopics(topics);
+            }
+        }
+
+        @Override
+        boolean isNegative() {
+            for (Node operand : operands) {
+                if (!operand.isNegative()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + Joiner.on(" AND ").join(sorted(operands)) + ")";
+        }
+    }
+
+    /**
+     * Union: a complement absorbs the other operands into its own complement.
+     */
+    private static class Or extends Node {
+
+        private final List<Node> operands;
+
+        Or(final List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        Result evaluate(final Map<String, RoaringBitmap> bitmaps) {
+            RoaringBitmap included = new RoaringBitmap();
+            RoaringBitmap excluded = null;
+            for (Node operand : operands) {
+                Result result = operand.evaluate(bitmaps);
+                if (result.negated) {
+                    excluded = excluded == null ? result.bitmap : excluded.and(result.bitmap);
+                } else {
+                    included = included.or(result.bitmap);
+                }
+            }
+            if (excluded == null) {
+                return new Result(included, false);
+            }
+            // a OR NOT b = NOT (b AND NOT a)
+            return new Result(excluded.andNot(included), true);
+        }
+
+        @Override
+        void collectTopics(final Set<String> topics) {
+            for (Node operand : operands) {
+                operand.collectTopics(topics);
+            }
+        }
+
+        @Override
+        boolean isNegative() {
+            for (Node operand : operands) {
+                if (operand.isNegative()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + Joiner.on(" OR ").join(sorted(operands)) + ")";
+        }
+    }
+
+    private static List<String> sorted(final List<Node> operands) {
+        List<String> strings = new ArrayList<>(operands.size());
+        for (Node operand : operands) {
+            strings.add(operand.toString());
+        }
+        Collections.sort(strings);
+        return strings;
+    }
+}
@@ -0,0 +1,210 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.google.devrel.training.conference.ConferenceQueryPlan;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.ConferenceOrdinal;
+import com.google.devrel.training.conference.domain.TopicBitmap;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+/**
+ * Keeps a TopicBitmap per topic and evaluates TopicExpressions with them.
+ *
+ * Every root Conference gets a small ordinal the first time it is indexed. Each bitmap holds
+ * the ordinals of the Conferences tagged with its topic, so an expression over any number of
+ * topics costs one batch get and a few bitmap operations, independent of how many Conferences
+ * each topic has.
+ */
+public class TopicIndex {
+
+    private static final Logger LOG = Logger.getLogger(TopicIndex.class.getName());
+
+    /**
+     * Maximum number of Conferences read to fill a page when other filters reject most of
+     * the topic matches; the next page continues where the scan stopped.
+     */
+    private static final int SCAN_BUDGET = 1000;
+
+    private static final int SCAN_CHUNK_SIZE = 100;
+
+    /**
+     * Brings the bitmaps in line with the current topics of a Conference, assigning it an
+     * ordinal first if it has none.
+     *
+     * @param conferenceKey the key of the Conference.
+     * @return true when a bitmap changed.
+     */
+    public boolean index(final Key<Conference> conferenceKey) {
+        if (conferenceKey.getParent() != null) {
+            LOG.info("Not indexing topics of legacy conference " + conferenceKey);
+            return false;
+        }
+        Conference conference = ofy().load().key(conferenceKey).now();
+        if (conference == null) {
+            return false;
+        }
+        final long ordinal = conference.getOrdinal() == null
+                ? assignOrdinal(conferenceKey) : conference.getOrdinal();
+        ConferenceOrdinal conferenceOrdinal = ofy().load()
+                .key(Key.create(ConferenceOrdinal.class, ordinal)).now();
+
+        Set<String> topics = new LinkedHashSet<>();
+        if (conference.getTopics() != null) {
+            topics.addAll(conference.getTopics());
+        }
+        Set<String> added = new LinkedHashSet<>(topics);
+        added.removeAll(conferenceOrdinal.getTopics());
+        Set<String> removed = new LinkedHashSet<>(conferenceOrdinal.getTopics());
+        removed.removeAll(topics);
+        for (String topic : added) {
+            update(topic, (int) ordinal, true);
+        }
+        for (String topic : removed) {
+            update(topic, (int) ordinal, false);
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return false;
+        }
+        conferenceOrdinal.setTopics(new ArrayList<>(topics));
+        ofy().save().entity(conferenceOrdinal).now();
+        LOG.info(String.format("Indexed topics of %s: added %s, removed %s", conferenceKey,
+                added, removed));
+        return true;
+    }
+
+    /**
+     * Returns the ordinals of the Conferences matching an expression.
+     *
+     * @param expression the expression.
+     * @return the ordinals.
+     */
+    public RoaringBitmap match(final TopicExpression expression) {
+        List<Key<TopicBitmap>> keys = new ArrayList<>();
+        for (String topic : expression.getTopics()) {
+            keys.add(TopicBitmap.key(topic));
+        }
+        Map<String, RoaringBitmap> bitmaps = new HashMap<>();
+        for (TopicBitmap topicBitmap : ofy().load().keys(keys).values()) {
+            bitmaps.put(topicBitmap.getTopic(), topicBitmap.getOrdinals());
+        }
+        return expression.evaluate(bitmaps);
+    }
+
+    /**
+     * Appends a page of the Conferences matching a plan with a topic expression, in ordinal
+     * order, that is in the order they were first indexed.
+     *
+     * @param plan the plan, the Conferences matching its expression must also pass its
+     *        residual filters.
+     * @param pageSize the number of results to append at most.
+     * @param cursor the cursor returned with the previous page, null for the first page.
+     * @param page the list to append the results to.
+     * @return the cursor of the next page, null when there are no more results.
+     * @throws IllegalArgumentException when the cursor is not valid.
+     */
+    public String readPage(final ConferenceQueryPlan plan, final int pageSize,
+            final String cursor, final List<Conference> page) {
+        int[] ordinals = match(plan.getTopicFilter()).toArray();
+        int start = 0;
+        if (cursor != null) {
+            int last;
+            try {
+                last = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            int index = Arrays.binarySearch(ordinals, last);
+            start = index >= 0 ? index + 1 : -index - 1;
+        }
+        int scanned = 0;
+        int returned = 0;
+        int position = start;
+        while (returned < pageSize && scanned < SCAN_BUDGET && position < ordinals.length) {
+            int end = Math.min(ordinals.length,
+                    position + Math.min(SCAN_CHUNK_SIZE, SCAN_BUDGET - scanned));
+            List<Key<ConferenceOrdinal>> ordinalKeys = new ArrayList<>(end - position);
+            for (int i = position; i < end; i++) {
+                ordinalKeys.add(Key.create(ConferenceOrdinal.class, ordinals[i]));
+            }
+            Map<Key<ConferenceOrdinal>, ConferenceOrdinal> conferenceOrdinals = ofy().load()
+                    .keys(ordinalKeys);
+            List<Key<Conference>> conferenceKeys = new ArrayList<>(conferenceOrdinals.size());
+            for (ConferenceOrdinal conferenceOrdinal : conferenceOrdinals.values()) {
+                conferenceKeys.add(conferenceOrdinal.getConferenceKey());
+            }
+            Map<Key<Conference>, Conference> conferences = ofy().load().keys(conferenceKeys);
+            for (Key<ConferenceOrdinal> ordinalKey : ordinalKeys) {
+                if (returned == pageSize) {
+                    break;
+                }
+                position++;
+                scanned++;
+                ConferenceOrdinal conferenceOrdinal = conferenceOrdinals.get(ordinalKey);
+                Conference conference = conferenceOrdinal == null ? null
+                        : conferences.get(conferenceOrdinal.getConferenceKey());
+                if (conference != null && plan.matches(conference)) {
+                    page.add(conference);
+                    returned++;
+                }
+            }
+        }
+        boolean hasNext = position < ordinals.length;
+        plan.recordScan(scanned, returned, hasNext && returned < pageSize);
+        return hasNext ? String.valueOf(ordinals[position - 1]) : null;
+    }
+
+    private long assignOrdinal(final Key<Conference> conferenceKey) {
+        final Key<ConferenceOrdinal> ordinalKey = ofy().factory()
+                .allocateId(ConferenceOrdinal.class);
+        return ofy().transact(new Work<Long>() {
+            @Override
+            public Long run() {
+                Conference conference = ofy().load().key(conferenceKey).now();
+                if (conference.getOrdinal() != null) {
+                    // A concurrent task was first, the allocated id is left unused
+                    return conference.getOrdinal();
+                }
+                conference.assignOrdinal(ordinalKey.getId());
+                ofy().save().entities(conference,
+                        new ConferenceOrdinal(ordinalKey.getId(), conferenceKey));
+                return ordinalKey.getId();
+            }
+        });
+    }
+
+    private void update(final String topic, final int ordinal, final boolean add) {
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                TopicBitmap topicBitmap = ofy().load().key(TopicBitmap.key(topic)).now();
+                if (topicBitmap == null) {
+                    topicBitmap = new TopicBitmap(topic);
+                }
+                RoaringBitmap ordinals = topicBitmap.getOrdinals();
+                if (add) {
+                    ordinals.add(ordinal);
+                } else {
+                    ordinals.remove(ordinal);
+                }
+                if (ordinals.isEmpty()) {
+                    ofy().delete().entity(topicBitmap);
+                } else {
+                    topicBitmap.setOrdinals(ordinals);
+                    ofy().save().entity(topicBitmap);
+                }
+                return null;
+            }
+        });
+    }
+}
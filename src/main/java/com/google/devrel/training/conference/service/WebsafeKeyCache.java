@@ -0,0 +1,51 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.googlecode.objectify.Key;
+
+/**
+ * Parses websafe keys, keeping the most recently used ones in a bounded per-instance cache.
+ *
+ * Parsing a websafe key decodes base64 and a protocol buffer, and the same few Conference and
+ * Session keys come back in most requests. Keys are immutable, so they are safely shared.
+ */
+public final class WebsafeKeyCache {
+
+    /**
+     * The number of keys kept, a few MB at most.
+     */
+    private static final int MAX_KEYS = 10000;
+
+    private static final LoadingCache<String, Key<?>> KEYS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_KEYS)
+            .build(new CacheLoader<String, Key<?>>() {
+                @Override
+                public Key<?> load(String websafeKey) {
+                    return Key.create(websafeKey);
+                }
+            });
+
+    private WebsafeKeyCache() {}
+
+    /**
+     * Parses a websafe key, like Key.create(String).
+     *
+     * @param websafeKey the websafe key.
+     * @return the key.
+     * @throws IllegalArgumentException when the websafe key is not valid.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Key<T> parse(final String websafeKey) {
+        try {
+            return (Key<T>) KEYS.getUnchecked(websafeKey);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
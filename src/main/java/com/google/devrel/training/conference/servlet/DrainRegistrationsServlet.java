@@ -0,0 +1,27 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.service.AsyncRegistrationService;
+
+/**
+ * A servlet processing the queued registration requests of a Conference.
+ */
+public class DrainRegistrationsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 2620532297335866475L;
+
+	private final AsyncRegistrationService asyncRegistration = new AsyncRegistrationService();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		asyncRegistration.drain(req.getParameter("websafeConferenceKey"));
+		resp.setStatus(204);
+	}
+}
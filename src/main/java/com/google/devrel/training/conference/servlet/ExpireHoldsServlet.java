@@ -0,0 +1,27 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.service.SeatHoldService;
+
+/**
+ * A servlet giving the seats of expired holds back, run by cron.
+ */
+public class ExpireHoldsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -1489311573453592032L;
+
+	private final SeatHoldService seatHolds = new SeatHoldService();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		seatHolds.expireHolds();
+		resp.setStatus(204);
+	}
+}
@@ -0,0 +1,49 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.service.BulkExportService;
+
+/**
+ * A servlet exporting a page of Conferences, each followed by its Sessions, as newline
+ * delimited JSON.
+ *
+ * GET /admin/exportconferences for the first page; the X-Export-Cursor header of the response
+ * is the cursor parameter of the next page, and is missing on the last one. Concatenated,
+ * the pages make a file /tasks/importconferences imports.
+ */
+public class ExportConferencesServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -4469263810937531622L;
+
+	private static final int DEFAULT_LIMIT = 100;
+
+	private static final int MAX_LIMIT = 1000;
+
+	private final BulkExportService bulkExport = new BulkExportService();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String limitParameter = req.getParameter("limit");
+		int limit = limitParameter == null ? DEFAULT_LIMIT : Math.max(1,
+				Math.min(MAX_LIMIT, Integer.parseInt(limitParameter)));
+
+		BulkExportService.Page page = bulkExport.page(
+				req.getParameter("cursor"), limit);
+		if (page.getNextCursor() != null) {
+			resp.setHeader("X-Export-Cursor", page.getNextCursor());
+		}
+		resp.setContentType("application/x-ndjson");
+		resp.setCharacterEncoding("UTF-8");
+		Writer out = resp.getWriter();
+		bulkExport.write(page, out);
+		out.flush();
+	}
+}
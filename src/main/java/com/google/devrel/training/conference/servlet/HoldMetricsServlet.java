@@ -0,0 +1,49 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.HoldMetrics;
+import com.google.devrel.training.conference.service.ConferenceKeyResolver;
+import com.google.devrel.training.conference.service.JsonLine;
+import com.google.devrel.training.conference.service.SeatHoldService;
+
+/**
+ * A servlet returning how many holds were placed and how they ended, as JSON.
+ *
+ * GET /admin/holdmetrics for all conferences, with a websafeConferenceKey parameter for one.
+ */
+public class HoldMetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -6090237455207127744L;
+
+	private final SeatHoldService seatHolds = new SeatHoldService();
+
+	private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String websafeConferenceKey = req.getParameter("websafeConferenceKey");
+		HoldMetrics metrics = seatHolds.getMetrics(websafeConferenceKey == null ? null
+				: conferenceKeys.resolve(websafeConferenceKey).getString());
+		Map<String, Object> record = new LinkedHashMap<>();
+		record.put("placed", metrics.getPlaced());
+		record.put("confirmed", metrics.getConfirmed());
+		record.put("released", metrics.getReleased());
+		record.put("expired", metrics.getExpired());
+		record.put("conversionRate", metrics.getConversionRate());
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("UTF-8");
+		Writer out = resp.getWriter();
+		out.write(JsonLine.format(record));
+		out.flush();
+	}
+}
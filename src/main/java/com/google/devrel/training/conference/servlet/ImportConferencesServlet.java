@@ -0,0 +1,77 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.common.hash.Hashing;
+import com.google.devrel.training.conference.service.BulkImportService;
+
+/**
+ * A servlet importing Conferences and Sessions from a newline delimited JSON file, one chunk
+ * per task, each task chaining the next one with the offset where it stopped.
+ *
+ * POST to /tasks/importconferences with source=gs://bucket/object, or a local path on the dev
+ * server, to start; the file written by /admin/exportconferences can be imported as is. A
+ * task failing to read the file is retried at the same offset. The next task is named after
+ * the source and its offset, so a task running twice doesn't fork the chain.
+ */
+public class ImportConferencesServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 5830563291374046201L;
+
+	private static final Logger LOG = Logger
+			.getLogger(ImportConferencesServlet.class.getName());
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final BulkImportService bulkImport = new BulkImportService();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String source = req.getParameter("source");
+		if (source == null) {
+			resp.sendError(HttpServletResponse.SC_BAD_REQUEST,
+					"The source is required");
+			return;
+		}
+		String offsetParameter = req.getParameter("offset");
+		long offset = offsetParameter == null ? 0 : Long
+				.parseLong(offsetParameter);
+
+		long next;
+		try {
+			next = bulkImport.importChunk(source, offset);
+		} catch (IllegalArgumentException e) {
+			// Retrying wouldn't help
+			LOG.severe("Import of " + source + " stopped at " + offset + ": "
+					+ e.getMessage());
+			resp.setStatus(204);
+			return;
+		}
+		if (next >= 0) {
+			try {
+				QueueFactory.getDefaultQueue().add(TaskOptions.Builder
+						.withUrl("/tasks/importconferences")
+						.taskName("importconferences-"
+								+ Hashing.sha1().hashString(source, UTF_8) + "-" + next)
+						.param("source", source)
+						.param("offset", String.valueOf(next)));
+			} catch (TaskAlreadyExistsException e) {
+				// Chained by an earlier run of this task
+			}
+		} else {
+			LOG.info("Import of " + source + " done");
+		}
+		resp.setStatus(204);
+	}
+}
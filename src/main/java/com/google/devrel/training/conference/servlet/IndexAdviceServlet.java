@@ -0,0 +1,55 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.IndexAdvice;
+import com.google.devrel.training.conference.SuggestedIndex;
+import com.google.devrel.training.conference.service.IndexAdvisor;
+import com.google.devrel.training.conference.service.JsonLine;
+
+/**
+ * A servlet returning the composite indexes needed by the queries run so far.
+ *
+ * GET /admin/indexadvice writes one line of JSON per index, most used first;
+ * GET /admin/indexadvice?format=xml writes the datastore-indexes.xml declaring them.
+ */
+public class IndexAdviceServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 2706441395216823165L;
+
+	private final IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		IndexAdvice advice = indexAdvisor.getAdvice();
+		resp.setCharacterEncoding("UTF-8");
+		Writer out = resp.getWriter();
+		if ("xml".equals(req.getParameter("format"))) {
+			resp.setContentType("application/xml");
+			out.write(advice.getDatastoreIndexesXml());
+		} else {
+			resp.setContentType("application/x-ndjson");
+			for (SuggestedIndex index : advice.getIndexes()) {
+				Map<String, Object> record = new LinkedHashMap<>();
+				record.put("kind", index.getKind());
+				record.put("ancestor", index.isAncestor());
+				record.put("properties", index.getProperties());
+				record.put("shapes", index.getShapes());
+				record.put("count", index.getCount());
+				record.put("averageMillis", index.getAverageMillis());
+				out.write(JsonLine.format(record));
+				out.write('\n');
+			}
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,59 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.google.devrel.training.conference.service.SearchService;
+import com.google.devrel.training.conference.service.SpeakerIndex;
+import com.google.devrel.training.conference.service.TopicIndex;
+import com.googlecode.objectify.Key;
+
+/**
+ * A servlet updating the search index, the topic index and the speaker index of a Conference,
+ * run as a task after the Conference or one of its Sessions is saved.
+ *
+ * POST without a websafeConferenceKey to schedule the indexing of every Conference, one batch
+ * per task, each task chaining the next one with the cursor where it stopped.
+ */
+public class IndexConferenceServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 7286519932409177346L;
+
+	private final SearchService searchService = new SearchService();
+
+	private final TopicIndex topicIndex = new TopicIndex();
+
+	private final SpeakerIndex speakerIndex = new SpeakerIndex();
+
+	private final ConferenceQueryCache queryCache = new ConferenceQueryCache();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String websafeConferenceKey = req.getParameter("websafeConferenceKey");
+		if (websafeConferenceKey == null) {
+			String next = searchService.scheduleIndexes(req.getParameter("cursor"));
+			if (next != null) {
+				QueueFactory.getDefaultQueue().add(TaskOptions.Builder
+						.withUrl("/tasks/indexconference").param("cursor", next));
+			}
+		} else {
+			Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+			searchService.index(conferenceKey);
+			speakerIndex.index(conferenceKey);
+			if (topicIndex.index(conferenceKey)) {
+				// Cached pages of topic expressions may miss the Conference
+				queryCache.invalidate();
+			}
+		}
+		resp.setStatus(204);
+	}
+}
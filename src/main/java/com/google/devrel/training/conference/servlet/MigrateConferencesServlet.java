@@ -0,0 +1,126 @@
+package com.google.devrel.training.conference.servlet;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.service.ConferenceMigrationService;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * A servlet migrating legacy Conferences to root keys, one batch per task.
+ *
+ * The "conferences" phase copies the Conferences and their Sessions, then the "profiles"
+ * phase moves the registrations and wishlists inlined in Profiles to child entities and
+ * rewrites the keys they hold, then the "sessionkeys" phase strips the lists of Session keys
+ * left in Conferences. Each task chains the next one with the cursor where it stopped. POST
+ * to /tasks/migrateconferences without parameters to start, or with phase=profiles or
+ * phase=sessionkeys to start from that phase.
+ */
+public class MigrateConferencesServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -2372380744106582911L;
+
+	private static final Logger LOG = Logger
+			.getLogger(MigrateConferencesServlet.class.getName());
+
+	private static final int BATCH_SIZE = 50;
+
+	private static final String PHASE_CONFERENCES = "conferences";
+
+	private static final String PHASE_PROFILES = "profiles";
+
+	private static final String PHASE_SESSION_KEYS = "sessionkeys";
+
+	private final ConferenceMigrationService migration = new ConferenceMigrationService();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String phase = req.getParameter("phase");
+		if (phase == null) {
+			phase = PHASE_CONFERENCES;
+		}
+		String cursor = req.getParameter("cursor");
+
+		int processed = 0;
+		int migrated = 0;
+		QueryResultIterator<? extends Key<?>> iterator;
+		if (PHASE_CONFERENCES.equals(phase)) {
+			QueryResultIterator<Key<Conference>> conferenceKeys = keys(
+					Conference.class, cursor);
+			while (conferenceKeys.hasNext()) {
+				Key<Conference> conferenceKey = conferenceKeys.next();
+				processed++;
+				if (conferenceKey.getParent() != null
+						&& migration.migrateConference(conferenceKey) != null) {
+					migrated++;
+				}
+			}
+			iterator = conferenceKeys;
+		} else if (PHASE_SESSION_KEYS.equals(phase)) {
+			QueryResultIterator<Key<Conference>> conferenceKeys = keys(
+					Conference.class, cursor);
+			while (conferenceKeys.hasNext()) {
+				processed++;
+				if (migration.stripSessionKeys(conferenceKeys.next())) {
+					migrated++;
+				}
+			}
+			iterator = conferenceKeys;
+		} else {
+			QueryResultIterator<Key<Profile>> profileKeys = keys(
+					Profile.class, cursor);
+			while (profileKeys.hasNext()) {
+				processed++;
+				if (migration.rewriteProfile(profileKeys.next())) {
+					migrated++;
+				}
+			}
+			iterator = profileKeys;
+		}
+		LOG.info(String.format("Migration phase %s: %d of %d entities rewritten",
+				phase, migrated, processed));
+
+		if (processed == BATCH_SIZE) {
+			chain(phase, iterator.getCursor().toWebSafeString());
+		} else if (PHASE_CONFERENCES.equals(phase)) {
+			chain(PHASE_PROFILES, null);
+		} else if (PHASE_PROFILES.equals(phase)) {
+			chain(PHASE_SESSION_KEYS, null);
+		} else {
+			LOG.info("Migration done");
+		}
+		resp.setStatus(204);
+	}
+
+	private <T> QueryResultIterator<Key<T>> keys(Class<T> kind, String cursor) {
+		Query<T> query = ofy().load().type(kind).limit(BATCH_SIZE);
+		if (cursor != null) {
+			query = query.startAt(Cursor.fromWebSafeString(cursor));
+		}
+		return query.keys().iterator();
+	}
+
+	private void chain(String phase, String cursor) {
+		TaskOptions task = TaskOptions.Builder
+				.withUrl("/tasks/migrateconferences").param("phase", phase);
+		if (cursor != null) {
+			task.param("cursor", cursor);
+		}
+		QueueFactory.getDefaultQueue().add(task);
+	}
+}
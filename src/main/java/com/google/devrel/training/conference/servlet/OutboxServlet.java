@@ -0,0 +1,30 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.service.Outbox;
+import com.googlecode.objectify.Key;
+
+/**
+ * A servlet running a side effect enrolled in the Outbox by a committed transaction.
+ */
+public class OutboxServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 6158270347710932475L;
+
+	private final Outbox outbox = new Outbox();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		Key<Conference> conferenceKey = Key.create(req.getParameter("websafeConferenceKey"));
+		outbox.deliver(Outbox.Effect.valueOf(req.getParameter("effect")), conferenceKey);
+		resp.setStatus(204);
+	}
+}
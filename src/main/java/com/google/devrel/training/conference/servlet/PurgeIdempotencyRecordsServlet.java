@@ -0,0 +1,27 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.service.IdempotencyStore;
+
+/**
+ * A servlet deleting expired idempotency records, run by cron.
+ */
+public class PurgeIdempotencyRecordsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 5112735601946312209L;
+
+	private final IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		idempotencyStore.purgeExpired();
+		resp.setStatus(204);
+	}
+}
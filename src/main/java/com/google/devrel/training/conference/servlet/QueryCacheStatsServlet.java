@@ -0,0 +1,41 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.QueryCacheStats;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.google.devrel.training.conference.service.JsonLine;
+
+/**
+ * A servlet returning the hit and miss counters of the conference query cache as JSON.
+ */
+public class QueryCacheStatsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 5840235587161520846L;
+
+	private final ConferenceQueryCache queryCache = new ConferenceQueryCache();
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		QueryCacheStats stats = queryCache.getStats();
+		Map<String, Object> record = new LinkedHashMap<>();
+		record.put("hits", stats.getHits());
+		record.put("misses", stats.getMisses());
+		record.put("generation", stats.getGeneration());
+		record.put("hitRate", stats.getHitRate());
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("UTF-8");
+		Writer out = resp.getWriter();
+		out.write(JsonLine.format(record));
+		out.flush();
+	}
+}
@@ -1,25 +1,17 @@
 package com.google.devrel.training.conference.servlet;
 
-import com.google.appengine.api.utils.SystemProperty;
-
 import java.io.IOException;
-import java.util.Properties;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
-import javax.mail.Message;
-import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.google.devrel.training.conference.service.MailService;
+
 /**
- * A servlet for sending a notification e-mail.
+ * A servlet moving the notification e-mails queued as push tasks, before MailService, to the
+ * mail queue.
  */
 public class SendConfirmationEmailServlet extends HttpServlet {
 
@@ -27,30 +19,14 @@ public class SendConfirmationEmailServlet extends HttpServlet {
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
-	private static final Logger LOG = Logger.getLogger(
-            SendConfirmationEmailServlet.class.getName());
+
+	private final MailService mail = new MailService();
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        String email = request.getParameter("email");
-        String conferenceInfo = request.getParameter("conferenceInfo");
-        Properties props = new Properties();
-        Session session = Session.getDefaultInstance(props, null);
-        String body = "Hi, you have created a following conference.\n" + conferenceInfo;
-        try {
-            Message message = new MimeMessage(session);
-            InternetAddress from = new InternetAddress(
-                    String.format("noreply@%s.appspotmail.com",
-                            SystemProperty.applicationId.get()), "Conference Central");
-            message.setFrom(from);
-            message.addRecipient(Message.RecipientType.TO, new InternetAddress(email, ""));
-            message.setSubject("You created a new Conference!");
-            message.setText(body);
-            Transport.send(message);
-        } catch (MessagingException e) {
-            LOG.log(Level.WARNING, String.format("Failed to send an mail to %s", email), e);
-            throw new RuntimeException(e);
-        }
+        mail.queueConferenceCreated(request.getParameter("email"),
+                request.getParameter("conferenceInfo"));
+        response.setStatus(204);
     }
 }
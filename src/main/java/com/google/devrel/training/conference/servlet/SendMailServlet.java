@@ -0,0 +1,27 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.service.MailService;
+
+/**
+ * A servlet sending a batch of the queued mails.
+ */
+public class SendMailServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 4893470146215830192L;
+
+	private final MailService mail = new MailService();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		mail.send();
+		resp.setStatus(204);
+	}
+}
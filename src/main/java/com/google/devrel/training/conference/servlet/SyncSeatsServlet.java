@@ -0,0 +1,35 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.service.ConferenceKeyResolver;
+import com.google.devrel.training.conference.service.SeatInventoryService;
+import com.googlecode.objectify.Key;
+
+/**
+ * A servlet for copying the seats available over all SeatShards into the Conference.
+ */
+public class SyncSeatsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 4925016741405834829L;
+
+	private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+	private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String websafeConferenceKey = req.getParameter("websafeConferenceKey");
+		Key<Conference> conferenceKey = conferenceKeys
+				.resolve(websafeConferenceKey);
+		seatInventory.syncSeatsAvailable(conferenceKey);
+		resp.setStatus(204);
+	}
+}
@@ -0,0 +1,46 @@
+package com.google.devrel.training.conference.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.devrel.training.conference.service.OrganizerNameService;
+
+/**
+ * A servlet copying an organizer's display name onto his/her Conferences, one batch per task.
+ *
+ * Each task chains the next one with the cursor where it stopped. POST without a userId
+ * to schedule the rewrite for every organizer, which fills in the name on Conferences saved
+ * before it was copied.
+ */
+public class UpdateOrganizerNameServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 4410384619261581254L;
+
+	private final OrganizerNameService organizerNames = new OrganizerNameService();
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String userId = req.getParameter("userId");
+		String cursor = req.getParameter("cursor");
+		if (userId == null) {
+			String next = organizerNames.scheduleUpdates(cursor);
+			if (next != null) {
+				QueueFactory.getDefaultQueue().add(TaskOptions.Builder
+						.withUrl("/tasks/updateorganizername").param("cursor", next));
+			}
+		} else {
+			String next = organizerNames.updateConferences(userId, cursor);
+			if (next != null) {
+				organizerNames.scheduleUpdate(userId, next);
+			}
+		}
+		resp.setStatus(204);
+	}
+}
@@ -3,9 +3,9 @@ package com.google.devrel.training.conference.spi;
 import static com.google.devrel.training.conference.service.OfyService.ofy;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -13,29 +13,61 @@ import com.google.api.server.spi.config.Api;
 import com.google.api.server.spi.config.ApiMethod;
 import com.google.api.server.spi.config.ApiMethod.HttpMethod;
 import com.google.api.server.spi.config.Named;
+import com.google.api.server.spi.config.Nullable;
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.api.server.spi.response.CollectionResponse;
 import com.google.api.server.spi.response.ConflictException;
-import com.google.api.server.spi.response.ForbiddenException;
 import com.google.api.server.spi.response.NotFoundException;
 import com.google.api.server.spi.response.UnauthorizedException;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
-import com.google.appengine.api.taskqueue.Queue;
-import com.google.appengine.api.taskqueue.QueueFactory;
-import com.google.appengine.api.taskqueue.TaskOptions;
 import com.google.appengine.api.users.User;
-import com.google.appengine.repackaged.com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.devrel.training.conference.Announcement;
+import com.google.devrel.training.conference.ConferenceQueryPlan;
 import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.SessionBatchResult;
 import com.google.devrel.training.conference.WrappedBoolean;
+import com.google.devrel.training.conference.domain.Agenda;
 import com.google.devrel.training.conference.domain.Conference;
 import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.QueryShape;
+import com.google.devrel.training.conference.domain.RegistrationTicket;
+import com.google.devrel.training.conference.domain.SeatHold;
 import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionCount;
+import com.google.devrel.training.conference.domain.Speaker;
 import com.google.devrel.training.conference.form.ConferenceForm;
 import com.google.devrel.training.conference.form.ConferenceQueryForm;
 import com.google.devrel.training.conference.form.ProfileForm;
 import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import com.google.devrel.training.conference.form.SessionForm;
 import com.google.devrel.training.conference.form.SessionOfConferenceForm;
+import com.google.devrel.training.conference.form.SessionsOfConferenceForm;
+import com.google.devrel.training.conference.form.SessionQueryForm;
+import com.google.devrel.training.conference.service.AgendaService;
+import com.google.devrel.training.conference.service.AsyncRegistrationService;
+import com.google.devrel.training.conference.service.ConferenceKeyResolver;
+import com.google.devrel.training.conference.service.ConferenceQueryCache;
+import com.google.devrel.training.conference.service.ConferenceQueryPlanner;
+import com.google.devrel.training.conference.service.IdempotencyStore;
+import com.google.devrel.training.conference.service.IndexAdvisor;
+import com.google.devrel.training.conference.service.MailService;
+import com.google.devrel.training.conference.service.OrganizerEnricher;
+import com.google.devrel.training.conference.service.OrganizerNameService;
+import com.google.devrel.training.conference.service.Outbox;
+import com.google.devrel.training.conference.service.ProfileEntryService;
+import com.google.devrel.training.conference.service.QueryPager;
+import com.google.devrel.training.conference.service.RegistrationService;
+import com.google.devrel.training.conference.service.SearchService;
+import com.google.devrel.training.conference.service.SeatHoldService;
+import com.google.devrel.training.conference.service.SeatInventoryService;
+import com.google.devrel.training.conference.service.SessionBatchService;
+import com.google.devrel.training.conference.service.SessionCountService;
+import com.google.devrel.training.conference.service.SessionQueryPlanner;
+import com.google.devrel.training.conference.service.SpeakerIndex;
+import com.google.devrel.training.enumeration.RegistrationResult;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.cmd.Query;
@@ -47,7 +79,53 @@ import com.googlecode.objectify.cmd.Query;
 		Constants.WEB_CLIENT_ID, Constants.API_EXPLORER_CLIENT_ID }, description = "API for the Conference Central Backend application.")
 public class ConferenceApi {
 
-	private static final String END_OF_LINE = "\n";
+	private final SeatInventoryService seatInventory = new SeatInventoryService();
+
+	private final ConferenceKeyResolver conferenceKeys = new ConferenceKeyResolver();
+
+	private final AsyncRegistrationService asyncRegistration = new AsyncRegistrationService();
+
+	private final SeatHoldService seatHolds = new SeatHoldService();
+
+	private final RegistrationService registration = new RegistrationService();
+
+	private final IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+	private final QueryPager queryPager = new QueryPager();
+
+	private final ConferenceQueryCache queryCache = new ConferenceQueryCache();
+
+	private final ConferenceQueryPlanner queryPlanner = new ConferenceQueryPlanner();
+
+	private final IndexAdvisor indexAdvisor = new IndexAdvisor();
+
+	private final OrganizerNameService organizerNames = new OrganizerNameService();
+
+	private final OrganizerEnricher organizerEnricher = new OrganizerEnricher();
+
+	private final SearchService searchService = new SearchService();
+
+	private final SpeakerIndex speakerIndex = new SpeakerIndex();
+
+	private final SessionQueryPlanner sessionQueries = new SessionQueryPlanner();
+
+	private final AgendaService agendas = new AgendaService();
+
+	private final SessionCountService sessionCounts = new SessionCountService();
+
+	private final SessionBatchService sessionBatches = new SessionBatchService();
+
+	private final MailService mail = new MailService();
+
+	private final Outbox outbox = new Outbox();
+
+	private final ProfileEntryService profileEntries = new ProfileEntryService();
+
+	/**
+	 * Prefix of the page tokens of getConferencesCreated pointing into the
+	 * legacy Conferences.
+	 */
+	private static final String LEGACY_PAGE_PREFIX = "legacy:";
 
 	/*
 	 * Get the display name from the user's email. For example, if the email is
@@ -65,66 +143,60 @@ public class ConferenceApi {
 	 *            signed in.
 	 * @param conferenceForm
 	 *            A ConferenceForm object representing user's inputs.
+	 * @param idempotencyKey
+	 *            Chosen by the client, a retry with the same key returns the
+	 *            Conference created by the first request. May be null.
 	 * @return A newly created Conference Object.
 	 * @throws UnauthorizedException
 	 *             when the user is not signed in.
 	 */
-	@SuppressWarnings("rawtypes")
 	@ApiMethod(name = "createConference", path = "conference", httpMethod = HttpMethod.POST)
 	public Conference createConference(final User user,
-			final ConferenceForm conferenceForm) throws UnauthorizedException {
+			final ConferenceForm conferenceForm,
+			@Nullable @Named("idempotencyKey") final String idempotencyKey)
+			throws UnauthorizedException {
 		validateUser(user);
 
 		// Get the userId of the logged in User
 		String userId = user.getUserId();
 
-		// Get the key for the User's Profile
-		Key profileKey = getKey(user);
+		// A retry returns the Conference of the first request
+		String createdKey = idempotencyStore.find("createConference", userId,
+				null, idempotencyKey);
+		if (createdKey != null) {
+			Conference created = ofy().load()
+					.key(Key.<Conference> create(createdKey)).now();
+			if (created != null) {
+				return created;
+			}
+		}
 
 		// Allocate a key for the conference -- let App Engine allocate the ID
-		// Don't forget to include the parent Profile in the allocated ID
-		final Key conferenceKey = ofy().factory().allocateId(profileKey,
+		// Conferences are root entities, out of the organizer's entity group
+		final Key<Conference> conferenceKey = ofy().factory().allocateId(
 				Conference.class);
 
-		// Get the Conference Id from the Key
-		final long conferenceId = conferenceKey.getId();
-
-		// Get the existing Profile entity for the current user if there is one
-		// Otherwise create a new Profile entity with default values
-		Profile profile = getProfile(profileKey);
-
-		if (profile != null) {
-			ofy().delete().entity(profile);
-		}
-
-		profile = buildProfile(user, null);
-
-		// Create a new Conference Entity, specifying the user's Profile entity
-		// as the parent of the conference
-		Conference conference = new Conference(conferenceId, userId,
-				conferenceForm);
-
-		// Save Conference and Profile Entities
-		ofy().save().entities(profile, conference).now();
-		
-		
-		//Add mail in queue
-		Joiner joiner = Joiner.on(", ").skipNulls();
-		StringBuilder builder = new StringBuilder();
-		builder.append("Id: " + conferenceId + END_OF_LINE)
-		.append("Name: " + conference.getName() + END_OF_LINE)
-		.append("City: " + conference.getCity() + END_OF_LINE )
-		.append("Topics: " + joiner.join(conference.getTopics()) + END_OF_LINE)
-		.append("Start Date: " + conference.getStartDate() + END_OF_LINE)
-		.append("End Date: " + conference.getEndDate() + END_OF_LINE)
-		.append("Max Attendees: " + conference.getSeatsAvailable());
-
-		Queue queue = QueueFactory.getDefaultQueue();
-		
-		queue.add(TaskOptions.Builder
-				.withUrl("/cron/sendconfirmationemail")
-				.param("email", user.getEmail())
-				.param("conferenceInfo", builder.toString()));
+		// Save the Profile, the Conference, its seat shards and the
+		// idempotency record in one transaction, at most 23 entity groups,
+		// which also enrolls the indexing and the mail
+		Conference conference = ofy().transact(new Work<Conference>() {
+			@Override
+			public Conference run() {
+				// Get the existing Profile entity for the current user if
+				// there is one, otherwise build one with default values
+				Profile profile = buildProfile(user, null);
+				Conference conference = new Conference(conferenceKey.getId(),
+						user.getUserId(), conferenceForm);
+				conference.updateOrganizerDisplayName(profile.getDisplayName());
+				ofy().save().entities(profile, conference);
+				ofy().save().entities(seatInventory.createShards(conference));
+				idempotencyStore.record("createConference", user.getUserId(),
+						null, idempotencyKey, conference.getWebsafeKey());
+				outbox.enroll(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+				return conference;
+			}
+		});
+		queryCache.invalidate();
 
 		return conference;
 
@@ -153,9 +225,17 @@ public class ConferenceApi {
 		// If the user is not logged in, throw an UnauthorizedException
 		validateUser(user);
 
+		Profile existing = getProfile(Key.create(Profile.class, user.getUserId()));
+		String previousDisplayName = existing == null ? null : existing
+				.getDisplayName();
 		Profile profile = buildProfile(user, profileForm);
 		// Save the entity in the datastore
 		ofy().save().entity(profile).now();
+		// Conferences hold a copy of the organizer's display name
+		if (existing != null && profile.getDisplayName() != null
+				&& !profile.getDisplayName().equals(previousDisplayName)) {
+			organizerNames.scheduleUpdate(user.getUserId());
+		}
 		// Return the profile
 		return profile;
 	}
@@ -232,46 +312,222 @@ public class ConferenceApi {
 	public Conference getConference(
 			@Named("websafeConferenceKey") final String websafeConferenceKey)
 			throws NotFoundException {
-		Key<Conference> conferenceKey = Key.create(websafeConferenceKey);
+		Key<Conference> conferenceKey = conferenceKeys
+				.resolve(websafeConferenceKey);
 		Conference conference = ofy().load().key(conferenceKey).now();
 		if (conference == null) {
 			throw new NotFoundException("No Conference found with key: "
 					+ websafeConferenceKey);
 		}
+		conference.refreshSeatsAvailable(seatInventory
+				.getSeatsAvailable(conference));
 		return conference;
 	}
 
+	/**
+	 * Returns a page of the Conferences matching the query.
+	 *
+	 * @param query
+	 *            The filters to apply.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of the previous page, null for the first
+	 *            page.
+	 * @return the Conferences, with the token of the next page if any.
+	 * @throws BadRequestException
+	 *             when the filters or the cursor are not valid.
+	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@ApiMethod(name = "queryConferences", path = "queryConferences", httpMethod = HttpMethod.POST)
-	public List<Conference> queryConferences(ConferenceQueryForm query)
-			throws UnauthorizedException {
-		Iterable<Conference> conferenceIterable = query.getQuery();
-		List<Conference> result = new ArrayList<>(0);
-		List organizersKeyList = new ArrayList<>(0);
-
-		for (Conference conference : conferenceIterable) {
-			organizersKeyList.add(Key.create(Profile.class,
-					conference.getOrganizerUserId()));
-			result.add(conference);
+	public CollectionResponse<Conference> queryConferences(
+			ConferenceQueryForm query,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor)
+			throws UnauthorizedException, BadRequestException {
+		List<Conference> result = new ArrayList<>();
+		String nextPageToken;
+		try {
+			nextPageToken = queryCache.readPage(query,
+					queryPager.pageSize(limit), cursor, result);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
 		}
+		organizerEnricher.enrich(result);
+		seatInventory.refreshSeatsAvailable(result);
+		return CollectionResponse.<Conference> builder().setItems(result)
+				.setNextPageToken(nextPageToken).build();
+	}
+
+	/**
+	 * Searches the text of the Conferences and of their Sessions, best match
+	 * first.
+	 *
+	 * @param query
+	 *            The words to search for.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of a previous page, null for the first page.
+	 * @return a page of the matching Conferences.
+	 * @throws BadRequestException
+	 *             when the cursor is not valid.
+	 */
+	@ApiMethod(name = "searchConferences", path = "searchConferences", httpMethod = HttpMethod.GET)
+	public CollectionResponse<Conference> searchConferences(
+			@Named("query") final String query,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor)
+			throws BadRequestException {
+		int offset = parseOffset(cursor);
+		int pageSize = queryPager.pageSize(limit);
+		List<Key<Conference>> keys = new ArrayList<>(pageSize);
+		boolean more = searchService.search(query, offset, pageSize, keys);
+		// Conferences deleted since they were indexed are skipped
+		List<Conference> conferences = new ArrayList<>(ofy().load().keys(keys)
+				.values());
+		organizerEnricher.enrich(conferences);
+		seatInventory.refreshSeatsAvailable(conferences);
+		return CollectionResponse.<Conference> builder().setItems(conferences)
+				.setNextPageToken(more ? String.valueOf(offset + pageSize) : null)
+				.build();
+	}
 
-		ofy().load().keys(organizersKeyList);
-		return result;
+	/**
+	 * Reads a page of the Conferences matching the query, bypassing the cache,
+	 * and returns how it was read: the filters applied by the datastore, the
+	 * ones evaluated in memory and how many Conferences were scanned.
+	 *
+	 * @param query
+	 *            The filters to apply.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of a previous page, null for the first page.
+	 * @return the plan of the query.
+	 * @throws BadRequestException
+	 *             when the filters or the cursor are not valid.
+	 */
+	@ApiMethod(name = "explainConferenceQuery", path = "explainConferenceQuery", httpMethod = HttpMethod.POST)
+	public ConferenceQueryPlan explainConferenceQuery(ConferenceQueryForm query,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor)
+			throws BadRequestException {
+		try {
+			ConferenceQueryPlan plan = queryPlanner.plan(query);
+			queryPlanner.readPage(plan, queryPager.pageSize(limit), cursor,
+					new ArrayList<Conference>());
+			return plan;
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
 	}
 
-	@SuppressWarnings({ "rawtypes" })
+	/**
+	 * Returns a page of the Conferences created by the user.
+	 *
+	 * Root Conferences come first, ordered by name, followed by the legacy
+	 * Conferences not migrated yet.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of the previous page, null for the first
+	 *            page.
+	 * @return the Conferences, with the token of the next page if any.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws BadRequestException
+	 *             when the cursor is not valid.
+	 */
 	@ApiMethod(name = "getConferencesCreated", path = "getConferencesCreated", httpMethod = HttpMethod.POST)
-	public List<Conference> getConferencesCreated(User user)
-			throws UnauthorizedException {
+	public CollectionResponse<Conference> getConferencesCreated(User user,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor)
+			throws UnauthorizedException, BadRequestException {
 		validateUser(user);
-		Key userKey = getKey(user);
-		Query<Conference> order = ofy().load().type(Conference.class)
-				.ancestor(userKey).order("name");
+		int pageSize = queryPager.pageSize(limit);
+		List<Conference> conferences = new ArrayList<>(pageSize);
+		boolean legacyPage = cursor != null
+				&& cursor.startsWith(LEGACY_PAGE_PREFIX);
+		String nextPageToken = null;
+		if (!legacyPage) {
+			nextPageToken = readPage(
+					new QueryShape("Conference", false,
+							Collections.singletonList("organizerUserId"), null,
+							Collections.singletonList("name")),
+					ofy().load().type(Conference.class)
+							.filter("organizerUserId", user.getUserId())
+							.order("name"), pageSize, cursor, conferences);
+			if (nextPageToken == null && conferences.size() == pageSize) {
+				// The legacy Conferences start on the next page
+				nextPageToken = LEGACY_PAGE_PREFIX;
+			}
+		}
+		if (nextPageToken == null) {
+			// Legacy Conferences are children of the organizer's Profile
+			String legacyCursor = legacyPage ? Strings.emptyToNull(cursor
+					.substring(LEGACY_PAGE_PREFIX.length())) : null;
+			String legacyNext = readPage(
+					new QueryShape("Conference", true,
+							Collections.<String> emptyList(), null,
+							Collections.<String> emptyList()),
+					ofy().load().type(Conference.class)
+							.ancestor(Key.create(Profile.class, user.getUserId())),
+					pageSize - conferences.size(), legacyCursor, conferences);
+			nextPageToken = legacyNext == null ? null : LEGACY_PAGE_PREFIX
+					+ legacyNext;
+		}
+		organizerEnricher.enrich(conferences);
+		return CollectionResponse.<Conference> builder().setItems(conferences)
+				.setNextPageToken(nextPageToken).build();
+	}
 
-		return order.list();
+	private <T> String readPage(final QueryShape shape, final Query<T> query,
+			final int pageSize, final String cursor, final List<T> page)
+			throws BadRequestException {
+		long start = System.currentTimeMillis();
+		try {
+			return queryPager.readPage(query, pageSize, cursor, page);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		} finally {
+			indexAdvisor.record(shape, System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Parses the page token of the methods paging by offset.
+	 */
+	private static int parseOffset(final String cursor)
+			throws BadRequestException {
+		if (cursor == null) {
+			return 0;
+		}
+		int offset;
+		try {
+			offset = Integer.parseInt(cursor);
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("Invalid cursor: " + cursor);
+		}
+		if (offset < 0) {
+			throw new BadRequestException("Invalid cursor: " + cursor);
+		}
+		return offset;
 	}
 
-	private static String temp = null;
+	private <T> CollectionResponse<T> page(final QueryShape shape,
+			final Query<T> query, final Integer limit, final String cursor)
+			throws BadRequestException {
+		List<T> items = new ArrayList<>();
+		String nextPageToken = readPage(shape, query,
+				queryPager.pageSize(limit), cursor, items);
+		return CollectionResponse.<T> builder().setItems(items)
+				.setNextPageToken(nextPageToken).build();
+	}
 
 	/**
 	 * Register to attend the specified Conference.
@@ -281,79 +537,213 @@ public class ConferenceApi {
 	 *            signed in.
 	 * @param websafeConferenceKey
 	 *            The String representation of the Conference Key.
-	 * @return Boolean true when success, otherwise false
+	 * @param idempotencyKey
+	 *            Chosen by the client, a retry with the same key succeeds
+	 *            again instead of failing as already registered. May be null.
+	 * @return Boolean true when success.
 	 * @throws UnauthorizedException
 	 *             when the user is not signed in.
 	 * @throws NotFoundException
 	 *             when there is no Conference with the given conferenceId.
+	 * @throws ConflictException
+	 *             when the user is already registered or there are no seats
+	 *             available.
 	 */
 	@ApiMethod(name = "registerForConference", path = "conference/{websafeConferenceKey}/registration", httpMethod = HttpMethod.POST)
 	public WrappedBoolean registerForConference(final User user,
-			@Named("websafeConferenceKey") final String websafeConferenceKey)
-			throws UnauthorizedException, NotFoundException,
-			ForbiddenException, ConflictException {
+			@Named("websafeConferenceKey") final String websafeConferenceKey,
+			@Nullable @Named("idempotencyKey") final String idempotencyKey)
+			throws UnauthorizedException, NotFoundException, ConflictException {
 		// If not signed in, throw a 401 error.
 		validateUser(user);
 
-		temp = websafeConferenceKey;
+		RegistrationResult result = registration.register(user.getUserId(),
+				websafeConferenceKey, idempotencyKey);
+		switch (result) {
+		case REGISTERED:
+			Registration registered = registration.getRegistration(
+					user.getUserId(), websafeConferenceKey);
+			if (registered != null) {
+				mail.queueRegistrationConfirmed(user.getEmail(),
+						conferenceKeys.resolve(websafeConferenceKey), registered);
+			}
+			return new WrappedBoolean(true);
+		case ALREADY_REGISTERED:
+			throw new ConflictException("You have already registered");
+		case NO_SEATS_AVAILABLE:
+			throw new ConflictException("There are no seats available");
+		default:
+			throw registrationNotFound(result, websafeConferenceKey);
+		}
+	}
 
-		WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
-			@Override
-			public WrappedBoolean run() {
-				try {
-					// Get the conference key
-					Key<Conference> conferenceKey = Key
-							.create(ConferenceApi.temp);
-					// Get the Conference entity from the datastore
-					Conference conference = ofy().load().key(conferenceKey)
-							.now();
-
-					// 404 when there is no Conference with the given
-					// conferenceId.
-					if (conference == null) {
-						return new WrappedBoolean(false,
-								"No Conference found with key: "
-										+ ConferenceApi.temp);
-					}
-
-					// Get the user's Profile entity
-					Profile profile = getProfile(user);
-
-					// Has the user already registered to attend this
-					// conference?
-					if (profile.getConferenceKeysToAttend().contains(
-							ConferenceApi.temp)) {
-						return new WrappedBoolean(false, "Already registered");
-					} else if (conference.getSeatsAvailable() <= 0) {
-						return new WrappedBoolean(false, "No seats available");
-					} else {
-						// All looks good, go ahead and book the seat
-						profile.addToconferenceKeysToAttend(ConferenceApi.temp);
-						conference.bookSeats(1);
-
-						// Save the Conference and Profile entities
-						ofy().save().entities(profile, conference).now();
-						// We are booked!
-						return new WrappedBoolean(true);
-					}
-
-				} catch (Exception e) {
-					return new WrappedBoolean(false, "Unknown exception");
+	/**
+	 * Holds seats of the specified Conference for a few minutes, while the
+	 * user completes the checkout.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The String representation of the Conference Key.
+	 * @param seats
+	 *            The number of seats to hold.
+	 * @return the SeatHold, to confirm with confirmHold.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when there is no Conference with the given key.
+	 * @throws BadRequestException
+	 *             when the number of seats is out of bounds.
+	 * @throws ConflictException
+	 *             when there are not enough seats available.
+	 */
+	@ApiMethod(name = "holdSeats", path = "conference/{websafeConferenceKey}/hold", httpMethod = HttpMethod.POST)
+	public SeatHold holdSeats(final User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey,
+			@Named("seats") final int seats) throws UnauthorizedException,
+			NotFoundException, BadRequestException, ConflictException {
+		validateUser(user);
+		if (seats <= 0 || seats > Constants.MAX_SEATS_PER_HOLD) {
+			throw new BadRequestException("You can hold between 1 and "
+					+ Constants.MAX_SEATS_PER_HOLD + " seats");
+		}
+		Conference conference = getConference(websafeConferenceKey);
+		SeatHold hold = seatHolds.placeHold(user.getUserId(), conference,
+				seats);
+		if (hold == null) {
+			throw new ConflictException("There are no seats available");
+		}
+		return hold;
+	}
 
-				}
-			}
-		});
-		// if result is false
-		if (!result.getResult()) {
-			if (result.getReason() == "Already registered") {
-				throw new ConflictException("You have already registered");
-			} else if (result.getReason() == "No seats available") {
-				throw new ConflictException("There are no seats available");
-			} else {
-				throw new ForbiddenException("Unknown exception");
-			}
+	/**
+	 * Registers the user holding the seats to the Conference.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param holdId
+	 *            The id of the SeatHold.
+	 * @return Boolean true when success.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when the user has no hold with the given id.
+	 * @throws ConflictException
+	 *             when the hold expired, was completed already or the user
+	 *             is already registered.
+	 */
+	@ApiMethod(name = "confirmHold", path = "hold/{holdId}/confirm", httpMethod = HttpMethod.POST)
+	public WrappedBoolean confirmHold(final User user,
+			@Named("holdId") final long holdId) throws UnauthorizedException,
+			NotFoundException, ConflictException {
+		Key<SeatHold> holdKey = getOwnHoldKey(user, holdId);
+		SeatHoldService.Confirmation confirmation = seatHolds
+				.confirmHold(holdKey);
+		if (confirmation.getReason() != null) {
+			throw new ConflictException(confirmation.getReason());
+		}
+		mail.queueRegistrationConfirmed(user.getEmail(),
+				confirmation.getConferenceKey(), confirmation.getRegistration());
+		return new WrappedBoolean(true);
+	}
+
+	/**
+	 * Gives the seats of a hold back.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param holdId
+	 *            The id of the SeatHold.
+	 * @return Boolean true when success.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when the user has no hold with the given id.
+	 * @throws ConflictException
+	 *             when the hold expired or was completed already.
+	 */
+	@ApiMethod(name = "releaseHold", path = "hold/{holdId}", httpMethod = HttpMethod.DELETE)
+	public WrappedBoolean releaseHold(final User user,
+			@Named("holdId") final long holdId) throws UnauthorizedException,
+			NotFoundException, ConflictException {
+		String reason = seatHolds.releaseHold(getOwnHoldKey(user, holdId));
+		if (reason != null) {
+			throw new ConflictException(reason);
+		}
+		return new WrappedBoolean(true);
+	}
+
+	private Key<SeatHold> getOwnHoldKey(final User user, final long holdId)
+			throws UnauthorizedException, NotFoundException {
+		validateUser(user);
+		Key<SeatHold> holdKey = Key.create(SeatHold.class, holdId);
+		SeatHold hold = ofy().load().key(holdKey).now();
+		if (hold == null || !hold.getUserId().equals(user.getUserId())) {
+			throw new NotFoundException("No hold found with id: " + holdId);
+		}
+		return holdKey;
+	}
+
+	/**
+	 * Requests a registration to the specified Conference, processed
+	 * asynchronously by a worker booking seats in batches.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The String representation of the Conference Key.
+	 * @return a pending RegistrationTicket, to poll with getRegistrationStatus.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when the user has no Profile or there is no Conference with
+	 *             the given key.
+	 */
+	@ApiMethod(name = "registerForConferenceAsync", path = "conference/{websafeConferenceKey}/registration/async", httpMethod = HttpMethod.POST)
+	public RegistrationTicket registerForConferenceAsync(final User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey)
+			throws UnauthorizedException, NotFoundException {
+		Profile profile = verifyUserLogged(user);
+		Key<Conference> conferenceKey = conferenceKeys
+				.resolve(websafeConferenceKey);
+		if (ofy().load().key(conferenceKey).now() == null) {
+			throw new NotFoundException("No Conference found with key: "
+					+ websafeConferenceKey);
 		}
-		return result;
+		return asyncRegistration.enqueue(profile.getUserId(), conferenceKey);
+	}
+
+	/**
+	 * Returns the outcome of a registration requested with
+	 * registerForConferenceAsync.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param ticketId
+	 *            The id of the RegistrationTicket.
+	 * @return the RegistrationTicket.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when the user has no ticket with the given id.
+	 */
+	@ApiMethod(name = "getRegistrationStatus", path = "registration/{ticketId}", httpMethod = HttpMethod.GET)
+	public RegistrationTicket getRegistrationStatus(final User user,
+			@Named("ticketId") final long ticketId)
+			throws UnauthorizedException, NotFoundException {
+		validateUser(user);
+		RegistrationTicket ticket = ofy().load()
+				.key(Key.create(RegistrationTicket.class, ticketId)).now();
+		if (ticket == null || !ticket.getUserId().equals(user.getUserId())) {
+			throw new NotFoundException("No registration found with id: "
+					+ ticketId);
+		}
+		return ticket;
 	}
 
 	/**
@@ -371,12 +761,10 @@ public class ConferenceApi {
 	public Collection<Conference> getConferencesToAttend(final User user)
 			throws UnauthorizedException, NotFoundException {
 		Profile profile = verifyUserLogged(user);
-		List<String> keyStringsToAttend = profile.getConferenceKeysToAttend();
-		List<Key<Conference>> keysToAttend = new ArrayList<>();
-		for (String keyString : keyStringsToAttend) {
-			keysToAttend.add(Key.<Conference> create(keyString));
-		}
-		return ofy().load().keys(keysToAttend).values();
+		Collection<Conference> conferences = ofy().load()
+				.keys(profileEntries.conferenceKeysToAttend(profile)).values();
+		organizerEnricher.enrich(conferences);
+		return conferences;
 	}
 
 	private Profile verifyUserLogged(final User user)
@@ -391,6 +779,34 @@ public class ConferenceApi {
 		return profile;
 	}
 
+	/**
+	 * Tells whether the user is registered for the specified Conference.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The String representation of the Conference Key.
+	 * @return Boolean true when registered.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when the Profile or the Conference doesn't exist.
+	 */
+	@ApiMethod(name = "getRegistration", path = "conference/{websafeConferenceKey}/registration", httpMethod = HttpMethod.GET)
+	public WrappedBoolean getRegistration(final User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey)
+			throws UnauthorizedException, NotFoundException {
+		Profile profile = verifyUserLogged(user);
+		Conference conference = ofy().load()
+				.key(conferenceKeys.resolve(websafeConferenceKey)).now();
+		if (conference == null) {
+			throw new NotFoundException("No Conference found with key: "
+					+ websafeConferenceKey);
+		}
+		return new WrappedBoolean(profileEntries.isRegistered(profile, conference));
+	}
+
 	/**
 	 * Unregister from the specified Conference.
 	 *
@@ -400,58 +816,48 @@ public class ConferenceApi {
 	 * @param websafeConferenceKey
 	 *            The String representation of the Conference Key to unregister
 	 *            from.
-	 * @return Boolean true when success, otherwise false.
+	 * @param idempotencyKey
+	 *            Chosen by the client, a retry with the same key succeeds
+	 *            again instead of failing as not registered. May be null.
+	 * @return Boolean true when success.
 	 * @throws UnauthorizedException
 	 *             when the user is not signed in.
 	 * @throws NotFoundException
 	 *             when there is no Conference with the given conferenceId.
+	 * @throws ConflictException
+	 *             when the user is not registered for the Conference, or when
+	 *             the seats of the user don't fit back in it.
 	 */
 	@ApiMethod(name = "unregisterFromConference", path = "conference/{websafeConferenceKey}/registration", httpMethod = HttpMethod.DELETE)
 	public WrappedBoolean unregisterFromConference(final User user,
-			@Named("websafeConferenceKey") final String websafeConferenceKey)
-			throws UnauthorizedException, NotFoundException,
-			ForbiddenException, ConflictException {
-
-		temp = websafeConferenceKey;
-
-		WrappedBoolean result = ofy().transact(new Work<WrappedBoolean>() {
-			@Override
-			public WrappedBoolean run() {
-				try {
-					// Get the conference key
-					Key<Conference> conferenceKey = Key
-							.create(ConferenceApi.temp);
-					// Get the Conference entity from the datastore
-					Conference conference = ofy().load().key(conferenceKey)
-							.now();
-
-					// 404 when there is no Conference with the given
-					// conferenceId.
-					if (conference == null) {
-						return new WrappedBoolean(false,
-								"No Conference found with key: "
-										+ ConferenceApi.temp);
-					}
-
-					// remove conference from list
-					Profile profile = verifyUserLogged(user);
-					profile.removeToconferenceKeysToAttend(websafeConferenceKey);
-
-					// Update seat
-					conference.bookSeatsAble(1);
-
-					// Save the Conference and Profile entities
-					ofy().save().entities(profile, conference).now();
-
-				} catch (Exception e) {
-
-				}
-				return new WrappedBoolean(true);
-			}
-		});
+			@Named("websafeConferenceKey") final String websafeConferenceKey,
+			@Nullable @Named("idempotencyKey") final String idempotencyKey)
+			throws UnauthorizedException, NotFoundException, ConflictException {
+		// If not signed in, throw a 401 error.
+		validateUser(user);
 
-		return result;
+		RegistrationResult result = registration.unregister(user.getUserId(),
+				websafeConferenceKey, idempotencyKey);
+		switch (result) {
+		case UNREGISTERED:
+			return new WrappedBoolean(true);
+		case NOT_REGISTERED:
+			throw new ConflictException("You are not registered for this conference");
+		case SEATS_NOT_RETURNED:
+			throw new ConflictException(
+					"Your seats could not be given back, you are still registered");
+		default:
+			throw registrationNotFound(result, websafeConferenceKey);
+		}
+	}
 
+	private NotFoundException registrationNotFound(
+			final RegistrationResult result, final String websafeConferenceKey) {
+		if (result == RegistrationResult.PROFILE_NOT_FOUND) {
+			return new NotFoundException("Profile doesn't exist.");
+		}
+		return new NotFoundException("No Conference found with key: "
+				+ websafeConferenceKey);
 	}
 
 	@ApiMethod(name = "getAnnouncement", path = "announcement", httpMethod = HttpMethod.GET)
@@ -483,26 +889,43 @@ public class ConferenceApi {
 		return profile;
 	}
 
-	@SuppressWarnings("rawtypes")
-	private Key getKey(final User user) {
-		String userId = user.getUserId();
-		Key key = Key.create(Profile.class, userId);
-		return key;
-	}
-	
+	/**
+	 * Creates a Session in a Conference.
+	 *
+	 * The Session is saved and counted in one transaction, without writing the
+	 * Conference; its Sessions are listed with ancestor queries.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param form
+	 *            The Conference and the SessionForm.
+	 * @return true once the Session is saved.
+	 * @throws ParseException
+	 *             when the date of the Session is not dd/MM/yyyy.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when there is no Conference with the given key.
+	 */
 	@ApiMethod(name = "createSession", path = "createSession", httpMethod = HttpMethod.POST)
-	public WrappedBoolean createSession(final User user, SessionOfConferenceForm form) throws ParseException, UnauthorizedException {
+	public WrappedBoolean createSession(final User user, SessionOfConferenceForm form)
+			throws ParseException, UnauthorizedException, NotFoundException {
 		validateUser(user);
 		
-		Key<Conference> conferenceKey = Key.create(form.getConference());
+		Key<Conference> conferenceKey = conferenceKeys.resolve(form
+				.getConference());
+		if (ofy().load().key(conferenceKey).now() == null) {
+			throw new NotFoundException("No Conference found with key: "
+					+ form.getConference());
+		}
 		
 		SessionForm sessionForm = form.getSessionForm();
-		Conference conference = ofy().load().key(conferenceKey).now();
 
 		final Key<Session> sessionKey = ofy().factory().allocateId(conferenceKey,Session.class);
 
-		Date dateSession = new SimpleDateFormat("dd/MM/yyyy").parse(sessionForm.getDate());
-		Session session = new Session(sessionForm.getSessionName(), 
+		Date dateSession = sessionForm.parseDate();
+		final Session session = new Session(sessionForm.getSessionName(), 
 				sessionForm.getHighlights(),
 				sessionForm.getSpeaker(), 
 				sessionForm.getDuration(),
@@ -512,64 +935,289 @@ public class ConferenceApi {
 				conferenceKey,
 				sessionKey.getId());
 		
-		
-		//Save session
-		ofy().save().entity(session);
-
-		conference.addToSessionKeys(String.valueOf(sessionKey.getString()));
-		
-		ofy().save().entity(conference);
+		//Save and count session with its agenda, before dropping the timetables it belongs to
+		ofy().transact(new Work<Void>() {
+			@Override
+			public Void run() {
+				sessionCounts.createInTransaction(session);
+				agendas.putInTransaction(session);
+				return null;
+			}
+		});
+		sessionQueries.invalidate(conferenceKey);
+		searchService.scheduleIndex(conferenceKey);
 
-		
 		return new WrappedBoolean(true);
 	}
-	
+
+	/**
+	 * Creates many Sessions in a Conference, such as a whole agenda.
+	 *
+	 * Each form is validated and created on its own: an invalid form is
+	 * reported in the result, the others are still created.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param form
+	 *            The Conference and the SessionForms.
+	 * @return the key of each created Session, or the error of the form.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws NotFoundException
+	 *             when there is no Conference with the given key.
+	 * @throws BadRequestException
+	 *             when there are no forms or too many.
+	 */
+	@ApiMethod(name = "createSessions", path = "createSessions", httpMethod = HttpMethod.POST)
+	public SessionBatchResult createSessions(final User user,
+			SessionsOfConferenceForm form) throws UnauthorizedException,
+			NotFoundException, BadRequestException {
+		validateUser(user);
+		List<SessionForm> sessionForms = form.getSessionForms();
+		if (sessionForms == null || sessionForms.isEmpty()
+				|| sessionForms.size() > SessionBatchService.MAX_SESSIONS) {
+			throw new BadRequestException("Between 1 and "
+					+ SessionBatchService.MAX_SESSIONS + " sessions are required");
+		}
+		Key<Conference> conferenceKey = conferenceKeys.resolve(form
+				.getConference());
+		if (ofy().load().key(conferenceKey).now() == null) {
+			throw new NotFoundException("No Conference found with key: "
+					+ form.getConference());
+		}
+		return sessionBatches.create(conferenceKey, sessionForms);
+	}
+
+	/**
+	 * Returns the number of Sessions of a Conference.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The String representation of the Conference Key.
+	 * @return the SessionCount of the Conference.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 */
+	@ApiMethod(name = "getConferenceSessionCount", path = "conference/{websafeConferenceKey}/sessionCount", httpMethod = HttpMethod.GET)
+	public SessionCount getConferenceSessionCount(final User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey)
+			throws UnauthorizedException {
+		validateUser(user);
+		return sessionCounts.get(conferenceKeys.resolve(websafeConferenceKey));
+	}
+
 	@ApiMethod(name = "getConferenceSessions", path = "getConferenceSessions", httpMethod = HttpMethod.GET)
-	public List<Session> getConferenceSessions(User user,
-			@Named("websafeConferenceKey") final String websafeConferenceKey) throws UnauthorizedException {
+	public CollectionResponse<Session> getConferenceSessions(User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor) throws UnauthorizedException, BadRequestException {
 		validateUser(user);
-		return ofy()
+		return page(new QueryShape("Session", true,
+				Collections.<String> emptyList(), null,
+				Collections.<String> emptyList()), ofy()
 				.load()
 				.type(Session.class)
-				.ancestor(Key.create(websafeConferenceKey))
-				.list();
+				.ancestor(conferenceKeys.resolve(websafeConferenceKey)), limit, cursor);
+	}
+	/**
+	 * Returns the agenda of a Conference: summaries of its Sessions grouped by
+	 * day and type, read with one get.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The String representation of the Conference Key.
+	 * @return the agenda, whose version changes whenever a Session of the
+	 *         Conference does.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 */
+	@ApiMethod(name = "getConferenceAgenda", path = "conference/{websafeConferenceKey}/agenda", httpMethod = HttpMethod.GET)
+	public Agenda getConferenceAgenda(final User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey)
+			throws UnauthorizedException {
+		validateUser(user);
+		return agendas.get(conferenceKeys.resolve(websafeConferenceKey));
 	}
+
 	@ApiMethod(name = "getConferenceSessionsByType", path = "getConferenceSessionsByType", httpMethod = HttpMethod.GET)
-	public List<Session> getConferenceSessionsByType(User user,
-			@Named("websafeConferenceKey") final String websafeConferenceKey, @Named("typeOfSession") String typeOfSession) throws UnauthorizedException {
+	public CollectionResponse<Session> getConferenceSessionsByType(User user,
+			@Named("websafeConferenceKey") final String websafeConferenceKey, @Named("typeOfSession") String typeOfSession,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor) throws UnauthorizedException, BadRequestException {
 		validateUser(user);
-		return ofy()
+		return page(new QueryShape("Session", true,
+				Collections.singletonList("typeOfSession"), null,
+				Collections.<String> emptyList()), ofy()
 				.load()
 				.type(Session.class)
-				.ancestor(Key.create(websafeConferenceKey))
-				.filter("typeOfSession =",typeOfSession)
-				.list();
+				.ancestor(conferenceKeys.resolve(websafeConferenceKey))
+				.filter("typeOfSession =",typeOfSession), limit, cursor);
 	}
 	
+	/**
+	 * Returns a page of the Sessions of a Conference matching a query, such as
+	 * "the sessions starting before 19:00 that are not workshops", in start
+	 * time order.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param sessionQueryForm
+	 *            The query.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of a previous page, null for the first page.
+	 * @return the Sessions, with the token of the next page if any.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws BadRequestException
+	 *             when the Conference is missing, or a time or the cursor is
+	 *             not valid.
+	 */
+	@ApiMethod(name = "querySessions", path = "querySessions", httpMethod = HttpMethod.POST)
+	public CollectionResponse<Session> querySessions(final User user,
+			final SessionQueryForm sessionQueryForm,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor) throws UnauthorizedException, BadRequestException {
+		validateUser(user);
+		if (sessionQueryForm.getWebsafeConferenceKey() == null) {
+			throw new BadRequestException("A conference is required");
+		}
+		Key<Conference> conferenceKey = conferenceKeys.resolve(sessionQueryForm
+				.getWebsafeConferenceKey());
+		int offset = parseOffset(cursor);
+		int pageSize = queryPager.pageSize(limit);
+		List<Session> sessions = new ArrayList<>(pageSize);
+		boolean more;
+		try {
+			more = sessionQueries.readPage(conferenceKey, sessionQueryForm, offset,
+					pageSize, sessions);
+		} catch (IllegalArgumentException e) {
+			throw new BadRequestException(e.getMessage());
+		}
+		return CollectionResponse.<Session> builder().setItems(sessions)
+				.setNextPageToken(more ? String.valueOf(offset + pageSize) : null)
+				.build();
+	}
+
+	/**
+	 * Returns a page of the Sessions given by a speaker, in one Conference or
+	 * in all of them.
+	 *
+	 * @param user
+	 *            An user who invokes this method, null when the user is not
+	 *            signed in.
+	 * @param websafeConferenceKey
+	 *            The Conference to look into, null to look into all of them
+	 *            with the speaker index, matching the speaker in any case or
+	 *            spacing.
+	 * @param speaker
+	 *            The speaker.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of a previous page, null for the first page.
+	 * @return the Sessions, with the token of the next page if any.
+	 * @throws UnauthorizedException
+	 *             when the user is not signed in.
+	 * @throws BadRequestException
+	 *             when the cursor is not valid.
+	 */
 	@ApiMethod(name = "getSessionsBySpeaker", path = "getSessionsBySpeaker", httpMethod = HttpMethod.GET)
-	public List<Session> getSessionsBySpeaker(User user,
-			@Named("websafeConferenceKey") final String websafeConferenceKey, @Named("speaker") String speaker) throws UnauthorizedException {
+	public CollectionResponse<Session> getSessionsBySpeaker(User user,
+			@Nullable @Named("websafeConferenceKey") final String websafeConferenceKey, @Named("speaker") String speaker,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor) throws UnauthorizedException, BadRequestException {
 		validateUser(user);
-		return ofy()
+		if (websafeConferenceKey == null) {
+			int offset = parseOffset(cursor);
+			int pageSize = queryPager.pageSize(limit);
+			List<Session> sessions = new ArrayList<>(pageSize);
+			Speaker found = speakerIndex.find(speaker);
+			boolean more = found != null
+					&& speakerIndex.readSessions(found, offset, pageSize, sessions);
+			return CollectionResponse.<Session> builder().setItems(sessions)
+					.setNextPageToken(more ? String.valueOf(offset + pageSize) : null)
+					.build();
+		}
+		return page(new QueryShape("Session", true,
+				Collections.singletonList("speaker"), null,
+				Collections.<String> emptyList()), ofy()
 				.load()
 				.type(Session.class)
-				.ancestor(Key.create(websafeConferenceKey))
-				.filter("speaker =",speaker)
-				.list();
+				.ancestor(conferenceKeys.resolve(websafeConferenceKey))
+				.filter("speaker =",speaker), limit, cursor);
 	}
 	
+	/**
+	 * Returns a speaker with the number of their Sessions across all
+	 * Conferences and the Conferences they are featured in.
+	 *
+	 * @param speaker
+	 *            The speaker, in any case or spacing.
+	 * @return the speaker.
+	 * @throws NotFoundException
+	 *             when no Session is given by the speaker.
+	 */
+	@ApiMethod(name = "getSpeaker", path = "speaker", httpMethod = HttpMethod.GET)
+	public Speaker getSpeaker(@Named("speaker") final String speaker)
+			throws NotFoundException {
+		Speaker found = speakerIndex.find(speaker);
+		if (found == null) {
+			throw new NotFoundException("No speaker found with name: " + speaker);
+		}
+		return found;
+	}
+
+	/**
+	 * Returns a page of the featured speakers, giving at least
+	 * Speaker.FEATURED_SESSIONS Sessions in a Conference, ordered by name.
+	 *
+	 * @param websafeConferenceKey
+	 *            The Conference the speakers are featured in, null for the
+	 *            speakers featured in any Conference.
+	 * @param limit
+	 *            The page size, Constants.DEFAULT_PAGE_SIZE when null.
+	 * @param cursor
+	 *            The nextPageToken of a previous page, null for the first page.
+	 * @return the speakers, with the token of the next page if any.
+	 * @throws BadRequestException
+	 *             when the cursor is not valid.
+	 */
+	@ApiMethod(name = "getFeaturedSpeakers", path = "featuredSpeakers", httpMethod = HttpMethod.GET)
+	public CollectionResponse<Speaker> getFeaturedSpeakers(
+			@Nullable @Named("websafeConferenceKey") final String websafeConferenceKey,
+			@Nullable @Named("limit") final Integer limit,
+			@Nullable @Named("cursor") final String cursor)
+			throws BadRequestException {
+		if (websafeConferenceKey == null) {
+			return page(new QueryShape("Speaker", false,
+					Collections.singletonList("featured"), null,
+					Collections.<String> emptyList()), ofy().load()
+					.type(Speaker.class).filter("featured", true), limit, cursor);
+		}
+		return page(new QueryShape("Speaker", false,
+				Collections.singletonList("featuredIn"), null,
+				Collections.<String> emptyList()), ofy().load()
+				.type(Speaker.class)
+				.filter("featuredIn", conferenceKeys.resolve(websafeConferenceKey)),
+				limit, cursor);
+	}
+
 	@ApiMethod(name = "getSessionsInWishlist", path = "getSessionsInWishlist", httpMethod = HttpMethod.GET)
 	public Collection<Session> getSessionsInWishlist(User user) throws UnauthorizedException {
 		validateUser(user);
 		
 		Profile profile = getProfile(user);
 		
-		List<Key<Session>> keysSession = new ArrayList<>();
-		for (String keyString : profile.getSessionsKey()) {
-			keysSession.add(Key.<Session> create(keyString));
-		}
-		
-		return ofy().load().keys(keysSession).values();
+		return ofy().load().keys(profileEntries.wishlistSessionKeys(profile))
+				.values();
 	}
 	
 	@ApiMethod(name = "deleteSessionInWishlist", path = "deleteSessionInWishlist", httpMethod = HttpMethod.DELETE)
@@ -577,19 +1225,33 @@ public class ConferenceApi {
 		validateUser(user);
 		
 		Profile profile = getProfile(user);
-		profile.removeSessionKeys(sessionKey);
-		ofy().save().entities(profile).now();
+		profileEntries.removeFromWishlist(profile, sessionKey);
 		
 		return new WrappedBoolean(true);
 	}
 	
 	@ApiMethod(name = "addSessionToWishlist", path = "addSessionToWishlist", httpMethod = HttpMethod.POST)
-	public WrappedBoolean addSessionToWishlist(User user,@Named("sessionKey") final String sessionKey) throws UnauthorizedException{
+	public WrappedBoolean addSessionToWishlist(final User user,@Named("sessionKey") final String sessionKey,
+			@Nullable @Named("idempotencyKey") final String idempotencyKey) throws UnauthorizedException{
 		validateUser(user);
-		
-		Profile profile = getProfile(user);
-		profile.addToSessionKeys(sessionKey);
-		ofy().save().entity(profile).now();
+
+		// A retry doesn't add the session twice; the record is read and
+		// written in the transaction adding the session, in the Profile group
+		ofy().transact(new Work<Void>() {
+			@Override
+			public Void run() {
+				if (idempotencyStore.find("addSessionToWishlist",
+						user.getUserId(), sessionKey, idempotencyKey) == null) {
+					Profile profile = getProfile(Key.create(Profile.class,
+							user.getUserId()));
+					profileEntries.addToWishlist(profile, sessionKey);
+					idempotencyStore.record("addSessionToWishlist",
+							user.getUserId(), sessionKey, idempotencyKey,
+							Boolean.TRUE.toString());
+				}
+				return null;
+			}
+		});
 		
 		return new WrappedBoolean(true);
 	}
@@ -0,0 +1,5 @@
+package com.google.devrel.training.enumeration;
+
+public enum HoldStatus {
+	HELD, CONFIRMED, RELEASED, EXPIRED;
+}
@@ -0,0 +1,5 @@
+package com.google.devrel.training.enumeration;
+
+public enum RegistrationResult {
+	REGISTERED, UNREGISTERED, ALREADY_REGISTERED, NOT_REGISTERED, NO_SEATS_AVAILABLE, CONFERENCE_NOT_FOUND, PROFILE_NOT_FOUND, SEATS_NOT_RETURNED;
+}
@@ -340,6 +340,12 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
     $scope.pagination = $scope.pagination || {};
     $scope.pagination.currentPage = 0;
     $scope.pagination.pageSize = 20;
+
+    /**
+     * The token of the next page of the conferences from the server, undefined on the last page.
+     * @type {string}
+     */
+    $scope.nextPageToken = undefined;
     /**
      * Returns the number of the pages in the pagination.
      *
@@ -417,10 +423,40 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
         }
     };
 
+    /**
+     * Appends the next page of the conferences of the tab currently selected.
+     */
+    $scope.loadMoreConferences = function () {
+        if ($scope.selectedTab == 'ALL') {
+            $scope.queryConferencesAll($scope.nextPageToken);
+        } else if ($scope.selectedTab == 'YOU_HAVE_CREATED') {
+            $scope.getConferencesCreated($scope.nextPageToken);
+        }
+    };
+
+    /**
+     * Shows the conferences of a page, appending them to the ones shown when a cursor was sent.
+     *
+     * @param resp the response of the API.
+     * @param cursor the cursor the page was requested with, undefined for the first page.
+     */
+    var showConferencesPage = function (resp, cursor) {
+        if (!cursor) {
+            $scope.conferences = [];
+            $scope.pagination.currentPage = 0;
+        }
+        angular.forEach(resp.items, function (conference) {
+            $scope.conferences.push(conference);
+        });
+        $scope.nextPageToken = resp.nextPageToken;
+    };
+
     /**
      * Invokes the conference.queryConferences API.
+     *
+     * @param cursor the token of the page to append, undefined to query the first page.
      */
-    $scope.queryConferencesAll = function () {
+    $scope.queryConferencesAll = function (cursor) {
         var sendFilters = {
             filters: []
         }
@@ -434,8 +470,12 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                 });
             }
         }
+        var request = angular.extend({limit: $scope.pagination.pageSize}, sendFilters);
+        if (cursor) {
+            request.cursor = cursor;
+        }
         $scope.loading = true;
-        gapi.client.conference.queryConferences(sendFilters).
+        gapi.client.conference.queryConferences(request).
             execute(function (resp) {
                 $scope.$apply(function () {
                     $scope.loading = false;
@@ -452,10 +492,7 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                         $scope.alertStatus = 'success';
                         $log.info($scope.messages);
 
-                        $scope.conferences = [];
-                        angular.forEach(resp.items, function (conference) {
-                            $scope.conferences.push(conference);
-                        });
+                        showConferencesPage(resp, cursor);
                     }
                     $scope.submitted = true;
                 });
@@ -464,10 +501,16 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
 
     /**
      * Invokes the conference.getConferencesCreated method.
+     *
+     * @param cursor the token of the page to append, undefined to query the first page.
      */
-    $scope.getConferencesCreated = function () {
+    $scope.getConferencesCreated = function (cursor) {
+        var request = {limit: $scope.pagination.pageSize};
+        if (cursor) {
+            request.cursor = cursor;
+        }
         $scope.loading = true;
-        gapi.client.conference.getConferencesCreated().
+        gapi.client.conference.getConferencesCreated(request).
             execute(function (resp) {
                 $scope.$apply(function () {
                     $scope.loading = false;
@@ -489,10 +532,7 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
                         $scope.alertStatus = 'success';
                         $log.info($scope.messages);
 
-                        $scope.conferences = [];
-                        angular.forEach(resp.items, function (conference) {
-                            $scope.conferences.push(conference);
-                        });
+                        showConferencesPage(resp, cursor);
                     }
                     $scope.submitted = true;
                 });
@@ -504,6 +544,7 @@ conferenceApp.controllers.controller('ShowConferenceCtrl', function ($scope, $lo
      * invokes the conference.getConference method n times where n == the number of the conferences to attend.
      */
     $scope.getConferencesAttend = function () {
+        $scope.nextPageToken = undefined;
         $scope.loading = true;
         gapi.client.conference.getConferencesToAttend().
             execute(function (resp) {
@@ -575,21 +616,18 @@ conferenceApp.controllers.controller('ConferenceDetailCtrl', function ($scope, $
 
         $scope.loading = true;
         // If the user is attending the conference, updates the status message and available function.
-        gapi.client.conference.getProfile().execute(function (resp) {
+        gapi.client.conference.getRegistration({
+            websafeConferenceKey: $routeParams.websafeConferenceKey
+        }).execute(function (resp) {
             $scope.$apply(function () {
                 $scope.loading = false;
                 if (resp.error) {
-                    // Failed to get a user profile.
-                } else {
-                    var profile = resp.result;
-                    for (var i = 0; i < profile.conferenceKeysToAttend.length; i++) {
-                        if ($routeParams.websafeConferenceKey == profile.conferenceKeysToAttend[i]) {
-                            // The user is attending the conference.
-                            $scope.alertStatus = 'info';
-                            $scope.messages = 'You are attending this conference';
-                            $scope.isUserAttending = true;
-                        }
-                    }
+                    // Failed to get the registration.
+                } else if (resp.result.result) {
+                    // The user is attending the conference.
+                    $scope.alertStatus = 'info';
+                    $scope.messages = 'You are attending this conference';
+                    $scope.isUserAttending = true;
                 }
             });
         });
@@ -1,6 +1,5 @@
 package com.google.devrel.training.conference.domain;
 
-import static com.google.devrel.training.conference.service.OfyService.ofy;
 import static org.junit.Assert.*;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
@@ -95,9 +94,10 @@ public class ConferenceTest {
     @Test
     public void testGetOrganizerDisplayName() throws Exception {
         String displayName = "Udacity Student";
-        Profile profile = new Profile(ORGANIZER_USER_ID, displayName, "", null);
-        ofy().save().entity(profile).now();
         Conference conference = new Conference(ID, ORGANIZER_USER_ID, conferenceForm);
+        assertEquals(ORGANIZER_USER_ID, conference.getOrganizerDisplayName());
+        assertTrue(conference.updateOrganizerDisplayName(displayName));
+        assertFalse(conference.updateOrganizerDisplayName(displayName));
         assertEquals(displayName, conference.getOrganizerDisplayName());
     }
 
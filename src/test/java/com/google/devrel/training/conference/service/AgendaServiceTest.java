@@ -0,0 +1,177 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Agenda;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for AgendaService.
+ */
+public class AgendaServiceTest {
+
+    private static final Date DAY_ONE = new Date(1420070400000L);
+
+    private static final Date DAY_TWO = new Date(1420156800000L);
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private AgendaService agendaService;
+
+    private Conference devFest;
+
+    private long nextSessionId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        agendaService = new AgendaService();
+        devFest = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        ofy().save().entity(devFest).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        saveSession("Afternoon lecture", TypeOfSession.LECTURE, DAY_ONE, "14:00");
+        saveSession("Second day keynote", TypeOfSession.KEYNOTE, DAY_TWO, "9:00");
+        saveSession("Morning lecture", TypeOfSession.LECTURE, DAY_ONE, "10:00");
+        saveSession("Opening keynote", TypeOfSession.KEYNOTE, DAY_ONE, "9:00");
+        saveSession("Unscheduled", null, null, null);
+
+        Agenda agenda = agendaService.get(Key.create(devFest));
+        assertEquals(devFest.getWebsafeKey(), agenda.getWebsafeConferenceKey());
+        assertEquals(ImmutableList.of(
+                "day 1: LECTURE [Morning lecture, Afternoon lecture] KEYNOTE [Opening keynote]",
+                "day 2: KEYNOTE [Second day keynote]",
+                "no day: null [Unscheduled]"), describe(agenda));
+
+        ofy().clear();
+        assertEquals("Served from the stored agenda.", agenda.getVersion(),
+                agendaService.get(Key.create(devFest)).getVersion());
+    }
+
+    @Test
+    public void testPut() throws Exception {
+        saveSession("Morning lecture", TypeOfSession.LECTURE, DAY_ONE, "10:00");
+        Agenda built = agendaService.get(Key.create(devFest));
+
+        Session workshop = saveSession("Workshop", TypeOfSession.WORKSHOP, DAY_ONE, "8:00");
+        Agenda updated = agendaService.put(workshop);
+        assertTrue(updated.getVersion() > built.getVersion());
+        assertEquals(ImmutableList.of("day 1: LECTURE [Morning lecture] WORKSHOP [Workshop]"),
+                describe(updated));
+
+        workshop.setSessionName("Late workshop");
+        workshop.setStartTime("20:00");
+        workshop.setDate(DAY_TWO);
+        ofy().save().entity(workshop).now();
+        agendaService.put(workshop);
+        ofy().clear();
+        Agenda moved = agendaService.get(Key.create(devFest));
+        assertTrue(moved.getVersion() > updated.getVersion());
+        assertEquals(ImmutableList.of("day 1: LECTURE [Morning lecture]",
+                "day 2: WORKSHOP [Late workshop]"), describe(moved));
+
+        agendaService.remove(Key.create(workshop));
+        ofy().clear();
+        assertEquals(ImmutableList.of("day 1: LECTURE [Morning lecture]"),
+                describe(agendaService.get(Key.create(devFest))));
+    }
+
+    @Test
+    public void testPutBeforeBuild() throws Exception {
+        saveSession("Morning lecture", TypeOfSession.LECTURE, DAY_ONE, "10:00");
+        Session keynote = saveSession("Keynote", TypeOfSession.KEYNOTE, DAY_ONE, "9:00");
+        assertEquals(ImmutableList.of("day 1: LECTURE [Morning lecture] KEYNOTE [Keynote]"),
+                describe(agendaService.put(keynote)));
+    }
+
+    @Test
+    public void testPutInTransaction() throws Exception {
+        saveSession("Morning lecture", TypeOfSession.LECTURE, DAY_ONE, "10:00");
+        final Session keynote = new Session("Keynote", null, null, 60L, TypeOfSession.KEYNOTE,
+                DAY_ONE, "9:00", Key.create(devFest), nextSessionId++);
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                ofy().save().entity(keynote);
+                agendaService.putInTransaction(keynote);
+                return null;
+            }
+        });
+        assertNull("Left to be built on read.",
+                ofy().load().key(Agenda.key(Key.create(devFest))).now());
+        Agenda built = agendaService.get(Key.create(devFest));
+        assertEquals(ImmutableList.of("day 1: LECTURE [Morning lecture] KEYNOTE [Keynote]"),
+                describe(built));
+
+        final Session workshop = new Session("Workshop", null, null, 60L,
+                TypeOfSession.WORKSHOP, DAY_ONE, "8:00", Key.create(devFest), nextSessionId++);
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                ofy().save().entity(workshop);
+                agendaService.putInTransaction(workshop);
+                return null;
+            }
+        });
+        ofy().clear();
+        assertEquals(ImmutableList.of(
+                "day 1: LECTURE [Morning lecture] KEYNOTE [Keynote] WORKSHOP [Workshop]"),
+                describe(agendaService.get(Key.create(devFest))));
+    }
+
+    private Session saveSession(final String name, final TypeOfSession type, final Date date,
+            final String startTime) {
+        Session session = new Session(name, null, null, 60L, type, date, startTime,
+                Key.create(devFest), nextSessionId++);
+        ofy().save().entity(session).now();
+        return session;
+    }
+
+    private static List<String> describe(final Agenda agenda) {
+        List<String> days = new ArrayList<>();
+        for (Agenda.Day day : agenda.getDays()) {
+            StringBuilder description = new StringBuilder(day.getDate() == null ? "no day"
+                    : day.getDate().equals(DAY_ONE) ? "day 1" : "day 2").append(':');
+            for (Agenda.Track track : day.getTracks()) {
+                List<String> names = new ArrayList<>();
+                for (Agenda.Item item : track.getSessions()) {
+                    names.add(item.getSessionName());
+                }
+                description.append(' ').append(track.getTypeOfSession()).append(' ')
+                        .append(names);
+            }
+            days.add(description.toString());
+        }
+        return days;
+    }
+}
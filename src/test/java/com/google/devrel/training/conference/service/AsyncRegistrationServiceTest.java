@@ -0,0 +1,140 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.RegistrationTicket;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.enumeration.RegistrationStatus;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for AsyncRegistrationService.
+ */
+public class AsyncRegistrationServiceTest {
+
+    private static final int CAP = 3;
+
+    private static final int USERS = 5;
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
+
+    private AsyncRegistrationService asyncRegistration;
+
+    private Key<Conference> conferenceKey;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        asyncRegistration = new AsyncRegistrationService();
+        SeatInventoryService seatInventory = new SeatInventoryService();
+        Conference conference = new Conference(1001L, "organizer",
+                new ConferenceForm("GCP Live", null, null, null, null, null, CAP, 2));
+        ofy().save().entity(conference).now();
+        ofy().save().entities(seatInventory.createShards(conference)).now();
+        conferenceKey = Key.create(conference);
+        for (int i = 0; i < USERS; i++) {
+            ofy().save().entity(new Profile("user" + i, "User " + i, "user" + i + "@gmail.com",
+                    TeeShirtSize.NOT_SPECIFIED)).now();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testDrain() throws Exception {
+        List<RegistrationTicket> tickets = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            RegistrationTicket ticket = asyncRegistration.enqueue("user" + i, conferenceKey);
+            assertEquals(RegistrationStatus.PENDING, ticket.getStatus());
+            tickets.add(ticket);
+        }
+        // A second request of the same user is rejected
+        tickets.add(asyncRegistration.enqueue("user0", conferenceKey));
+
+        assertEquals(USERS + 1, asyncRegistration.drain(conferenceKey.getString()));
+        assertEquals(0, asyncRegistration.drain(conferenceKey.getString()));
+
+        ofy().clear();
+        int confirmed = 0;
+        for (RegistrationTicket ticket : tickets) {
+            ticket = ofy().load().entity(ticket).now();
+            if (ticket.getStatus() == RegistrationStatus.CONFIRMED) {
+                confirmed++;
+                Profile profile = ofy().load()
+                        .key(Key.create(Profile.class, ticket.getUserId())).now();
+                assertTrue("The user should attend the conference.",
+                        new ProfileEntryService().conferenceKeysToAttend(profile)
+                                .contains(conferenceKey));
+            } else {
+                assertEquals(RegistrationStatus.REJECTED, ticket.getStatus());
+            }
+        }
+        assertEquals(CAP, confirmed);
+        assertEquals("A confirmation mail is queued per confirmed ticket.", CAP,
+                LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo()
+                        .get(Constants.MAIL_QUEUE).getCountTasks());
+        assertEquals("Already registered", ofy().load().entity(tickets.get(USERS)).now()
+                .getReason());
+    }
+
+    @Test
+    public void testDrainInGroups() throws Exception {
+        // More users than fit in one transaction, with seats spread over several shards
+        Conference conference = new Conference(2001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 20, 3));
+        ofy().save().entity(conference).now();
+        ofy().save().entities(new SeatInventoryService().createShards(conference)).now();
+        List<Key<RegistrationTicket>> ticketKeys = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            ofy().save().entity(new Profile("attendee" + i, "Attendee " + i,
+                    "attendee" + i + "@gmail.com", TeeShirtSize.NOT_SPECIFIED)).now();
+            ticketKeys.add(Key.create(asyncRegistration.enqueue("attendee" + i,
+                    Key.create(conference))));
+        }
+
+        assertEquals(25, asyncRegistration.drain(conference.getWebsafeKey()));
+        ofy().clear();
+        int confirmed = 0;
+        for (RegistrationTicket ticket : ofy().load().keys(ticketKeys).values()) {
+            if (ticket.getStatus() == RegistrationStatus.CONFIRMED) {
+                confirmed++;
+            } else {
+                assertEquals("No seats available", ticket.getReason());
+            }
+        }
+        assertEquals("Every seat is booked once.", 20, confirmed);
+        int seatsAvailable = 0;
+        for (int i = 0; i < 3; i++) {
+            seatsAvailable += ofy().load().key(SeatShard.key(conference, i)).now()
+                    .getSeatsAvailable();
+        }
+        assertEquals(0, seatsAvailable);
+    }
+}
@@ -0,0 +1,187 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for BulkImportService, importing the files written by BulkExportService.
+ */
+public class BulkImportServiceTest {
+
+    private static final Date JUNE_FIRST = new Date(1433116800000L);
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private BulkImportService bulkImport;
+
+    private BulkExportService bulkExport;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        SystemProperty.environment.set(SystemProperty.Environment.Value.Development);
+        bulkImport = new BulkImportService();
+        bulkExport = new BulkExportService();
+        file = File.createTempFile("conferences", ".ndjson");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        System.clearProperty(SystemProperty.environment.key());
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testExportThenImport() throws Exception {
+        Conference devFest = new Conference(1001L, "organizer", new ConferenceForm("DevFest",
+                "A \"quoted\" description", ImmutableList.of("Web", "Cloud"), "London",
+                JUNE_FIRST, JUNE_FIRST, 100, 2));
+        devFest.updateOrganizerDisplayName("Ada");
+        ofy().save().entity(devFest).now();
+        List<Session> sessions = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            sessions.add(new Session("Session " + id, "Highlights", "Grace", 60L,
+                    TypeOfSession.LECTURE, JUNE_FIRST, "9:00", Key.create(devFest), id));
+        }
+        ofy().save().entities(sessions).now();
+
+        StringWriter exported = new StringWriter();
+        BulkExportService.Page page = bulkExport.page(null, 10);
+        assertNull(page.getNextCursor());
+        bulkExport.write(page, exported);
+        assertEquals(4, exported.toString().split("\n").length);
+
+        ofy().delete().entities(sessions).now();
+        ofy().delete().entity(devFest).now();
+        ofy().clear();
+        write(exported.toString());
+        assertEquals(-1, bulkImport.importChunk(file.getPath(), 0));
+
+        ofy().clear();
+        Conference imported = ofy().load().key(Key.create(devFest)).now();
+        assertEquals("A \"quoted\" description", imported.getDescription());
+        assertEquals(ImmutableList.of("Web", "Cloud"), imported.getTopics());
+        assertEquals(JUNE_FIRST, imported.getStartDate());
+        assertEquals("Ada", imported.getOrganizerDisplayName());
+        assertNotNull(ofy().load().key(SeatShard.key(imported, 1)).now());
+        Session session = ofy().load().key(Key.create(Key.create(devFest), Session.class, 2L))
+                .now();
+        assertEquals("Session 2", session.getSessionName());
+        assertEquals(JUNE_FIRST, session.getDate());
+        assertEquals(3, new SessionCountService().get(Key.create(devFest)).getCount());
+
+        // Importing again doesn't duplicate anything
+        assertEquals(-1, bulkImport.importChunk(file.getPath(), 0));
+        ofy().clear();
+        assertEquals(3, ofy().load().type(Session.class).ancestor(devFest).count());
+        assertTrue("The ids are reserved.", ofy().factory()
+                .allocateId(Key.create(devFest), Session.class).getId() > 3);
+    }
+
+    @Test
+    public void testImportInChunks() throws Exception {
+        StringBuilder lines = new StringBuilder();
+        lines.append("{\"kind\":\"Conference\",\"id\":2001,\"name\":\"Big\","
+                + "\"maxAttendees\":10,\"organizerUserId\":\"organizer\"}\n");
+        lines.append("not json\n");
+        lines.append("{\"kind\":\"Session\",\"id\":1,\"conferenceId\":9999,"
+                + "\"sessionName\":\"Orphan\"}\n");
+        lines.append("{\"kind\":\"Session\",\"id\":100000,\"conferenceId\":2001,"
+                + "\"date\":\"31/02/2015\"}\n");
+        lines.append("{\"kind\":\"Session\",\"conferenceId\":2001,\"sessionName\":\"No id\"}\n");
+        int sessions = 0;
+        while (lines.length() < 2 * BulkImportService.CHUNK_BYTES) {
+            sessions++;
+            lines.append("{\"kind\":\"Session\",\"id\":" + sessions + ",\"conferenceId\":2001,"
+                    + "\"sessionName\":\"Session " + sessions + "\",\"highlights\":\"Padding to make the"
+                    + " file span several chunks\",\"startTime\":\"10:00\"}\n");
+        }
+        write(lines.toString());
+
+        long offset = 0;
+        int tasks = 0;
+        while (offset >= 0) {
+            offset = bulkImport.importChunk(file.getPath(), offset);
+            tasks++;
+        }
+        assertEquals(3, tasks);
+        ofy().clear();
+        assertEquals("Invalid records are skipped.", sessions,
+                ofy().load().type(Session.class).ancestor(Key.create(Conference.class, 2001L))
+                        .count());
+        assertEquals(sessions, new SessionCountService()
+                .get(Key.create(Conference.class, 2001L)).getCount());
+
+        // A retried chunk doesn't duplicate anything
+        bulkImport.importChunk(file.getPath(), 0);
+        ofy().clear();
+        assertEquals(sessions,
+                ofy().load().type(Session.class).ancestor(Key.create(Conference.class, 2001L))
+                        .count());
+    }
+
+    @Test
+    public void testImportRestoresMissingShards() throws Exception {
+        Conference big = new Conference(3001L, "organizer", new ConferenceForm("Big", null,
+                null, "London", null, null, 100, 3));
+        ofy().save().entity(big).now();
+        ofy().save().entities(new SeatInventoryService().createShards(big).subList(0, 1))
+                .now();
+        StringWriter exported = new StringWriter();
+        bulkExport.write(bulkExport.page(null, 10), exported);
+        write(exported.toString());
+
+        assertEquals(-1, bulkImport.importChunk(file.getPath(), 0));
+        ofy().clear();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull("The shard " + i + " exists.",
+                    ofy().load().key(SeatShard.key(big, i)).now());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLocalFilesOnlyOnDevServer() throws Exception {
+        SystemProperty.environment.set(SystemProperty.Environment.Value.Production);
+        bulkImport.importChunk(file.getPath(), 0);
+    }
+
+    private void write(final String content) throws Exception {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            out.write(content);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.QueryCacheStats;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for ConferenceQueryCache.
+ */
+public class ConferenceQueryCacheTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+                    new LocalMemcacheServiceTestConfig());
+
+    private ConferenceQueryCache queryCache;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        queryCache = new ConferenceQueryCache();
+        save(1001L, "GCP Live", "London");
+        save(1002L, "Google I/O", "San Francisco");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testFilterOrderSharesPage() throws Exception {
+        ConferenceQueryForm form = new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "London"))
+                .filter(new Filter(Field.TOPIC, Operator.EQ, "Cloud"));
+        ConferenceQueryForm reordered = new ConferenceQueryForm()
+                .filter(new Filter(Field.TOPIC, Operator.EQ, "Cloud"))
+                .filter(new Filter(Field.CITY, Operator.EQ, "London"));
+        assertEquals(1, read(form).size());
+        assertEquals(1, read(reordered).size());
+
+        QueryCacheStats stats = queryCache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        ConferenceQueryForm form = new ConferenceQueryForm();
+        assertEquals(2, read(form).size());
+        save(1003L, "Cloud Next", "London");
+        assertEquals("The cached page is served until invalidated.", 2, read(form).size());
+
+        queryCache.invalidate();
+        List<Conference> conferences = read(form);
+        assertEquals(3, conferences.size());
+        assertEquals("Cloud Next", conferences.get(0).getName());
+        assertEquals(2, queryCache.getStats().getMisses());
+    }
+
+    private List<Conference> read(final ConferenceQueryForm form) {
+        List<Conference> conferences = new ArrayList<>();
+        queryCache.readPage(form, 10, null, conferences);
+        return conferences;
+    }
+
+    private void save(final long id, final String name, final String city) {
+        ofy().save().entity(new Conference(id, "organizer", new ConferenceForm(name, null,
+                ImmutableList.of("Cloud"), city, null, null, 100))).now();
+    }
+}
@@ -0,0 +1,104 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.IndexAdvice;
+import com.google.devrel.training.conference.SuggestedIndex;
+import com.google.devrel.training.conference.domain.QueryShape;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for IndexAdvisor.
+ */
+public class IndexAdvisorTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(0),
+                    new LocalMemcacheServiceTestConfig());
+
+    private IndexAdvisor indexAdvisor;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        indexAdvisor = new IndexAdvisor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testAdvice() throws Exception {
+        QueryShape byCity = new QueryShape("Conference", false, Arrays.asList("city"),
+                null, Arrays.asList("name"));
+        QueryShape byMonth = new QueryShape("Conference", false, Arrays.asList("city"),
+                "month", Arrays.asList("month", "name"));
+        QueryShape byType = new QueryShape("Session", true, Arrays.asList("typeOfSession"),
+                null, Collections.<String>emptyList());
+        for (int i = 0; i < 3; i++) {
+            indexAdvisor.record(byCity, 10);
+        }
+        indexAdvisor.record(byMonth, 40);
+        indexAdvisor.record(byMonth, 20);
+        indexAdvisor.record(byType, 5);
+
+        IndexAdvice advice = indexAdvisor.getAdvice();
+        assertEquals(Arrays.asList(byType.getId()), advice.getBuiltInShapes());
+        List<SuggestedIndex> indexes = advice.getIndexes();
+        assertEquals(2, indexes.size());
+        assertEquals(Arrays.asList("city", "name"), indexes.get(0).getProperties());
+        assertEquals(3, indexes.get(0).getCount());
+        assertEquals(10, indexes.get(0).getAverageMillis());
+        assertEquals(Arrays.asList("city", "month", "name"), indexes.get(1).getProperties());
+        assertEquals(2, indexes.get(1).getCount());
+        assertEquals(30, indexes.get(1).getAverageMillis());
+        assertTrue(advice.getDatastoreIndexesXml().contains(
+                "<datastore-index kind=\"Conference\" ancestor=\"false\" source=\"manual\">\n"
+                + "\t\t<property name=\"city\" direction=\"asc\" />\n"
+                + "\t\t<property name=\"name\" direction=\"asc\" />\n"));
+        assertFalse(advice.getDatastoreIndexesXml().contains("Session"));
+    }
+
+    @Test
+    public void testShapesSharingAnIndex() throws Exception {
+        // Equality properties are sorted, so both queries have the same shape
+        indexAdvisor.record(new QueryShape("Conference", false, Arrays.asList("city", "topics"),
+                null, Arrays.asList("name")), 1);
+        indexAdvisor.record(new QueryShape("Conference", false, Arrays.asList("topics", "city"),
+                null, Arrays.asList("name")), 1);
+        // A second equality filter on the same property repeats it in the index
+        indexAdvisor.record(new QueryShape("Conference", false,
+                Arrays.asList("topics", "city", "topics"), null, Arrays.asList("name")), 1);
+        // Sorting by the inequality property needs the same index as the unsorted query
+        indexAdvisor.record(new QueryShape("Conference", false, Arrays.asList("city"),
+                "month", Arrays.asList("month")), 1);
+        indexAdvisor.record(new QueryShape("Conference", false, Arrays.asList("city"),
+                "month", Collections.<String>emptyList()), 1);
+
+        List<SuggestedIndex> indexes = indexAdvisor.getAdvice().getIndexes();
+        assertEquals(3, indexes.size());
+        assertEquals(Arrays.asList("city", "topics", "name"), indexes.get(0).getProperties());
+        assertEquals(2, indexes.get(0).getCount());
+        assertEquals(1, indexes.get(0).getShapes().size());
+        assertEquals(Arrays.asList("city", "month"), indexes.get(1).getProperties());
+        assertEquals(2, indexes.get(1).getCount());
+        assertEquals(2, indexes.get(1).getShapes().size());
+        assertEquals(Arrays.asList("city", "topics", "topics", "name"),
+                indexes.get(2).getProperties());
+    }
+}
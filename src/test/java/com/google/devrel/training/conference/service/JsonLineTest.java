@@ -0,0 +1,55 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests for JsonLine.
+ */
+public class JsonLineTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("name", "Quote \" backslash \\ tab \t line\nend \u0001 café");
+        record.put("id", 5629499534213120L);
+        record.put("ratio", 0.5);
+        record.put("open", true);
+        record.put("city", null);
+        record.put("topics", ImmutableList.of("Web", "Cloud"));
+        record.put("empty", ImmutableList.of());
+
+        String line = JsonLine.format(record);
+        assertFalse(line.contains("\n"));
+        assertEquals(record, JsonLine.parse(line));
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        Map<String, Object> record = JsonLine.parse(
+                " { \"a\" : \"\\u0041\\/\" , \"b\" : [ 1 , -2 , null ] , \"c\" : 1e3 } ");
+        assertEquals("A/", record.get("a"));
+        assertEquals(Arrays.asList(1L, -2L, null), record.get("b"));
+        assertEquals(1000.0, record.get("c"));
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        for (String line : new String[] {"", "[]", "{\"a\":}", "{\"a\":{\"b\":1}}",
+                "{\"a\":\"unterminated}", "{\"a\":1} trailing", "{\"a\":tru}"}) {
+            try {
+                JsonLine.parse(line);
+                fail("Parsed " + line);
+            } catch (IllegalArgumentException expected) {
+                // Expected
+            }
+        }
+    }
+}
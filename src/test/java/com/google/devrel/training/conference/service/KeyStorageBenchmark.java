@@ -0,0 +1,98 @@
+package com.google.devrel.training.conference.service;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.googlecode.objectify.Key;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the size and the parsing time of websafe Session keys, parsed with and without
+ * WebsafeKeyCache, with the compact ids of WishlistEntry.
+ *
+ * Not a test, run its main method with the test classpath.
+ */
+public class KeyStorageBenchmark {
+
+    private static final int ENTRIES = 500;
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        LocalServiceTestHelper helper =
+                new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+        helper.setUp();
+        try {
+            run();
+        } finally {
+            helper.tearDown();
+        }
+    }
+
+    private static void run() {
+        Key<Profile> profileKey = Key.create(Profile.class, "123456789012345678901");
+        final List<String> websafeIds = new ArrayList<>(ENTRIES);
+        final List<Key<WishlistEntry>> compactKeys = new ArrayList<>(ENTRIES);
+        long websafeBytes = 0;
+        long compactBytes = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            Key<Session> sessionKey = Key.create(
+                    Key.create(Conference.class, 5629499534213120L + i / 10),
+                    Session.class, 5066549580791808L + i);
+            websafeIds.add(sessionKey.getString());
+            compactKeys.add(WishlistEntry.key(profileKey, sessionKey));
+            websafeBytes += sessionKey.getString().length();
+            compactBytes += WishlistEntry.key(profileKey, sessionKey).getName().length();
+        }
+        System.out.println(String.format("Id bytes per entry: websafe %d, compact %d",
+                websafeBytes / ENTRIES, compactBytes / ENTRIES));
+
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT and the cache
+            report(pass, "Key.create(websafe)", time(new Runnable() {
+                @Override
+                public void run() {
+                    for (String id : websafeIds) {
+                        Key.create(id);
+                    }
+                }
+            }));
+            report(pass, "WebsafeKeyCache.parse", time(new Runnable() {
+                @Override
+                public void run() {
+                    for (String id : websafeIds) {
+                        WebsafeKeyCache.parse(id);
+                    }
+                }
+            }));
+            report(pass, "WishlistEntry.sessionKey(compact id)", time(new Runnable() {
+                @Override
+                public void run() {
+                    for (Key<WishlistEntry> key : compactKeys) {
+                        WishlistEntry.sessionKey(key);
+                    }
+                }
+            }));
+        }
+    }
+
+    private static long time(final Runnable work) {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            work.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(final int pass, final String name, final long nanos) {
+        if (pass > 0) {
+            System.out.println(String.format("%-40s %6d ns per key", name,
+                    nanos / ((long) ROUNDS * ENTRIES)));
+        }
+    }
+}
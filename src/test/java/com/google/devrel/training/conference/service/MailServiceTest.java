@@ -0,0 +1,161 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.mail.MailServicePb.MailMessage;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMailServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.DeadLetterMail;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.enumeration.RegistrationResult;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tests for MailService.
+ */
+public class MailServiceTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalMailServiceTestConfig(),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
+
+    private MailService mail;
+
+    private Conference conference;
+
+    private Key<Conference> conferenceKey;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        mail = new MailService();
+        conference = new Conference(1001L, "organizer",
+                new ConferenceForm("GCP Live", null, null, "London", null, null, 10, 2));
+        ofy().save().entity(conference).now();
+        conferenceKey = Key.create(conference);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        System.clearProperty(Constants.MAIL_SENDS_PER_MINUTE_PROPERTY);
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testSendBatch() throws Exception {
+        mail.queueConferenceCreated("organizer@gmail.com", conferenceKey).get();
+        Registration registration = registration("user0");
+        mail.queueRegistrationConfirmed("user0@gmail.com", conferenceKey, registration).get();
+        try {
+            mail.queueRegistrationConfirmed("user0@gmail.com", conferenceKey, registration).get();
+            fail("The same mail is queued once.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TaskAlreadyExistsException);
+        }
+        assertEquals(2, pendingMails());
+        assertTrue("A sender is scheduled.", senders() > 0);
+
+        assertEquals(2, mail.send());
+        List<MailMessage> sent = LocalMailServiceTestConfig.getLocalMailService()
+                .getSentMessages();
+        assertEquals(2, sent.size());
+        assertEquals("You created a new Conference!", sent.get(0).getSubject());
+        assertTrue("The mail is written from the Conference.",
+                sent.get(0).getTextBody().contains("City: London"));
+        assertEquals("You are registered to GCP Live", sent.get(1).getSubject());
+        assertEquals(0, pendingMails());
+        assertEquals(0, mail.send());
+    }
+
+    @Test
+    public void testSendsPerMinute() throws Exception {
+        System.setProperty(Constants.MAIL_SENDS_PER_MINUTE_PROPERTY, "12");
+        assertEquals(2, MailService.windowBudget());
+        for (int i = 0; i < 3; i++) {
+            mail.queueRegistrationConfirmed("user" + i + "@gmail.com", conferenceKey,
+                    registration("user" + i)).get();
+        }
+        int senders = senders();
+
+        assertEquals(2, mail.send());
+        assertEquals(1, pendingMails());
+        assertTrue("The next window sends the rest.", senders() >= senders);
+        assertEquals(1, mail.send());
+        assertEquals(3, LocalMailServiceTestConfig.getLocalMailService().getSentMessages()
+                .size());
+    }
+
+    @Test
+    public void testDeadLetter() throws Exception {
+        mail.queueRegistrationConfirmed("user0@gmail.com", Key.create(Conference.class, 9999L),
+                registration("user0")).get();
+        assertEquals(0, mail.send());
+        assertEquals(0, pendingMails());
+        assertEquals(1, ofy().load().type(DeadLetterMail.class).count());
+        assertTrue(LocalMailServiceTestConfig.getLocalMailService().getSentMessages()
+                .isEmpty());
+    }
+
+    @Test
+    public void testRegisterAgain() throws Exception {
+        ofy().save().entities(new SeatInventoryService().createShards(conference)).now();
+        ofy().save().entity(new Profile("user0", "user0", "user0@gmail.com",
+                TeeShirtSize.NOT_SPECIFIED)).now();
+        RegistrationService registrations = new RegistrationService();
+        String websafeKey = conference.getWebsafeKey();
+
+        assertEquals(RegistrationResult.REGISTERED, registrations.register("user0", websafeKey));
+        mail.queueRegistrationConfirmed("user0@gmail.com", conferenceKey,
+                registrations.getRegistration("user0", websafeKey)).get();
+        assertEquals(RegistrationResult.UNREGISTERED,
+                registrations.unregister("user0", websafeKey));
+        // Registrations are told apart by the time they were written
+        Thread.sleep(5);
+        assertEquals(RegistrationResult.REGISTERED, registrations.register("user0", websafeKey));
+        mail.queueRegistrationConfirmed("user0@gmail.com", conferenceKey,
+                registrations.getRegistration("user0", websafeKey)).get();
+
+        assertEquals("Each registration is confirmed.", 2, pendingMails());
+    }
+
+    private Registration registration(final String userId) {
+        return new Registration(Key.create(Profile.class, userId), conference);
+    }
+
+    private int pendingMails() {
+        return countTasks(Constants.MAIL_QUEUE);
+    }
+
+    private int senders() {
+        return countTasks(QueueFactory.getDefaultQueue().getQueueName());
+    }
+
+    private static int countTasks(final String queueName) {
+        return LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo().get(queueName)
+                .getCountTasks();
+    }
+}
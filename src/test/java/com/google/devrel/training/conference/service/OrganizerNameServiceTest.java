@@ -0,0 +1,103 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for OrganizerNameService.
+ */
+public class OrganizerNameServiceTest {
+
+    private static final String USER_ID = "123456789";
+
+    private static final int CONFERENCES = OrganizerNameService.BATCH_SIZE + 5;
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private OrganizerNameService organizerNames;
+
+    private List<Key<Conference>> conferenceKeys;
+
+    private Conference otherConference;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        organizerNames = new OrganizerNameService();
+        ofy().save().entity(new Profile(USER_ID, "Luke", "luke@gmail.com",
+                TeeShirtSize.NOT_SPECIFIED)).now();
+        conferenceKeys = new ArrayList<>();
+        for (int i = 0; i < CONFERENCES; i++) {
+            Conference conference = new Conference(1001L + i, USER_ID,
+                    new ConferenceForm("Conference " + i, null, null, null, null, null, 10));
+            conference.updateOrganizerDisplayName("Luke");
+            ofy().save().entity(conference).now();
+            conferenceKeys.add(Key.create(conference));
+        }
+        otherConference = new Conference(2001L, "someone else",
+                new ConferenceForm("Other", null, null, null, null, null, 10));
+        otherConference.updateOrganizerDisplayName("Leia");
+        ofy().save().entity(otherConference).now();
+        // Reading the conferences applies their writes, so the organizer query sees them
+        ofy().clear();
+        ofy().load().keys(conferenceKeys).size();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testUpdateConferences() throws Exception {
+        Profile profile = ofy().load().key(Key.create(Profile.class, USER_ID)).now();
+        profile.update("Luke Skywalker", null);
+        ofy().save().entity(profile).now();
+
+        String cursor = organizerNames.updateConferences(USER_ID, null);
+        assertNotNull("A second batch should be needed.", cursor);
+        assertNull(organizerNames.updateConferences(USER_ID, cursor));
+
+        ofy().clear();
+        for (Conference conference : ofy().load().keys(conferenceKeys).values()) {
+            assertEquals("Luke Skywalker", conference.getOrganizerDisplayName());
+        }
+        assertEquals("Leia", ofy().load().entity(otherConference).now()
+                .getOrganizerDisplayName());
+    }
+
+    @Test
+    public void testDisplayNameWithoutProfile() throws Exception {
+        // Serializing a conference doesn't need the Profile anymore
+        ofy().delete().key(Key.create(Profile.class, USER_ID)).now();
+        ofy().clear();
+        assertEquals("Luke", ofy().load().key(conferenceKeys.get(0)).now()
+                .getOrganizerDisplayName());
+        // Without a Profile the copied name is kept
+        String cursor = organizerNames.updateConferences(USER_ID, null);
+        organizerNames.updateConferences(USER_ID, cursor);
+        ofy().clear();
+        assertEquals("Luke", ofy().load().key(conferenceKeys.get(0)).now()
+                .getOrganizerDisplayName());
+    }
+}
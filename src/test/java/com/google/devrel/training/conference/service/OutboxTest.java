@@ -0,0 +1,122 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.dev.QueueStateInfo.TaskStateInfo;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.Constants;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Tests for Outbox.
+ */
+public class OutboxTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig()
+                            .setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml")
+                            .setDisableAutoTaskExecution(true));
+
+    private Outbox outbox;
+
+    private Key<Conference> conferenceKey;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        outbox = new Outbox();
+        ofy().save().entities(new Profile("organizer", "Organizer", "organizer@gmail.com",
+                TeeShirtSize.NOT_SPECIFIED), new Conference(1001L, "organizer",
+                new ConferenceForm("GCP Live", null, null, "London", null, null, 10, 2))).now();
+        conferenceKey = Key.create(Conference.class, 1001L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEnrollOutsideTransaction() throws Exception {
+        outbox.enroll(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+    }
+
+    @Test
+    public void testEnrolledOnCommit() throws Exception {
+        try {
+            ofy().transact(new VoidWork() {
+                @Override
+                public void vrun() {
+                    outbox.enroll(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+                    throw new IllegalStateException("Rolled back");
+                }
+            });
+            fail("The transaction should roll back.");
+        } catch (IllegalStateException e) {
+            assertEquals("Rolled back", e.getMessage());
+        }
+        assertTrue("A rolled back transaction enrolls nothing.", tasks().isEmpty());
+
+        ofy().transact(new VoidWork() {
+            @Override
+            public void vrun() {
+                outbox.enroll(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+            }
+        });
+        List<TaskStateInfo> tasks = tasks();
+        assertEquals(1, tasks.size());
+        assertEquals("/tasks/outbox", tasks.get(0).getUrl());
+        assertEquals("effect=CONFERENCE_CREATED&websafeConferenceKey="
+                + conferenceKey.getString(), tasks.get(0).getBody());
+    }
+
+    @Test
+    public void testDeliverTwice() throws Exception {
+        outbox.deliver(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+        outbox.deliver(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+        assertEquals("The mail is queued once.", 1,
+                LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo()
+                        .get(Constants.MAIL_QUEUE).getCountTasks());
+        assertEquals(2, indexTasks());
+
+        // A Conference deleted since has no side effects
+        ofy().delete().key(conferenceKey).now();
+        outbox.deliver(Outbox.Effect.CONFERENCE_CREATED, conferenceKey);
+        assertEquals(2, indexTasks());
+    }
+
+    private static int indexTasks() {
+        int indexTasks = 0;
+        for (TaskStateInfo task : tasks()) {
+            if (task.getUrl().equals("/tasks/indexconference")) {
+                indexTasks++;
+            }
+        }
+        return indexTasks;
+    }
+
+    private static List<TaskStateInfo> tasks() {
+        return LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo()
+                .get(QueueFactory.getDefaultQueue().getQueueName()).getTaskInfo();
+    }
+}
@@ -0,0 +1,49 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Tests for PostingList.
+ */
+public class PostingListTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SortedMap<Long, Integer> postings = new TreeMap<>();
+        postings.put(1L, 1);
+        postings.put(127L, 5);
+        postings.put(128L, 300);
+        postings.put(5629499534213120L, 2);
+        postings.put(Long.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(postings, PostingList.decode(PostingList.encode(postings)));
+        assertTrue(PostingList.decode(null).isEmpty());
+        assertEquals(0, PostingList.encode(new TreeMap<Long, Integer>()).length);
+    }
+
+    @Test
+    public void testDeltaEncoding() throws Exception {
+        // Close ids take one byte each, whatever their magnitude
+        SortedMap<Long, Integer> postings = new TreeMap<>();
+        for (long id = 5629499534213120L; id < 5629499534213120L + 100; id++) {
+            postings.put(id, 1);
+        }
+        byte[] encoded = PostingList.encode(postings);
+        assertEquals(8 + 1 + 99 * 2, encoded.length);
+        assertEquals(postings, PostingList.decode(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() throws Exception {
+        SortedMap<Long, Integer> postings = new TreeMap<>();
+        postings.put(300L, 1);
+        byte[] encoded = PostingList.encode(postings);
+        byte[] truncated = new byte[encoded.length - 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        PostingList.decode(truncated);
+    }
+}
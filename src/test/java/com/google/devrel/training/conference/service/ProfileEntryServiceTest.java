@@ -0,0 +1,153 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.Registration;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.WishlistEntry;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for ProfileEntryService.
+ */
+public class ProfileEntryServiceTest {
+
+    private static final String USER_ID = "123456789";
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private ProfileEntryService profileEntries;
+
+    private Conference conference;
+
+    private Key<Session> sessionKey;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        profileEntries = new ProfileEntryService();
+        conference = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        ofy().save().entity(conference).now();
+        sessionKey = Key.create(Key.create(conference), Session.class, 1L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testRegistrations() throws Exception {
+        final Profile profile = new Profile(USER_ID, "Ada", "ada@example.com", TeeShirtSize.M);
+        ofy().save().entity(profile).now();
+        assertFalse(profileEntries.isRegistered(profile, conference));
+
+        // Written with the current transaction, as the registration services do
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                profileEntries.register(Key.create(profile), conference);
+                profileEntries.register(Key.create(profile), conference);
+                return null;
+            }
+        });
+        ofy().clear();
+        assertTrue(profileEntries.isRegistered(profile, conference));
+        assertEquals(ImmutableList.of(Key.create(conference)),
+                profileEntries.conferenceKeysToAttend(profile));
+
+        ofy().transact(new Work<Void>() {
+            @Override
+            public Void run() {
+                profileEntries.unregister(Key.create(profile), conference);
+                return null;
+            }
+        });
+        ofy().clear();
+        assertFalse(profileEntries.isRegistered(profile, conference));
+        assertTrue(profileEntries.conferenceKeysToAttend(profile).isEmpty());
+    }
+
+    @Test
+    public void testWishlist() throws Exception {
+        Profile profile = new Profile(USER_ID, "Ada", "ada@example.com", TeeShirtSize.M);
+        ofy().save().entity(profile).now();
+        profileEntries.addToWishlist(profile, sessionKey.getString());
+        profileEntries.addToWishlist(profile, sessionKey.getString());
+        assertEquals(ImmutableList.of(sessionKey), profileEntries.wishlistSessionKeys(profile));
+
+        profileEntries.removeFromWishlist(profile, sessionKey.getString());
+        assertTrue(profileEntries.wishlistSessionKeys(profile).isEmpty());
+    }
+
+    @Test
+    public void testMigrateLegacyLists() throws Exception {
+        Key<Conference> deletedKey = Key.create(Conference.class, 1002L);
+        Entity legacy = new Entity("Profile", USER_ID);
+        legacy.setProperty("displayName", "Ada");
+        legacy.setProperty("conferenceKeysToAttend",
+                ImmutableList.of(conference.getWebsafeKey(), deletedKey.getString()));
+        legacy.setProperty("sessions", ImmutableList.of(sessionKey.getString()));
+        DatastoreServiceFactory.getDatastoreService().put(legacy);
+
+        Profile profile = ofy().load().key(Key.create(Profile.class, USER_ID)).now();
+        assertTrue(profile.hasLegacyLists());
+        assertEquals("The deleted conference is dropped.",
+                ImmutableList.of(Key.create(conference)),
+                profileEntries.conferenceKeysToAttend(profile));
+
+        ofy().clear();
+        profile = ofy().load().key(Key.create(Profile.class, USER_ID)).now();
+        assertFalse(profile.hasLegacyLists());
+        assertEquals("Ada", profile.getDisplayName());
+        assertTrue(profileEntries.isRegistered(profile, conference));
+        assertNotNull(ofy().load().key(WishlistEntry.key(Key.create(profile), sessionKey))
+                .now());
+        assertFalse(profileEntries.migrate(Key.create(profile)));
+    }
+
+    @Test
+    public void testRewriteWebsafeIds() throws Exception {
+        Profile profile = new Profile(USER_ID, "Ada", "ada@example.com", TeeShirtSize.M);
+        ofy().save().entity(profile).now();
+        // As written before compact ids
+        com.google.appengine.api.datastore.Key profileKey = Key.create(profile).getRaw();
+        Entity registration = new Entity("Registration", conference.getWebsafeKey(), profileKey);
+        registration.setProperty("seats", 3);
+        DatastoreServiceFactory.getDatastoreService().put(ImmutableList.of(registration,
+                new Entity("WishlistEntry", sessionKey.getString(), profileKey)));
+        assertTrue(profileEntries.isRegistered(profile, conference));
+
+        assertEquals(ImmutableList.of(Key.create(conference)),
+                profileEntries.conferenceKeysToAttend(profile));
+        assertEquals(ImmutableList.of(sessionKey), profileEntries.wishlistSessionKeys(profile));
+        assertEquals(ImmutableList.of(Registration.key(Key.create(profile), conference)),
+                ofy().load().type(Registration.class).ancestor(profile).keys().list());
+        assertEquals("1001/1", ofy().load().type(WishlistEntry.class).ancestor(profile).keys()
+                .first().now().getName());
+        assertTrue(profileEntries.isRegistered(profile, conference));
+        assertEquals("The seats are carried over.", 3,
+                profileEntries.getRegistration(Key.create(profile), conference).getSeats());
+    }
+}
@@ -0,0 +1,236 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.service.QueryMerger.MergedIterator;
+import com.googlecode.objectify.cmd.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests for QueryMerger.
+ */
+public class QueryMergerTest {
+
+    private static final List<String> TOPICS = ImmutableList.of("Cloud", "Web", "Mobile");
+
+    private static final Comparator<Conference> BY_NAME = new Comparator<Conference>() {
+        @Override
+        public int compare(Conference left, Conference right) {
+            return left.getName().compareTo(right.getName());
+        }
+    };
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy());
+
+    private QueryMerger queryMerger;
+
+    private List<String> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        queryMerger = new QueryMerger();
+        // Conference i has topic i % 3 and, when i is even, topic (i + 1) % 3 as well
+        expected = new ArrayList<>();
+        List<Conference> conferences = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            List<String> topics = i % 2 == 0
+                    ? ImmutableList.of(TOPICS.get(i % 3), TOPICS.get((i + 1) % 3))
+                    : ImmutableList.of(TOPICS.get(i % 3));
+            String name = String.format("Conference %02d", (i * 7) % 30);
+            conferences.add(new Conference(1001L + i, "organizer",
+                    new ConferenceForm(name, null, topics, null, null, null, 100)));
+            if (topics.contains("Cloud") || topics.contains("Web")) {
+                expected.add(name);
+            }
+        }
+        Collections.sort(expected);
+        ofy().save().entities(conferences).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        List<String> names = new ArrayList<>();
+        MergedIterator<Conference> iterator = queryMerger.startAt(queries(), BY_NAME, null);
+        while (iterator.hasNext()) {
+            names.add(iterator.next().getName());
+        }
+        // Conferences having both topics are returned once
+        assertEquals(expected, names);
+        assertNull(iterator.getCursor());
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        for (int pageSize = 1; pageSize <= 7; pageSize++) {
+            List<String> names = new ArrayList<>();
+            String cursor = null;
+            do {
+                ofy().clear();
+                MergedIterator<Conference> iterator = queryMerger.startAt(queries(), BY_NAME,
+                        cursor);
+                for (int i = 0; i < pageSize && iterator.hasNext(); i++) {
+                    names.add(iterator.next().getName());
+                }
+                cursor = iterator.getCursor();
+            } while (cursor != null);
+            assertEquals("Page size " + pageSize, expected, names);
+        }
+    }
+
+    @Test
+    public void testQueriesRunConcurrently() throws Exception {
+        CallRecorder recorder = CallRecorder.install();
+        try {
+            queryMerger.startAt(queries(), BY_NAME, null).next();
+        } finally {
+            recorder.uninstall();
+        }
+        assertEquals("RunQuery", recorder.calls.get(0));
+        assertEquals("RunQuery", recorder.calls.get(1));
+        assertEquals("Both queries are sent before waiting for either.",
+                "wait RunQuery", recorder.calls.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() throws Exception {
+        queryMerger.startAt(queries(), BY_NAME, "*");
+    }
+
+    private static List<Query<Conference>> queries() {
+        List<Query<Conference>> queries = new ArrayList<>();
+        for (String topic : ImmutableList.of("Cloud", "Web")) {
+            queries.add(ofy().load().type(Conference.class).filter("topics", topic)
+                    .order("name").hybrid(false).chunk(4));
+        }
+        return queries;
+    }
+
+    /**
+     * Records the datastore RPCs sent, and when their results are first waited for.
+     */
+    private static class CallRecorder implements ApiProxy.Delegate<ApiProxy.Environment> {
+
+        private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+
+        private final List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+
+        @SuppressWarnings("unchecked")
+        private CallRecorder() {
+            delegate = ApiProxy.getDelegate();
+        }
+
+        static CallRecorder install() {
+            CallRecorder recorder = new CallRecorder();
+            ApiProxy.setDelegate(recorder);
+            return recorder;
+        }
+
+        void uninstall() {
+            ApiProxy.setDelegate(delegate);
+        }
+
+        @Override
+        public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+                String methodName, byte[] request) {
+            if ("datastore_v3".equals(packageName)) {
+                calls.add(methodName);
+                calls.add("wait " + methodName);
+            }
+            return delegate.makeSyncCall(environment, packageName, methodName, request);
+        }
+
+        @Override
+        public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment,
+                String packageName, final String methodName, byte[] request,
+                ApiProxy.ApiConfig apiConfig) {
+            final Future<byte[]> future = delegate.makeAsyncCall(environment, packageName,
+                    methodName, request, apiConfig);
+            if (!"datastore_v3".equals(packageName)) {
+                return future;
+            }
+            calls.add(methodName);
+            return new Future<byte[]>() {
+
+                private boolean waited;
+
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    return future.cancel(mayInterruptIfRunning);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return future.isCancelled();
+                }
+
+                @Override
+                public boolean isDone() {
+                    return future.isDone();
+                }
+
+                @Override
+                public byte[] get() throws InterruptedException, ExecutionException {
+                    recordWait();
+                    return future.get();
+                }
+
+                @Override
+                public byte[] get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, TimeoutException {
+                    recordWait();
+                    return future.get(timeout, unit);
+                }
+
+                private void recordWait() {
+                    if (!waited) {
+                        waited = true;
+                        calls.add("wait " + methodName);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+            delegate.log(environment, record);
+        }
+
+        @Override
+        public void flushLogs(ApiProxy.Environment environment) {
+            delegate.flushLogs(environment);
+        }
+
+        @Override
+        public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+            return delegate.getRequestThreads(environment);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.enumeration.RegistrationResult;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for RegistrationService.
+ */
+public class RegistrationServiceTest {
+
+    private static final int CONFERENCES = 20;
+
+    private static final int CAP = 30;
+
+    private static final int SHARDS = 3;
+
+    private static final int USERS = 100;
+
+    private static final int THREADS = 16;
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private RegistrationService registration;
+
+    private ProfileEntryService profileEntries;
+
+    private List<Conference> conferences;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        registration = new RegistrationService();
+        profileEntries = new ProfileEntryService();
+        SeatInventoryService seatInventory = new SeatInventoryService();
+        conferences = new ArrayList<>();
+        for (int i = 0; i < CONFERENCES; i++) {
+            Conference conference = new Conference(1001L + i, "organizer",
+                    new ConferenceForm("Conference " + i, null, null, null, null, null, CAP,
+                            SHARDS));
+            ofy().save().entity(conference).now();
+            ofy().save().entities(seatInventory.createShards(conference)).now();
+            conferences.add(conference);
+        }
+        for (int i = 0; i < USERS; i++) {
+            ofy().save().entity(new Profile(userId(i), "User " + i, userId(i) + "@gmail.com",
+                    TeeShirtSize.NOT_SPECIFIED)).now();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        String websafeConferenceKey = conferences.get(0).getWebsafeKey();
+        assertEquals(RegistrationResult.NOT_REGISTERED,
+                registration.unregister(userId(0), websafeConferenceKey));
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), websafeConferenceKey));
+        assertEquals(RegistrationResult.ALREADY_REGISTERED,
+                registration.register(userId(0), websafeConferenceKey));
+        assertEquals(RegistrationResult.PROFILE_NOT_FOUND,
+                registration.register("nobody", websafeConferenceKey));
+        assertEquals(CAP - 1, seatsAvailable(conferences.get(0)));
+
+        assertEquals(RegistrationResult.UNREGISTERED,
+                registration.unregister(userId(0), websafeConferenceKey));
+        assertEquals(CAP, seatsAvailable(conferences.get(0)));
+        assertFalse("The user shouldn't attend the conference.",
+                profileEntries.isRegistered(profile(0), conferences.get(0)));
+    }
+
+    @Test
+    public void testUnregisterKeepsSeatsThatDontFit() throws Exception {
+        Conference conference = conferences.get(0);
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), conference.getWebsafeKey()));
+        // The seat was lost, the shards are all free again
+        ofy().save().entities(new SeatInventoryService().createShards(conference)).now();
+
+        assertEquals(RegistrationResult.SEATS_NOT_RETURNED,
+                registration.unregister(userId(0), conference.getWebsafeKey()));
+        assertEquals(CAP, seatsAvailable(conference));
+        assertTrue("The registration is kept.",
+                profileEntries.isRegistered(profile(0), conference));
+    }
+
+    @Test
+    public void testRetriedRegistration() throws Exception {
+        String websafeConferenceKey = conferences.get(0).getWebsafeKey();
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), websafeConferenceKey, "retry-1"));
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), websafeConferenceKey, "retry-1"));
+        // The outcome survives memcache losing it
+        MemcacheServiceFactory.getMemcacheService().clearAll();
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), websafeConferenceKey, "retry-1"));
+        assertEquals(RegistrationResult.ALREADY_REGISTERED,
+                registration.register(userId(0), websafeConferenceKey, "retry-2"));
+        assertEquals(CAP - 1, seatsAvailable(conferences.get(0)));
+
+        assertEquals(RegistrationResult.UNREGISTERED,
+                registration.unregister(userId(0), websafeConferenceKey, "retry-3"));
+        assertEquals(RegistrationResult.UNREGISTERED,
+                registration.unregister(userId(0), websafeConferenceKey, "retry-3"));
+        assertEquals(CAP, seatsAvailable(conferences.get(0)));
+    }
+
+    @Test
+    public void testRetryKeyReusedOnAnotherConference() throws Exception {
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), conferences.get(0).getWebsafeKey(), "retry-1"));
+        // The same key on another conference is not a retry of the first registration
+        assertEquals(RegistrationResult.REGISTERED,
+                registration.register(userId(0), conferences.get(1).getWebsafeKey(), "retry-1"));
+        assertTrue(profileEntries.isRegistered(profile(0), conferences.get(1)));
+        assertEquals(CAP - 1, seatsAvailable(conferences.get(1)));
+    }
+
+    @Test
+    public void testConcurrentRegistrations() throws Exception {
+        // Every user registers to every conference, some twice and some unregister again
+        final List<Operation> operations = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 0; j < CONFERENCES; j++) {
+                operations.add(new Operation(i, j, true));
+                if ((i + j) % 5 == 0) {
+                    operations.add(new Operation(i, j, true));
+                }
+                if ((i + j) % 7 == 0) {
+                    operations.add(new Operation(i, j, false));
+                }
+            }
+        }
+        Collections.shuffle(operations, new Random(42));
+
+        // Worker threads share the environment of the test thread
+        final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<RegistrationResult>> results = new ArrayList<>();
+        for (final Operation operation : operations) {
+            results.add(executor.submit(new Callable<RegistrationResult>() {
+                @Override
+                public RegistrationResult call() {
+                    ApiProxy.setEnvironmentForCurrentThread(environment);
+                    try {
+                        String websafeConferenceKey = conferences.get(operation.conference)
+                                .getWebsafeKey();
+                        return operation.register
+                                ? registration.register(userId(operation.user),
+                                        websafeConferenceKey)
+                                : registration.unregister(userId(operation.user),
+                                        websafeConferenceKey);
+                    } catch (IllegalArgumentException e) {
+                        // Under load the local datastore may fail a commit with "transaction
+                        // closed" without telling whether it was applied
+                        if (!"transaction closed".equals(e.getMessage())) {
+                            throw e;
+                        }
+                        return null;
+                    } finally {
+                        ofy().clear();
+                    }
+                }
+            }));
+        }
+        // Net registrations of each user to each conference, and the operations whose outcome
+        // is unknown, which are resolved below from the registrations that exist
+        int[][] registered = new int[USERS][CONFERENCES];
+        int[][] unknownRegisters = new int[USERS][CONFERENCES];
+        int[][] unknownUnregisters = new int[USERS][CONFERENCES];
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            RegistrationResult result = results.get(i).get();
+            if (result == null) {
+                if (operation.register) {
+                    unknownRegisters[operation.user][operation.conference]++;
+                } else {
+                    unknownUnregisters[operation.user][operation.conference]++;
+                }
+            } else if (result == RegistrationResult.REGISTERED) {
+                registered[operation.user][operation.conference]++;
+            } else if (result == RegistrationResult.UNREGISTERED) {
+                registered[operation.user][operation.conference]--;
+            }
+        }
+        executor.shutdown();
+
+        ofy().clear();
+        int[] attendees = new int[CONFERENCES];
+        for (int i = 0; i < USERS; i++) {
+            List<Key<Conference>> conferenceKeys = profileEntries.conferenceKeysToAttend(
+                    profile(i));
+            for (int j = 0; j < CONFERENCES; j++) {
+                int attends = conferenceKeys.contains(Key.create(conferences.get(j))) ? 1 : 0;
+                attendees[j] += attends;
+                // What the operations of unknown outcome must have done
+                int unknown = attends - registered[i][j];
+                assertTrue("user " + i + " in conference " + j,
+                        unknown <= unknownRegisters[i][j]
+                                && -unknown <= unknownUnregisters[i][j]);
+            }
+        }
+        for (int j = 0; j < CONFERENCES; j++) {
+            assertEquals(CAP - attendees[j], seatsAvailable(conferences.get(j)));
+        }
+    }
+
+    private static String userId(final int user) {
+        return "user" + user;
+    }
+
+    private Profile profile(final int user) {
+        return ofy().load().key(Key.create(Profile.class, userId(user))).now();
+    }
+
+    private int seatsAvailable(final Conference conference) {
+        int seatsAvailable = 0;
+        for (int i = 0; i < conference.getSeatShards(); i++) {
+            seatsAvailable += ofy().load().key(SeatShard.key(conference, i)).now()
+                    .getSeatsAvailable();
+        }
+        return seatsAvailable;
+    }
+
+    private static class Operation {
+
+        private final int user;
+
+        private final int conference;
+
+        private final boolean register;
+
+        Operation(final int user, final int conference, final boolean register) {
+            this.user = user;
+            this.conference = conference;
+            this.register = register;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tests for RoaringBitmap.
+ */
+public class RoaringBitmapTest {
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        RoaringBitmap bitmap = RoaringBitmap.of(3, 70000, 1);
+        assertEquals(3, bitmap.getCardinality());
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(2));
+        bitmap.add(3);
+        bitmap.remove(70000);
+        bitmap.remove(12);
+        assertArrayEquals(new int[] {1, 3}, bitmap.toArray());
+        bitmap.remove(1);
+        bitmap.remove(3);
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        // Dense ranges switch to bitmap containers, sparse ones stay arrays
+        Random random = new Random(42);
+        for (int density : new int[] {2, 20, 200}) {
+            SortedSet<Integer> left = new TreeSet<>();
+            SortedSet<Integer> right = new TreeSet<>();
+            RoaringBitmap leftBitmap = new RoaringBitmap();
+            RoaringBitmap rightBitmap = new RoaringBitmap();
+            for (int i = 0; i < 150000; i += 1 + random.nextInt(density)) {
+                left.add(i);
+                leftBitmap.add(i);
+            }
+            for (int i = 0; i < 150000; i += 1 + random.nextInt(density)) {
+                right.add(i);
+                rightBitmap.add(i);
+            }
+            assertEquals(left.size(), leftBitmap.getCardinality());
+
+            SortedSet<Integer> and = new TreeSet<>(left);
+            and.retainAll(right);
+            assertArrayEquals(toArray(and), leftBitmap.and(rightBitmap).toArray());
+            SortedSet<Integer> or = new TreeSet<>(left);
+            or.addAll(right);
+            assertArrayEquals(toArray(or), leftBitmap.or(rightBitmap).toArray());
+            SortedSet<Integer> andNot = new TreeSet<>(left);
+            andNot.removeAll(right);
+            assertArrayEquals(toArray(andNot), leftBitmap.andNot(rightBitmap).toArray());
+            // The operands are left unchanged
+            assertArrayEquals(toArray(left), leftBitmap.toArray());
+        }
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (int i = 0; i < 10000; i++) {
+            bitmap.add(i * 2);
+        }
+        bitmap.add(1 << 20);
+        bitmap.add(Integer.MAX_VALUE);
+        assertEquals(bitmap, RoaringBitmap.deserialize(bitmap.serialize()));
+        assertTrue(RoaringBitmap.deserialize(null).isEmpty());
+        assertTrue(RoaringBitmap.deserialize(new RoaringBitmap().serialize()).isEmpty());
+    }
+
+    private static int[] toArray(final SortedSet<Integer> values) {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        return array;
+    }
+}
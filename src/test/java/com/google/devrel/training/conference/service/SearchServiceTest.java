@@ -0,0 +1,132 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SearchTerm;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for SearchService.
+ */
+public class SearchServiceTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private SearchService searchService;
+
+    private Conference cloud;
+
+    private Conference android;
+
+    private Conference summit;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        searchService = new SearchService();
+        cloud = save(1001L, "Cloud Summit", "Everything about the cloud platform",
+                ImmutableList.of("Cloud"));
+        android = save(1002L, "Android Dev Days", "Building apps for phones",
+                ImmutableList.of("Mobile"));
+        summit = save(1003L, "Web Summit", "The web and the cloud, from cloud to browser",
+                ImmutableList.of("Web"));
+        ofy().save().entity(new Session("Scaling Android backends", "Cloud endpoints",
+                "Luke", 60L, null, null, null, Key.create(android), 1L)).now();
+        searchService.index(Key.create(cloud));
+        searchService.index(Key.create(android));
+        searchService.index(Key.create(summit));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+        assertEquals(Arrays.asList("gcp", "live", "2015", "tokyo", "café"),
+                SearchService.tokenize("GCP Live 2015: in Tokyo, the Café!"));
+        assertTrue(SearchService.tokenize(null).isEmpty());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        // The name weighs more than the description
+        assertEquals(Arrays.asList(Key.create(cloud), Key.create(summit), Key.create(android)),
+                search("cloud", 0, 10));
+        // Conferences containing every term come first
+        assertEquals(Arrays.asList(Key.create(summit), Key.create(cloud)),
+                search("web cloud", 0, 2));
+        // Session speakers are searchable
+        assertEquals(Arrays.asList(Key.create(android)), search("luke", 0, 10));
+        assertTrue(search("nothing", 0, 10).isEmpty());
+        assertTrue(search("the", 0, 10).isEmpty());
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        List<Key<Conference>> page = new ArrayList<>();
+        assertTrue(searchService.search("cloud", 0, 2, page));
+        assertEquals(2, page.size());
+        page.clear();
+        assertFalse(searchService.search("cloud", 2, 2, page));
+        assertEquals(Arrays.asList(Key.create(android)), page);
+    }
+
+    @Test
+    public void testReindex() throws Exception {
+        Conference renamed = ofy().load().entity(cloud).now();
+        renamed.updateWithConferenceForm(new ConferenceForm("Kubernetes Summit", null,
+                ImmutableList.of("Containers"), null, null, null, 100));
+        ofy().save().entity(renamed).now();
+        searchService.index(Key.create(cloud));
+
+        assertEquals(Arrays.asList(Key.create(summit), Key.create(android)),
+                search("cloud", 0, 10));
+        assertEquals(Arrays.asList(Key.create(cloud)), search("kubernetes", 0, 10));
+        assertNull("Terms no longer used should be removed.",
+                ofy().load().key(SearchTerm.key("platform")).now());
+        assertEquals(2, ofy().load().key(SearchTerm.key("summit")).now()
+                .getDocumentFrequency());
+
+        ofy().delete().entity(renamed).now();
+        searchService.index(Key.create(cloud));
+        assertTrue(search("kubernetes", 0, 10).isEmpty());
+    }
+
+    private List<Key<Conference>> search(String query, int offset, int limit) {
+        List<Key<Conference>> results = new ArrayList<>();
+        searchService.search(query, offset, limit, results);
+        return results;
+    }
+
+    private static Conference save(long id, String name, String description,
+            List<String> topics) {
+        Conference conference = new Conference(id, "organizer",
+                new ConferenceForm(name, description, topics, null, null, null, 100));
+        ofy().save().entity(conference).now();
+        return conference;
+    }
+}
@@ -0,0 +1,151 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.HoldMetrics;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
+import com.google.devrel.training.conference.domain.SeatHold;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
+import com.google.devrel.training.enumeration.HoldStatus;
+import com.google.devrel.training.enumeration.RegistrationResult;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * Tests for SeatHoldService.
+ */
+public class SeatHoldServiceTest {
+
+    private static final String USER_ID = "123456789";
+
+    private static final int CAP = 5;
+
+    private static final int SHARDS = 2;
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private SeatHoldService seatHolds;
+
+    private SeatInventoryService seatInventory;
+
+    private Conference conference;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        seatHolds = new SeatHoldService();
+        seatInventory = new SeatInventoryService();
+        conference = new Conference(1001L, "organizer",
+                new ConferenceForm("GCP Live", null, null, null, null, null, CAP, SHARDS));
+        ofy().save().entity(conference).now();
+        ofy().save().entities(seatInventory.createShards(conference)).now();
+        ofy().save().entity(new Profile(USER_ID, "Luke", "luke@gmail.com",
+                TeeShirtSize.NOT_SPECIFIED)).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testPlaceAndConfirmHold() throws Exception {
+        SeatHold hold = seatHolds.placeHold(USER_ID, conference, 2);
+        assertNotNull(hold);
+        assertEquals(HoldStatus.HELD, hold.getStatus());
+        assertEquals(CAP - 2, shardSeats());
+
+        SeatHoldService.Confirmation confirmation = seatHolds.confirmHold(Key.create(hold));
+        assertNull(confirmation.getReason());
+        assertEquals(Key.create(conference), confirmation.getConferenceKey());
+        assertEquals("The hold is no longer active",
+                seatHolds.confirmHold(Key.create(hold)).getReason());
+        ofy().clear();
+        assertEquals(HoldStatus.CONFIRMED, ofy().load().entity(hold).now().getStatus());
+        Profile profile = ofy().load().key(Key.create(Profile.class, USER_ID)).now();
+        assertEquals("The registration holds the seats of the hold.", 2,
+                new ProfileEntryService().getRegistration(Key.create(profile), conference)
+                        .getSeats());
+
+        HoldMetrics metrics = seatHolds.getMetrics(conference.getWebsafeKey());
+        assertEquals(1, metrics.getPlaced());
+        assertEquals(1, metrics.getConfirmed());
+
+        // Unregistering gives all the seats of the hold back
+        assertEquals(RegistrationResult.UNREGISTERED,
+                new RegistrationService().unregister(USER_ID, conference.getWebsafeKey()));
+        ofy().clear();
+        assertEquals(CAP, shardSeats());
+    }
+
+    @Test
+    public void testReleaseHold() throws Exception {
+        SeatHold hold = seatHolds.placeHold(USER_ID, conference, 3);
+        assertNull("Holding more seats than available should fail.",
+                seatHolds.placeHold(USER_ID, conference, CAP));
+
+        assertNull(seatHolds.releaseHold(Key.create(hold)));
+        assertEquals("The hold is no longer active", seatHolds.releaseHold(Key.create(hold)));
+        ofy().clear();
+        assertEquals(CAP, shardSeats());
+        assertEquals(1, seatHolds.getMetrics(null).getReleased());
+    }
+
+    @Test
+    public void testExpireHolds() throws Exception {
+        final Key<SeatHold> holdKey = ofy().factory().allocateId(SeatHold.class);
+        ofy().transact(new Work<SeatHold>() {
+            @Override
+            public SeatHold run() {
+                int shardIndex = seatInventory.bookSeatsOnShard(conference, 2);
+                SeatHold hold = new SeatHold(holdKey.getId(), USER_ID,
+                        conference.getWebsafeKey(), 2, shardIndex,
+                        new Date(System.currentTimeMillis() - 1000));
+                ofy().save().entity(hold);
+                return hold;
+            }
+        });
+        SeatHold active = seatHolds.placeHold(USER_ID, conference, 1);
+        assertEquals(CAP - 3, shardSeats());
+        // Reading the holds applies their writes, so the expiry query sees them
+        ofy().clear();
+        ofy().load().keys(holdKey, Key.create(active)).size();
+
+        assertEquals(1, seatHolds.expireHolds());
+        assertEquals(0, seatHolds.expireHolds());
+        ofy().clear();
+        assertEquals(HoldStatus.EXPIRED, ofy().load().key(holdKey).now().getStatus());
+        assertEquals(HoldStatus.HELD, ofy().load().entity(active).now().getStatus());
+        assertEquals(CAP - 1, shardSeats());
+        assertEquals("The hold is no longer active",
+                seatHolds.confirmHold(holdKey).getReason());
+    }
+
+    private int shardSeats() {
+        int seatsAvailable = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            seatsAvailable += ofy().load().key(SeatShard.key(conference, i)).now()
+                    .getSeatsAvailable();
+        }
+        return seatsAvailable;
+    }
+}
@@ -0,0 +1,155 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.SeatShard;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for SeatInventoryService.
+ */
+public class SeatInventoryServiceTest {
+
+    private static final String USER_ID = "123456789";
+
+    private static final int CAP = 10;
+
+    private static final int SHARDS = 3;
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setDefaultHighRepJobPolicyUnappliedJobPercentage(100),
+                    new LocalMemcacheServiceTestConfig());
+
+    private SeatInventoryService seatInventory;
+
+    private Conference conference;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        seatInventory = new SeatInventoryService();
+        ConferenceForm conferenceForm = new ConferenceForm(
+                "GCP Live", null, null, null, null, null, CAP, SHARDS);
+        conference = new Conference(1001L, USER_ID, conferenceForm);
+        ofy().save().entity(conference).now();
+        ofy().save().entities(seatInventory.createShards(conference)).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testCreateShards() throws Exception {
+        List<SeatShard> shards = seatInventory.createShards(conference);
+        assertEquals(SHARDS, shards.size());
+        int capacity = 0;
+        for (SeatShard shard : shards) {
+            assertEquals(shard.getCapacity(), shard.getSeatsAvailable());
+            capacity += shard.getCapacity();
+        }
+        assertEquals(CAP, capacity);
+    }
+
+    @Test
+    public void testBookAllSeats() throws Exception {
+        for (int i = 0; i < CAP; i++) {
+            assertTrue("Booking a seat should succeed.", book());
+        }
+        assertFalse("Booking should fail when all shards are full.", book());
+        assertEquals(0, shardSeats());
+        assertEquals(0, seatInventory.getSeatsAvailable(conference));
+    }
+
+    @Test
+    public void testSyncSeatsAvailable() throws Exception {
+        book();
+        book();
+        Key<Conference> conferenceKey = Key.create(conference);
+        seatInventory.syncSeatsAvailable(conferenceKey);
+        ofy().clear();
+        assertEquals(CAP - 2, ofy().load().key(conferenceKey).now().getSeatsAvailable());
+    }
+
+    @Test
+    public void testGiveBackSeats() throws Exception {
+        assertFalse("Giving back should fail when all seats are available.",
+                ofy().transact(new Work<Boolean>() {
+                    @Override
+                    public Boolean run() {
+                        return seatInventory.giveBackSeats(conference, 1);
+                    }
+                }));
+        book();
+        assertTrue("Giving back a booked seat should succeed.",
+                ofy().transact(new Work<Boolean>() {
+                    @Override
+                    public Boolean run() {
+                        return seatInventory.giveBackSeats(conference, 1);
+                    }
+                }));
+    }
+
+    @Test
+    public void testGiveBackSpreadsSeats() throws Exception {
+        // One seat booked on each shard, no shard has room for two
+        List<SeatShard> shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            SeatShard shard = ofy().load().key(SeatShard.key(conference, i)).now();
+            shard.bookSeats(1);
+            shards.add(shard);
+        }
+        ofy().save().entities(shards).now();
+
+        assertTrue("Two seats should go back to two shards.", giveBack(2));
+        ofy().clear();
+        assertEquals(CAP - 1, shardSeats());
+        assertFalse("Giving back more seats than booked should fail.", giveBack(2));
+        ofy().clear();
+        assertEquals(CAP - 1, shardSeats());
+    }
+
+    private boolean giveBack(final int seats) {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                return seatInventory.giveBackSeats(conference, seats);
+            }
+        });
+    }
+
+    private boolean book() {
+        return ofy().transact(new Work<Boolean>() {
+            @Override
+            public Boolean run() {
+                return seatInventory.bookSeats(conference, 1);
+            }
+        });
+    }
+
+    private int shardSeats() {
+        int seatsAvailable = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            seatsAvailable += ofy().load().key(SeatShard.key(conference, i)).now()
+                    .getSeatsAvailable();
+        }
+        return seatsAvailable;
+    }
+}
@@ -0,0 +1,108 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.devrel.training.conference.SessionBatchResult;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.SessionForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for SessionBatchService.
+ */
+public class SessionBatchServiceTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private SessionBatchService sessionBatches;
+
+    private Conference devFest;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        sessionBatches = new SessionBatchService();
+        devFest = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        ofy().save().entity(devFest).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        List<SessionForm> forms = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            forms.add(sessionForm("Session " + i, "01/06/2015", "9:00"));
+        }
+        SessionBatchResult result = sessionBatches.create(Key.create(devFest), forms);
+        assertEquals(250, result.getCreated());
+        ofy().clear();
+        Session session = ofy().load().<Session>key(
+                Key.<Session>create(result.getItems().get(249).getWebsafeSessionKey())).now();
+        assertEquals("Session 249", session.getSessionName());
+        assertEquals(250, ofy().load().type(Session.class).ancestor(devFest).count());
+        assertEquals(250, new SessionCountService().get(Key.create(devFest)).getCount());
+        assertEquals(250, new AgendaService().get(Key.create(devFest)).getDays().get(0)
+                .getTracks().get(0).getSessions().size());
+    }
+
+    @Test
+    public void testInvalidFormsDontAbortTheBatch() throws Exception {
+        List<SessionForm> forms = Arrays.asList(
+                sessionForm("Keynote", "01/06/2015", "9:00"),
+                sessionForm("Bad date", "31/02/2015", "10:00"),
+                sessionForm(null, "01/06/2015", "11:00"),
+                sessionForm("Bad time", "01/06/2015", "25:00"),
+                null,
+                sessionForm("Unscheduled", null, null));
+        SessionBatchResult result = sessionBatches.create(Key.create(devFest), forms);
+
+        assertEquals(2, result.getCreated());
+        assertNotNull(result.getItems().get(0).getWebsafeSessionKey());
+        assertEquals("Invalid date, expected dd/MM/yyyy: 31/02/2015",
+                result.getItems().get(1).getError());
+        assertEquals("The session name is required", result.getItems().get(2).getError());
+        assertEquals("Invalid start time, expected HH:mm: 25:00",
+                result.getItems().get(3).getError());
+        assertEquals("The session is missing", result.getItems().get(4).getError());
+        assertNull(result.getItems().get(5).getError());
+        ofy().clear();
+        assertEquals(2, new SessionCountService().get(Key.create(devFest)).getCount());
+    }
+
+    private static SessionForm sessionForm(final String name, final String date,
+            final String startTime) {
+        SessionForm form = new SessionForm();
+        form.setSessionName(name);
+        form.setDate(date);
+        form.setStartTime(startTime);
+        form.setDuration(60L);
+        form.setTypeOfSession(TypeOfSession.LECTURE);
+        return form;
+    }
+}
@@ -0,0 +1,121 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.SessionCount;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for SessionCountService.
+ */
+public class SessionCountServiceTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private SessionCountService sessionCounts;
+
+    private Conference devFest;
+
+    private long nextSessionId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        sessionCounts = new SessionCountService();
+        devFest = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        ofy().save().entity(devFest).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        assertEquals(0, sessionCounts.get(Key.create(devFest)).getCount());
+        sessionCounts.create(newSession());
+        sessionCounts.create(newSession());
+        ofy().clear();
+        assertEquals(2, sessionCounts.get(Key.create(devFest)).getCount());
+        assertEquals(2, ofy().load().type(Session.class).ancestor(devFest).count());
+    }
+
+    @Test
+    public void testCreateBeforeBuild() throws Exception {
+        ofy().save().entity(newSession()).now();
+        sessionCounts.create(newSession());
+        ofy().clear();
+        assertEquals("Counts the existing session and the new one once.", 2,
+                sessionCounts.get(Key.create(devFest)).getCount());
+    }
+
+    @Test
+    public void testRecountAfterConcurrentBuild() throws Exception {
+        sessionCounts.create(newSession());
+        ofy().delete().key(SessionCount.key(Key.create(devFest))).now();
+        // A batch saves its sessions, then the count is built before the batch counts them
+        ofy().save().entities(newSession(), newSession()).now();
+        assertEquals(3, sessionCounts.get(Key.create(devFest)).getCount());
+
+        sessionCounts.recount(Key.create(devFest));
+        ofy().clear();
+        assertEquals("Counts the batch once.", 3,
+                sessionCounts.get(Key.create(devFest)).getCount());
+    }
+
+    @Test
+    public void testCreateDoesNotWriteConference() throws Exception {
+        Entity before = DatastoreServiceFactory.getDatastoreService().get(
+                Key.create(devFest).getRaw());
+        sessionCounts.create(newSession());
+        Entity after = DatastoreServiceFactory.getDatastoreService().get(
+                Key.create(devFest).getRaw());
+        assertEquals(before.getProperties(), after.getProperties());
+    }
+
+    @Test
+    public void testStripLegacySessionKeys() throws Exception {
+        Session session = newSession();
+        ofy().save().entity(session).now();
+        Entity legacy = DatastoreServiceFactory.getDatastoreService().get(
+                Key.create(devFest).getRaw());
+        legacy.setUnindexedProperty("sessions",
+                ImmutableList.of(Key.create(session).getString()));
+        DatastoreServiceFactory.getDatastoreService().put(legacy);
+        MemcacheServiceFactory.getMemcacheService().clearAll();
+        ofy().clear();
+
+        ConferenceMigrationService migration = new ConferenceMigrationService();
+        assertTrue(migration.stripSessionKeys(Key.create(devFest)));
+        ofy().clear();
+        assertFalse(ofy().load().entity(devFest).now().hasLegacySessionKeys());
+        assertFalse(migration.stripSessionKeys(Key.create(devFest)));
+        assertEquals(1, sessionCounts.get(Key.create(devFest)).getCount());
+    }
+
+    private Session newSession() {
+        return new Session("Session " + nextSessionId, null, null, 60L, null, null, null,
+                Key.create(devFest), nextSessionId++);
+    }
+}
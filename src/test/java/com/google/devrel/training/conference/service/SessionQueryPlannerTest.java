@@ -0,0 +1,133 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.SessionQueryForm;
+import com.google.devrel.training.enumeration.TypeOfSession;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for SessionQueryPlanner.
+ */
+public class SessionQueryPlannerTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private SessionQueryPlanner planner;
+
+    private Conference devFest;
+
+    private long nextSessionId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        planner = new SessionQueryPlanner();
+        devFest = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        ofy().save().entity(devFest).now();
+        saveSession("Evening workshop", TypeOfSession.WORKSHOP, "18:00", 120L);
+        saveSession("Morning keynote", TypeOfSession.KEYNOTE, "9:00", 60L);
+        saveSession("Late lecture", TypeOfSession.LECTURE, "19:30", 45L);
+        saveSession("Unscheduled lecture", TypeOfSession.LECTURE, "after lunch", 30L);
+        saveSession("Afternoon lecture", TypeOfSession.LECTURE, "14:15", 45L);
+        saveSession("Morning workshop", TypeOfSession.WORKSHOP, "10:00", 90L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testBeforeSevenNotWorkshops() throws Exception {
+        SessionQueryForm form = form();
+        form.setStartsBefore("19:00");
+        form.setExcludedTypes(ImmutableList.of(TypeOfSession.WORKSHOP));
+        assertEquals(ImmutableList.of("Morning keynote", "Afternoon lecture"), names(form));
+    }
+
+    @Test
+    public void testStartTimeOrder() throws Exception {
+        assertEquals(ImmutableList.of("Morning keynote", "Morning workshop", "Afternoon lecture",
+                "Evening workshop", "Late lecture", "Unscheduled lecture"), names(form()));
+
+        SessionQueryForm form = form();
+        form.setTypeOfSession(TypeOfSession.LECTURE);
+        form.setStartsAfter("14:15");
+        form.setEndsBefore("20:15");
+        assertEquals(ImmutableList.of("Afternoon lecture", "Late lecture"), names(form));
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        List<Session> page = new ArrayList<>();
+        assertTrue(planner.readPage(Key.create(devFest), form(), 0, 4, page));
+        assertFalse(planner.readPage(Key.create(devFest), form(), 4, 4, page));
+        assertEquals(6, page.size());
+        assertEquals("Unscheduled lecture", page.get(5).getSessionName());
+        assertFalse(planner.readPage(Key.create(devFest), form(), 10, 4, page));
+        assertEquals(6, page.size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        SessionQueryForm form = form();
+        form.setTypeOfSession(TypeOfSession.KEYNOTE);
+        assertEquals(ImmutableList.of("Morning keynote"), names(form));
+
+        saveSession("Closing keynote", TypeOfSession.KEYNOTE, "17:00", 30L);
+        assertEquals("The cached timetable is used.",
+                ImmutableList.of("Morning keynote"), names(form));
+        planner.invalidate(Key.create(devFest));
+        assertEquals(ImmutableList.of("Morning keynote", "Closing keynote"), names(form));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTime() throws Exception {
+        SessionQueryForm form = form();
+        form.setStartsBefore("7pm");
+        names(form);
+    }
+
+    private SessionQueryForm form() {
+        SessionQueryForm form = new SessionQueryForm();
+        form.setWebsafeConferenceKey(devFest.getWebsafeKey());
+        return form;
+    }
+
+    private List<String> names(final SessionQueryForm form) {
+        List<Session> page = new ArrayList<>();
+        planner.readPage(Key.create(devFest), form, 0, 100, page);
+        List<String> names = new ArrayList<>();
+        for (Session session : page) {
+            names.add(session.getSessionName());
+        }
+        return names;
+    }
+
+    private void saveSession(final String name, final TypeOfSession type,
+            final String startTime, final long duration) {
+        ofy().save().entity(new Session(name, null, null, duration, type, null, startTime,
+                Key.create(devFest), nextSessionId++)).now();
+    }
+}
@@ -0,0 +1,127 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.google.devrel.training.conference.domain.Speaker;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for SpeakerIndex.
+ */
+public class SpeakerIndexTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig());
+
+    private SpeakerIndex speakerIndex;
+
+    private Conference devFest;
+
+    private Conference summit;
+
+    private long nextSessionId = 1;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        speakerIndex = new SpeakerIndex();
+        devFest = new Conference(1001L, "organizer",
+                new ConferenceForm("DevFest", null, null, null, null, null, 100));
+        summit = new Conference(1002L, "organizer",
+                new ConferenceForm("Cloud Summit", null, null, null, null, null, 100));
+        ofy().save().entities(devFest, summit).now();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Session intro = saveSession(devFest, "Ada Lovelace");
+        saveSession(devFest, "Alan Turing");
+        Session keynote = saveSession(summit, "ada  lovelace");
+        assertEquals(2, speakerIndex.index(Key.create(devFest)));
+        assertEquals(1, speakerIndex.index(Key.create(summit)));
+        assertEquals("Nothing changed since the last indexing.", 0,
+                speakerIndex.index(Key.create(devFest)));
+
+        Speaker ada = speakerIndex.find(" ADA Lovelace ");
+        assertEquals("Ada Lovelace", ada.getName());
+        assertEquals(2, ada.getSessionCount());
+        assertEquals(ImmutableList.of(Key.create(intro), Key.create(keynote)),
+                ada.getSessionKeys());
+        assertTrue(ada.getFeaturedConferenceKeys().isEmpty());
+        assertNull(speakerIndex.find("Grace Hopper"));
+        assertNull(speakerIndex.find(" "));
+    }
+
+    @Test
+    public void testFeatured() throws Exception {
+        saveSession(devFest, "Ada Lovelace");
+        saveSession(devFest, "Alan Turing");
+        speakerIndex.index(Key.create(devFest));
+        saveSession(devFest, "Ada Lovelace");
+        assertEquals(1, speakerIndex.index(Key.create(devFest)));
+
+        Speaker ada = speakerIndex.find("Ada Lovelace");
+        assertEquals(ImmutableList.of(devFest.getWebsafeKey()), ada.getFeaturedConferenceKeys());
+        assertEquals(ImmutableList.of(ada.getName()),
+                names(ofy().load().type(Speaker.class).filter("featured", true).list()));
+        assertEquals(ImmutableList.of(ada.getName()), names(ofy().load().type(Speaker.class)
+                .filter("featuredIn", Key.create(devFest)).list()));
+        assertTrue(ofy().load().type(Speaker.class).filter("featuredIn", Key.create(summit))
+                .list().isEmpty());
+    }
+
+    @Test
+    public void testReadSessions() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            saveSession(i % 2 == 0 ? devFest : summit, "Ada Lovelace");
+        }
+        speakerIndex.index(Key.create(devFest));
+        speakerIndex.index(Key.create(summit));
+        Speaker ada = speakerIndex.find("Ada Lovelace");
+        List<Session> page = new ArrayList<>();
+        assertTrue(speakerIndex.readSessions(ada, 0, 2, page));
+        assertTrue(speakerIndex.readSessions(ada, 2, 2, page));
+        assertFalse(speakerIndex.readSessions(ada, 4, 2, page));
+        assertEquals(5, page.size());
+        assertFalse(speakerIndex.readSessions(ada, 10, 2, page));
+        assertEquals(5, page.size());
+    }
+
+    private Session saveSession(final Conference conference, final String speaker) {
+        Session session = new Session("Session " + nextSessionId, null, speaker, 60L, null,
+                null, null, Key.create(conference), nextSessionId++);
+        ofy().save().entity(session).now();
+        return session;
+    }
+
+    private static List<String> names(final List<Speaker> speakers) {
+        List<String> names = new ArrayList<>();
+        for (Speaker speaker : speakers) {
+            names.add(speaker.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,62 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for TopicExpression.
+ */
+public class TopicExpressionTest {
+
+    private final Map<String, RoaringBitmap> bitmaps = ImmutableMap.of(
+            "Cloud", RoaringBitmap.of(1, 2, 3, 4),
+            "Android", RoaringBitmap.of(2, 5),
+            "Machine Learning", RoaringBitmap.of(3, 6),
+            "Web", RoaringBitmap.of(4, 6));
+
+    @Test
+    public void testEvaluate() throws Exception {
+        assertArrayEquals(new int[] {2, 3},
+                evaluate("Cloud AND (Android OR \"Machine Learning\") AND NOT Web"));
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5}, evaluate("Cloud or Android"));
+        // NOT binds tighter than AND, AND tighter than OR
+        assertArrayEquals(new int[] {1, 2, 3, 6}, evaluate("NOT Web AND Cloud OR Web AND "
+                + "\"Machine Learning\""));
+        // A negated operand of OR keeps the complement until intersected
+        assertArrayEquals(new int[] {1, 2, 3, 4}, evaluate("Cloud AND (Cloud OR NOT Web)"));
+        assertArrayEquals(new int[] {1, 2, 3}, evaluate("Cloud AND NOT (Web OR NOT Cloud)"));
+        assertArrayEquals(new int[0], evaluate("Unknown AND Cloud"));
+    }
+
+    @Test
+    public void testCanonicalForm() throws Exception {
+        assertEquals(TopicExpression.parse("Web and (Android or Cloud)").toString(),
+                TopicExpression.parse("(Cloud  OR Android) AND Web").toString());
+        assertEquals(ImmutableSet.of("Android", "Cloud", "Web"),
+                TopicExpression.parse("Web and (Android or Cloud)").getTopics());
+    }
+
+    @Test
+    public void testInvalidExpressions() throws Exception {
+        for (String expression : new String[] {"", "Cloud AND", "(Cloud", "Cloud)",
+                "\"Cloud", "AND Cloud", "NOT Web", "NOT Web AND NOT Cloud",
+                "Cloud OR NOT Web"}) {
+            try {
+                TopicExpression.parse(expression);
+                fail("Expected an IllegalArgumentException for " + expression);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    private int[] evaluate(final String expression) {
+        return TopicExpression.parse(expression).evaluate(bitmaps).toArray();
+    }
+}
@@ -0,0 +1,142 @@
+package com.google.devrel.training.conference.service;
+
+import static com.google.devrel.training.conference.service.OfyService.ofy;
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalMemcacheServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.ConferenceQueryPlan;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.TopicBitmap;
+import com.google.devrel.training.conference.form.ConferenceForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Field;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Filter;
+import com.google.devrel.training.conference.form.ConferenceQueryForm.Operator;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for TopicIndex.
+ */
+public class TopicIndexTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                    .setApplyAllHighRepJobPolicy(),
+                    new LocalMemcacheServiceTestConfig(),
+                    new LocalTaskQueueTestConfig().setDisableAutoTaskExecution(true));
+
+    private TopicIndex topicIndex;
+
+    private ConferenceQueryPlanner queryPlanner;
+
+    private List<Conference> conferences;
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+        topicIndex = new TopicIndex();
+        queryPlanner = new ConferenceQueryPlanner();
+        conferences = new ArrayList<>();
+        // Conference i is about Cloud, every other one about Android too, in London or Tokyo
+        for (int i = 0; i < 10; i++) {
+            List<String> topics = i % 2 == 0 ? ImmutableList.of("Cloud", "Android")
+                    : ImmutableList.of("Cloud");
+            Conference conference = new Conference(1001L + i, "organizer",
+                    new ConferenceForm("Conference " + i, null, topics,
+                            i < 5 ? "London" : "Tokyo", null, null, 100));
+            ofy().save().entity(conference).now();
+            assertTrue(topicIndex.index(Key.create(conference)));
+            conferences.add(conference);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ofy().clear();
+        helper.tearDown();
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Key<Conference> conferenceKey = Key.create(conferences.get(0));
+        assertFalse("Nothing changed since the last indexing.", topicIndex.index(conferenceKey));
+        ofy().clear();
+        Conference conference = ofy().load().key(conferenceKey).now();
+        long ordinal = conference.getOrdinal();
+        assertEquals(10, topicIndex.match(TopicExpression.parse("Cloud")).getCardinality());
+
+        conference.updateWithConferenceForm(new ConferenceForm("Conference 0", null,
+                ImmutableList.of("Cloud", "Web"), "London", null, null, 100));
+        ofy().save().entity(conference).now();
+        assertTrue(topicIndex.index(conferenceKey));
+        ofy().clear();
+        assertEquals("The ordinal is assigned once.", ordinal,
+                (long) ofy().load().key(conferenceKey).now().getOrdinal());
+        assertArrayEquals(new int[] {(int) ordinal},
+                topicIndex.match(TopicExpression.parse("Web")).toArray());
+        assertEquals(4, topicIndex.match(TopicExpression.parse("Android")).getCardinality());
+        assertEquals(4, topicIndex.match(TopicExpression.parse("Android AND NOT Web"))
+                .getCardinality());
+
+        // The bitmap of a topic no Conference has any more is deleted
+        conference.updateWithConferenceForm(new ConferenceForm("Conference 0", null,
+                ImmutableList.of("Cloud"), "London", null, null, 100));
+        ofy().save().entity(conference).now();
+        assertTrue(topicIndex.index(conferenceKey));
+        assertNull(ofy().load().key(TopicBitmap.key("Web")).now());
+    }
+
+    @Test
+    public void testReadPages() throws Exception {
+        ConferenceQueryForm form = new ConferenceQueryForm()
+                .filter(new Filter(Field.CITY, Operator.EQ, "London"));
+        form.setTopicExpression("Cloud and not Android");
+        ConferenceQueryPlan plan = queryPlanner.plan(form);
+        assertEquals("(\"Cloud\" AND NOT \"Android\")", plan.getTopicExpression());
+        assertEquals(ImmutableList.of("city == London"), plan.getResidualFilters());
+
+        List<Conference> page = new ArrayList<>();
+        String cursor = queryPlanner.readPage(plan, 1, null, page);
+        assertNotNull(cursor);
+        cursor = queryPlanner.readPage(plan, 1, cursor, page);
+        assertNotNull(cursor);
+        // The last match is followed by Conferences in Tokyo only
+        assertNull(queryPlanner.readPage(plan, 1, cursor, page));
+        assertEquals(ImmutableList.of("Conference 1", "Conference 3"), names(page));
+        assertEquals(3, plan.getScanned());
+        assertEquals(0, plan.getReturned());
+
+        form.setTopicExpression("Android");
+        page.clear();
+        assertNull(queryPlanner.readPage(queryPlanner.plan(form), 10, null, page));
+        assertEquals(ImmutableList.of("Conference 0", "Conference 2", "Conference 4"),
+                names(page));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCursor() throws Exception {
+        ConferenceQueryForm form = new ConferenceQueryForm();
+        form.setTopicExpression("Cloud");
+        queryPlanner.readPage(queryPlanner.plan(form), 10, "not a cursor",
+                new ArrayList<Conference>());
+    }
+
+    private static List<String> names(final List<Conference> conferences) {
+        List<String> names = new ArrayList<>();
+        for (Conference conference : conferences) {
+            names.add(conference.getName());
+        }
+        return names;
+    }
+}
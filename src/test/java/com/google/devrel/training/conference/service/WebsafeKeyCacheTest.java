@@ -0,0 +1,47 @@
+package com.google.devrel.training.conference.service;
+
+import static org.junit.Assert.*;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Session;
+import com.googlecode.objectify.Key;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for WebsafeKeyCache.
+ */
+public class WebsafeKeyCacheTest {
+
+    private final LocalServiceTestHelper helper =
+            new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+    @Before
+    public void setUp() throws Exception {
+        helper.setUp();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        helper.tearDown();
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        Key<Session> sessionKey = Key.create(Key.create(Conference.class, 1001L),
+                Session.class, 1L);
+        Key<Session> parsed = WebsafeKeyCache.parse(sessionKey.getString());
+        assertEquals(sessionKey, parsed);
+        assertEquals(Key.create(Conference.class, 1001L), parsed.getParent());
+        assertSame(parsed, WebsafeKeyCache.parse(sessionKey.getString()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey() throws Exception {
+        WebsafeKeyCache.parse("not a key");
+    }
+}
@@ -3,20 +3,28 @@ package com.google.devrel.training.conference.spi;
 import static com.google.devrel.training.conference.service.OfyService.ofy;
 import static org.junit.Assert.*;
 
+import com.google.api.server.spi.response.BadRequestException;
+import com.google.api.server.spi.response.CollectionResponse;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
 import com.google.common.collect.ImmutableList;
+import com.google.devrel.training.conference.ConferenceQueryPlan;
 import com.google.devrel.training.conference.domain.Conference;
+import com.google.devrel.training.conference.domain.Profile;
 import com.google.devrel.training.conference.form.ConferenceForm;
 import com.google.devrel.training.conference.form.ConferenceQueryForm;
+import com.google.devrel.training.conference.form.ProfileForm.TeeShirtSize;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Tests for ConferenceApi API methods.
@@ -119,7 +127,8 @@ public class ConferenceApiGlobalQueryTest {
     public void testEmptyQuery() throws Exception {
         // Empty query.
         ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm();
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(3, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -129,6 +138,30 @@ public class ConferenceApiGlobalQueryTest {
         assertEquals(conference2, conferences.get(2));
     }
 
+    @Test
+    public void testPagedQuery() throws Exception {
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm();
+        CollectionResponse<Conference> firstPage =
+                conferenceApi.queryConferences(conferenceQueryForm, 2, null);
+        List<Conference> conferences = new ArrayList<>(firstPage.getItems());
+        assertEquals(2, conferences.size());
+        assertEquals(conference1, conferences.get(0));
+        assertEquals(conference3, conferences.get(1));
+        assertNotNull("The first page should have a next page.", firstPage.getNextPageToken());
+
+        CollectionResponse<Conference> lastPage = conferenceApi.queryConferences(
+                conferenceQueryForm, 2, firstPage.getNextPageToken());
+        conferences = new ArrayList<>(lastPage.getItems());
+        assertEquals(1, conferences.size());
+        assertEquals(conference2, conferences.get(0));
+        assertNull("The last page shouldn't have a next page.", lastPage.getNextPageToken());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testInvalidCursor() throws Exception {
+        conferenceApi.queryConferences(new ConferenceQueryForm(), 2, "not a cursor");
+    }
+
     @Test
     public void testCityQuery() throws Exception {
         // A query only specifies the city.
@@ -138,7 +171,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "Tokyo"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
     }
@@ -152,7 +186,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "Japan"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
     }
@@ -176,7 +211,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.EQ,
                         "6"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(1, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
     }
@@ -190,7 +226,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.GT,
                         "999"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -207,7 +244,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.LT,
                         "1001"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -224,7 +262,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.GTEQ,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -241,7 +280,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.LTEQ,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference2.", conferences.contains(conference2));
@@ -258,7 +298,8 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.NE,
                         "1000"
                 ));
-        List<Conference> conferences = conferenceApi.queryConferences(conferenceQueryForm);
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
         assertEquals(2, conferences.size());
         assertTrue("The result should contain conference1.", conferences.contains(conference1));
         assertTrue("The result should contain conference3.", conferences.contains(conference3));
@@ -266,7 +307,7 @@ public class ConferenceApiGlobalQueryTest {
         assertEquals(conference3, conferences.get(1));
     }
 
-    @Test(expected = IllegalArgumentException.class)
+    @Test
     public void testMultipleInequalityFilter() throws Exception {
         // A query specifies the maxAttendees <= 1000 and month != 6.
         ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
@@ -280,5 +321,198 @@ public class ConferenceApiGlobalQueryTest {
                         ConferenceQueryForm.Operator.NE,
                         "6"
                 ));
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
+        assertEquals(1, conferences.size());
+        assertEquals(conference1, conferences.get(0));
+
+        // month != 6 matches 2 conferences, maxAttendees <= 1000 matches 2 as well: the tie
+        // goes to the field given first
+        ConferenceQueryPlan plan = conferenceApi.explainConferenceQuery(
+                conferenceQueryForm, null, null);
+        assertEquals("maxAttendees", plan.getInequalityField());
+        assertEquals(ImmutableList.of("maxAttendees <= 1000"), plan.getDatastoreFilters());
+        assertEquals(ImmutableList.of("month != 6"), plan.getResidualFilters());
+        assertEquals(2, plan.getScanned());
+        assertEquals(1, plan.getReturned());
+    }
+
+    @Test
+    public void testMostSelectiveInequalityFilter() throws Exception {
+        // A query specifies the month >= 3 and maxAttendees > 1000.
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
+                .filter(new ConferenceQueryForm.Filter(
+                        ConferenceQueryForm.Field.MONTH,
+                        ConferenceQueryForm.Operator.GTEQ,
+                        "3"
+                ))
+                .filter(new ConferenceQueryForm.Filter(
+                        ConferenceQueryForm.Field.MAX_ATTENDEES,
+                        ConferenceQueryForm.Operator.GT,
+                        "1000"
+                ));
+        List<Conference> conferences = new ArrayList<>(
+                conferenceApi.queryConferences(conferenceQueryForm, null, null).getItems());
+        assertEquals(1, conferences.size());
+        assertEquals(conference3, conferences.get(0));
+
+        ConferenceQueryPlan plan = conferenceApi.explainConferenceQuery(
+                conferenceQueryForm, null, null);
+        assertEquals("maxAttendees", plan.getInequalityField());
+        assertEquals(ImmutableList.of("month: 3", "maxAttendees: 1"), plan.getEstimates());
+        assertEquals(1, plan.getScanned());
+    }
+
+    @Test
+    public void testInQuery() throws Exception {
+        // A query specifies topics IN (Cloud, Platform), then month != 9 as well.
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm()
+                .filter(new ConferenceQueryForm.Filter(
+                        ConferenceQueryForm.Field.TOPIC,
+                        ConferenceQueryForm.Operator.IN,
+                        "Cloud, Platform"
+                ));
+        CollectionResponse<Conference> firstPage =
+                conferenceApi.queryConferences(conferenceQueryForm, 2, null);
+        assertEquals(ImmutableList.of(conference1, conference3),
+                ImmutableList.copyOf(firstPage.getItems()));
+        CollectionResponse<Conference> lastPage = conferenceApi.queryConferences(
+                conferenceQueryForm, 2, firstPage.getNextPageToken());
+        assertEquals(ImmutableList.of(conference2), ImmutableList.copyOf(lastPage.getItems()));
+        assertNull("The last page shouldn't have a next page.", lastPage.getNextPageToken());
+
+        conferenceQueryForm.filter(new ConferenceQueryForm.Filter(
+                ConferenceQueryForm.Field.MONTH,
+                ConferenceQueryForm.Operator.NE,
+                "9"
+        ));
+        ConferenceQueryPlan plan = conferenceApi.explainConferenceQuery(
+                conferenceQueryForm, null, null);
+        assertEquals(2, plan.getSubQueryCount());
+        assertEquals(ImmutableList.of("topics IN Cloud, Platform"),
+                plan.getDatastoreFilters());
+        assertEquals(ImmutableList.of("month != 9"), plan.getResidualFilters());
+        // Conferences found by both queries are scanned once
+        assertEquals(3, plan.getScanned());
+        assertEquals(2, plan.getReturned());
+    }
+
+    @Test
+    public void testOrganizerReadsPerPage() throws Exception {
+        // Conferences saved before the organizer name was copied, by 20 organizers
+        List<Conference> conferences = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String organizerUserId = "organizer" + (i % 20);
+            ofy().save().entity(new Profile(organizerUserId, "Organizer " + (i % 20),
+                    organizerUserId + "@gmail.com", TeeShirtSize.NOT_SPECIFIED)).now();
+            conferences.add(new Conference(2001L + i, organizerUserId,
+                    new ConferenceForm("Conference " + i, null, null, null, null, null, CAP1)));
+        }
+        ofy().save().entities(conferences).now();
+
+        ConferenceQueryForm conferenceQueryForm = new ConferenceQueryForm();
+        int[] pageSizes = {5, 40};
+        int[] gets = new int[pageSizes.length];
+        for (int i = 0; i < pageSizes.length; i++) {
+            int pageSize = pageSizes[i];
+            ofy().clear();
+            GetCounter getCounter = GetCounter.install();
+            List<Conference> page;
+            try {
+                page = new ArrayList<>(conferenceApi.queryConferences(conferenceQueryForm,
+                        pageSize, null).getItems());
+            } finally {
+                getCounter.uninstall();
+            }
+            assertEquals(pageSize, page.size());
+            gets[i] = getCounter.count;
+            for (Conference conference : page) {
+                if (!USER_ID.equals(conference.getOrganizerUserId())) {
+                    assertTrue(conference.getOrganizerDisplayName().startsWith("Organizer "));
+                }
+            }
+        }
+        assertEquals("The number of gets shouldn't depend on the page size.", gets[0], gets[1]);
+
+        // Conferences carrying the name need no Profile read
+        for (Conference conference : conferences) {
+            conference.updateOrganizerDisplayName("Organizer");
+        }
+        conference1.updateOrganizerDisplayName("Luke");
+        conference2.updateOrganizerDisplayName("Luke");
+        conference3.updateOrganizerDisplayName("Luke");
+        ofy().save().entities(conferences).now();
+        ofy().save().entities(conference1, conference2, conference3).now();
+        ofy().clear();
+        GetCounter getCounter = GetCounter.install();
+        try {
+            assertEquals(40, conferenceApi.queryConferences(conferenceQueryForm, 40, null)
+                    .getItems().size());
+        } finally {
+            getCounter.uninstall();
+        }
+        assertEquals(gets[0] - 1, getCounter.count);
+    }
+
+    /**
+     * Counts the datastore get RPCs made while it is installed.
+     */
+    private static class GetCounter implements ApiProxy.Delegate<ApiProxy.Environment> {
+
+        private final ApiProxy.Delegate<ApiProxy.Environment> delegate;
+
+        private int count;
+
+        @SuppressWarnings("unchecked")
+        private GetCounter() {
+            delegate = ApiProxy.getDelegate();
+        }
+
+        static GetCounter install() {
+            GetCounter getCounter = new GetCounter();
+            ApiProxy.setDelegate(getCounter);
+            return getCounter;
+        }
+
+        void uninstall() {
+            ApiProxy.setDelegate(delegate);
+        }
+
+        private void count(String packageName, String methodName) {
+            if ("datastore_v3".equals(packageName) && "Get".equals(methodName)) {
+                count++;
+            }
+        }
+
+        @Override
+        public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+                String methodName, byte[] request) {
+            count(packageName, methodName);
+            return delegate.makeSyncCall(environment, packageName, methodName, request);
+        }
+
+        @Override
+        public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment,
+                String packageName, String methodName, byte[] request,
+                ApiProxy.ApiConfig apiConfig) {
+            count(packageName, methodName);
+            return delegate.makeAsyncCall(environment, packageName, methodName, request,
+                    apiConfig);
+        }
+
+        @Override
+        public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+            delegate.log(environment, record);
+        }
+
+        @Override
+        public void flushLogs(ApiProxy.Environment environment) {
+            delegate.flushLogs(environment);
+        }
+
+        @Override
+        public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+            return delegate.getRequestThreads(environment);
+        }
     }
 }
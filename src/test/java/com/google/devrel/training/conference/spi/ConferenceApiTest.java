@@ -181,7 +181,7 @@ public class ConferenceApiTest {
         topics.add("Platform");
         ConferenceForm conferenceForm = new ConferenceForm(
                 NAME, DESCRIPTION, topics, CITY, startDate, endDate, CAP);
-        Conference conference = conferenceApi.createConference(user, conferenceForm);
+        Conference conference = conferenceApi.createConference(user, conferenceForm, null);
         // Check the return value.
         assertEquals(NAME, conference.getName());
         assertEquals(DESCRIPTION, conference.getDescription());
@@ -215,9 +215,10 @@ public class ConferenceApiTest {
         topics.add("Platform");
         ConferenceForm conferenceForm = new ConferenceForm(
                 NAME, DESCRIPTION, topics, CITY, startDate, endDate, CAP);
-        Conference conference = conferenceApi.createConference(user, conferenceForm);
+        Conference conference = conferenceApi.createConference(user, conferenceForm, null);
 
-        List<Conference> conferencesCreated = conferenceApi.getConferencesCreated(user);
+        List<Conference> conferencesCreated = new ArrayList<>(
+                conferenceApi.getConferencesCreated(user, null, null).getItems());
         assertEquals(1, conferencesCreated.size());
         assertTrue("The result should contain a conference",
                 conferencesCreated.contains(conference));
@@ -238,7 +239,7 @@ public class ConferenceApiTest {
         topics.add("Platform");
         ConferenceForm conferenceForm = new ConferenceForm(
                 NAME, DESCRIPTION, topics, CITY, startDate, endDate, CAP);
-        Conference conference = conferenceApi.createConference(user, conferenceForm);
+        Conference conference = conferenceApi.createConference(user, conferenceForm, null);
         conference = conferenceApi.getConference(conference.getWebsafeKey());
         // Check the return value.
         assertEquals(NAME, conference.getName());
@@ -266,28 +267,28 @@ public class ConferenceApiTest {
         topics.add("Platform");
         ConferenceForm conferenceForm = new ConferenceForm(
                 NAME, DESCRIPTION, topics, CITY, startDate, endDate, CAP);
-        Conference conference = conferenceApi.createConference(user, conferenceForm);
+        Conference conference = conferenceApi.createConference(user, conferenceForm, null);
         Long conferenceId = conference.getId();
 
         // Registration
         Boolean result = conferenceApi.registerForConference(
-                user, conference.getWebsafeKey()).getResult();
+                user, conference.getWebsafeKey(), null).getResult();
         conference = conferenceApi.getConference(conference.getWebsafeKey());
         Profile profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
         assertTrue("registerForConference should succeed.", result);
         assertEquals(CAP - 1, conference.getSeatsAvailable());
-        assertTrue("Profile should have the conferenceId in conferenceIdsToAttend.",
-                profile.getConferenceKeysToAttend().contains(conference.getWebsafeKey()));
+        assertTrue("The user should attend the conference.",
+                new ProfileEntryService().isRegistered(profile, conference));
 
         // Unregister
         result = conferenceApi.unregisterFromConference(
-                user, conference.getWebsafeKey()).getResult();
+                user, conference.getWebsafeKey(), null).getResult();
         conference = conferenceApi.getConference(conference.getWebsafeKey());
         profile = ofy().load().key(Key.create(Profile.class, user.getUserId())).now();
         assertTrue("unregisterFromConference should succeed.", result);
         assertEquals(CAP, conference.getSeatsAvailable());
-        assertFalse("Profile shouldn't have the conferenceId in conferenceIdsToAttend.",
-                profile.getConferenceKeysToAttend().contains(conference.getWebsafeKey()));
+        assertFalse("The user shouldn't attend the conference.",
+                new ProfileEntryService().isRegistered(profile, conference));
     }
     */
 }